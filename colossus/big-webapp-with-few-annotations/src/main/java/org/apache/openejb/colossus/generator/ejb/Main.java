@@ -7,11 +7,12 @@ import java.io.IOException;
 public class Main {
     public static final String BASE_PACKAGE = "generated";
     public static final String PACKAGE = BASE_PACKAGE + "/foo/bar";
-    public static final String GENERATED_FOLDER = "src/test/java/";
+    public static final String GENERATED_FOLDER = System.getProperty("colossus.generated", "src/test/java/");
     public static final String GENERATED_PACKAGE = GENERATED_FOLDER + PACKAGE;
 
     public static void main(String[] args) {
-        generateEjbs(1000, 200, 5, 10);
+        generateEjbs(Integer.getInteger("colossus.classes", 1000), Integer.getInteger("colossus.methods", 200),
+                Integer.getInteger("colossus.resources", 5), Integer.getInteger("colossus.resourceMethods", 10));
     }
 
     private static void generateEjbs(int classNb, int mtdNb, int rsNb, int rsMtdNb) {
@@ -0,0 +1,257 @@
+package org.apache.openejb.colossus.benchmark;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Builds one of the colossus webapps (big-ejb-webapp, big-cdi-webapp,
+ * big-webapp-with-few-annotations) the way its own build does: compiles
+ * the module, runs its Main generator, which reads its sizes from the
+ * colossus.* system properties, compiles the generated classes with the
+ * module ones and lays them out as an exploded webapp with the module's
+ * src/main/webapp. The classes are spread over a number of jars in
+ * WEB-INF/lib, or kept in WEB-INF/classes when there are none.
+ */
+public class AppGenerator {
+    private final File module;
+    private final int jars;
+
+    public AppGenerator(File module, int jars) {
+        this.module = module;
+        this.jars = jars;
+    }
+
+    /**
+     * @return the exploded webapp
+     */
+    public File generate(File work) throws Exception {
+        final File generator = new File(work, "generator");
+        final File sources = new File(work, "sources");
+        final File compiled = new File(work, "classes");
+        final File webapp = new File(work, "colossus");
+        delete(work);
+        mkdirs(generator);
+        mkdirs(sources);
+        mkdirs(compiled);
+
+        final List<File> moduleSources = new ArrayList<File>();
+        list(new File(module, "src/main/java"), ".java", moduleSources);
+        compile(moduleSources, generator);
+        generate(generator, sources);
+
+        final List<File> files = new ArrayList<File>(moduleSources);
+        list(sources, ".java", files);
+        compile(files, compiled);
+
+        copyDirectory(new File(module, "src/main/webapp"), webapp);
+        final File webInf = new File(webapp, "WEB-INF");
+        final File beansXml = new File(webInf, "beans.xml");
+
+        final List<String> classFiles = new ArrayList<String>();
+        list(compiled, compiled, classFiles);
+        if (jars <= 0) {
+            for (String classFile : classFiles) {
+                final File target = new File(webInf, "classes/" + classFile);
+                mkdirs(target.getParentFile());
+                copy(new File(compiled, classFile), target);
+            }
+            return webapp;
+        }
+
+        // the classes are in jars now, they need their own beans.xml
+        final JarOutputStream[] outputs = new JarOutputStream[jars];
+        try {
+            for (int j = 0; j < jars; j++) {
+                mkdirs(new File(webInf, "lib"));
+                outputs[j] = new JarOutputStream(new FileOutputStream(new File(webInf, "lib/colossus-" + j + ".jar")));
+                if (beansXml.exists()) {
+                    outputs[j].putNextEntry(new JarEntry("META-INF/beans.xml"));
+                    copy(beansXml, outputs[j]);
+                }
+            }
+
+            int next = 0;
+            for (String classFile : classFiles) {
+                final JarOutputStream out = outputs[next++ % jars];
+                out.putNextEntry(new JarEntry(classFile));
+                copy(new File(compiled, classFile), out);
+            }
+        } finally {
+            for (JarOutputStream out : outputs) {
+                if (out != null) {
+                    out.close();
+                }
+            }
+        }
+        return webapp;
+    }
+
+    /**
+     * Runs the Main generator of the module in its own classloader, the
+     * generators of big-ejb-webapp and big-webapp-with-few-annotations
+     * have the same name.
+     */
+    private void generate(File generator, File sources) throws Exception {
+        final File main = find(generator, "Main.class");
+        if (main == null) {
+            throw new IllegalStateException("No generator in " + module.getAbsolutePath());
+        }
+        final String path = main.getAbsolutePath().substring(generator.getAbsolutePath().length() + 1);
+        final String className = path.substring(0, path.length() - ".class".length()).replace(File.separatorChar, '.');
+
+        System.setProperty("colossus.generated", sources.getAbsolutePath() + "/");
+        final URLClassLoader loader = new URLClassLoader(new URL[] { generator.toURI().toURL() }, getClass().getClassLoader());
+        loader.loadClass(className).getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+    }
+
+    private static void compile(List<File> files, File output) throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No java compiler, run the benchmark with a JDK");
+        }
+
+        // the command line of a big app would be too long for some systems
+        final File list = new File(output.getParentFile(), output.getName() + ".txt");
+        final StringBuilder names = new StringBuilder();
+        for (File file : files) {
+            names.append('"').append(file.getAbsolutePath().replace('\\', '/')).append("\"\n");
+        }
+        write(list, names.toString());
+
+        final List<String> options = new ArrayList<String>();
+        options.add("-nowarn");
+        options.add("-d");
+        options.add(output.getAbsolutePath());
+        options.add("-classpath");
+        options.add(System.getProperty("java.class.path"));
+        options.add("@" + list.getAbsolutePath());
+
+        if (compiler.run(null, null, null, options.toArray(new String[options.size()])) != 0) {
+            throw new IllegalStateException("Can't compile " + output.getName());
+        }
+    }
+
+    private static File find(File dir, String name) {
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return null;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                final File found = find(child, name);
+                if (found != null) {
+                    return found;
+                }
+            } else if (child.getName().equals(name)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static void list(File dir, String suffix, List<File> files) {
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                list(child, suffix, files);
+            } else if (child.getName().endsWith(suffix)) {
+                files.add(child);
+            }
+        }
+    }
+
+    /**
+     * The class files under root, without the generators which the module builds leave out of their war.
+     */
+    private static void list(File root, File dir, List<String> classFiles) {
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                list(root, child, classFiles);
+            } else if (child.getName().endsWith(".class") && !child.getName().equals("Main.class")) {
+                classFiles.add(child.getAbsolutePath().substring(root.getAbsolutePath().length() + 1).replace(File.separatorChar, '/'));
+            }
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        final FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void copyDirectory(File from, File to) throws IOException {
+        mkdirs(to);
+        final File[] children = from.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                copyDirectory(child, new File(to, child.getName()));
+            } else {
+                copy(child, new File(to, child.getName()));
+            }
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        final OutputStream out = new FileOutputStream(to);
+        try {
+            copy(from, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void copy(File from, OutputStream out) throws IOException {
+        final InputStream in = new FileInputStream(from);
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void mkdirs(File dir) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IllegalStateException("Can't create " + dir.getAbsolutePath());
+        }
+    }
+
+    private static void delete(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,252 @@
+package org.apache.openejb.colossus.benchmark;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.assembler.classic.DeploymentTimings;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.LocalInitialContextFactory;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.tomee.embedded.Configuration;
+import org.apache.tomee.embedded.Container;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds one of the colossus webapps with its own generator (see
+ * {@link AppGenerator}), deploys it in embedded OpenEJB or TomEE and
+ * appends the time spent in each phase of the deployment and the heap used
+ * once it is deployed as a json line to the results file:
+ *
+ * <pre>
+ * mvn compile exec:exec -Dcolossus.app=big-cdi-webapp -Dcolossus.cdi=500 -Dcolossus.container=tomee
+ * </pre>
+ *
+ * The sizes are the ones the generators read: colossus.ejbs (big-ejb-webapp),
+ * colossus.cdi (big-cdi-webapp), colossus.classes, colossus.resources and
+ * colossus.resourceMethods (big-webapp-with-few-annotations) and
+ * colossus.methods for all of them, plus colossus.jars, the number of jars
+ * the classes are spread over.
+ *
+ * The phases are exclusive so they add up to the deployment time:
+ * scan (finding the modules and their classes), descriptors (reading the
+ * deployment descriptors), appinfo (annotations, the other deployers and
+ * the AppInfo), assembler, cdi (OpenWebBeans boot), warmup (the pools) and,
+ * for TomEE, webapps (Tomcat). The raw timings of every deployer are under
+ * "phases".
+ *
+ * When a baseline file is given the run fails if the deployment or the heap
+ * grew by more than the tolerance compared to the last result of the same
+ * app and size in the baseline.
+ */
+public class StartupBenchmark {
+    private static final String[] APPS = { "big-ejb-webapp", "big-cdi-webapp", "big-webapp-with-few-annotations" };
+    private static final String[] SIZES = { "ejbs", "cdiBeans", "classes", "resources", "resourceMethods", "methods", "jars" };
+
+    public static void main(String[] args) throws Exception {
+        final String app = property("app", APPS[0]);
+        if (!Arrays.asList(APPS).contains(app)) {
+            throw new IllegalArgumentException("colossus.app must be one of " + Arrays.asList(APPS));
+        }
+
+        final Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("timestamp", System.currentTimeMillis());
+        result.put("container", property("container", "openejb"));
+        result.put("java", System.getProperty("java.version"));
+        result.put("app", app);
+        result.put("ejbs", size("ejbs", 200));
+        result.put("cdiBeans", size("cdi", 200));
+        result.put("classes", size("classes", 1000));
+        result.put("resources", size("resources", 5));
+        result.put("resourceMethods", size("resourceMethods", 10));
+        result.put("methods", size("methods", 20));
+        result.put("jars", size("jars", 4));
+
+        final File work = new File(property("work", "target/colossus"));
+        final File module = new File(property("apps", ".."), app);
+        long start = System.nanoTime();
+        final File webapp = new AppGenerator(module, (Integer) result.get("jars")).generate(work);
+        result.put("generate", millis(start));
+
+        // so the pool warmup has something to do
+        System.setProperty("Default Stateless Container.MinSize", property("pool.min", "5"));
+
+        final DeploymentTimings timings = new DeploymentTimings();
+        if ("tomee".equals(result.get("container"))) {
+            final Configuration configuration = new Configuration();
+            configuration.setHttpPort(Integer.getInteger("colossus.http.port", 23880));
+            configuration.setStopPort(Integer.getInteger("colossus.stop.port", 23881));
+            configuration.setDir(new File(work, "tomee").getAbsolutePath());
+
+            final Container container = new Container();
+            container.setup(configuration);
+
+            start = System.nanoTime();
+            container.start();
+            result.put("boot", millis(start));
+
+            SystemInstance.get().setComponent(DeploymentTimings.class, timings);
+            start = System.nanoTime();
+            container.deploy("colossus", webapp);
+            result.put("deploy", millis(start));
+
+            result.put("heap", heap());
+            container.stop();
+        } else {
+            final Properties properties = new Properties();
+            properties.setProperty(Context.INITIAL_CONTEXT_FACTORY, LocalInitialContextFactory.class.getName());
+            properties.setProperty("openejb.deployments.classpath", "false");
+
+            start = System.nanoTime();
+            new InitialContext(properties);
+            result.put("boot", millis(start));
+
+            SystemInstance.get().setComponent(DeploymentTimings.class, timings);
+            start = System.nanoTime();
+            final AppInfo appInfo = new ConfigurationFactory().configureApplication(webapp);
+            SystemInstance.get().getComponent(Assembler.class).createApplication(appInfo);
+            result.put("deploy", millis(start));
+
+            result.put("heap", heap());
+            OpenEJB.destroy();
+        }
+
+        final Map<String, Long> phases = timings.getPhases();
+        final long scan = timings.get("scan");
+        final long descriptors = timings.get("ReadDescriptors");
+        final long assembler = timings.get("assembler");
+        final long cdi = timings.get("cdi");
+        final long warmup = timings.get("warmup");
+        final long webapps = timings.get("webapps");
+        result.put("scan", scan);
+        result.put("descriptors", descriptors);
+        result.put("appinfo", Math.max(0, (Long) result.get("deploy") - assembler - scan - descriptors));
+        result.put("assembler", Math.max(0, assembler - cdi - warmup - webapps));
+        result.put("cdi", cdi);
+        result.put("warmup", warmup);
+        result.put("webapps", webapps);
+        result.put("phases", phases);
+
+        final String json = toJson(result);
+        System.out.println(json);
+
+        final File results = new File(property("results", "target/startup-results.json"));
+        results.getAbsoluteFile().getParentFile().mkdirs();
+        final FileWriter writer = new FileWriter(results, true);
+        try {
+            writer.write(json + "\n");
+        } finally {
+            writer.close();
+        }
+
+        final String baseline = property("baseline", null);
+        if (baseline != null && baseline.length() > 0 && !compare(new File(baseline), result, Double.parseDouble(property("tolerance", "0.2")))) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return false if the result regressed compared to the baseline
+     */
+    private static boolean compare(File baseline, Map<String, Object> result, double tolerance) throws IOException {
+        String reference = null;
+        final BufferedReader reader = new BufferedReader(new FileReader(baseline));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (sameSize(line, result)) {
+                    reference = line;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (reference == null) {
+            System.out.println("No baseline of the same size in " + baseline.getAbsolutePath());
+            return true;
+        }
+
+        boolean ok = true;
+        for (String metric : new String[] { "deploy", "heap" }) {
+            final long expected = number(reference, metric);
+            final long actual = (Long) result.get(metric);
+            if (actual > expected * (1 + tolerance)) {
+                System.out.println("REGRESSION " + metric + ": " + actual + " > " + expected + " (+" + (int) (tolerance * 100) + "%)");
+                ok = false;
+            }
+        }
+        return ok;
+    }
+
+    private static boolean sameSize(String line, Map<String, Object> result) {
+        if (!line.contains("\"container\":\"" + result.get("container") + "\"")) return false;
+        if (!line.contains("\"app\":\"" + result.get("app") + "\"")) return false;
+        for (String size : SIZES) {
+            if (number(line, size) != ((Integer) result.get(size)).longValue()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the size, also set as the system property the generators read
+     */
+    private static int size(String name, int defaultValue) {
+        final int size = Integer.getInteger("colossus." + name, defaultValue);
+        System.setProperty("colossus." + name, Integer.toString(size));
+        return size;
+    }
+
+    private static long number(String json, String name) {
+        final Matcher matcher = Pattern.compile("\"" + name + "\":(\\d+)").matcher(json);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    private static long heap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long millis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static String property(String name, String defaultValue) {
+        return System.getProperty("colossus." + name, defaultValue);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String toJson(Map<String, ?> map) {
+        final StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, ?> entry : map.entrySet()) {
+            if (json.length() > 1) json.append(',');
+            json.append('"').append(entry.getKey()).append("\":");
+            final Object value = entry.getValue();
+            if (value instanceof Map) {
+                json.append(toJson((Map<String, ?>) value));
+            } else if (value instanceof Number) {
+                json.append(value);
+            } else {
+                json.append('"').append(String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            }
+        }
+        return json.append('}').toString();
+    }
+}
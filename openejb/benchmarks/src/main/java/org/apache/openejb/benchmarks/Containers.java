@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.openejb.OpenEjbContainer;
+import org.apache.openejb.client.RemoteInitialContextFactory;
+import org.apache.openejb.core.LocalInitialContextFactory;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.jee.StatefulBean;
+import org.apache.openejb.jee.StatelessBean;
+
+import javax.ejb.embeddable.EJBContainer;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import java.util.Properties;
+
+/**
+ * Boots the benchmark application in an embedded container.
+ * JMH forks a JVM per benchmark so a single container per JVM is enough.
+ */
+public final class Containers {
+    public static final String APP_NAME = "benchmarks";
+
+    private Containers() {
+        // no-op
+    }
+
+    public static EJBContainer start(final boolean remotable) {
+        return start(remotable, new Properties());
+    }
+
+    /**
+     * @param configuration extra container configuration, e.g. "Default Singleton Container.LockStrategy"
+     */
+    public static EJBContainer start(final boolean remotable, final Properties configuration) {
+        final EjbJar ejbJar = new EjbJar(APP_NAME);
+        ejbJar.addEnterpriseBean(new StatelessBean(PingBean.class));
+        ejbJar.addEnterpriseBean(new StatelessBean(InterceptedPingBean.class));
+        ejbJar.addEnterpriseBean(new StatelessBean(SecuredPingBean.class));
+        ejbJar.addEnterpriseBean(new StatelessBean(RunAsPingBean.class));
+        ejbJar.addEnterpriseBean(new StatelessBean(AsyncPingBean.class));
+        ejbJar.addEnterpriseBean(new SingletonBean(SingletonPingBean.class));
+        ejbJar.addEnterpriseBean(new StatefulBean(StatefulPingBean.class));
+
+        final Properties properties = new Properties();
+        properties.putAll(configuration);
+        properties.put(EJBContainer.APP_NAME, APP_NAME);
+        properties.put(EJBContainer.MODULES, ejbJar);
+        properties.setProperty(OpenEjbContainer.OPENEJB_EMBEDDED_REMOTABLE, Boolean.toString(remotable));
+        properties.setProperty("ejbd.port", System.getProperty("ejbd.port", "4201"));
+        return EJBContainer.createEJBContainer(properties);
+    }
+
+    public static Context localContext() throws NamingException {
+        final Properties properties = new Properties();
+        properties.setProperty(Context.INITIAL_CONTEXT_FACTORY, LocalInitialContextFactory.class.getName());
+        return new InitialContext(properties);
+    }
+
+    public static Context remoteContext() throws NamingException {
+        final Properties properties = new Properties();
+        properties.setProperty(Context.INITIAL_CONTEXT_FACTORY, RemoteInitialContextFactory.class.getName());
+        properties.setProperty(Context.PROVIDER_URL, "ejbd://127.0.0.1:" + System.getProperty("ejbd.port", "4201"));
+        return new InitialContext(properties);
+    }
+
+    public static void stop(final EJBContainer container) {
+        if (container != null) {
+            container.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.openejb.core.timer.EJBCronTrigger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.ejb.ScheduleExpression;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a schedule expression into an EJBCronTrigger and computing its next
+ * fire time, for a few expressions found in applications.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CronTriggerBenchmark {
+
+    @State(Scope.Thread)
+    public static class Expression {
+        @Param({"every5Minutes", "lastDayOfMonth", "workingHours", "firstMondayOfQuarter", "every10Seconds", "friday15th"})
+        private String name;
+
+        private ScheduleExpression expression;
+        private EJBCronTrigger trigger;
+        private final Date after = new GregorianCalendar(2011, 2, 13, 7, 6, 40).getTime();
+
+        @Setup
+        public void create() throws EJBCronTrigger.ParseException {
+            if ("every5Minutes".equals(name)) {
+                expression = new ScheduleExpression().hour("*").minute("*/5");
+            } else if ("lastDayOfMonth".equals(name)) {
+                expression = new ScheduleExpression().dayOfMonth("Last").hour(23).minute(30);
+            } else if ("workingHours".equals(name)) {
+                expression = new ScheduleExpression().dayOfWeek("Mon-Fri").hour("9-17").minute("0,30");
+            } else if ("firstMondayOfQuarter".equals(name)) {
+                expression = new ScheduleExpression().dayOfMonth("1st Mon").month("Jan,Apr,Jul,Oct").hour(6);
+            } else if ("every10Seconds".equals(name)) {
+                expression = new ScheduleExpression().second("*/10").minute("*").hour("*");
+            } else {
+                expression = new ScheduleExpression().dayOfMonth(15).dayOfWeek("Fri").hour(12);
+            }
+            expression.start(new Date(0));
+            trigger = new EJBCronTrigger(expression);
+        }
+    }
+
+    @Benchmark
+    public EJBCronTrigger parse(final Expression expression) throws EJBCronTrigger.ParseException {
+        return new EJBCronTrigger(expression.expression);
+    }
+
+    @Benchmark
+    public Date fireTimeAfter(final Expression expression) {
+        return expression.trigger.getFireTimeAfter(expression.after);
+    }
+}
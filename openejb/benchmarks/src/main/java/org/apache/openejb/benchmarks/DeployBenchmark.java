@@ -0,0 +1,187 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.openejb.ClassLoaderUtil;
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.config.AppModule;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.config.DeploymentLoader;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.xbean.asm.AnnotationVisitor;
+import org.apache.xbean.asm.ClassWriter;
+import org.apache.xbean.asm.MethodVisitor;
+import org.apache.xbean.asm.Opcodes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ejb.embeddable.EJBContainer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Deploy time of a war with many jars, with the package indexed
+ * application classloaders and with the linear scan of their urls
+ * (openejb.classloader.package-index=false) they replaced.
+ *
+ * The war is generated once per fork: a stateless bean in WEB-INF/classes
+ * and {@code jars} libraries of {@code classes} classes each, in their own
+ * packages, with a resource per package.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class DeployBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class War {
+        @Param({"50", "200"})
+        private int jars;
+
+        @Param({"50"})
+        private int classes;
+
+        private EJBContainer container;
+        private File directory;
+        private File war;
+        private AppInfo appInfo;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            directory = File.createTempFile("deploy", "");
+            directory.delete();
+            war = new File(directory, "big.war");
+            generate(war, jars, classes);
+
+            container = Containers.start(false);
+        }
+
+        @TearDown(Level.Invocation)
+        public void undeploy() throws Exception {
+            if (appInfo != null) {
+                SystemInstance.get().getComponent(Assembler.class).destroyApplication(appInfo.path);
+                appInfo = null;
+            }
+            ClassLoaderUtil.destroyClassLoader(war.getAbsolutePath());
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            Containers.stop(container);
+            delete(directory);
+        }
+    }
+
+    @Benchmark
+    @Fork(1)
+    public AppInfo indexed(final War war) throws Exception {
+        return deploy(war);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dopenejb.classloader.package-index=false")
+    public AppInfo linearScan(final War war) throws Exception {
+        return deploy(war);
+    }
+
+    private static AppInfo deploy(final War war) throws Exception {
+        final AppModule appModule = new DeploymentLoader().load(war.war);
+        war.appInfo = new ConfigurationFactory().configureApplication(appModule);
+        SystemInstance.get().getComponent(Assembler.class).createApplication(war.appInfo);
+        return war.appInfo;
+    }
+
+    private static void generate(final File war, final int jars, final int classes) throws IOException {
+        final File bean = new File(war, "WEB-INF/classes/big/BigBean.class");
+        bean.getParentFile().mkdirs();
+        write(bean, type("big/BigBean", true));
+
+        final File lib = new File(war, "WEB-INF/lib");
+        lib.mkdirs();
+        for (int i = 0; i < jars; i++) {
+            final JarOutputStream jar = new JarOutputStream(new FileOutputStream(new File(lib, "lib" + i + ".jar")));
+            try {
+                final String pkg = "big/lib" + i + "/";
+                for (int j = 0; j < classes; j++) {
+                    jar.putNextEntry(new JarEntry(pkg + "Type" + j + ".class"));
+                    jar.write(type(pkg + "Type" + j, false));
+                }
+                jar.putNextEntry(new JarEntry(pkg + "messages.properties"));
+                jar.write(("lib=" + i + "\n").getBytes("UTF-8"));
+            } finally {
+                jar.close();
+            }
+        }
+    }
+
+    private static byte[] type(final String name, final boolean stateless) {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC + Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        if (stateless) {
+            final AnnotationVisitor av = cw.visitAnnotation("Ljavax/ejb/Stateless;", true);
+            av.visitEnd();
+        }
+
+        final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void write(final File file, final byte[] bytes) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(final File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
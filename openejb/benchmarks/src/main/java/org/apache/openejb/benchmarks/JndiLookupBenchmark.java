@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.ejb.embeddable.EJBContainer;
+import javax.naming.Context;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups through the IvmContext, with and without a new InitialContext per lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JndiLookupBenchmark {
+    private EJBContainer container;
+    private Context context;
+
+    @Setup
+    public void start() throws Exception {
+        container = Containers.start(false);
+        context = Containers.localContext();
+    }
+
+    @TearDown
+    public void stop() {
+        Containers.stop(container);
+    }
+
+    @Benchmark
+    public Object localLookup() throws Exception {
+        return context.lookup("PingBeanLocal");
+    }
+
+    @Benchmark
+    public Object remoteViewLookup() throws Exception {
+        return context.lookup("PingBeanRemote");
+    }
+
+    @Benchmark
+    public Object globalLookup() throws Exception {
+        return container.getContext().lookup("java:global/" + Containers.APP_NAME + "/PingBean!" + Ping.class.getName());
+    }
+
+    @Benchmark
+    public Object newInitialContextLookup() throws Exception {
+        return Containers.localContext().lookup("PingBeanLocal");
+    }
+}
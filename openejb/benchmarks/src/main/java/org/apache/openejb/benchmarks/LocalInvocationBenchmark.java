@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.ejb.embeddable.EJBContainer;
+import javax.naming.Context;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local business invocations: stateless, singleton and stateful,
+ * with or without interceptors, transaction and security.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LocalInvocationBenchmark {
+    private EJBContainer container;
+    private Ping stateless;
+    private Ping intercepted;
+    private Ping singleton;
+    private Ping secured;
+
+    @Setup
+    public void start() throws Exception {
+        container = Containers.start(false);
+
+        final Context context = Containers.localContext();
+        stateless = (Ping) context.lookup("PingBeanLocal");
+        intercepted = (Ping) context.lookup("InterceptedPingBeanLocal");
+        singleton = (Ping) context.lookup("SingletonPingBeanLocal");
+        secured = (Ping) context.lookup("RunAsPingBeanLocal");
+    }
+
+    @TearDown
+    public void stop() {
+        Containers.stop(container);
+    }
+
+    /**
+     * Stateful instances are not shared between threads.
+     */
+    @State(Scope.Thread)
+    public static class StatefulReference {
+        private Ping stateful;
+
+        @Setup
+        public void lookup() throws Exception {
+            stateful = (Ping) Containers.localContext().lookup("StatefulPingBeanLocal");
+        }
+    }
+
+    @Benchmark
+    public int stateless() {
+        return stateless.ping(1);
+    }
+
+    @Benchmark
+    public int statelessTransaction() {
+        return stateless.pingTx(1);
+    }
+
+    @Benchmark
+    public int statelessInterceptors() {
+        return intercepted.ping(1);
+    }
+
+    @Benchmark
+    public int statelessInterceptorsTransaction() {
+        return intercepted.pingTx(1);
+    }
+
+    @Benchmark
+    public int singleton() {
+        return singleton.ping(1);
+    }
+
+    @Benchmark
+    public int singletonTransaction() {
+        return singleton.pingTx(1);
+    }
+
+    @Benchmark
+    public int stateful(final StatefulReference reference) {
+        return reference.stateful.ping(1);
+    }
+
+    @Benchmark
+    public int statefulTransaction(final StatefulReference reference) {
+        return reference.stateful.pingTx(1);
+    }
+
+    /**
+     * Two invocations (RunAs caller then RolesAllowed bean) including the role check.
+     */
+    @Benchmark
+    public int security() {
+        return secured.ping(1);
+    }
+}
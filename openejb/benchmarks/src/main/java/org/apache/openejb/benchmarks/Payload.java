@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Small object graph, representative of a DTO, to measure the cost of the copies.
+ */
+public class Payload implements Serializable {
+    private String name;
+    private long id;
+    private List<String> values = new ArrayList<String>();
+
+    public Payload() {
+        // no-op
+    }
+
+    public Payload(final String name, final long id, final int size) {
+        this.name = name;
+        this.id = id;
+        for (int i = 0; i < size; i++) {
+            values.add(name + i);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+}
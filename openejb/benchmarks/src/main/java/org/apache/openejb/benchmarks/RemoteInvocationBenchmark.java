@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.ejb.embeddable.EJBContainer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remote views: intra-vm (arguments and results are copied) and ejbd over loopback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RemoteInvocationBenchmark {
+    @Param({"1", "100"})
+    private int payloadSize;
+
+    private EJBContainer container;
+    private RemotePing intraVm;
+    private RemotePing ejbd;
+    private Payload payload;
+
+    @Setup
+    public void start() throws Exception {
+        container = Containers.start(true);
+        intraVm = (RemotePing) Containers.localContext().lookup("PingBeanRemote");
+        ejbd = (RemotePing) Containers.remoteContext().lookup("PingBeanRemote");
+        payload = new Payload("payload", 1, payloadSize);
+    }
+
+    @TearDown
+    public void stop() {
+        Containers.stop(container);
+    }
+
+    @Benchmark
+    public int intraVmPing() {
+        return intraVm.ping(1);
+    }
+
+    @Benchmark
+    public Payload intraVmCopy() {
+        return intraVm.echo(payload);
+    }
+
+    @Benchmark
+    public int ejbdPing() {
+        return ejbd.ping(1);
+    }
+
+    @Benchmark
+    public Payload ejbdEcho() {
+        return ejbd.echo(payload);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import javax.annotation.security.RunAs;
+import javax.ejb.EJB;
+import javax.ejb.Local;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+/**
+ * Entry point of the security benchmark: runs as "bench" and calls {@link SecuredPingBean}.
+ */
+@Stateless
+@Local(Ping.class)
+@RunAs("bench")
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class RunAsPingBean implements Ping {
+    @EJB(beanName = "SecuredPingBean")
+    private Ping secured;
+
+    @Override
+    public int ping(final int value) {
+        return secured.ping(value);
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public int pingTx(final int value) {
+        return secured.pingTx(value);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.openejb.util.StripedReadWriteLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.ejb.embeddable.EJBContainer;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @Lock(READ) singleton scalability, reentrant vs striped lock strategy.
+ *
+ * JMH can't take the thread count as a parameter, run the main method
+ * to get the 1 to 64 threads series (or use -t on the command line).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SingletonLockBenchmark {
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    /**
+     * The lock alone, with an optional write every {@code writeEvery} operations per thread.
+     */
+    @State(Scope.Benchmark)
+    public static class Locks {
+        @Param({"reentrant", "striped"})
+        private String strategy;
+
+        private ReadWriteLock lock;
+        private int value;
+
+        @Setup
+        public void create() {
+            if ("striped".equals(strategy)) {
+                lock = new StripedReadWriteLock();
+            } else {
+                lock = new ReentrantReadWriteLock();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writes {
+        @Param({"0", "1000"})
+        private int writeEvery;
+
+        private int count;
+
+        boolean next() {
+            return writeEvery > 0 && ++count % writeEvery == 0;
+        }
+    }
+
+    /**
+     * The whole invocation path through the singleton container.
+     */
+    @State(Scope.Benchmark)
+    public static class Container {
+        @Param({"reentrant", "striped"})
+        private String strategy;
+
+        private EJBContainer container;
+        private Ping singleton;
+
+        @Setup
+        public void start() throws Exception {
+            final Properties configuration = new Properties();
+            configuration.setProperty("Default Singleton Container.LockStrategy", strategy);
+            container = Containers.start(false, configuration);
+            singleton = (Ping) Containers.localContext().lookup("SingletonPingBeanLocal");
+        }
+
+        @TearDown
+        public void stop() {
+            Containers.stop(container);
+        }
+    }
+
+    @Benchmark
+    public int lock(final Locks locks, final Writes writes) {
+        final Lock lock = writes.next() ? locks.lock.writeLock() : locks.lock.readLock();
+        lock.lock();
+        try {
+            return locks.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Benchmark
+    public int invocation(final Container container) {
+        return container.singleton.ping(1);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        for (int threads : THREADS) {
+            final Options options = new OptionsBuilder()
+                    .include(SingletonLockBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .forks(1)
+                    .result("target/singleton-lock-" + threads + ".json")
+                    .resultFormat(ResultFormatType.JSON)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
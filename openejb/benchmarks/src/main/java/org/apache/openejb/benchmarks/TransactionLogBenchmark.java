@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.geronimo.transaction.log.HOWLLog;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfoImpl;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.apache.geronimo.transaction.manager.XidFactoryImpl;
+import org.apache.openejb.resource.MappedTransactionLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import javax.transaction.xa.Xid;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logging a two resources transaction (prepare then commit), the mapped
+ * transaction log vs the HOWL log of geronimo. Both group the forces of
+ * concurrent transactions so the threads matter, use -t to change them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class TransactionLogBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Log {
+        @Param({"mapped", "howl"})
+        private String log;
+
+        private final XidFactory xidFactory = new XidFactoryImpl("benchmark".getBytes());
+        private File directory;
+        private TransactionLog transactionLog;
+
+        @Setup
+        public void start() throws Exception {
+            directory = File.createTempFile("txlog", "");
+            directory.delete();
+
+            if ("howl".equals(log)) {
+                final HOWLLog howl = new HOWLLog("org.apache.howl.log.BlockLogBuffer", 32, true, true, 50,
+                        new File(directory, "howl").getAbsolutePath(), "log", "howl", -1, 0, 2, 4, -1, xidFactory, directory);
+                howl.doStart();
+                transactionLog = howl;
+            } else {
+                final MappedTransactionLog mapped = new MappedTransactionLog(directory, "txlog", "log", 2, 4 * 1024 * 1024, 50, -1);
+                mapped.start();
+                transactionLog = mapped;
+            }
+        }
+
+        @TearDown
+        public void stop() throws Exception {
+            if (transactionLog instanceof HOWLLog) {
+                ((HOWLLog) transactionLog).doStop();
+            } else {
+                ((MappedTransactionLog) transactionLog).stop();
+            }
+            delete(directory);
+        }
+    }
+
+    @Benchmark
+    public Object commit(final Log log) throws Exception {
+        final Xid xid = log.xidFactory.createXid();
+        final List<TransactionBranchInfo> branches = new ArrayList<TransactionBranchInfo>();
+        branches.add(new TransactionBranchInfoImpl(log.xidFactory.createBranch(xid, 1), "jdbc"));
+        branches.add(new TransactionBranchInfoImpl(log.xidFactory.createBranch(xid, 2), "jms"));
+
+        final Object mark = log.transactionLog.prepare(xid, branches);
+        log.transactionLog.commit(xid, mark);
+        return mark;
+    }
+
+    private static void delete(final File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
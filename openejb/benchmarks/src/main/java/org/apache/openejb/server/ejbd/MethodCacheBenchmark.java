@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.client.EJBMetaDataImpl;
+import org.apache.openejb.client.EJBRequest;
+import org.apache.openejb.client.InterfaceType;
+import org.apache.openejb.client.RequestMethodCode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a serialized business method request like the ejbd server does,
+ * resolving the method with Class.getMethod or with the MethodCache.
+ * Run it with -prof gc for the bytes allocated per request.
+ *
+ * In the package of the MethodCache, which isn't public.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MethodCacheBenchmark {
+
+    @State(Scope.Thread)
+    public static class Request {
+        @Param({"reflection", "cache"})
+        private String resolver;
+
+        private byte[] bytes;
+
+        @Setup
+        public void serialize() throws Exception {
+            if ("cache".equals(resolver)) {
+                EJBRequest.methodResolver.set(new MethodCache());
+            } else {
+                EJBRequest.methodResolver.set(new EJBRequest.ReflectionMethodResolver());
+            }
+
+            final Method method = Calculator.class.getMethod("add", int.class, int.class);
+            final EJBMetaDataImpl ejb = new EJBMetaDataImpl(null, null, null, "STATELESS", "Calculator", 1, InterfaceType.BUSINESS_REMOTE, Arrays.<Class>asList(Calculator.class), null);
+            final EJBRequest req = new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, new Object[]{1, 2}, null);
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final ObjectOutputStream stream = new ObjectOutputStream(out);
+            req.writeExternal(stream);
+            stream.close();
+            bytes = out.toByteArray();
+        }
+
+        @TearDown
+        public void reset() {
+            EJBRequest.methodResolver.remove();
+        }
+    }
+
+    @Benchmark
+    public Method read(final Request request) throws Exception {
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(request.bytes));
+        final EJBRequest req = new EJBRequest();
+        req.readExternal(in);
+        req.getBody().readExternal(in);
+        return req.getMethodInstance();
+    }
+
+    public static interface Calculator {
+        int add(int a, int b);
+
+        long add(long a, long b);
+    }
+}
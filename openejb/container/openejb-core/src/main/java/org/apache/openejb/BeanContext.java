@@ -37,6 +37,7 @@ import org.apache.openejb.core.transaction.TransactionPolicy;
 import org.apache.openejb.core.transaction.TransactionPolicyFactory;
 import org.apache.openejb.core.transaction.TransactionType;
 import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.monitoring.LocalMBeanServer;
 import org.apache.openejb.monitoring.StatsInterceptor;
 import org.apache.openejb.util.Duration;
 import org.apache.openejb.util.Index;
@@ -62,6 +63,9 @@ import javax.ejb.Timer;
 import javax.enterprise.context.spi.Contextual;
 import javax.enterprise.context.spi.CreationalContext;
 import javax.enterprise.inject.spi.Bean;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.naming.Context;
 import javax.persistence.EntityManagerFactory;
 import java.lang.reflect.InvocationHandler;
@@ -78,6 +82,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class BeanContext extends DeploymentContext {
@@ -128,6 +133,8 @@ public class BeanContext extends DeploymentContext {
     private Object containerData;
 
     private boolean destroyed;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<ObjectName, Object> mbeans = new LinkedHashMap<ObjectName, Object>();
     private Class homeInterface;
     private Class remoteInterface;
     private Class localHomeInterface;
@@ -451,6 +458,56 @@ public class BeanContext extends DeploymentContext {
         this.destroyed = destroyed;
     }
 
+    /**
+     * @return the number of threads currently in a ThreadContext of this bean
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public void enteredContext() {
+        inFlight.incrementAndGet();
+    }
+
+    public void exitedContext() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Registers an MBean of this bean, it is unregistered by {@link #unregisterMBeans()}.
+     */
+    public ObjectName registerMBean(Object mbean, ObjectName objectName) throws JMException {
+        LocalMBeanServer.get().registerMBean(mbean, objectName);
+        synchronized (mbeans) {
+            mbeans.put(objectName, mbean);
+        }
+        return objectName;
+    }
+
+    /**
+     * Unregisters the MBeans of this bean, when it is undeployed or when a
+     * redeploy hands them over to the bean replacing it.
+     *
+     * @return the MBeans which were registered, by name
+     */
+    public Map<ObjectName, Object> unregisterMBeans() {
+        final Map<ObjectName, Object> registered;
+        synchronized (mbeans) {
+            registered = new LinkedHashMap<ObjectName, Object>(mbeans);
+            mbeans.clear();
+        }
+
+        final MBeanServer server = LocalMBeanServer.get();
+        for (ObjectName objectName : registered.keySet()) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (Exception e) {
+                logger.error("Unable to unregister MBean " + objectName);
+            }
+        }
+        return registered;
+    }
+
     public List<Injection> getInjections() {
         return injections;
     }
@@ -17,9 +17,11 @@
 package org.apache.openejb;
 
 import org.apache.openejb.core.TempClassLoader;
+import org.apache.openejb.core.interceptor.MethodInvokers;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 import org.apache.openejb.util.UrlCache;
+import org.apache.openejb.util.classloader.IndexedURLClassLoader;
 
 import java.beans.Introspector;
 import java.io.File;
@@ -69,7 +71,7 @@ public class ClassLoaderUtil {
 
     public static URLClassLoader createClassLoader(String appId, URL[] urls, ClassLoader parent) {
         urls = localUrlCache.cacheUrls(appId, urls);
-        URLClassLoader classLoader = new URLClassLoader(urls, parent);
+        URLClassLoader classLoader = new IndexedURLClassLoader(urls, parent);
 
         List<ClassLoader> classLoaders = classLoadersByApp.get(appId);
         if (classLoaders == null) {
@@ -121,6 +123,9 @@ public class ClassLoaderUtil {
         // Clear OpenJPA caches
         cleanOpenJPACache(classLoader);
 
+        // Forget the generated interceptor invokers
+        MethodInvokers.release(classLoader);
+
         //Clear open jar files belonging to this ClassLoader
         for (final String jar : getClosedJarFiles(classLoader)) {
             clearSunJarFileFactoryCache(jar);
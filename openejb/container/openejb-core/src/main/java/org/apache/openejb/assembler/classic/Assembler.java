@@ -27,8 +27,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -39,7 +41,10 @@ import java.util.TreeMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.ejb.ScheduleExpression;
+import javax.ejb.TimerConfig;
 import javax.enterprise.inject.spi.Bean;
 import javax.enterprise.inject.spi.BeanManager;
 import javax.management.InstanceNotFoundException;
@@ -96,6 +101,7 @@ import org.apache.openejb.cdi.OptimizedLoaderService;
 import org.apache.openejb.core.ConnectorReference;
 import org.apache.openejb.core.CoreContainerSystem;
 import org.apache.openejb.core.CoreUserTransaction;
+import org.apache.openejb.core.DeploymentDrainer;
 import org.apache.openejb.core.JndiFactory;
 import org.apache.openejb.core.SimpleTransactionSynchronizationRegistry;
 import org.apache.openejb.core.TransactionSynchronizationRegistryWrapper;
@@ -103,13 +109,20 @@ import org.apache.openejb.core.WebContext;
 import org.apache.openejb.core.ivm.naming.IvmContext;
 import org.apache.openejb.core.ivm.naming.IvmJndiFactory;
 import org.apache.openejb.core.security.SecurityContextHandler;
+import org.apache.openejb.core.timer.CalendarTimerData;
+import org.apache.openejb.core.timer.EjbTimerService;
 import org.apache.openejb.core.timer.EjbTimerServiceImpl;
+import org.apache.openejb.core.timer.IntervalTimerData;
 import org.apache.openejb.core.timer.NullEjbTimerServiceImpl;
 import org.apache.openejb.core.timer.ScheduleData;
+import org.apache.openejb.core.timer.SingleActionTimerData;
+import org.apache.openejb.core.timer.TimerData;
 import org.apache.openejb.core.timer.TimerStore;
+import org.apache.openejb.core.timer.TimerStoreException;
 import org.apache.openejb.core.transaction.JtaTransactionPolicyFactory;
 import org.apache.openejb.core.transaction.SimpleBootstrapContext;
 import org.apache.openejb.core.transaction.SimpleWorkManager;
+import org.apache.openejb.core.transaction.TransactionMetrics;
 import org.apache.openejb.core.transaction.TransactionPolicyFactory;
 import org.apache.openejb.core.transaction.TransactionType;
 import org.apache.openejb.javaagent.Agent;
@@ -117,7 +130,12 @@ import org.apache.openejb.loader.Options;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.monitoring.DynamicMBeanWrapper;
 import org.apache.openejb.assembler.monitoring.JMXContainer;
+import org.apache.openejb.assembler.monitoring.JMXDrainer;
+import org.apache.openejb.assembler.monitoring.JMXEntityManagerRegistry;
+import org.apache.openejb.assembler.monitoring.JMXReadiness;
+import org.apache.openejb.assembler.monitoring.JMXWebBeansContexts;
 import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.monitoring.ManagedMBean;
 import org.apache.openejb.monitoring.ObjectNameBuilder;
 import org.apache.openejb.persistence.JtaEntityManagerRegistry;
 import org.apache.openejb.persistence.PersistenceClassLoaderHandler;
@@ -171,6 +189,10 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
     private final List<DeploymentListener> deploymentListeners = new ArrayList<DeploymentListener>();
     private final Set<String> moduleIds = new HashSet<String>();
     private final Set<ObjectName> containersObjectNames = new HashSet<ObjectName>();
+    private final StartupReadiness readiness = new StartupReadiness();
+    private final DeploymentDrainer drainer = new DeploymentDrainer(
+            SystemInstance.get().getOptions().get("openejb.redeploy.drain.timeout", 60000L),
+            SystemInstance.get().getOptions().get("openejb.redeploy.drain.period", 100L));
 
 
     public org.apache.openejb.spi.ContainerSystem getContainerSystem() {
@@ -185,6 +207,23 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         return securityService;
     }
 
+    public StartupReadiness getReadiness() {
+        return readiness;
+    }
+
+    public DeploymentDrainer getDrainer() {
+        return drainer;
+    }
+
+    /**
+     * Number of threads starting the beans of an application, 1 (the default) starts them one after the other.
+     * The container start paths (JNDI bindings, MBean registrations, singleton construction) are not all
+     * known to be thread safe so starting in parallel is opt-in.
+     */
+    private static int startupThreads() {
+        return SystemInstance.get().getOptions().get("openejb.startup.threads", 1);
+    }
+
     public synchronized void addDeploymentListener(DeploymentListener deploymentListener) {
         deploymentListeners.add(deploymentListener);
     }
@@ -241,6 +280,11 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
 
         system.setComponent(org.apache.openejb.spi.Assembler.class, this);
         system.setComponent(Assembler.class, this);
+        system.setComponent(StartupReadiness.class, readiness);
+        system.setComponent(DeploymentDrainer.class, drainer);
+        if (system.getOptions().get("openejb.transaction.metrics", true)) {
+            system.setComponent(TransactionMetrics.class, new TransactionMetrics(system.getOptions().get("openejb.transaction.metrics.top", 10)));
+        }
 
         containerSystem = new CoreContainerSystem(jndiFactory);
         system.setComponent(ContainerSystem.class, containerSystem);
@@ -407,6 +451,49 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             createContainer(serviceInfo);
         }
 
+        final ObjectName readinessName = ObjectNameBuilder.uniqueName("server", "Readiness", readiness);
+        try {
+            LocalMBeanServer.get().registerMBean(new DynamicMBeanWrapper(new JMXReadiness(readiness)), readinessName);
+            containersObjectNames.add(readinessName);
+        } catch (Exception e) {
+            // no-op
+        } catch (NoClassDefFoundError ncdfe) { // OSGi
+            // no-op
+        }
+
+        final ObjectName drainerName = ObjectNameBuilder.uniqueName("server", "Drainer", drainer);
+        try {
+            LocalMBeanServer.get().registerMBean(new DynamicMBeanWrapper(new JMXDrainer(drainer)), drainerName);
+            containersObjectNames.add(drainerName);
+        } catch (Exception e) {
+            // no-op
+        } catch (NoClassDefFoundError ncdfe) { // OSGi
+            // no-op
+        }
+
+        final TransactionMetrics transactionMetrics = SystemInstance.get().getComponent(TransactionMetrics.class);
+        if (transactionMetrics != null) {
+            final ObjectName transactionMetricsName = ObjectNameBuilder.uniqueName("transactions", "TransactionMetrics", transactionMetrics);
+            try {
+                LocalMBeanServer.get().registerMBean(new ManagedMBean(transactionMetrics), transactionMetricsName);
+                containersObjectNames.add(transactionMetricsName);
+            } catch (Exception e) {
+                // no-op
+            } catch (NoClassDefFoundError ncdfe) { // OSGi
+                // no-op
+            }
+        }
+
+        final ObjectName webBeansContextsName = ObjectNameBuilder.uniqueName("cdi", "WebBeansContexts", containerSystem);
+        try {
+            LocalMBeanServer.get().registerMBean(new DynamicMBeanWrapper(new JMXWebBeansContexts()), webBeansContextsName);
+            containersObjectNames.add(webBeansContextsName);
+        } catch (Exception e) {
+            // no-op
+        } catch (NoClassDefFoundError ncdfe) { // OSGi
+            // no-op
+        }
+
         for (AppInfo appInfo : containerSystemInfo.applications) {
 
             try {
@@ -422,6 +509,8 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
                 }
             }
         }
+
+        readiness.booted();
     }
 
     public Collection<AppInfo> getDeployedApplications() {
@@ -509,6 +598,15 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
     }
 
     public AppContext createApplication(AppInfo appInfo, ClassLoader classLoader, boolean start) throws OpenEJBException, IOException, NamingException {
+        final long begin = System.nanoTime();
+        try {
+            return doCreateApplication(appInfo, classLoader, start);
+        } finally {
+            DeploymentTimings.record("assembler", begin);
+        }
+    }
+
+    private AppContext doCreateApplication(AppInfo appInfo, ClassLoader classLoader, boolean start) throws OpenEJBException, IOException, NamingException {
         // The path is used in the UrlCache, command line deployer, JNDI name templates, tomcat integration and a few other places
         if (appInfo.appId == null) throw new IllegalArgumentException("AppInfo.appId cannot be null");
         if (appInfo.path == null) appInfo.path = appInfo.appId;
@@ -762,7 +860,9 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
 
             appContext.getBeanContexts().addAll(allDeployments);
 
+            final long cdi = System.nanoTime();
             new CdiBuilder().build(appInfo, appContext, allDeployments);
+            DeploymentTimings.record("cdi", cdi);
 
             ensureWebBeansContext(appContext);
 
@@ -791,17 +891,19 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
                 }
 
                 // start
-                for (BeanContext deployment : allDeployments) {
-                    try {
-                        Container container = deployment.getContainer();
-                        container.start(deployment);
-                        if (!((String) deployment.getDeploymentID()).endsWith(".Comp")
-                                && !deployment.isHidden()) {
-                            logger.info("createApplication.startedEjb", deployment.getDeploymentID(), deployment.getEjbName(), container.getContainerID());
-                        }
-                    } catch (Throwable t) {
-                        throw new OpenEJBException("Error starting '"+deployment.getEjbName()+"'.  Exception: "+t.getClass()+": "+t.getMessage(), t);
+                final long warmup = System.nanoTime();
+                readiness.warming();
+                boolean started = false;
+                try {
+                    new DeploymentStarter(startupThreads()).start(allDeployments);
+                    started = true;
+                } finally {
+                    if (started) {
+                        readiness.warmed(allDeployments.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - warmup));
+                    } else {
+                        readiness.failed(appInfo.appId);
                     }
+                    DeploymentTimings.record("warmup", warmup);
                 }
             }
 
@@ -853,7 +955,9 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
 
             WebAppBuilder webAppBuilder = systemInstance.getComponent(WebAppBuilder.class);
             if (webAppBuilder != null) {
+                final long webapps = System.nanoTime();
                 webAppBuilder.deployWebApps(appInfo, classLoader);
+                DeploymentTimings.record("webapps", webapps);
             }
 
             if (start) {
@@ -1053,6 +1157,8 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             logger.warning("Unable to shutdown scheduler", e);
         }
 
+        drainer.stop();
+
         logger.debug("Undeploying Applications");
         Assembler assembler = this;
         for (AppInfo appInfo : assembler.getDeployedApplications()) {
@@ -1138,6 +1244,143 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         destroyApplication(appInfo);
     }
 
+    /**
+     * Replaces a deployed bean by a new BeanContext with the same deployment id
+     * and container, leaving the rest of its application alone.
+     *
+     * New calls go to the new bean as soon as it is started while the calls
+     * running on the replaced one finish there, the replaced bean is undeployed
+     * once they are done, see {@link DeploymentDrainer}.
+     */
+    public synchronized void redeploy(BeanContext beanContext) throws OpenEJBException {
+        final Object deploymentId = beanContext.getDeploymentID();
+        final BeanContext replaced = containerSystem.getBeanContext(deploymentId);
+        if (replaced == null) {
+            throw new OpenEJBException("Bean " + deploymentId + " can't be redeployed, it isn't deployed");
+        }
+
+        // both beans have the same deployment id so the MBeans and the timers
+        // of the replaced bean are handed over before the new one starts
+        final Map<ObjectName, Object> mbeans = replaced.unregisterMBeans();
+        final List<TimerData> timers = stopTimers(replaced);
+        copyTimers(replaced, timers, beanContext);
+
+        final Container container = replaced.getContainer();
+        container.deploy(beanContext);
+        try {
+            container.start(beanContext);
+        } catch (OpenEJBException e) {
+            // the container still has to route the calls to the replaced bean,
+            // deploying it again reschedules its timers
+            container.undeploy(beanContext);
+            container.deploy(replaced);
+            restoreMBeans(replaced, mbeans);
+            throw new OpenEJBException("Error starting the redeployed bean " + deploymentId + ".  Exception: " + e.getClass() + ": " + e.getMessage(), e);
+        }
+
+        // the new timers have the same ids, undeploying the replaced bean must not unschedule them
+        final EjbTimerService replacedTimerService = replaced.getEjbTimerService();
+        if (replacedTimerService instanceof EjbTimerServiceImpl) {
+            for (TimerData timerData : timers) {
+                ((EjbTimerServiceImpl) replacedTimerService).getTimerStore().removeTimer(timerData.getId());
+            }
+        }
+
+        containerSystem.addDeployment(beanContext);
+
+        final List<BeanContext> beanContexts = replaced.getModuleContext().getAppContext().getBeanContexts();
+        synchronized (beanContexts) {
+            final int index = beanContexts.indexOf(replaced);
+            if (index >= 0) {
+                beanContexts.set(index, beanContext);
+            }
+        }
+
+        drainer.drain(replaced);
+        logger.info("Redeployed bean " + deploymentId + ", " + replaced.getInFlight() + " calls still running on the replaced one");
+    }
+
+    private List<TimerData> stopTimers(BeanContext replaced) {
+        final EjbTimerService timerService = replaced.getEjbTimerService();
+        if (!(timerService instanceof EjbTimerServiceImpl)) {
+            return Collections.emptyList();
+        }
+
+        final List<TimerData> timers = new ArrayList<TimerData>();
+        for (TimerData timerData : ((EjbTimerServiceImpl) timerService).getTimerStore().getTimers((String) replaced.getDeploymentID())) {
+            if (!timerData.isCancelled() && !timerData.isExpired()) {
+                timers.add(timerData);
+            }
+        }
+        timerService.stop();
+        return timers;
+    }
+
+    /**
+     * Creates the timers the replaced bean created itself in the store of the new
+     * bean, its @Schedule timers were already created for the new bean. They are
+     * scheduled when the container starts the timer service of the new bean.
+     */
+    private void copyTimers(BeanContext replaced, List<TimerData> timers, BeanContext beanContext) {
+        final EjbTimerService timerService = beanContext.getEjbTimerService();
+        final Method ejbTimeout = beanContext.getEjbTimeout();
+        if (timers.isEmpty() || !(timerService instanceof EjbTimerServiceImpl) || ejbTimeout == null) {
+            if (!timers.isEmpty()) {
+                logger.warning("Redeployed bean " + beanContext.getDeploymentID() + " has no timeout method, " + timers.size() + " timers are dropped");
+            }
+            return;
+        }
+
+        final EjbTimerServiceImpl ejbTimerService = (EjbTimerServiceImpl) timerService;
+        final TimerStore timerStore = ejbTimerService.getTimerStore();
+        final String deploymentId = (String) beanContext.getDeploymentID();
+
+        final Set<ScheduleExpression> schedules = Collections.newSetFromMap(new IdentityHashMap<ScheduleExpression, Boolean>());
+        for (Iterator<Map.Entry<Method, MethodContext>> it = replaced.iteratorMethodContext(); it.hasNext();) {
+            for (ScheduleData scheduleData : it.next().getValue().getSchedules()) {
+                schedules.add(scheduleData.getExpression());
+            }
+        }
+
+        for (TimerData timerData : timers) {
+            final TimerConfig timerConfig = new TimerConfig(timerData.getInfo(), timerData.isPersistent());
+            try {
+                if (timerData instanceof SingleActionTimerData) {
+                    final SingleActionTimerData singleAction = (SingleActionTimerData) timerData;
+                    timerStore.createSingleActionTimer(ejbTimerService, deploymentId, timerData.getPrimaryKey(), ejbTimeout, singleAction.getExpiration(), timerConfig);
+                } else if (timerData instanceof IntervalTimerData) {
+                    final IntervalTimerData interval = (IntervalTimerData) timerData;
+                    Date next = timerData.getNextTimeout();
+                    if (next == null) {
+                        next = interval.getInitialExpiration();
+                    }
+                    timerStore.createIntervalTimer(ejbTimerService, deploymentId, timerData.getPrimaryKey(), ejbTimeout, next, interval.getIntervalDuration(), timerConfig);
+                } else if (timerData instanceof CalendarTimerData) {
+                    final CalendarTimerData calendar = (CalendarTimerData) timerData;
+                    if (!schedules.contains(calendar.getSchedule())) {
+                        timerStore.createCalendarTimer(ejbTimerService, deploymentId, timerData.getPrimaryKey(), ejbTimeout, calendar.getSchedule(), timerConfig);
+                    }
+                }
+            } catch (TimerStoreException e) {
+                logger.warning("Unable to move timer " + timerData + " to the redeployed bean " + deploymentId, e);
+            }
+        }
+    }
+
+    private void restoreMBeans(BeanContext beanContext, Map<ObjectName, Object> mbeans) {
+        final MBeanServer server = LocalMBeanServer.get();
+        for (Map.Entry<ObjectName, Object> mbean : mbeans.entrySet()) {
+            if (server.isRegistered(mbean.getKey())) {
+                continue;
+            }
+            try {
+                beanContext.registerMBean(mbean.getValue(), mbean.getKey());
+            } catch (Exception e) {
+                logger.error("Unable to register MBean ", e);
+            }
+        }
+    }
+
     public synchronized void destroyApplication(AppInfo appInfo) throws UndeployException {
         deployedApplications.remove(appInfo.path);
         logger.info("destroyApplication.start", appInfo.path);
@@ -1255,6 +1498,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         }
 
     // Clear out naming for all components first
+        final TransactionMetrics transactionMetrics = SystemInstance.get().getComponent(TransactionMetrics.class);
         for (BeanContext deployment : deployments) {
             String deploymentID = deployment.getDeploymentID() + "";
             try {
@@ -1263,6 +1507,10 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
                 undeployException.getCauses().add(new Exception(deploymentID, t));
             }
 
+            if (transactionMetrics != null) {
+                transactionMetrics.remove(deployment.getDeploymentID());
+            }
+
             JndiBuilder.Bindings bindings = deployment.get(JndiBuilder.Bindings.class);
             if (bindings != null) for (String name : bindings.getBindings()) {
                 try {
@@ -1790,6 +2038,16 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
 
         this.transactionManager = (TransactionManager) service;
 
+        // so the rollbacks past the timeout count as timeouts
+        final TransactionMetrics transactionMetrics = SystemInstance.get().getComponent(TransactionMetrics.class);
+        if (transactionMetrics != null) {
+            for (String name : serviceInfo.properties.stringPropertyNames()) {
+                if (name.equalsIgnoreCase("defaultTransactionTimeoutSeconds")) {
+                    transactionMetrics.setTransactionTimeout(Integer.parseInt(serviceInfo.properties.getProperty(name).trim()));
+                }
+            }
+        }
+
         // Update the config tree
         config.facilities.transactionService = serviceInfo;
 
@@ -1820,6 +2078,16 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         Assembler.getContext().put(JtaEntityManagerRegistry.class.getName(), jtaEntityManagerRegistry);
         SystemInstance.get().setComponent(JtaEntityManagerRegistry.class, jtaEntityManagerRegistry);
 
+        final ObjectName emRegistryName = ObjectNameBuilder.uniqueName("persistence", "JtaEntityManagerRegistry", jtaEntityManagerRegistry);
+        try {
+            LocalMBeanServer.get().registerMBean(new DynamicMBeanWrapper(new JMXEntityManagerRegistry(jtaEntityManagerRegistry)), emRegistryName);
+            containersObjectNames.add(emRegistryName);
+        } catch (Exception e) {
+            // no-op
+        } catch (NoClassDefFoundError ncdfe) { // OSGi
+            // no-op
+        }
+
         logger.getChildLogger("service").debug("createService.success", serviceInfo.service, serviceInfo.id, serviceInfo.className);
     }
 
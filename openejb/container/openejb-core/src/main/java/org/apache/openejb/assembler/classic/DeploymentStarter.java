@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.BeanType;
+import org.apache.openejb.Container;
+import org.apache.openejb.OpenEJBException;
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Starts the beans of an application, which fills the stateless pools and
+ * creates the @Startup singletons, on several threads.
+ *
+ * The deployments are sorted by the Assembler so each one only depends on
+ * deployments before it. A bean is started once the beans it depends on
+ * are: the ones of its @DependsOn and, for a singleton, every other bean
+ * before it as the singletons always came after the other beans. Message
+ * driven beans are started last, one at a time, once everything else is.
+ *
+ * @version $Rev$ $Date$
+ */
+class DeploymentStarter {
+
+    private static final Logger logger = Assembler.logger;
+
+    private final int threads;
+
+    DeploymentStarter(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param deployments sorted so dependencies come first
+     */
+    public void start(List<BeanContext> deployments) throws OpenEJBException {
+        final List<BeanContext> beans = new ArrayList<BeanContext>();
+        final List<BeanContext> mdbs = new ArrayList<BeanContext>();
+        for (BeanContext deployment : deployments) {
+            if (deployment.getComponentType() == BeanType.MESSAGE_DRIVEN) {
+                mdbs.add(deployment);
+            } else {
+                beans.add(deployment);
+            }
+        }
+
+        if (threads <= 1 || beans.size() <= 1) {
+            for (BeanContext deployment : beans) {
+                start(deployment);
+            }
+        } else {
+            startInParallel(beans);
+        }
+
+        for (BeanContext deployment : mdbs) {
+            start(deployment);
+        }
+    }
+
+    private void startInParallel(List<BeanContext> beans) throws OpenEJBException {
+        final Map<String, Node> nodes = new HashMap<String, Node>();
+        final List<Node> others = new ArrayList<Node>();
+        final List<Node> ready = new ArrayList<Node>();
+
+        for (BeanContext deployment : beans) {
+            final Node node = new Node(deployment);
+
+            for (String id : deployment.getDependsOn()) {
+                node.dependsOn(nodes.get(id));
+            }
+
+            if (deployment.getComponentType() == BeanType.SINGLETON) {
+                for (Node previous : others) {
+                    node.dependsOn(previous);
+                }
+            } else {
+                others.add(node);
+            }
+
+            nodes.put((String) deployment.getDeploymentID(), node);
+            if (node.remaining == 0) ready.add(node);
+        }
+
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, beans.size()), new DaemonThreadFactory("OpenEJB Startup"));
+        final ExecutorCompletionService<Node> completion = new ExecutorCompletionService<Node>(executor);
+
+        // only this thread touches the dependency counts
+        OpenEJBException failure = null;
+        int running = 0;
+        try {
+            for (Node node : ready) {
+                completion.submit(node.task(loader));
+                running++;
+            }
+
+            while (running > 0) {
+                final Node node;
+                try {
+                    node = completion.take().get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof OpenEJBException ? (OpenEJBException) e.getCause() : new OpenEJBException(e.getCause());
+                    }
+                    continue;
+                } catch (InterruptedException e) {
+                    Thread.interrupted();
+                    throw new OpenEJBException("Interrupted while starting the beans", e);
+                } finally {
+                    running--;
+                }
+
+                // once something failed the deployment is rolled back, don't start anything else
+                if (failure != null) continue;
+
+                for (Node dependent : node.dependents) {
+                    if (--dependent.remaining == 0) {
+                        completion.submit(dependent.task(loader));
+                        running++;
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (failure != null) throw failure;
+    }
+
+    private static void start(BeanContext deployment) throws OpenEJBException {
+        try {
+            final Container container = deployment.getContainer();
+            container.start(deployment);
+            if (!((String) deployment.getDeploymentID()).endsWith(".Comp")
+                    && !deployment.isHidden()) {
+                logger.info("createApplication.startedEjb", deployment.getDeploymentID(), deployment.getEjbName(), container.getContainerID());
+            }
+        } catch (Throwable t) {
+            throw new OpenEJBException("Error starting '"+deployment.getEjbName()+"'.  Exception: "+t.getClass()+": "+t.getMessage(), t);
+        }
+    }
+
+    private static class Node {
+        private final BeanContext deployment;
+        private final List<Node> dependents = new ArrayList<Node>();
+        private int remaining;
+
+        private Node(BeanContext deployment) {
+            this.deployment = deployment;
+        }
+
+        private void dependsOn(Node node) {
+            // dependencies outside of the application are already started
+            if (node == null || node.dependents.contains(this)) return;
+
+            node.dependents.add(this);
+            remaining++;
+        }
+
+        private Callable<Node> task(final ClassLoader loader) {
+            return new Callable<Node>() {
+                public Node call() throws Exception {
+                    final Thread thread = Thread.currentThread();
+                    final ClassLoader old = thread.getContextClassLoader();
+                    thread.setContextClassLoader(loader);
+                    try {
+                        start(deployment);
+                        return Node.this;
+                    } finally {
+                        thread.setContextClassLoader(old);
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.loader.SystemInstance;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sums the time spent in each phase of the deployments: scanning the
+ * modules, each deployer of the configuration chain, building the AppInfo,
+ * the Assembler, the CDI boot and the warmup of the beans.
+ *
+ * Nothing is recorded unless an instance is set as a SystemInstance
+ * component, which is what the startup benchmark does.
+ *
+ * @version $Rev$ $Date$
+ */
+public class DeploymentTimings {
+
+    // nanoseconds by phase, in the order the phases first ran
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+    /**
+     * Adds the time elapsed since start to the phase if the timings are recorded.
+     *
+     * @param start the System.nanoTime() the phase started at
+     */
+    public static void record(String phase, long start) {
+        final DeploymentTimings timings = SystemInstance.get().getComponent(DeploymentTimings.class);
+        if (timings != null) {
+            timings.add(phase, System.nanoTime() - start);
+        }
+    }
+
+    public synchronized void add(String phase, long nanos) {
+        final Long total = phases.get(phase);
+        phases.put(phase, total == null ? nanos : total + nanos);
+    }
+
+    /**
+     * @return milliseconds by phase
+     */
+    public synchronized Map<String, Long> getPhases() {
+        final Map<String, Long> millis = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : phases.entrySet()) {
+            millis.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue()));
+        }
+        return millis;
+    }
+
+    public synchronized long get(String phase) {
+        final Long total = phases.get(phase);
+        return total == null ? 0 : TimeUnit.NANOSECONDS.toMillis(total);
+    }
+
+    public synchronized void clear() {
+        phases.clear();
+    }
+}
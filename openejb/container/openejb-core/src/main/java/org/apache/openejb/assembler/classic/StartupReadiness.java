@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tells whether the server can take requests: the applications found at
+ * startup are deployed and no application is warming up its beans, that
+ * is filling its stateless pools and creating its @Startup singletons.
+ *
+ * A load balancer should only route to the node once it is ready so no
+ * request waits for the @PostConstruct of a cold bean.
+ *
+ * @version $Rev$ $Date$
+ */
+public class StartupReadiness {
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_STARTUP, StartupReadiness.class);
+
+    private final long created = System.currentTimeMillis();
+    private final AtomicInteger warming = new AtomicInteger();
+    private final AtomicLong warmedBeans = new AtomicLong();
+    private final AtomicLong warmupTime = new AtomicLong();
+    private final AtomicInteger failedApplications = new AtomicInteger();
+    private volatile String lastFailedApplication;
+    private volatile boolean booted;
+    private volatile long readyTime = -1;
+
+    public boolean isReady() {
+        return booted && warming.get() == 0;
+    }
+
+    /**
+     * @return milliseconds between the creation of the container system and its readiness, -1 if not ready yet
+     */
+    public long getReadyTime() {
+        return readyTime;
+    }
+
+    public int getWarmingApplications() {
+        return warming.get();
+    }
+
+    public long getWarmedBeans() {
+        return warmedBeans.get();
+    }
+
+    /**
+     * @return milliseconds spent starting the beans, summed over all the applications
+     */
+    public long getWarmupTime() {
+        return warmupTime.get();
+    }
+
+    /**
+     * @return applications whose beans didn't start, they are not deployed and don't count as warmed
+     */
+    public int getFailedApplications() {
+        return failedApplications.get();
+    }
+
+    /**
+     * @return the id of the last application whose beans didn't start, null if none failed
+     */
+    public String getLastFailedApplication() {
+        return lastFailedApplication;
+    }
+
+    void warming() {
+        warming.incrementAndGet();
+    }
+
+    void warmed(int beans, long time) {
+        warmedBeans.addAndGet(beans);
+        warmupTime.addAndGet(time);
+        if (warming.decrementAndGet() == 0) {
+            ready();
+        }
+    }
+
+    void failed(String application) {
+        failedApplications.incrementAndGet();
+        lastFailedApplication = application;
+        if (warming.decrementAndGet() == 0) {
+            ready();
+        }
+    }
+
+    void booted() {
+        booted = true;
+        ready();
+    }
+
+    private synchronized void ready() {
+        if (readyTime >= 0 || !isReady()) return;
+
+        readyTime = System.currentTimeMillis() - created;
+        if (failedApplications.get() == 0) {
+            logger.info("Ready to serve requests, " + warmedBeans.get() + " beans warmed up, startup took " + readyTime + " ms");
+        } else {
+            logger.warning("Ready to serve requests, " + warmedBeans.get() + " beans warmed up, " + failedApplications.get() + " applications failed to start, startup took " + readyTime + " ms");
+        }
+    }
+}
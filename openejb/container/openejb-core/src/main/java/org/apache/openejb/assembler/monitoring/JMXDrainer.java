@@ -0,0 +1,38 @@
+package org.apache.openejb.assembler.monitoring;
+
+import javax.management.Description;
+import javax.management.ManagedAttribute;
+import org.apache.openejb.core.DeploymentDrainer;
+
+@Description("the replaced deployments waiting for their calls to be done before being undeployed")
+public class JMXDrainer {
+    private final DeploymentDrainer drainer;
+
+    public JMXDrainer(final DeploymentDrainer drainer) {
+        this.drainer = drainer;
+    }
+
+    @ManagedAttribute
+    @Description("Deployments replaced by a redeploy and not undeployed yet, with their calls in flight.")
+    public String[] getDraining() {
+        return drainer.getDraining();
+    }
+
+    @ManagedAttribute
+    @Description("Number of calls still running on replaced deployments.")
+    public int getInFlight() {
+        return drainer.getInFlight();
+    }
+
+    @ManagedAttribute
+    @Description("Number of replaced deployments undeployed once their calls were done.")
+    public long getDrained() {
+        return drainer.getDrained();
+    }
+
+    @ManagedAttribute
+    @Description("Number of replaced deployments undeployed after the timeout with calls still running.")
+    public long getForced() {
+        return drainer.getForced();
+    }
+}
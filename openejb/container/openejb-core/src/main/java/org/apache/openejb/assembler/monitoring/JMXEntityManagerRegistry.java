@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.monitoring;
+
+import javax.management.Description;
+import javax.management.ManagedAttribute;
+import org.apache.openejb.persistence.JtaEntityManagerRegistry;
+
+@Description("describe the container managed entity managers")
+public class JMXEntityManagerRegistry {
+    private final JtaEntityManagerRegistry registry;
+
+    public JMXEntityManagerRegistry(final JtaEntityManagerRegistry registry) {
+        this.registry = registry;
+    }
+
+    @ManagedAttribute
+    @Description("Number of non extended entity managers created.")
+    public long getCreatedEntityManagers() {
+        return registry.getCreatedEntityManagers();
+    }
+
+    @ManagedAttribute
+    @Description("Number of times the entity manager of the current invocation was reused outside of a transaction.")
+    public long getReusedEntityManagers() {
+        return registry.getReusedEntityManagers();
+    }
+
+    @ManagedAttribute
+    @Description("Is a single entity manager used per invocation outside of a transaction.")
+    public boolean isReuseNonTxEntityManager() {
+        return registry.isReuseNonTxEntityManager();
+    }
+}
@@ -0,0 +1,56 @@
+package org.apache.openejb.assembler.monitoring;
+
+import javax.management.Description;
+import javax.management.ManagedAttribute;
+import org.apache.openejb.assembler.classic.StartupReadiness;
+
+@Description("tell whether the beans are warmed up and the server can take requests")
+public class JMXReadiness {
+    private final StartupReadiness readiness;
+
+    public JMXReadiness(final StartupReadiness readiness) {
+        this.readiness = readiness;
+    }
+
+    @ManagedAttribute
+    @Description("True once the applications are deployed and their pools and startup singletons are ready.")
+    public boolean getReady() {
+        return readiness.isReady();
+    }
+
+    @ManagedAttribute
+    @Description("Milliseconds the server took to be ready, -1 if it is not ready yet.")
+    public long getReadyTime() {
+        return readiness.getReadyTime();
+    }
+
+    @ManagedAttribute
+    @Description("Number of applications warming up their beans.")
+    public int getWarmingApplications() {
+        return readiness.getWarmingApplications();
+    }
+
+    @ManagedAttribute
+    @Description("Number of beans started.")
+    public long getWarmedBeans() {
+        return readiness.getWarmedBeans();
+    }
+
+    @ManagedAttribute
+    @Description("Milliseconds spent starting the beans.")
+    public long getWarmupTime() {
+        return readiness.getWarmupTime();
+    }
+
+    @ManagedAttribute
+    @Description("Number of applications whose beans failed to start.")
+    public int getFailedApplications() {
+        return readiness.getFailedApplications();
+    }
+
+    @ManagedAttribute
+    @Description("Id of the last application whose beans failed to start.")
+    public String getLastFailedApplication() {
+        return readiness.getLastFailedApplication();
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.monitoring;
+
+import javax.management.Description;
+import javax.management.ManagedAttribute;
+import org.apache.openejb.cdi.ThreadSingletonServiceImpl;
+
+@Description("describe how the CDI context of the current thread is resolved")
+public class JMXWebBeansContexts {
+    @ManagedAttribute
+    @Description("Number of lookups resolved by the classloader of an application or a webapp.")
+    public long getClassLoaderHits() {
+        return ThreadSingletonServiceImpl.getHits();
+    }
+
+    @ManagedAttribute
+    @Description("Number of lookups not matching the classloader of an application or a webapp.")
+    public long getClassLoaderMisses() {
+        return ThreadSingletonServiceImpl.getMisses();
+    }
+
+    @ManagedAttribute
+    @Description("Number of lookups resolved by a parent of the classloader.")
+    public long getParentClassLoaderHits() {
+        return ThreadSingletonServiceImpl.getParentHits();
+    }
+
+    @ManagedAttribute
+    @Description("Number of lookups which used the biggest application context.")
+    public long getFallbacks() {
+        return ThreadSingletonServiceImpl.getFallbacks();
+    }
+}
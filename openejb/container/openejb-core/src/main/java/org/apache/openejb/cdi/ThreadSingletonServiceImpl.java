@@ -18,11 +18,11 @@
 
 package org.apache.openejb.cdi;
 
-import java.util.concurrent.ConcurrentHashMap;
 import org.apache.openejb.AppContext;
 import org.apache.openejb.OpenEJBRuntimeException;
 import org.apache.openejb.assembler.classic.AppInfo;
 import org.apache.openejb.assembler.classic.EjbJarInfo;
+import org.apache.openejb.core.CoreContainerSystem;
 import org.apache.openejb.core.WebContext;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.spi.ContainerSystem;
@@ -49,6 +49,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.webbeans.web.intercept.RequestScopedBeanInterceptorHandler;
 
 /**
@@ -59,7 +61,14 @@ public class ThreadSingletonServiceImpl implements ThreadSingletonService {
     public static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_STARTUP, ThreadSingletonServiceImpl.class);
     //this needs to be static because OWB won't tell us what the existing SingletonService is and you can't set it twice.
     private static final ThreadLocal<WebBeansContext> contexts = new ThreadLocal<WebBeansContext>();
-    private static final Map<ClassLoader, WebBeansContext> contextByClassLoader = new ConcurrentHashMap<ClassLoader, WebBeansContext>();
+    // classloaders which aren't the one of an application or a webapp -> their closest deployed parent or NO_PARENT
+    private static final Map<ClassLoader, Object> parents = new WeakHashMap<ClassLoader, Object>();
+    private static final Object NO_PARENT = new Object();
+    private static long parentsGeneration = -1;
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong parentHits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong fallbacks = new AtomicLong();
     private static final String WEBBEANS_FAILOVER_ISSUPPORTFAILOVER = "org.apache.webbeans.web.failover.issupportfailover";
 
     public ThreadSingletonServiceImpl() {
@@ -213,58 +222,152 @@ public class ThreadSingletonServiceImpl implements ThreadSingletonService {
      * Generally contexts.get() is enough since we set the current context from a request (see webbeanslistener)
      * but sometimes matching the classloader is better (manager webapps of tomcat deploys for instance)
      * so here the algorithm:
-     * 1) try to match with the classloader
+     * 1) try to match with the classloader (indexed by the container system on deploy/undeploy)
      * 2) if not matched try to use the threadlocal
-     * 3) (shouldn't happen) simply return the biggest webbeancontext
+     * 3) try to match a parent of the classloader (libraries creating their own classloader)
+     * 4) (shouldn't happen) simply return the biggest webbeancontext
      *
      * @param cl the key (generally TCCL)
      * @return the webbeancontext matching the current context
      */
     public static WebBeansContext get(final ClassLoader cl) {
-        WebBeansContext context = contextByClassLoader.get(cl);
-        if (context != null) {
-            return context;
+        final ContainerSystem containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
+
+        WebBeansContext context;
+        if (containerSystem instanceof CoreContainerSystem) {
+            final CoreContainerSystem coreContainerSystem = (CoreContainerSystem) containerSystem;
+            context = find(coreContainerSystem.getContexts(cl));
+            if (context != null) {
+                hits.incrementAndGet();
+                return context;
+            }
+
+            misses.incrementAndGet();
+            context = contexts.get();
+            if (context != null) {
+                return context;
+            }
+
+            context = findParent(coreContainerSystem, cl);
+            if (context != null) {
+                parentHits.incrementAndGet();
+                return context;
+            }
+        } else {
+            context = scan(containerSystem, cl);
+            if (context != null) {
+                hits.incrementAndGet();
+                return context;
+            }
+
+            misses.incrementAndGet();
+            context = contexts.get();
+            if (context != null) {
+                return context;
+            }
         }
 
-        final ContainerSystem containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
+        // Fallback strategy is to just grab the first AppContext and assume it is the right one
+        // This kind of algorithm could be greatly improved
+        final List<AppContext> appContexts = containerSystem.getAppContexts();
+        if (appContexts.size() > 0) {
+            fallbacks.incrementAndGet();
+            return getWebBeansContext(appContexts);
+        }
+
+        throw new IllegalStateException("On a thread without an initialized context nor a classloader mapping a deployed app");
+    }
+
+    private static WebBeansContext find(final List<Object> owners) {
+        for (Object owner : owners) {
+            final WebBeansContext context;
+            if (owner instanceof WebContext) {
+                final WebContext web = (WebContext) owner;
+                if (web.getWebbeansContext() != null) { // ear
+                    context = web.getWebbeansContext();
+                } else { // war
+                    context = web.getAppContext().getWebBeansContext();
+                }
+            } else {
+                context = ((AppContext) owner).getWebBeansContext();
+            }
+
+            if (context != null) {
+                return context;
+            }
+        }
+        return null;
+    }
+
+    private static WebBeansContext findParent(final CoreContainerSystem containerSystem, final ClassLoader cl) {
+        if (cl == null) return null;
+
+        Object parent;
+        synchronized (parents) {
+            if (parentsGeneration != containerSystem.getGeneration()) { // something was deployed or undeployed
+                parents.clear();
+                parentsGeneration = containerSystem.getGeneration();
+            }
+            parent = parents.get(cl);
+        }
+
+        if (parent == null) {
+            parent = NO_PARENT;
+            for (ClassLoader current = cl.getParent(); current != null; current = current.getParent()) {
+                if (!containerSystem.getContexts(current).isEmpty()) {
+                    parent = current;
+                    break;
+                }
+            }
+
+            synchronized (parents) {
+                if (parentsGeneration == containerSystem.getGeneration()) {
+                    parents.put(cl, parent);
+                }
+            }
+        }
+
+        if (parent == NO_PARENT) {
+            return null;
+        }
+        return find(containerSystem.getContexts((ClassLoader) parent));
+    }
+
+    private static WebBeansContext scan(final ContainerSystem containerSystem, final ClassLoader cl) {
         for (AppContext appContext : containerSystem.getAppContexts()) {
             if (appContext.getClassLoader().equals(cl)) {
-                context = appContext.getWebBeansContext();
-                break;
+                final WebBeansContext context = appContext.getWebBeansContext();
+                if (context != null) {
+                    return context;
+                }
             }
             for (WebContext web : appContext.getWebContexts()) {
                 if (web.getClassLoader().equals(cl)) {
-                    if (web.getWebbeansContext() != null) { // ear
-                        context = web.getWebbeansContext();
-                        break;
-                    } else { // war
-                        context = appContext.getWebBeansContext();
-                        break;
+                    final WebBeansContext context = find(Collections.<Object>singletonList(web));
+                    if (context != null) {
+                        return context;
                     }
+                    break;
                 }
             }
-            if (context != null) {
-                break;
-            }
         }
+        return null;
+    }
 
-        if (context == null) {
-            context = contexts.get();
-            if (context == null) {
-                // Fallback strategy is to just grab the first AppContext and assume it is the right one
-                // This kind of algorithm could be greatly improved
-                final List<AppContext> appContexts = containerSystem.getAppContexts();
-                if (appContexts.size() > 0) {
-                    return getWebBeansContext(appContexts);
-                }
+    public static long getHits() {
+        return hits.get();
+    }
 
-                throw new IllegalStateException("On a thread without an initialized context nor a classloader mapping a deployed app");
-            }
-        } else { // some cache to avoid to browse each app each time
-            contextByClassLoader.put(cl, context);
-        }
+    public static long getParentHits() {
+        return parentHits.get();
+    }
 
-        return context;
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    public static long getFallbacks() {
+        return fallbacks.get();
     }
 
     private static WebBeansContext getWebBeansContext(List<AppContext> appContexts) {
@@ -286,7 +389,9 @@ public class ThreadSingletonServiceImpl implements ThreadSingletonService {
     public void clear(Object key) {
         final WebBeansContext ctx = getContext((ClassLoader) key);
         contextMessage(ctx, "clearing ");
-        contextByClassLoader.remove(key);
+        synchronized (parents) {
+            parents.remove(key);
+        }
         ctx.clear();
     }
 
@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.ClientInfo;
+import org.apache.openejb.assembler.classic.ConnectorInfo;
+import org.apache.openejb.assembler.classic.ContainerInfo;
+import org.apache.openejb.assembler.classic.EjbJarInfo;
+import org.apache.openejb.assembler.classic.ResourceInfo;
+import org.apache.openejb.assembler.classic.WebAppInfo;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.OpenEjbVersion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Keeps the AppInfo built for an application so the next boot can skip the
+ * whole configuration pipeline (DeploymentLoader, descriptors, annotations,
+ * AutoConfig, validation, AppInfoBuilder) when nothing changed.
+ *
+ * An entry is keyed by a fingerprint of:
+ * <ul>
+ * <li>the OpenEJB version</li>
+ * <li>the openejb.xml in use</li>
+ * <li>the openejb.* and tomee.* properties</li>
+ * <li>the application id, path, size and last modification date of every file of the archives</li>
+ * </ul>
+ *
+ * The containers and resources AutoConfig created for the application are
+ * stored with it. Anything unreadable, from another version or pointing to
+ * a path which doesn't exist anymore is a miss and is rebuilt.
+ *
+ * Disabled by default, it is meant for immutable deployments:
+ * <pre>
+ * openejb.appinfo.cache = true
+ * openejb.appinfo.cache.dir = ${openejb.base}/data/appinfo (default)
+ * </pre>
+ *
+ * @version $Rev$ $Date$
+ */
+public class AppInfoCache {
+    public static final String OPENEJB_APPINFO_CACHE = "openejb.appinfo.cache";
+    public static final String OPENEJB_APPINFO_CACHE_DIR = "openejb.appinfo.cache.dir";
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_STARTUP_CONFIG, AppInfoCache.class);
+
+    private static final String EXTENSION = ".appinfo";
+
+    private final File directory;
+    private final byte[] environment;
+    private int hits;
+    private int misses;
+
+    /**
+     * @param configLocation the openejb.xml in use, if any
+     * @return null if the cache is not enabled
+     */
+    public static AppInfoCache create(final String configLocation) {
+        final Options options = SystemInstance.get().getOptions();
+        if (!options.get(OPENEJB_APPINFO_CACHE, false)) return null;
+
+        final String dir = options.get(OPENEJB_APPINFO_CACHE_DIR, (String) null);
+        final File directory;
+        try {
+            directory = dir != null ? new File(dir) : new File(SystemInstance.get().getBase().getDirectory("data", true), "appinfo");
+        } catch (IOException e) {
+            logger.warning("Can't create the AppInfo cache directory, the cache is disabled: " + e.getMessage());
+            return null;
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.warning("Can't create the AppInfo cache directory " + directory.getAbsolutePath() + ", the cache is disabled");
+            return null;
+        }
+
+        try {
+            return new AppInfoCache(directory, environment(configLocation));
+        } catch (Exception e) {
+            logger.warning("Can't initialize the AppInfo cache, the cache is disabled: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public AppInfoCache(final File directory, final byte[] environment) {
+        this.directory = directory;
+        this.environment = environment;
+    }
+
+    /**
+     * @param id the application id or the path of the archive
+     * @return the key of the application or null if it can't be cached
+     */
+    public String fingerprint(final String id, final List<File> files) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(environment);
+            update(digest, String.valueOf(id));
+            for (File file : files) {
+                if (!file.exists()) return null;
+                update(digest, file.getAbsoluteFile(), "");
+            }
+            return hex(digest.digest());
+        } catch (Exception e) {
+            logger.debug("Can't fingerprint " + files + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public Entry get(final String id, final String fingerprint) {
+        final File file = file(id, fingerprint);
+        if (!file.isFile()) {
+            misses++;
+            return null;
+        }
+
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(IO.read(file));
+            final Entry entry = (Entry) new InfoObjectInputStream(in).readObject();
+            if (!entry.isValid()) {
+                throw new IOException("a path of the application doesn't exist anymore");
+            }
+            hits++;
+            return entry;
+        } catch (Exception e) {
+            logger.debug("Ignoring the cached AppInfo " + file.getAbsolutePath() + ": " + e.getMessage());
+            IO.close(in);
+            in = null;
+            IO.delete(file);
+            misses++;
+            return null;
+        } finally {
+            IO.close(in);
+        }
+    }
+
+    public void put(final String id, final String fingerprint, final Entry entry) {
+        final File file = file(id, fingerprint);
+        final File tmp = new File(directory, file.getName() + ".tmp");
+
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(IO.write(tmp));
+            final ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(entry);
+            oos.close();
+            out = null;
+
+            // one entry per application, older ones can't match anymore
+            final String prefix = prefix(id);
+            final File[] previous = directory.listFiles();
+            if (previous != null) {
+                for (File old : previous) {
+                    if (old.getName().startsWith(prefix) && old.getName().endsWith(EXTENSION)) {
+                        IO.delete(old);
+                    }
+                }
+            }
+
+            if (!tmp.renameTo(file)) {
+                throw new IOException("can't rename " + tmp.getAbsolutePath());
+            }
+        } catch (Exception e) {
+            // e.g. a non serializable property value, the application just isn't cached
+            logger.debug("Can't cache the AppInfo of " + id + ": " + e.getMessage());
+            IO.delete(tmp);
+        } finally {
+            IO.close(out);
+        }
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    private File file(final String id, final String fingerprint) {
+        return new File(directory, prefix(id) + fingerprint + EXTENSION);
+    }
+
+    private static String prefix(final String id) {
+        String name = String.valueOf(id);
+        name = name.substring(name.lastIndexOf(File.separatorChar) + 1).replaceAll("[^A-Za-z0-9_.]", "_");
+        if (name.length() > 40) {
+            name = name.substring(0, 40);
+        }
+        return name + "-" + Integer.toHexString(String.valueOf(id).hashCode()) + "-";
+    }
+
+    private static byte[] environment(final String configLocation) throws NoSuchAlgorithmException, IOException {
+        final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        update(digest, OpenEjbVersion.get().getVersion());
+
+        if (configLocation != null) {
+            update(digest, configLocation);
+            final File config = new File(configLocation);
+            if (config.isFile()) {
+                update(digest, IO.readString(config));
+            }
+        }
+
+        final Properties properties = SystemInstance.get().getProperties();
+        final Map<String, String> relevant = new TreeMap<String, String>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith("openejb.") || key.startsWith("tomee.")) {
+                relevant.put(key, properties.getProperty(key));
+            }
+        }
+        for (Map.Entry<String, String> entry : relevant.entrySet()) {
+            update(digest, entry.getKey());
+            update(digest, entry.getValue());
+        }
+        return digest.digest();
+    }
+
+    private static void update(final MessageDigest digest, final File file, final String path) throws UnsupportedEncodingException {
+        update(digest, path + file.getName());
+        if (file.isDirectory()) {
+            final String[] names = file.list();
+            if (names == null) return;
+
+            Arrays.sort(names);
+            for (String name : names) {
+                update(digest, new File(file, name), path + file.getName() + "/");
+            }
+        } else {
+            update(digest, file.length() + ":" + file.lastModified());
+        }
+    }
+
+    private static void update(final MessageDigest digest, final String value) throws UnsupportedEncodingException {
+        digest.update(String.valueOf(value).getBytes("UTF-8"));
+        digest.update((byte) 0);
+    }
+
+    private static String hex(final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    public static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public final AppInfo appInfo;
+        public final List<ContainerInfo> containers = new ArrayList<ContainerInfo>();
+        public final List<ResourceInfo> resources = new ArrayList<ResourceInfo>();
+
+        public Entry(final AppInfo appInfo) {
+            this.appInfo = appInfo;
+        }
+
+        private boolean isValid() {
+            final List<String> paths = new ArrayList<String>();
+            paths.add(appInfo.path);
+            paths.addAll(appInfo.libs);
+            for (EjbJarInfo info : appInfo.ejbJars) paths.add(info.path);
+            for (ClientInfo info : appInfo.clients) paths.add(info.path);
+            for (ConnectorInfo info : appInfo.connectors) paths.add(info.path);
+            for (WebAppInfo info : appInfo.webApps) paths.add(info.path);
+
+            for (String path : paths) {
+                if (path != null && !new File(path).exists()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Only resolves the classes an AppInfo is made of.
+     */
+    private static class InfoObjectInputStream extends ObjectInputStream {
+        private static final String[] ALLOWED = {
+                "java.",
+                "javax.xml.namespace.",
+                "org.apache.openejb.assembler.classic.",
+                AppInfoCache.class.getName()
+        };
+
+        public InfoObjectInputStream(final InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            while (name.startsWith("[")) {
+                name = name.substring(1);
+            }
+            if (name.startsWith("L") && name.endsWith(";")) {
+                name = name.substring(1, name.length() - 1);
+            }
+
+            if (name.length() > 1) { // primitive arrays
+                boolean allowed = false;
+                for (String prefix : ALLOWED) {
+                    allowed |= name.startsWith(prefix);
+                }
+                if (!allowed) {
+                    throw new InvalidClassException(desc.getName(), "not part of an AppInfo");
+                }
+            }
+
+            try {
+                return Class.forName(desc.getName(), false, AppInfoCache.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
@@ -47,6 +47,7 @@ import org.apache.openejb.assembler.classic.ConnectorInfo;
 import org.apache.openejb.assembler.classic.ContainerInfo;
 import org.apache.openejb.assembler.classic.ContainerSystemInfo;
 import org.apache.openejb.assembler.classic.DeploymentExceptionManager;
+import org.apache.openejb.assembler.classic.DeploymentTimings;
 import org.apache.openejb.assembler.classic.EjbJarInfo;
 import org.apache.openejb.assembler.classic.FacilitiesInfo;
 import org.apache.openejb.assembler.classic.HandlerChainInfo;
@@ -79,14 +80,18 @@ import org.apache.openejb.config.sys.SecurityService;
 import org.apache.openejb.config.sys.ServiceProvider;
 import org.apache.openejb.config.sys.TransactionManager;
 import org.apache.openejb.jee.Application;
+import org.apache.openejb.jee.Beans;
 import org.apache.openejb.jee.EjbJar;
 import org.apache.openejb.jee.EnterpriseBean;
 import org.apache.openejb.jee.EnvEntry;
 import org.apache.openejb.jee.Handler;
 import org.apache.openejb.jee.HandlerChain;
 import org.apache.openejb.jee.HandlerChains;
+import org.apache.openejb.jee.JaxbJavaee;
 import org.apache.openejb.jee.ParamValue;
 import org.apache.openejb.jee.SessionBean;
+import org.apache.openejb.jee.jpa.unit.Persistence;
+import org.apache.openejb.jee.oejb3.OpenejbJar;
 import org.apache.openejb.loader.FileUtils;
 import org.apache.openejb.loader.IO;
 import org.apache.openejb.loader.Options;
@@ -120,9 +125,11 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     private DynamicDeployer deployer;
     private final DeploymentLoader deploymentLoader;
     private final boolean offline;
+    private AppInfoCache appInfoCache;
     private static final String CLASSPATH_AS_EAR = "openejb.deployments.classpath.ear";
     static final String WEBSERVICES_ENABLED = "openejb.webservices.enabled";
     static final String OFFLINE_PROPERTY = "openejb.offline";
+    static final String JAXB_WARMUP = "openejb.jaxb.warmup";
 
     public ConfigurationFactory() {
         this(SystemInstance.get().getOptions().get(ConfigurationFactory.OFFLINE_PROPERTY, false));
@@ -317,10 +324,17 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
         @Override
         public AppModule deploy(AppModule appModule) throws OpenEJBException {
             for (final DynamicDeployer deployer : chain) {
+                final long start = System.nanoTime();
                 appModule = deployer.deploy(appModule);
+                DeploymentTimings.record(name(deployer), start);
             }
             return appModule;
         }
+
+        private static String name(final DynamicDeployer deployer) {
+            final String name = deployer.getClass().getName();
+            return name.substring(name.lastIndexOf('.') + 1);
+        }
     }
 
     @Override
@@ -336,6 +350,10 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
             props.setProperty(CONFIGURATION_PROPERTY, configLocation);
         }
 
+        if (SystemInstance.get().getOptions().get(JAXB_WARMUP, true)) {
+            // the descriptors of the deployed modules are read right after
+            JaxbJavaee.warmup(EjbJar.class, OpenejbJar.class, Persistence.class, Beans.class);
+        }
     }
 
     protected void install(final ContainerInfo serviceInfo) throws OpenEJBException {
@@ -423,6 +441,8 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
 
         final List<String> declaredApps = getDeclaredApps();
 
+        appInfoCache = AppInfoCache.create(configLocation);
+
         for (final String pathname : declaredApps) {
             try {
                 try {
@@ -433,7 +453,7 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
                         jarFile = new File(pathname);
                     }
 
-                    final AppInfo appInfo = configureApplication(jarFile);
+                    final AppInfo appInfo = configureCachedApplication(null, null, Collections.singletonList(jarFile));
                     sys.containerSystem.applications.add(appInfo);
 
                 } catch (URISyntaxException e) {
@@ -466,12 +486,12 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
             try {
                 if (classpathAsEar && !jarFiles.isEmpty()) {
 
-                    final AppInfo appInfo = configureApplication(classLoader, appId, jarFiles);
+                    final AppInfo appInfo = configureCachedApplication(classLoader, appId, jarFiles);
                     sys.containerSystem.applications.add(appInfo);
 
                 } else for (final File jarFile : jarFiles) {
 
-                    final AppInfo appInfo = configureApplication(jarFile);
+                    final AppInfo appInfo = configureCachedApplication(null, null, Collections.singletonList(jarFile));
                     sys.containerSystem.applications.add(appInfo);
                 }
 
@@ -495,12 +515,69 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
             }
         }
 
+        if (appInfoCache != null) {
+            logger.info("AppInfo cache " + appInfoCache.getDirectory().getAbsolutePath() + ": " + appInfoCache.getHits() + " hit(s), " + appInfoCache.getMisses() + " miss(es)");
+            appInfoCache = null;
+        }
+
         final OpenEjbConfiguration finished = sys;
         sys = null;
         openejb = null;
         return finished;
     }
 
+    /**
+     * Boot time configuration of an application, reusing the AppInfo of
+     * the previous boot when the {@link AppInfoCache} is enabled and the
+     * application didn't change.
+     *
+     * @param classLoader null to configure a single archive
+     */
+    private AppInfo configureCachedApplication(final ClassLoader classLoader, final String id, final List<File> jarFiles) throws OpenEJBException {
+        final String key = id != null ? id : jarFiles.get(0).getAbsolutePath();
+        final String fingerprint = appInfoCache == null ? null : appInfoCache.fingerprint(key, jarFiles);
+        if (fingerprint != null) {
+            final AppInfoCache.Entry entry = appInfoCache.get(key, fingerprint);
+            if (entry != null) {
+                logger.info("Using the cached configuration of " + entry.appInfo.path);
+                addCreatedServices(entry.containers, sys.containerSystem.containers);
+                addCreatedServices(entry.resources, sys.facilities.resources);
+                return entry.appInfo;
+            }
+        }
+
+        // what AutoConfig creates for this application is appended to the lists
+        final int containers = sys.containerSystem.containers.size();
+        final int resources = sys.facilities.resources.size();
+
+        final AppInfo appInfo;
+        if (classLoader == null) {
+            appInfo = configureApplication(jarFiles.get(0));
+        } else {
+            appInfo = configureApplication(classLoader, id, jarFiles);
+        }
+
+        if (fingerprint != null) {
+            final AppInfoCache.Entry entry = new AppInfoCache.Entry(appInfo);
+            entry.containers.addAll(sys.containerSystem.containers.subList(containers, sys.containerSystem.containers.size()));
+            entry.resources.addAll(sys.facilities.resources.subList(resources, sys.facilities.resources.size()));
+            appInfoCache.put(key, fingerprint, entry);
+        }
+        return appInfo;
+    }
+
+    private static <T extends ServiceInfo> void addCreatedServices(final List<T> created, final List<T> services) {
+        for (final T service : created) {
+            boolean exists = false;
+            for (final T existing : services) {
+                exists |= existing.id.equals(service.id);
+            }
+            if (!exists) {
+                services.add(service);
+            }
+        }
+    }
+
     private List<String> getDeclaredApps() {
         // make a copy of the list because we update it
         final List<Deployments> deployments = new ArrayList<Deployments>();
@@ -663,7 +740,9 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
         logger.debug("Beginning load: " + jarFile.getAbsolutePath());
 
         try {
+            final long scan = System.nanoTime();
             final AppModule appModule = deploymentLoader.load(jarFile);
+            DeploymentTimings.record("scan", scan);
             return configureApplication(appModule);
         } catch (ValidationFailedException e) {
             logger.warning("configureApplication.loadFailed", jarFile.getAbsolutePath(), e.getMessage()); // DO not include the stacktrace in the message
@@ -791,7 +870,12 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
         deployer.deploy(appModule);
         final AppInfoBuilder appInfoBuilder = new AppInfoBuilder(this);
 
-        return appInfoBuilder.build(appModule);
+        final long appInfo = System.nanoTime();
+        try {
+            return appInfoBuilder.build(appModule);
+        } finally {
+            DeploymentTimings.record("appinfo", appInfo);
+        }
     }
 
     private static class DefaultService {
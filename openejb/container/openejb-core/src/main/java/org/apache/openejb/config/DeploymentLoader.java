@@ -46,6 +46,7 @@ import org.apache.openejb.util.JarExtractor;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 import org.apache.openejb.util.URLs;
+import org.apache.openejb.util.classloader.IndexedURLClassLoader;
 import org.apache.xbean.finder.IAnnotationFinder;
 import org.apache.xbean.finder.ResourceFinder;
 import org.apache.xbean.finder.UrlSet;
@@ -769,7 +770,7 @@ public class DeploymentLoader implements DeploymentFilterable {
     private void addBeansXmls(final WebModule webModule) {
         final List<URL> urls = webModule.getScannableUrls();
         // parent returns nothing when calling getresources because we don't want here to be fooled by maven classloader
-        final URLClassLoader loader = new URLClassLoader(urls.toArray(new URL[urls.size()]), new EmptyResourcesClassLoader());
+        final URLClassLoader loader = new IndexedURLClassLoader(urls.toArray(new URL[urls.size()]), new EmptyResourcesClassLoader());
 
         final ArrayList<URL> xmls;
         try {
@@ -809,7 +810,7 @@ public class DeploymentLoader implements DeploymentFilterable {
 
     private void addBeansXmls(final AppModule appModule) {
         final List<URL> urls = appModule.getAdditionalLibraries();
-        final URLClassLoader loader = new URLClassLoader(urls.toArray(new URL[urls.size()]));
+        final URLClassLoader loader = new IndexedURLClassLoader(urls.toArray(new URL[urls.size()]));
 
         final ArrayList<URL> xmls;
         try {
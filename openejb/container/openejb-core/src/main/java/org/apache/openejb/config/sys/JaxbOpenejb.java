@@ -18,7 +18,8 @@ package org.apache.openejb.config.sys;
 
 import org.apache.openejb.OpenEJBException;
 import org.apache.openejb.config.ConfigUtils;
-import org.apache.openejb.jee.JAXBContextFactory;
+import org.apache.openejb.jee.JaxbJavaee;
+import org.apache.openejb.jee.SAXParserPool;
 import org.apache.openejb.loader.IO;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.xbean.finder.ResourceFinder;
@@ -39,7 +40,6 @@ import javax.xml.bind.ValidationEventHandler;
 import javax.xml.bind.ValidationException;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.sax.SAXSource;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -48,16 +48,12 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
 public abstract class JaxbOpenejb {
 
-    private static final SAXParserFactory SAX_PARSER_FACTORY = SAXParserFactory.newInstance();
-
     @SuppressWarnings({"unchecked"})
     public static <T> T create(Class<T> type) {
         if (type == null) throw new NullPointerException("type is null");
@@ -158,56 +154,57 @@ public abstract class JaxbOpenejb {
     private static ServicesJar parseServicesJar(InputStream in) throws ParserConfigurationException, SAXException, IOException {
         InputSource inputSource = new InputSource(in);
 
-        SAXParserFactory factory = SAX_PARSER_FACTORY;
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        SAXParser parser = factory.newSAXParser();
+        SAXParser parser = SAXParserPool.acquire(false);
 
         final ServicesJar servicesJar1 = new ServicesJar();
 
-        parser.parse(inputSource, new DefaultHandler(){
-            private ServiceProvider provider;
-            private StringBuilder content;
-
-            public void startDocument() throws SAXException {
-            }
+        try {
+            parser.parse(inputSource, new DefaultHandler(){
+                private ServiceProvider provider;
+                private StringBuilder content;
 
-            public void startElement(String uri, String localName, String qName, Attributes att) throws SAXException {
-                if (!localName.equals("ServiceProvider")) return;
-
-                provider = new ServiceProvider();
-                provider.setId(att.getValue("","id"));
-                provider.setService(att.getValue("","service"));
-                provider.setFactoryName(att.getValue("","factory-name"));
-                provider.setConstructor(att.getValue("","constructor"));
-                provider.setClassName(att.getValue("","class-name"));
-                String typesString = att.getValue("", "types");
-                if (typesString != null){
-                    ListAdapter listAdapter = new ListAdapter();
-                    List<String> types = listAdapter.unmarshal(typesString);
-                    provider.getTypes().addAll(types);
+                public void startDocument() throws SAXException {
                 }
-                servicesJar1.getServiceProvider().add(provider);
-            }
 
-            public void characters(char ch[], int start, int length) throws SAXException {
-                if (content == null) content = new StringBuilder();
-                content.append(ch, start, length);
-            }
+                public void startElement(String uri, String localName, String qName, Attributes att) throws SAXException {
+                    if (!localName.equals("ServiceProvider")) return;
+
+                    provider = new ServiceProvider();
+                    provider.setId(att.getValue("","id"));
+                    provider.setService(att.getValue("","service"));
+                    provider.setFactoryName(att.getValue("","factory-name"));
+                    provider.setConstructor(att.getValue("","constructor"));
+                    provider.setClassName(att.getValue("","class-name"));
+                    String typesString = att.getValue("", "types");
+                    if (typesString != null){
+                        ListAdapter listAdapter = new ListAdapter();
+                        List<String> types = listAdapter.unmarshal(typesString);
+                        provider.getTypes().addAll(types);
+                    }
+                    servicesJar1.getServiceProvider().add(provider);
+                }
 
-            public void endElement(String uri, String localName, String qName) throws SAXException {
-                if (provider == null || content == null) return;
+                public void characters(char ch[], int start, int length) throws SAXException {
+                    if (content == null) content = new StringBuilder();
+                    content.append(ch, start, length);
+                }
 
-                try {
-                    PropertiesAdapter propertiesAdapter = new PropertiesAdapter();
-                    provider.getProperties().putAll(propertiesAdapter.unmarshal(content.toString()));
-                } catch (Exception e) {
-                    throw new SAXException(e);
+                public void endElement(String uri, String localName, String qName) throws SAXException {
+                    if (provider == null || content == null) return;
+
+                    try {
+                        PropertiesAdapter propertiesAdapter = new PropertiesAdapter();
+                        provider.getProperties().putAll(propertiesAdapter.unmarshal(content.toString()));
+                    } catch (Exception e) {
+                        throw new SAXException(e);
+                    }
+                    provider = null;
+                    content = null;
                 }
-                provider = null;
-                content = null;
-            }
-        });
+            });
+        } finally {
+            SAXParserPool.release(parser);
+        }
         ServicesJar servicesJar = servicesJar1;
         return servicesJar;
     }
@@ -275,8 +272,6 @@ public abstract class JaxbOpenejb {
 
     public static final ThreadLocal<Set<String>> currentPublicId = new ThreadLocal<Set<String>>();
 
-    private static Map<Class, JAXBContext> jaxbContexts = new HashMap<Class, JAXBContext>();
-
     public static <T> String marshal(Class<T> type, Object object) throws JAXBException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
@@ -295,21 +290,13 @@ public abstract class JaxbOpenejb {
     }
 
     public static <T> JAXBContext getContext(Class<T> type) throws JAXBException {
-        JAXBContext jaxbContext = jaxbContexts.get(type);
-        if (jaxbContext == null) {
-            jaxbContext = JAXBContextFactory.newInstance(type);
-            jaxbContexts.put(type, jaxbContext);
-        }
-        return jaxbContext;
+        return JaxbJavaee.getContext(type);
     }
 
     public static <T> T unmarshal(Class<T> type, InputStream in, boolean filter) throws ParserConfigurationException, SAXException, JAXBException {
         InputSource inputSource = new InputSource(in);
 
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        SAXParser parser = factory.newSAXParser();
+        SAXParser parser = SAXParserPool.acquire(false);
 
         JAXBContext ctx = getContext(type);
         Unmarshaller unmarshaller = ctx.createUnmarshaller();
@@ -334,6 +321,7 @@ public abstract class JaxbOpenejb {
             return unmarshaller.unmarshal(source, type).getValue();
         } finally {
             currentPublicId.set(null);
+            SAXParserPool.release(parser);
         }
     }
 
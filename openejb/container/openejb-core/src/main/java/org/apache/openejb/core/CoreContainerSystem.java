@@ -24,18 +24,25 @@ import org.apache.openejb.loader.SystemInstance;
 
 import javax.naming.Context;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @org.apache.xbean.XBean element="containerSystem"
  */
 public class CoreContainerSystem implements org.apache.openejb.spi.ContainerSystem {
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+
     private final Map<Object, AppContext> apps = new ConcurrentHashMap<Object, AppContext>();
-    private final Map<Object, BeanContext> deployments = new ConcurrentHashMap<Object, BeanContext>();
+    private final DeploymentRegistry deployments = new DeploymentRegistry();
     private final Map<Object, Container> containers = new ConcurrentHashMap<Object, Container>();
     private final Map<String, WebContext> webDeployments = new ConcurrentHashMap<String, WebContext>();
+    private final Map<ClassLoader, List<Object>> contextsByClassLoader = new ConcurrentHashMap<ClassLoader, List<Object>>();
+    private volatile long generation = GENERATIONS.incrementAndGet();
     private final Context jndiContext;
 
     /**
@@ -80,15 +87,15 @@ public class CoreContainerSystem implements org.apache.openejb.spi.ContainerSyst
     }
 
     public BeanContext[] deployments() {
-        return deployments.values().toArray(new BeanContext[deployments.size()]);
+        return deployments.values();
     }
 
     public void addDeployment(BeanContext deployment) {
-        this.deployments.put(deployment.getDeploymentID(), deployment);
+        this.deployments.put(deployment);
     }
 
     public void removeBeanContext(BeanContext info){
-        this.deployments.remove(info.getDeploymentID());
+        this.deployments.remove(info);
     }
 
     public Container getContainer(Object id) {
@@ -117,10 +124,12 @@ public class CoreContainerSystem implements org.apache.openejb.spi.ContainerSyst
 
     public void addWebContext(WebContext webDeployment) {
         this.webDeployments.put(webDeployment.getId(), webDeployment);
+        index(webDeployment.getClassLoader(), webDeployment);
     }
 
     public void removeWebContext(WebContext info){
         this.webDeployments.remove(info.getId());
+        unindex(info.getClassLoader(), info);
     }
 
     public Context getJNDIContext() {
@@ -139,9 +148,62 @@ public class CoreContainerSystem implements org.apache.openejb.spi.ContainerSyst
 
     public void addAppContext(AppContext appContext) {
         apps.put(appContext.getId(), appContext);
+        index(appContext.getClassLoader(), appContext);
     }
     
     public void removeAppContext(Object id) {
-        apps.remove(id);
+        final AppContext appContext = apps.remove(id);
+        if (appContext != null) {
+            unindex(appContext.getClassLoader(), appContext);
+        }
+    }
+
+    /**
+     * @param classLoader the classloader of an application or a webapp
+     * @return the AppContexts and WebContexts using exactly this classloader, in deployment order
+     */
+    public List<Object> getContexts(ClassLoader classLoader) {
+        if (classLoader == null) return Collections.emptyList();
+
+        final List<Object> contexts = contextsByClassLoader.get(classLoader);
+        if (contexts == null) return Collections.emptyList();
+        return contexts;
+    }
+
+    /**
+     * Changes each time an application or a webapp is added or removed,
+     * unique across container systems so it can be used to invalidate caches.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    private void index(ClassLoader classLoader, Object context) {
+        if (classLoader != null) {
+            synchronized (contextsByClassLoader) {
+                List<Object> contexts = contextsByClassLoader.get(classLoader);
+                if (contexts == null) {
+                    contexts = new CopyOnWriteArrayList<Object>();
+                    contextsByClassLoader.put(classLoader, contexts);
+                }
+                contexts.add(context);
+            }
+        }
+        generation = GENERATIONS.incrementAndGet();
+    }
+
+    private void unindex(ClassLoader classLoader, Object context) {
+        if (classLoader != null) {
+            synchronized (contextsByClassLoader) {
+                final List<Object> contexts = contextsByClassLoader.get(classLoader);
+                if (contexts != null) {
+                    contexts.remove(context);
+                    if (contexts.isEmpty()) {
+                        contextsByClassLoader.remove(classLoader);
+                    }
+                }
+            }
+        }
+        generation = GENERATIONS.incrementAndGet();
     }
 }
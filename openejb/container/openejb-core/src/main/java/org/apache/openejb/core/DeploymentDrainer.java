@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core;
+
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.Container;
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Undeploys the BeanContexts replaced by a redeploy once the calls which
+ * were running on them are done.
+ *
+ * New calls already go to the new deployment, see {@link DeploymentRegistry},
+ * so the replaced one is only polled until no thread is in one of its
+ * contexts anymore. Calls still running after the timeout are left to
+ * finish on an undeployed bean.
+ *
+ * @version $Rev$ $Date$
+ */
+public class DeploymentDrainer {
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_DEPLOY, DeploymentDrainer.class);
+
+    private final long timeout;
+    private final long period;
+    private final Map<BeanContext, Long> draining = new ConcurrentHashMap<BeanContext, Long>();
+    private final AtomicLong drained = new AtomicLong();
+    private final AtomicLong forced = new AtomicLong();
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param timeout milliseconds a replaced deployment waits for its calls
+     * @param period  milliseconds between two checks of the calls left
+     */
+    public DeploymentDrainer(long timeout, long period) {
+        this.timeout = timeout;
+        this.period = period;
+    }
+
+    public synchronized void drain(BeanContext beanContext) {
+        draining.put(beanContext, System.currentTimeMillis());
+
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("OpenEJB Drainer"));
+            executor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    check();
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        for (BeanContext beanContext : draining.keySet()) {
+            undeploy(beanContext);
+        }
+    }
+
+    void check() {
+        final long now = System.currentTimeMillis();
+        for (Map.Entry<BeanContext, Long> entry : draining.entrySet()) {
+            final BeanContext beanContext = entry.getKey();
+            final int inFlight = beanContext.getInFlight();
+            if (inFlight == 0) {
+                drained.incrementAndGet();
+            } else if (now - entry.getValue() > timeout) {
+                logger.warning("Undeploying the replaced deployment " + beanContext.getDeploymentID() + " with " + inFlight + " calls still running");
+                forced.incrementAndGet();
+            } else {
+                continue;
+            }
+            undeploy(beanContext);
+        }
+    }
+
+    private void undeploy(BeanContext beanContext) {
+        if (draining.remove(beanContext) == null) return;
+
+        final Container container = beanContext.getContainer();
+        try {
+            if (container != null) {
+                container.stop(beanContext);
+                container.undeploy(beanContext);
+            }
+        } catch (Throwable t) {
+            logger.error("Error undeploying the replaced deployment " + beanContext.getDeploymentID(), t);
+        } finally {
+            beanContext.setDestroyed(true);
+        }
+        logger.info("Replaced deployment " + beanContext.getDeploymentID() + " undeployed");
+    }
+
+    /**
+     * @return the deployment ids and the number of calls running on the replaced deployments
+     */
+    public String[] getDraining() {
+        final List<String> deployments = new ArrayList<String>();
+        for (BeanContext beanContext : draining.keySet()) {
+            deployments.add(beanContext.getDeploymentID() + " (" + beanContext.getInFlight() + " in flight)");
+        }
+        return deployments.toArray(new String[deployments.size()]);
+    }
+
+    public int getInFlight() {
+        int inFlight = 0;
+        for (BeanContext beanContext : draining.keySet()) {
+            inFlight += beanContext.getInFlight();
+        }
+        return inFlight;
+    }
+
+    public long getDrained() {
+        return drained.get();
+    }
+
+    /**
+     * @return the number of replaced deployments undeployed while calls were still running
+     */
+    public long getForced() {
+        return forced.get();
+    }
+}
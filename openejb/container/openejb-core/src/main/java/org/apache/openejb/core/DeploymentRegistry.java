@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core;
+
+import org.apache.openejb.BeanContext;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The deployments of a container or of the container system, looked up on
+ * every invocation.
+ *
+ * Lookups read an immutable snapshot without taking any lock. Changes copy
+ * the snapshot and publish the new one atomically with a version one higher,
+ * deployments are rare enough for the copy not to matter.
+ *
+ * Putting a BeanContext under the id of a deployed one replaces it: new
+ * lookups get the new one while the calls already holding the old one go
+ * on with it, see {@link DeploymentDrainer}. Removing a BeanContext only
+ * removes it if it wasn't replaced in the meantime.
+ *
+ * @version $Rev$ $Date$
+ */
+public class DeploymentRegistry {
+
+    private static final BeanContext[] NONE = new BeanContext[0];
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>(new Snapshot(0, Collections.<Object, BeanContext>emptyMap()));
+
+    public BeanContext get(Object deploymentId) {
+        return snapshot.get().deployments.get(deploymentId);
+    }
+
+    public BeanContext[] values() {
+        return snapshot.get().values.clone();
+    }
+
+    public int size() {
+        return snapshot.get().values.length;
+    }
+
+    /**
+     * @return incremented each time a deployment is added, replaced or removed
+     */
+    public long getVersion() {
+        return snapshot.get().version;
+    }
+
+    /**
+     * @return the BeanContext which was deployed under the same id, if any
+     */
+    public BeanContext put(BeanContext beanContext) {
+        final Object id = beanContext.getDeploymentID();
+        while (true) {
+            final Snapshot current = snapshot.get();
+            final Map<Object, BeanContext> deployments = new HashMap<Object, BeanContext>(current.deployments);
+            final BeanContext previous = deployments.put(id, beanContext);
+            if (snapshot.compareAndSet(current, new Snapshot(current.version + 1, deployments))) {
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * Removes the BeanContext unless another one was deployed under its id since.
+     *
+     * @return true if it was removed
+     */
+    public boolean remove(BeanContext beanContext) {
+        final Object id = beanContext.getDeploymentID();
+        while (true) {
+            final Snapshot current = snapshot.get();
+            if (current.deployments.get(id) != beanContext) return false;
+
+            final Map<Object, BeanContext> deployments = new HashMap<Object, BeanContext>(current.deployments);
+            deployments.remove(id);
+            if (snapshot.compareAndSet(current, new Snapshot(current.version + 1, deployments))) {
+                return true;
+            }
+        }
+    }
+
+    private static class Snapshot {
+        private final long version;
+        private final Map<Object, BeanContext> deployments;
+        private final BeanContext[] values;
+
+        private Snapshot(long version, Map<Object, BeanContext> deployments) {
+            this.version = version;
+            this.deployments = deployments;
+            this.values = deployments.isEmpty() ? NONE : deployments.values().toArray(new BeanContext[deployments.size()]);
+        }
+    }
+}
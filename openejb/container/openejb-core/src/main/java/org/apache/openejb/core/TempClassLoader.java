@@ -29,7 +29,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * ClassLoader implementation that allows classes to be temporarily
@@ -53,6 +56,16 @@ public class TempClassLoader extends URLClassLoader {
     // - will not match anything, that's the desired default behavior
     private static final String FORCED_SKIP = SystemInstance.get().getOptions().get("openejb.classloader.forced-skip", "-");
     private static final String FORCED_LOAD = SystemInstance.get().getOptions().get("openejb.classloader.forced-load", "-");
+    private static final int MAX_NOT_FOUND = SystemInstance.get().getOptions().get("openejb.classloader.negative-cache.size", 10000);
+
+    static {
+        // java 7 only, the access check passes since the caller is a ClassLoader subclass
+        try {
+            ClassLoader.class.getDeclaredMethod("registerAsParallelCapable").invoke(null);
+        } catch (Throwable ignored) {
+            // java 6
+        }
+    }
 
     private static boolean skipLib(final String includedClass) {
         try {
@@ -65,6 +78,12 @@ public class TempClassLoader extends URLClassLoader {
 
     private Set<Skip> skip;
 
+    // per class name locks (what ClassLoader.getClassLoadingLock() does on java 7), only kept while loading
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+    // names we already failed to load, avoids walking the whole parent chain again, bounded by MAX_NOT_FOUND
+    private final Map<String, Boolean> notFound = new ConcurrentHashMap<String, Boolean>();
+
     public TempClassLoader(ClassLoader parent) {
         super(new URL[0], parent);
 
@@ -83,9 +102,33 @@ public class TempClassLoader extends URLClassLoader {
         return loadClass(name, false);
     }
 
-    protected synchronized Class loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    protected Class loadClass(String name, boolean resolve) throws ClassNotFoundException {
         if (name == null) throw new NullPointerException("name cannot be null");
-        
+
+        if (notFound.containsKey(name)) {
+            throw new ClassNotFoundException(name);
+        }
+
+        final Object lock = lock(name);
+        try {
+            synchronized (lock) {
+                return doLoadClass(name, resolve);
+            }
+        } finally {
+            locks.remove(name, lock);
+        }
+    }
+
+    private Object lock(final String name) {
+        final Object lock = new Object();
+        final Object existing = locks.putIfAbsent(name, lock);
+        if (existing != null) {
+            return existing;
+        }
+        return lock;
+    }
+
+    private Class doLoadClass(String name, boolean resolve) throws ClassNotFoundException {
         // see if we've already loaded it
         Class c = findLoadedClass(name);
         if (c != null) {
@@ -112,12 +155,16 @@ public class TempClassLoader extends URLClassLoader {
 //        ( && !name.startsWith("javax.faces.") )||
         String resourceName = name.replace('.', '/') + ".class";
         InputStream in = getResourceAsStream(resourceName);
-        if (!(in instanceof BufferedInputStream)) {
-            in = new BufferedInputStream(in);
-        }
         if (in == null) {
+            if (notFound.size() >= MAX_NOT_FOUND) {
+                notFound.clear();
+            }
+            notFound.put(name, Boolean.TRUE);
             throw new ClassNotFoundException(name);
         }
+        if (!(in instanceof BufferedInputStream)) {
+            in = new BufferedInputStream(in);
+        }
 
         // 80% of class files are smaller then 6k
         ByteArrayOutputStream bout = new ByteArrayOutputStream(8 * 1024);
@@ -148,7 +195,11 @@ public class TempClassLoader extends URLClassLoader {
         if (packageEndIndex != -1) {
             String packageName = name.substring(0, packageEndIndex);
             if (getPackage(packageName) == null) {
-                definePackage(packageName, null, null, null, null, null, null, null);
+                try {
+                    definePackage(packageName, null, null, null, null, null, null, null);
+                } catch (IllegalArgumentException iae) {
+                    // defined concurrently by another thread
+                }
             }
         }
 
@@ -159,6 +210,11 @@ public class TempClassLoader extends URLClassLoader {
             // possible prohibited package: defer to the parent
             return super.loadClass(name, resolve);
         } catch (LinkageError le) {
+            // defined by a thread which got a new lock once the previous one was released
+            final Class loaded = findLoadedClass(name);
+            if (loaded != null) {
+                return loaded;
+            }
             // fallback
             return super.loadClass(name, resolve);
         }
@@ -16,25 +16,34 @@
  */
 package org.apache.openejb.core;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.lang.reflect.Method;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.openejb.BeanContext;
+import org.apache.openejb.core.security.AbstractSecurityService.SecurityContext;
 import org.apache.openejb.core.transaction.TransactionPolicy;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 
 public class ThreadContext {
     private static final Logger log = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
-    private static final ThreadLocal<ThreadContext> threadStorage = new ThreadLocal<ThreadContext>();
-    private static final List<ThreadContextListener> listeners = new CopyOnWriteArrayList<ThreadContextListener>();
-    private static final ThreadLocal<AtomicBoolean> asynchronousCancelled = new ThreadLocal<AtomicBoolean>();
+    private static final ThreadLocal<ThreadState> threadStorage = new ThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+            return new ThreadState();
+        }
+    };
+    private static final ThreadContextListener[] NO_LISTENERS = new ThreadContextListener[0];
+    private static volatile ThreadContextListener[] listeners = NO_LISTENERS;
+
+    /**
+     * Maximum number of released contexts kept per thread,
+     * a bit more than the usual nesting depth of ejb calls.
+     */
+    private static final int RECYCLED_CONTEXTS = 8;
 
     public static ThreadContext getThreadContext() {
-        ThreadContext threadContext = threadStorage.get();
-        return threadContext;
+        return threadStorage.get().current;
     }
 
     public static ThreadContext enter(ThreadContext newContext) {
@@ -43,17 +52,23 @@ public class ThreadContext {
         }
 
         // set the thread context class loader
-        newContext.oldClassLoader = Thread.currentThread().getContextClassLoader();
-        Thread.currentThread().setContextClassLoader(newContext.beanContext.getClassLoader());
+        final Thread thread = Thread.currentThread();
+        newContext.oldClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(newContext.beanContext.getClassLoader());
+
+        // counted so a replaced deployment is only undeployed once its calls are done
+        newContext.beanContext.enteredContext();
 
         // update thread local
-        ThreadContext oldContext = threadStorage.get();
-        threadStorage.set(newContext);
+        final ThreadState state = threadStorage.get();
+        final ThreadContext oldContext = state.current;
+        state.current = newContext;
 
         // notify listeners
-        for (ThreadContextListener listener : listeners) {
+        final ThreadContextListener[] currentListeners = listeners;
+        for (int i = 0; i < currentListeners.length; i++) {
             try {
-                listener.contextEntered(oldContext, newContext);
+                currentListeners[i].contextEntered(oldContext, newContext);
             } catch (Throwable e) {
                 log.warning("ThreadContextListener threw an exception", e);
             }
@@ -64,7 +79,8 @@ public class ThreadContext {
     }
 
     public static void exit(ThreadContext oldContext) {
-        ThreadContext exitingContext = threadStorage.get();
+        final ThreadState state = threadStorage.get();
+        final ThreadContext exitingContext = state.current;
         if (exitingContext == null) {
             throw new IllegalStateException("No existing context");
         }
@@ -72,48 +88,111 @@ public class ThreadContext {
         // set the thread context class loader back
         Thread.currentThread().setContextClassLoader(exitingContext.oldClassLoader);
         exitingContext.oldClassLoader = null;
+        exitingContext.beanContext.exitedContext();
 
         // update thread local
-        threadStorage.set(oldContext);
+        state.current = oldContext;
 
         // notify listeners
-        for (ThreadContextListener listener : listeners) {
+        final ThreadContextListener[] currentListeners = listeners;
+        for (int i = 0; i < currentListeners.length; i++) {
             try {
-                listener.contextExited(exitingContext, oldContext);
+                currentListeners[i].contextExited(exitingContext, oldContext);
             } catch (Throwable e) {
                 log.debug("ThreadContextListener threw an exception", e);
             }
         }
     }
 
+    /**
+     * Returns a context for the specified bean, reusing one previously
+     * given back to {@link #release(ThreadContext)} by this thread if any.
+     *
+     * Only use it when the caller owns the whole life of the context:
+     * obtain, enter, exit and release in the same method.
+     */
+    public static ThreadContext obtain(BeanContext beanContext, Object primaryKey) {
+        if (beanContext == null) {
+            throw new NullPointerException("deploymentInfo is null");
+        }
+
+        final ThreadState state = threadStorage.get();
+        if (state.recycled == 0) {
+            return new ThreadContext(beanContext, primaryKey);
+        }
+
+        final ThreadContext context = state.pool[--state.recycled];
+        state.pool[state.recycled] = null;
+        context.beanContext = beanContext;
+        context.primaryKey = primaryKey;
+        return context;
+    }
+
+    /**
+     * Gives back a context obtained with {@link #obtain(BeanContext, Object)} once it has been exited.
+     * The context must not be used anymore after this call.
+     */
+    public static void release(ThreadContext context) {
+        if (context == null || context.oldClassLoader != null) {
+            return; // still entered, don't recycle it
+        }
+
+        final ThreadState state = threadStorage.get();
+        if (state.current == context || state.recycled == RECYCLED_CONTEXTS) {
+            return;
+        }
+
+        context.reset();
+        state.pool[state.recycled++] = context;
+    }
+
     public static void initAsynchronousCancelled(AtomicBoolean initializeValue) {
-        asynchronousCancelled.set(initializeValue);
+        threadStorage.get().asynchronousCancelled = initializeValue;
     }
 
     public static boolean isAsynchronousCancelled() {
-        return asynchronousCancelled.get().get();
+        return threadStorage.get().asynchronousCancelled.get();
     }
 
     public static void removeAsynchronousCancelled() {
-        asynchronousCancelled.remove();
+        threadStorage.get().asynchronousCancelled = null;
     }
 
-    public static void addThreadContextListener(ThreadContextListener listener) {
-        listeners.add(listener);
+    public static synchronized void addThreadContextListener(ThreadContextListener listener) {
+        final ThreadContextListener[] newListeners = new ThreadContextListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+        newListeners[listeners.length] = listener;
+        listeners = newListeners;
     }
 
-    public static void removeThreadContextListener(ThreadContextListener listener) {
-        listeners.remove(listener);
+    public static synchronized void removeThreadContextListener(ThreadContextListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].equals(listener)) {
+                final ThreadContextListener[] newListeners = new ThreadContextListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, newListeners, 0, i);
+                System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                listeners = newListeners;
+                return;
+            }
+        }
     }
 
-    private final BeanContext beanContext;
-    private final Object primaryKey;
-    private final HashMap<Class, Object> data = new HashMap<Class, Object>();
+    private BeanContext beanContext;
+    private Object primaryKey;
     private ClassLoader oldClassLoader;
     private Operation currentOperation;
     private Class invokedInterface;
     private TransactionPolicy transactionPolicy;
 
+    // well known data, the other types go in the sparse arrays below
+    private Method method;
+    private SecurityContext securityContext;
+
+    // sparse data, kept (but emptied) when the context is recycled
+    private Class[] keys;
+    private Object[] values;
+    private int size;
+
     /**
      * A boolean which keeps track of whether to discard the bean instance after the method invocation.
      * The boolean would be set to true in case of exceptions which mandate bean discard.
@@ -136,7 +215,15 @@ public class ThreadContext {
     public ThreadContext(ThreadContext that) {
         this.beanContext = that.beanContext;
         this.primaryKey = that.primaryKey;
-        this.data.putAll(that.data);
+        this.method = that.method;
+        this.securityContext = that.securityContext;
+        if (that.size > 0) {
+            this.keys = new Class[that.keys.length];
+            this.values = new Object[that.values.length];
+            System.arraycopy(that.keys, 0, this.keys, 0, that.size);
+            System.arraycopy(that.values, 0, this.values, 0, that.size);
+            this.size = that.size;
+        }
         this.oldClassLoader = that.oldClassLoader;
     }
 
@@ -182,17 +269,84 @@ public class ThreadContext {
 
     @SuppressWarnings({"unchecked"})
     public <T> T get(Class<T> type) {
-        return (T)data.get(type);
+        if (type == Method.class) {
+            return (T) method;
+        }
+        if (type == SecurityContext.class) {
+            return (T) securityContext;
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == type) {
+                return (T) values[i];
+            }
+        }
+        return null;
     }
 
     @SuppressWarnings({"unchecked"})
     public <T> T set(Class<T> type, T value) {
-        return (T) data.put(type, value);
+        if (type == Method.class) {
+            final Object old = method;
+            method = (Method) value;
+            return (T) old;
+        }
+        if (type == SecurityContext.class) {
+            final Object old = securityContext;
+            securityContext = (SecurityContext) value;
+            return (T) old;
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == type) {
+                final Object old = values[i];
+                values[i] = value;
+                return (T) old;
+            }
+        }
+
+        if (keys == null) {
+            keys = new Class[4];
+            values = new Object[4];
+        } else if (size == keys.length) {
+            final Class[] newKeys = new Class[size * 2];
+            final Object[] newValues = new Object[size * 2];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(values, 0, newValues, 0, size);
+            keys = newKeys;
+            values = newValues;
+        }
+        keys[size] = type;
+        values[size] = value;
+        size++;
+        return null;
     }
 
     @SuppressWarnings({ "unchecked" })
     public <T> T remove(Class<T> type) {
-        return (T) data.remove(type);
+        if (type == Method.class) {
+            final Object old = method;
+            method = null;
+            return (T) old;
+        }
+        if (type == SecurityContext.class) {
+            final Object old = securityContext;
+            securityContext = null;
+            return (T) old;
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == type) {
+                final Object old = values[i];
+                size--;
+                keys[i] = keys[size];
+                values[i] = values[size];
+                keys[size] = null;
+                values[size] = null;
+                return (T) old;
+            }
+        }
+        return null;
     }
 
     public boolean isDiscardInstance() {
@@ -203,12 +357,28 @@ public class ThreadContext {
         this.discardInstance = discardInstance;
     }
 
+    private void reset() {
+        beanContext = null;
+        primaryKey = null;
+        currentOperation = null;
+        invokedInterface = null;
+        transactionPolicy = null;
+        discardInstance = false;
+        method = null;
+        securityContext = null;
+        for (int i = 0; i < size; i++) {
+            keys[i] = null;
+            values[i] = null;
+        }
+        size = 0;
+    }
+
     @Override
     public String toString() {
         return "ThreadContext{" +
-                "beanContext=" + beanContext.getId() +
+                "beanContext=" + (beanContext == null ? null : beanContext.getId()) +
                 ", primaryKey=" + primaryKey +
-                ", data=" + data.size() +
+                ", data=" + (size + (method == null ? 0 : 1) + (securityContext == null ? 0 : 1)) +
                 ", oldClassLoader=" + oldClassLoader +
                 ", currentOperation=" + currentOperation +
                 ", invokedInterface=" + invokedInterface +
@@ -216,4 +386,14 @@ public class ThreadContext {
                 ", discardInstance=" + discardInstance +
                 '}';
     }
+
+    /**
+     * Everything the thread needs, looked up with a single ThreadLocal access.
+     */
+    private static final class ThreadState {
+        private ThreadContext current;
+        private AtomicBoolean asynchronousCancelled;
+        private final ThreadContext[] pool = new ThreadContext[RECYCLED_CONTEXTS];
+        private int recycled;
+    }
 }
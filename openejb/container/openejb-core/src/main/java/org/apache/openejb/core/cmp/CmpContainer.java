@@ -23,12 +23,12 @@ import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
 import java.util.Collection;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.ejb.EJBContext;
 import javax.ejb.EJBException;
 import javax.ejb.EJBHome;
@@ -56,6 +56,7 @@ import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
 import org.apache.openejb.core.ExceptionType;
+import org.apache.openejb.core.DeploymentRegistry;
 import org.apache.openejb.core.timer.EjbTimerService;
 import org.apache.openejb.core.timer.EjbTimerServiceImpl;
 import org.apache.openejb.core.entity.EntityContext;
@@ -78,14 +79,14 @@ public class CmpContainer implements RpcContainer {
     /**
      * Index used for getDeployments() and getDeploymentInfo(deploymentId).
      */
-    protected final Map<Object, BeanContext> deploymentsById = new HashMap<Object, BeanContext>();
+    protected final DeploymentRegistry deploymentsById = new DeploymentRegistry();
 
     /**
      * When events are fired from the CMP engine only an entity bean instance is returned.  The type of the bean is used
      * to find the deployment info.  This means that when the same type is used multiple ejb deployments a random deployment
      * will be selected to handle the ejb callback.
      */
-    protected final Map<Class, BeanContext> beansByClass = new HashMap<Class, BeanContext>();
+    protected final ConcurrentMap<Class, BeanContext> beansByClass = new ConcurrentHashMap<Class, BeanContext>();
 
     /**
      * The CmpEngine which performs the actual persistence operations
@@ -134,11 +135,11 @@ public class CmpContainer implements RpcContainer {
         return ContainerType.CMP_ENTITY;
     }
 
-    public synchronized BeanContext[] getBeanContexts() {
-        return deploymentsById.values().toArray(new BeanContext[deploymentsById.size()]);
+    public BeanContext[] getBeanContexts() {
+        return deploymentsById.values();
     }
 
-    public synchronized BeanContext getBeanContext(Object deploymentID) {
+    public BeanContext getBeanContext(Object deploymentID) {
         return deploymentsById.get(deploymentID);
     }
 
@@ -154,8 +155,6 @@ public class CmpContainer implements RpcContainer {
 
     public void deploy(BeanContext beanContext) throws OpenEJBException {
         synchronized (this) {
-            Object deploymentId = beanContext.getDeploymentID();
-
             cmpEngine.deploy(beanContext);
             beanContext.setContainerData(cmpEngine);
             beanContext.set(EJBContext.class, new EntityContext(securityService));
@@ -168,7 +167,7 @@ public class CmpContainer implements RpcContainer {
             }
 
             // add to indexes
-            deploymentsById.put(deploymentId, beanContext);
+            deploymentsById.put(beanContext);
             beansByClass.put(beanContext.getCmpImplClass(), beanContext);
             beanContext.setContainer(this);
         }
@@ -191,8 +190,8 @@ public class CmpContainer implements RpcContainer {
             timerService.stop();
         }
         synchronized (this) {
-            deploymentsById.remove(beanContext.getDeploymentID());
-            beansByClass.remove(beanContext.getCmpImplClass());
+            deploymentsById.remove(beanContext);
+            beansByClass.remove(beanContext.getCmpImplClass(), beanContext);
 
             try {
                 Field field = beanContext.getCmpImplClass().getField("deploymentInfo");
@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.entity;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The entity instances kept ready with their state between transactions by
+ * commit options A and B, by primary key.
+ *
+ * A transaction takes the instance out of the cache so no other transaction
+ * can use it at the same time and puts it back once committed. The cache
+ * evicts the instances put back the longest time ago when there are more
+ * than the capacity.
+ *
+ * A transaction which only read the entity can't put back an instance it
+ * loaded before another transaction updated or removed an entity of the
+ * bean, its state may be stale. The stamp it got when the instance was
+ * loaded tells if that happened.
+ *
+ * @version $Rev$ $Date$
+ */
+public class EntityCache<V> {
+
+    private final int capacity;
+
+    private final ConcurrentMap<Object, Entry<V>> entries = new ConcurrentHashMap<Object, Entry<V>>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    // in the order the entries were put, including the ones taken or invalidated since
+    private final Queue<Entry<V>> order = new ConcurrentLinkedQueue<Entry<V>>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    // the stamp check of a put and the insert are atomic with respect to the updates
+    private final Object writing = new Object();
+    private final AtomicLong writes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public EntityCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the instance, which nobody else can take until it is put back, or null
+     */
+    public V take(Object primaryKey) {
+        final Entry<V> entry = entries.remove(primaryKey);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        size.decrementAndGet();
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * @return the stamp to put back an instance loaded now by a transaction which doesn't update it
+     */
+    public long stamp() {
+        return writes.get();
+    }
+
+    /**
+     * Puts back the instance a transaction which updated the entity committed.
+     *
+     * The readers which loaded the entity before the commit got an older stamp
+     * and can't replace it with their state any more.
+     */
+    public void put(Object primaryKey, V value) {
+        final Entry<V> entry;
+        synchronized (writing) {
+            writes.incrementAndGet();
+            entry = insert(primaryKey, value);
+        }
+        enqueue(entry);
+    }
+
+    /**
+     * Puts back the instance a transaction which didn't update the entity committed.
+     *
+     * @param stamp the {@link #stamp()} when the instance was loaded
+     * @return false if an entity was updated since and the instance was dropped
+     */
+    public boolean put(Object primaryKey, V value, long stamp) {
+        final Entry<V> entry;
+        synchronized (writing) {
+            if (writes.get() != stamp) return false;
+
+            entry = insert(primaryKey, value);
+        }
+        enqueue(entry);
+        return true;
+    }
+
+    /**
+     * Drops the instance of an entity being updated or removed.
+     */
+    public void invalidate(Object primaryKey) {
+        synchronized (writing) {
+            writes.incrementAndGet();
+        }
+        if (entries.remove(primaryKey) != null) {
+            size.decrementAndGet();
+        }
+    }
+
+    public void clear() {
+        synchronized (writing) {
+            writes.incrementAndGet();
+        }
+        for (Object primaryKey : entries.keySet()) {
+            if (entries.remove(primaryKey) != null) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    private Entry<V> insert(Object primaryKey, V value) {
+        final Entry<V> entry = new Entry<V>(primaryKey, value);
+        if (entries.put(primaryKey, entry) == null) {
+            size.incrementAndGet();
+        }
+        return entry;
+    }
+
+    private void enqueue(Entry<V> entry) {
+        order.add(entry);
+        if (queued.incrementAndGet() > 2 * capacity) {
+            compact();
+        }
+        evict();
+    }
+
+    private void evict() {
+        while (size.get() > capacity) {
+            final Entry<V> entry = order.poll();
+            if (entry == null) return;
+            queued.decrementAndGet();
+
+            // the entries taken or replaced since are just dropped from the queue
+            if (entries.remove(entry.primaryKey, entry)) {
+                size.decrementAndGet();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drops the entries taken or replaced since they were put from the queue, keeping the order of the others.
+     */
+    private void compact() {
+        if (!compacting.compareAndSet(false, true)) return;
+        try {
+            for (int i = queued.get(); i > 0; i--) {
+                final Entry<V> entry = order.poll();
+                if (entry == null) return;
+
+                if (entries.get(entry.primaryKey) == entry) {
+                    order.add(entry);
+                } else {
+                    queued.decrementAndGet();
+                }
+            }
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private static class Entry<V> {
+        private final Object primaryKey;
+        private final V value;
+
+        private Entry(Object primaryKey, V value) {
+            this.primaryKey = primaryKey;
+            this.value = value;
+        }
+    }
+}
@@ -21,9 +21,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.rmi.NoSuchObjectException;
 import java.util.Collection;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.Vector;
 import javax.ejb.EJBAccessException;
 import javax.ejb.EJBHome;
@@ -43,6 +41,7 @@ import org.apache.openejb.ProxyInfo;
 import org.apache.openejb.SystemException;
 import org.apache.openejb.RpcContainer;
 import org.apache.openejb.InterfaceType;
+import org.apache.openejb.core.DeploymentRegistry;
 import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
@@ -66,7 +65,7 @@ public class EntityContainer implements RpcContainer {
 
     private EntityInstanceManager instanceManager;
 
-    private Map<String, BeanContext> deploymentRegistry  = new HashMap<String, BeanContext>();
+    private final DeploymentRegistry deploymentRegistry = new DeploymentRegistry();
 
     private Object containerID = null;
 
@@ -86,13 +85,23 @@ public class EntityContainer implements RpcContainer {
         instanceManager = new EntityInstanceManager(this, securityService, poolSize);
     }
 
-    public synchronized BeanContext[] getBeanContexts() {
-        return deploymentRegistry.values().toArray(new BeanContext[deploymentRegistry.size()]);
+    /**
+     * @param commitOption A, B or C, see {@link EntityInstanceManager.CommitOption}
+     */
+    public void setCommitOption(String commitOption) {
+        instanceManager.setCommitOption(EntityInstanceManager.CommitOption.valueOf(commitOption.trim().toUpperCase()));
+    }
+
+    public void setCacheSize(int cacheSize) {
+        instanceManager.setCacheSize(cacheSize);
     }
 
-    public synchronized BeanContext getBeanContext(Object deploymentID) {
-        String id = (String) deploymentID;
-        return deploymentRegistry.get(id);
+    public BeanContext[] getBeanContexts() {
+        return deploymentRegistry.values();
+    }
+
+    public BeanContext getBeanContext(Object deploymentID) {
+        return deploymentRegistry.get(deploymentID);
     }
 
     public ContainerType getContainerType() {
@@ -104,10 +113,8 @@ public class EntityContainer implements RpcContainer {
     }
 
     public void deploy(BeanContext beanContext) throws OpenEJBException {
-        synchronized (this) {
-            deploymentRegistry.put((String) beanContext.getDeploymentID(), beanContext);
-            beanContext.setContainer(this);
-        }
+        beanContext.setContainer(this);
+        deploymentRegistry.put(beanContext);
         instanceManager.deploy(beanContext);
 
         EjbTimerService timerService = beanContext.getEjbTimerService();
@@ -130,11 +137,8 @@ public class EntityContainer implements RpcContainer {
 
         instanceManager.undeploy(info);
 
-        synchronized (this) {
-            String id = (String) info.getDeploymentID();
-            deploymentRegistry.remove(id);
-            info.setContainer(null);
-        }
+        deploymentRegistry.remove(info);
+        info.setContainer(null);
     }
 
     /**
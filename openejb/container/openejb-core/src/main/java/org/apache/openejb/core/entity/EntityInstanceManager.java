@@ -28,39 +28,50 @@ import org.apache.openejb.core.NoSuchObjectException;
 import org.apache.openejb.core.transaction.TransactionRolledbackException;
 import org.apache.openejb.core.transaction.TransactionPolicy;
 import org.apache.openejb.core.transaction.TransactionPolicy.TransactionSynchronization;
-import org.apache.openejb.util.LinkedListStack;
+import org.apache.openejb.loader.Options;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
-import org.apache.openejb.util.Stack;
 
 import javax.ejb.EJBContext;
 import javax.ejb.EntityBean;
 import javax.ejb.NoSuchEntityException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.rmi.RemoteException;
 
 public class EntityInstanceManager {
     private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
 
     /**
-     *  The default size of the bean pools. Every bean class gets its own pool of this size
+     * How the instances are kept between transactions, like the commit options of the EJB specification.
+     * <ul>
+     * <li>A: the instance stays ready with its state and ejbLoad isn't called again, only valid if
+     * nothing else updates the entities in the database</li>
+     * <li>B: the instance stays ready but ejbLoad is called at the start of each transaction</li>
+     * <li>C: a pooled instance is loaded at the start of each transaction</li>
+     * </ul>
      */
-    private int poolsize = 0;
+    public static enum CommitOption {
+        A, B, C
+    }
 
     /**
-     * contains a collection of LinkListStacks indexed by deployment id. Each indexed stack
-     * represents the method ready pool of for that class.
+     * The method ready pool, the cache of the ready instances and the options of each bean indexed by deployment id.
      */
-    private Map<Object,LinkedListStack> poolMap = null;
-
+    private final Map<Object, Data> deployments = new ConcurrentHashMap<Object, Data>();
 
     private SecurityService securityService;
 
+    /**
+     * The default commit option and maximum number of ready instances of the beans, which can
+     * override them with the CommitOption and CacheSize properties.
+     */
+    private CommitOption commitOption = CommitOption.C;
+    private int cacheSize = 1000;
+
     public EntityInstanceManager(EntityContainer container, SecurityService securityService, int poolSize) {
         this.securityService = securityService;
-        this.poolsize = poolSize;
-        poolMap = new HashMap<Object,LinkedListStack>();// put size in later
 
         BeanContext[] beanContexts = container.getBeanContexts();
         for (BeanContext beanContext : beanContexts) {
@@ -68,13 +79,50 @@ public class EntityInstanceManager {
         }
     }
 
+    public CommitOption getCommitOption() {
+        return commitOption;
+    }
+
+    public void setCommitOption(CommitOption commitOption) {
+        this.commitOption = commitOption;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
     public void deploy(BeanContext beanContext) {
-        poolMap.put(beanContext.getDeploymentID(), new LinkedListStack(poolsize / 2));
+        final Options options = new Options(beanContext.getProperties());
+        final CommitOption option = options.get("CommitOption", commitOption);
+        final int size = options.get("CacheSize", cacheSize);
+
+        // ejbStore is never called on a ReadOnly bean, its ready instances stay valid until the entity is removed
+        final boolean readOnly = options.get("ReadOnly", false);
+
+        deployments.put(beanContext.getDeploymentID(), new Data(option, size, readOnly));
         beanContext.set(EJBContext.class, createEntityContext());
     }
 
     public void undeploy(BeanContext beanContext) {
-        poolMap.remove(beanContext.getDeploymentID());
+        deployments.remove(beanContext.getDeploymentID());
+    }
+
+    /**
+     * @return the ready instances of the bean or null if they aren't kept (commit option C)
+     */
+    public EntityCache<EntityBean> getCache(BeanContext beanContext) {
+        final Data data = deployments.get(beanContext.getDeploymentID());
+        return data == null ? null : data.cache;
+    }
+
+    private Data getData(BeanContext beanContext) throws SystemException {
+        final Data data = deployments.get(beanContext.getDeploymentID());
+        if (data == null) throw new SystemException("Invalid deployment id " + beanContext.getDeploymentID() + " for this container");
+        return data;
     }
 
     public EntityBean obtainInstance(ThreadContext callContext) throws OpenEJBException {
@@ -128,9 +176,17 @@ public class EntityInstanceManager {
                 * If no synchronized wrapper for the key exists
                 * Then the bean entity is being access by this transaction for the first time,
                 * so it needs to be enrolled in the transaction.
+                *
+                * With commit option A or B the instance which was used by the previous transaction may still be ready.
                 */
-                EntityBean bean = getPooledInstance(callContext);
-                wrapper = new SynchronizationWrapper(callContext.getBeanContext(), primaryKey, bean, false, key, txPolicy);
+                Data data = getData(callContext.getBeanContext());
+                long stamp = data.cache == null ? 0 : data.cache.stamp();
+                EntityBean bean = data.cache == null ? null : data.cache.take(primaryKey);
+                boolean cached = bean != null;
+                if (!cached) {
+                    bean = getPooledInstance(callContext);
+                }
+                wrapper = new SynchronizationWrapper(callContext.getBeanContext(), primaryKey, bean, false, key, txPolicy, data, stamp);
 
                 if (callContext.getCurrentOperation() == Operation.REMOVE) {
                     /*
@@ -146,21 +202,23 @@ public class EntityInstanceManager {
 
                 txPolicy.registerSynchronization(wrapper);
 
-                loadingBean(bean, callContext);
-                Operation orginalOperation = callContext.getCurrentOperation();
-                callContext.setCurrentOperation(Operation.LOAD);
-                try {
-                    bean.ejbLoad();
-                } catch (NoSuchEntityException e) {
-                    wrapper.disassociate();
-                    throw new InvalidateReferenceException(new NoSuchObjectException("Entity not found: " + primaryKey, e));
-                } catch (Exception e) {
-                    logger.error("Exception encountered during ejbLoad():", e);
-                    //djencks not sure about this dissociate call
-                    wrapper.disassociate();
-                    throw new OpenEJBException(e);
-                } finally {
-                    callContext.setCurrentOperation(orginalOperation);
+                if (!cached || data.commitOption == CommitOption.B) {
+                    loadingBean(bean, callContext);
+                    Operation orginalOperation = callContext.getCurrentOperation();
+                    callContext.setCurrentOperation(Operation.LOAD);
+                    try {
+                        bean.ejbLoad();
+                    } catch (NoSuchEntityException e) {
+                        wrapper.disassociate();
+                        throw new InvalidateReferenceException(new NoSuchObjectException("Entity not found: " + primaryKey, e));
+                    } catch (Exception e) {
+                        logger.error("Exception encountered during ejbLoad():", e);
+                        //djencks not sure about this dissociate call
+                        wrapper.disassociate();
+                        throw new OpenEJBException(e);
+                    } finally {
+                        callContext.setCurrentOperation(orginalOperation);
+                    }
                 }
                 txPolicy.putResource(key, wrapper);
 
@@ -183,10 +241,9 @@ public class EntityInstanceManager {
 
     protected EntityBean getPooledInstance(ThreadContext callContext) throws OpenEJBException {
         BeanContext beanContext = callContext.getBeanContext();
-        Stack methodReadyPool = poolMap.get(beanContext.getDeploymentID());
-        if (methodReadyPool == null) throw new SystemException("Invalid deployment id " + beanContext.getDeploymentID() + " for this container");
+        ReadyPool methodReadyPool = getData(beanContext).pool;
 
-        EntityBean bean = (EntityBean) methodReadyPool.pop();
+        EntityBean bean = methodReadyPool.pop();
         if (bean == null) {
             try {
                 bean = (EntityBean) beanContext.getBeanClass().newInstance();
@@ -291,8 +348,7 @@ public class EntityInstanceManager {
                     * If the bean has been removed then the bean instance is no longer needed and can return to the methodReadyPool
                     * to service another identity.
                     */
-                    Stack methodReadyPool = poolMap.get(callContext.getBeanContext().getDeploymentID());
-                    methodReadyPool.push(bean);
+                    getData(callContext.getBeanContext()).pool.push(bean);
                 } else {
                     if (callContext.getCurrentOperation() == Operation.CREATE) {
                         // Bean is being recreated (new-delete-new) so we need to reassociate it
@@ -308,7 +364,9 @@ public class EntityInstanceManager {
                 tx ready pool
                 */
 
-                wrapper = new SynchronizationWrapper(callContext.getBeanContext(), primaryKey, bean, true, key, txPolicy);
+                Data data = getData(callContext.getBeanContext());
+                long stamp = data.cache == null ? 0 : data.cache.stamp();
+                wrapper = new SynchronizationWrapper(callContext.getBeanContext(), primaryKey, bean, true, key, txPolicy, data, stamp);
 
                 txPolicy.registerSynchronization(wrapper);
 
@@ -355,8 +413,15 @@ public class EntityInstanceManager {
             * method and is not still part of a tx.  While in the method ready pool the bean instance is not associated with a
             * primary key and may be used to service a request for any bean of the same class.
             */
-            Stack methodReadyPool = poolMap.get(callContext.getBeanContext().getDeploymentID());
-            methodReadyPool.push(bean);
+            Data data = getData(callContext.getBeanContext());
+            data.pool.push(bean);
+
+            /*
+            * Without a transaction the entity may have been updated or removed behind the ready instance.
+            */
+            if (primaryKey != null && data.cache != null && (!data.readOnly || callContext.getCurrentOperation() == Operation.REMOVE)) {
+                data.cache.invalidate(primaryKey);
+            }
         }
 
     }
@@ -478,8 +543,15 @@ public class EntityInstanceManager {
         private final BeanContext beanContext;
         private final Object primaryKey;
         private final TransactionPolicy txPolicy;
+        private final Data data;
+        /*
+        * The EntityCache stamp when the instance was loaded and whether ejbStore was called, an instance which
+        * wasn't stored is only kept ready if no entity of the bean was updated since it was loaded.
+        */
+        private final long stamp;
+        private boolean stored;
 
-        public SynchronizationWrapper(BeanContext beanContext, Object primaryKey, EntityBean bean, boolean available, Key readyPoolKey, TransactionPolicy txPolicy) {
+        public SynchronizationWrapper(BeanContext beanContext, Object primaryKey, EntityBean bean, boolean available, Key readyPoolKey, TransactionPolicy txPolicy, Data data, long stamp) {
             if (bean == null) throw new IllegalArgumentException("bean is null");
             if (readyPoolKey == null) throw new IllegalArgumentException("key is null");
             if (beanContext == null) throw new IllegalArgumentException("deploymentInfo is null");
@@ -492,6 +564,8 @@ public class EntityInstanceManager {
             this.available = available;
             this.readyPoolKey = readyPoolKey;
             this.txPolicy = txPolicy;
+            this.data = data;
+            this.stamp = stamp;
             associated = true;
         }
 
@@ -522,7 +596,7 @@ public class EntityInstanceManager {
         }
 
         public void beforeCompletion() {
-            if (associated) {
+            if (associated && !data.readOnly) {
                 EntityBean bean;
                 synchronized (this) {
                     bean = this.bean;
@@ -535,6 +609,10 @@ public class EntityInstanceManager {
 
                 try {
                     bean.ejbStore();
+                    stored = true;
+                    if (data.cache != null) {
+                        data.cache.invalidate(primaryKey);
+                    }
                 } catch (Exception re) {
                     logger.error("Exception occured during ejbStore()", re);
                     txPolicy.setRollbackOnly(re);
@@ -546,6 +624,71 @@ public class EntityInstanceManager {
 
         public void afterCompletion(Status status) {
             txPolicy.removeResource(readyPoolKey);
+
+            if (data.cache == null) return;
+
+            EntityBean bean;
+            boolean available;
+            synchronized (this) {
+                bean = this.bean;
+                available = this.available;
+            }
+
+            if (status == Status.COMMITTED && associated && available) {
+                if (stored) {
+                    data.cache.put(primaryKey, bean);
+                } else {
+                    data.cache.put(primaryKey, bean, stamp);
+                }
+            } else {
+                // rolled back, removed or discarded, the state of the instance can't be trusted
+                data.cache.invalidate(primaryKey);
+            }
+        }
+    }
+
+    private static class Data {
+        private final ReadyPool pool = new ReadyPool();
+        private final CommitOption commitOption;
+        private final EntityCache<EntityBean> cache;
+        private final boolean readOnly;
+
+        private Data(CommitOption commitOption, int cacheSize, boolean readOnly) {
+            this.commitOption = commitOption;
+            this.cache = commitOption == CommitOption.C || cacheSize <= 0 ? null : new EntityCache<EntityBean>(cacheSize);
+            this.readOnly = readOnly;
+        }
+    }
+
+    /*
+    * The method ready pool of a bean, a lock free stack so the instance returned last is reused first.
+    */
+    private static class ReadyPool {
+        private final AtomicReference<Node> head = new AtomicReference<Node>();
+
+        public void push(EntityBean bean) {
+            Node node = new Node(bean);
+            do {
+                node.next = head.get();
+            } while (!head.compareAndSet(node.next, node));
+        }
+
+        public EntityBean pop() {
+            Node node;
+            do {
+                node = head.get();
+                if (node == null) return null;
+            } while (!head.compareAndSet(node, node.next));
+            return node.bean;
+        }
+
+        private static class Node {
+            private final EntityBean bean;
+            private Node next;
+
+            private Node(EntityBean bean) {
+                this.bean = bean;
+            }
         }
     }
 }
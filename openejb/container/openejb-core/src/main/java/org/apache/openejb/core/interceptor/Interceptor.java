@@ -25,12 +25,18 @@ import java.lang.reflect.Method;
 public class Interceptor {
     private final Object instance;
     private final Method method;
+    private final MethodInvoker invoker;
+    private final boolean aroundInvoke;
 
     public Interceptor(Object instance, Method method) {
         if (instance == null) throw new NullPointerException("instance is null");
         if (method == null) throw new NullPointerException("method is null");
         this.instance = instance;
         this.method = method;
+        this.invoker = MethodInvokers.get(method);
+
+        final Class<?>[] parameterTypes = invoker.getParameterTypes();
+        this.aroundInvoke = parameterTypes.length == 1 && parameterTypes[0] == InvocationContext.class;
     }
 
     public Object getInstance() {
@@ -40,4 +46,16 @@ public class Interceptor {
     public Method getMethod() {
         return method;
     }
+
+    public MethodInvoker getInvoker() {
+        return invoker;
+    }
+
+    /**
+     * @return true if the method takes the InvocationContext (AroundInvoke, AroundTimeout or
+     * a callback of an interceptor class), false for a callback declared on the bean class
+     */
+    public boolean isAroundInvoke() {
+        return aroundInvoke;
+    }
 }
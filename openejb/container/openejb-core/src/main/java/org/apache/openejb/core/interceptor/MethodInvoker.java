@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.interceptor;
+
+import java.lang.reflect.Method;
+
+/**
+ * Invokes one method without going through {@link Method#invoke}.
+ * Exceptions thrown by the method are rethrown as is, they are
+ * never wrapped in an InvocationTargetException.
+ *
+ * Implementations are generated by {@link MethodInvokers}, this class
+ * is public only so the generated classes can extend it.
+ *
+ * @version $Rev$ $Date$
+ */
+public abstract class MethodInvoker {
+    private final Method method;
+    private final Class<?>[] parameterTypes;
+
+    protected MethodInvoker(Method method) {
+        this.method = method;
+        this.parameterTypes = method.getParameterTypes();
+    }
+
+    public abstract Object invoke(Object target, Object[] args) throws Exception;
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the parameter types, shared: never modify the returned array
+     */
+    public Class<?>[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    public String toString() {
+        return method.getDeclaringClass().getName() + "." + method.getName();
+    }
+}
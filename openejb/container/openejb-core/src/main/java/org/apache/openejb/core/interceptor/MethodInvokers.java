@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.interceptor;
+
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.xbean.asm.ClassWriter;
+import org.apache.xbean.asm.MethodVisitor;
+import org.apache.xbean.asm.Opcodes;
+import org.apache.xbean.asm.Type;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.security.ProtectionDomain;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates and caches the {@link MethodInvoker} of interceptor, callback and bean methods.
+ *
+ * The invoker is a small class generated next to the declaring class of the
+ * method (same class loader and package) calling it directly. Private methods,
+ * methods using types the generated class can't see and classes we can't define
+ * (no class loader, java.* packages, security manager...) use reflection.
+ *
+ * Generated invokers can be disabled with openejb.interceptors.generated-invokers=false
+ *
+ * @version $Rev$ $Date$
+ */
+public final class MethodInvokers implements Opcodes {
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, MethodInvokers.class);
+
+    public static final String GENERATED_INVOKERS = "openejb.interceptors.generated-invokers";
+
+    private static final String INVOKER = Type.getInternalName(MethodInvoker.class);
+    private static final String CONSTRUCTOR = "(" + Type.getDescriptor(Method.class) + ")V";
+    private static final String INVOKE = "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;";
+
+    private static final Map<Method, MethodInvoker> invokers = new ConcurrentHashMap<Method, MethodInvoker>();
+    private static final AtomicInteger ids = new AtomicInteger();
+    private static final Method defineClass = defineClassMethod();
+
+    private MethodInvokers() {
+        // no-op
+    }
+
+    public static MethodInvoker get(final Method method) {
+        MethodInvoker invoker = invokers.get(method);
+        if (invoker == null) {
+            invoker = create(method);
+            invokers.put(method, invoker);
+        }
+        return invoker;
+    }
+
+    /**
+     * Forgets the invokers of the classes loaded by this class loader
+     */
+    public static void release(final ClassLoader classLoader) {
+        final Iterator<Method> methods = invokers.keySet().iterator();
+        while (methods.hasNext()) {
+            if (methods.next().getDeclaringClass().getClassLoader() == classLoader) {
+                methods.remove();
+            }
+        }
+    }
+
+    private static MethodInvoker create(final Method method) {
+        if (defineClass != null && isGeneratable(method)
+                && SystemInstance.get().getOptions().get(GENERATED_INVOKERS, true)) {
+            try {
+                return generate(method);
+            } catch (Throwable e) {
+                logger.debug("Can't generate an invoker for " + method + ", using reflection: " + e);
+            }
+        }
+        return new ReflectionInvoker(method);
+    }
+
+    private static boolean isGeneratable(final Method method) {
+        final Class<?> owner = method.getDeclaringClass();
+        if (Modifier.isPrivate(method.getModifiers()) || owner.getClassLoader() == null || owner.getName().startsWith("java.")) {
+            return false;
+        }
+        if (!isVisible(owner, owner) || !isVisible(method.getReturnType(), owner)) {
+            return false;
+        }
+        for (Class<?> type : method.getParameterTypes()) {
+            if (!isVisible(type, owner)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if a class generated in the package of owner can use type
+     */
+    private static boolean isVisible(final Class<?> type, final Class<?> owner) {
+        if (type.isPrimitive()) {
+            return true;
+        }
+        if (type.isArray()) {
+            return isVisible(type.getComponentType(), owner);
+        }
+
+        final int modifiers = type.getModifiers();
+        if (Modifier.isPrivate(modifiers)) {
+            return false;
+        }
+        if (!Modifier.isPublic(modifiers)
+                && (type.getClassLoader() != owner.getClassLoader() || !packageName(type).equals(packageName(owner)))) {
+            return false;
+        }
+
+        final Class<?> enclosing = type.getEnclosingClass();
+        return enclosing == null || isVisible(enclosing, owner);
+    }
+
+    private static String packageName(final Class<?> type) {
+        final String name = type.getName();
+        final int idx = name.lastIndexOf('.');
+        if (idx < 0) {
+            return "";
+        }
+        return name.substring(0, idx);
+    }
+
+    private static MethodInvoker generate(final Method method) throws Exception {
+        final Class<?> owner = method.getDeclaringClass();
+        final String name = owner.getName() + "$$OpenEJBInvoker" + ids.incrementAndGet();
+        final byte[] bytes = generate(method, name.replace('.', '/'));
+
+        final Class<?> invokerClass = (Class<?>) defineClass.invoke(owner.getClassLoader(), name, bytes, 0, bytes.length, owner.getProtectionDomain());
+        return (MethodInvoker) invokerClass.getConstructor(Method.class).newInstance(method);
+    }
+
+    static byte[] generate(final Method method, final String className) {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_5, ACC_PUBLIC + ACC_FINAL + ACC_SUPER + ACC_SYNTHETIC, className, null, INVOKER, null);
+
+        // constructor passing the method to MethodInvoker
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", CONSTRUCTOR, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKESPECIAL, INVOKER, "<init>", CONSTRUCTOR);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // invoke(Object target, Object[] args)
+        final Class<?> owner = method.getDeclaringClass();
+        final String ownerName = Type.getInternalName(owner);
+        final boolean isStatic = Modifier.isStatic(method.getModifiers());
+
+        mv = cw.visitMethod(ACC_PUBLIC, "invoke", INVOKE, null, new String[]{"java/lang/Exception"});
+        mv.visitCode();
+        if (!isStatic) {
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitTypeInsn(CHECKCAST, ownerName);
+        }
+
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitLdcInsn(i);
+            mv.visitInsn(AALOAD);
+            unbox(mv, parameterTypes[i]);
+        }
+
+        final String descriptor = Type.getMethodDescriptor(method);
+        if (isStatic) {
+            mv.visitMethodInsn(INVOKESTATIC, ownerName, method.getName(), descriptor);
+        } else if (owner.isInterface()) {
+            mv.visitMethodInsn(INVOKEINTERFACE, ownerName, method.getName(), descriptor);
+        } else {
+            mv.visitMethodInsn(INVOKEVIRTUAL, ownerName, method.getName(), descriptor);
+        }
+
+        box(mv, method.getReturnType());
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void unbox(final MethodVisitor mv, final Class<?> type) {
+        if (!type.isPrimitive()) {
+            if (type != Object.class) {
+                mv.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+            }
+            return;
+        }
+
+        final Type primitive = Type.getType(type);
+        final String wrapper = wrapper(type);
+        mv.visitTypeInsn(CHECKCAST, wrapper);
+        mv.visitMethodInsn(INVOKEVIRTUAL, wrapper, type.getName() + "Value", "()" + primitive.getDescriptor());
+    }
+
+    private static void box(final MethodVisitor mv, final Class<?> type) {
+        if (type == Void.TYPE) {
+            mv.visitInsn(ACONST_NULL);
+        } else if (type.isPrimitive()) {
+            final String wrapper = wrapper(type);
+            mv.visitMethodInsn(INVOKESTATIC, wrapper, "valueOf", "(" + Type.getDescriptor(type) + ")L" + wrapper + ";");
+        }
+    }
+
+    private static String wrapper(final Class<?> type) {
+        if (type == Boolean.TYPE) {
+            return "java/lang/Boolean";
+        } else if (type == Byte.TYPE) {
+            return "java/lang/Byte";
+        } else if (type == Character.TYPE) {
+            return "java/lang/Character";
+        } else if (type == Short.TYPE) {
+            return "java/lang/Short";
+        } else if (type == Integer.TYPE) {
+            return "java/lang/Integer";
+        } else if (type == Long.TYPE) {
+            return "java/lang/Long";
+        } else if (type == Float.TYPE) {
+            return "java/lang/Float";
+        } else if (type == Double.TYPE) {
+            return "java/lang/Double";
+        }
+        throw new IllegalArgumentException("not a primitive: " + type);
+    }
+
+    private static Method defineClassMethod() {
+        try {
+            return AccessController.doPrivileged(new PrivilegedAction<Method>() {
+                public Method run() {
+                    try {
+                        final Method method = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class, int.class, int.class, ProtectionDomain.class);
+                        method.setAccessible(true);
+                        return method;
+                    } catch (Exception e) {
+                        return null;
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            return null; // security manager, use reflection
+        }
+    }
+
+    private static class ReflectionInvoker extends MethodInvoker {
+        private ReflectionInvoker(final Method method) {
+            super(method);
+
+            // the method is cached, it may be used through an other Method instance than the one given by the caller
+            if (!method.isAccessible()) {
+                try {
+                    AccessController.doPrivileged(new PrivilegedAction<Object>() {
+                        public Object run() {
+                            method.setAccessible(true);
+                            return null;
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // security manager, same as before, callers had to make it accessible
+                }
+            }
+        }
+
+        public Object invoke(final Object target, final Object[] args) throws Exception {
+            try {
+                return getMethod().invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw unwrapInvocationTargetException(e);
+            }
+        }
+
+        // todo verify excpetion types
+
+        /**
+         * Business method interceptors can only throw exception allowed by the target business method.
+         * Lifecycle interceptors can only throw RuntimeException.
+         * @param e the invocation target exception of a reflection method invoke
+         * @return the cause of the exception
+         * @throws AssertionError if the cause is not an Exception or Error.
+         */
+        private static Exception unwrapInvocationTargetException(InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause == null) {
+                return e;
+            } else if (cause instanceof Exception) {
+                return (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new AssertionError(cause);
+            }
+        }
+    }
+}
@@ -20,22 +20,28 @@ import org.apache.openejb.core.Operation;
 import org.apache.openejb.util.Classes;
 
 import javax.interceptor.InvocationContext;
-import java.util.Iterator;
-import java.util.Map;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 import java.lang.reflect.Method;
-import java.lang.reflect.InvocationTargetException;
 
 /**
+ * The interceptors, callbacks and bean method are called through their
+ * cached {@link MethodInvoker}, nothing is allocated per step.
+ *
  * @version $Rev$ $Date$
  */
 public class ReflectionInvocationContext implements InvocationContext {
-    private final Iterator<Interceptor> interceptors;
+    private static final Object[] NO_PARAMETERS = new Object[0];
+
+    private final List<Interceptor> interceptors;
+    private int index;
     private final Object target;
     private final Method method;
+    private final MethodInvoker invoker;
     private final Object[] parameters;
-    private final Map<String, Object> contextData = new TreeMap<String, Object>();
+    private final Object[] self = {this};
+    private Map<String, Object> contextData;
     private final Class<?>[] parameterTypes;
 
     private final Operation operation;
@@ -46,15 +52,17 @@ public class ReflectionInvocationContext implements InvocationContext {
         if (target == null) throw new NullPointerException("target is null");
 
         this.operation = operation;
-        this.interceptors = interceptors.iterator();
+        this.interceptors = interceptors;
         this.target = target;
         this.method = method;
         this.parameters = parameters;
 
         if (method == null) {
+            invoker = null;
             parameterTypes = new Class[0];
         } else {
-            parameterTypes = method.getParameterTypes();
+            invoker = MethodInvokers.get(method);
+            parameterTypes = invoker.getParameterTypes();
         }
     }
 
@@ -125,131 +133,43 @@ public class ReflectionInvocationContext implements InvocationContext {
     }
 
     public Map<String, Object> getContextData() {
+        if (contextData == null) {
+            // most invocations never use it
+            contextData = new TreeMap<String, Object>();
+        }
         return contextData;
     }
 
-    private Invocation next() {
-        if (interceptors.hasNext()) {
-            Interceptor interceptor = interceptors.next();
-            Object nextInstance = interceptor.getInstance();
-            Method nextMethod = interceptor.getMethod();
-
-            if (nextMethod.getParameterTypes().length == 1 && nextMethod.getParameterTypes()[0] == InvocationContext.class) {
-                return new InterceptorInvocation(nextInstance, nextMethod, this);
-            } else {
-                return new LifecycleInvocation(nextInstance, nextMethod, this, parameters);
+    public Object proceed() throws Exception {
+        // The bulk of the logic of this method has intentionally been kept
+        // flat so stepping through a large stack in a debugger can be done quickly.
+        // Simply put one break point on the 'invoke' calls.
+        if (index < interceptors.size()) {
+            final Interceptor interceptor = interceptors.get(index++);
+            if (interceptor.isAroundInvoke()) {
+                return interceptor.getInvoker().invoke(interceptor.getInstance(), self);
             }
+
+            // invoke the callback
+            interceptor.getInvoker().invoke(interceptor.getInstance(), parameters);
+
+            // we need to call proceed so callbacks in subclasses get invoked
+            return proceed();
         } else if (method != null) {
             //EJB 3.1, it is allowed that timeout method does not have parameter Timer.class,
             //However, while invoking the timeout method, the timer value is passed, as it is also required by InnvocationContext.getTimer() method
             Object[] methodParameters;
-            if (operation.equals(Operation.TIMEOUT) && method.getParameterTypes().length == 0) {
-                methodParameters = new Object[0];
+            if (operation.equals(Operation.TIMEOUT) && parameterTypes.length == 0) {
+                methodParameters = NO_PARAMETERS;
             } else {
                 methodParameters = parameters;
             }
-            return new BeanInvocation(target, method, methodParameters);
+            return invoker.invoke(target, methodParameters);
         } else {
-            return new NoOpInvocation();
-        }
-    }
-
-    public Object proceed() throws Exception {
-        // The bulk of the logic of this method has intentionally been moved
-        // out so stepping through a large stack in a debugger can be done quickly.
-        // Simply put one break point on 'next.invoke()' or one inside that method.
-        try {
-            Invocation next = next();
-            return next.invoke();
-        } catch (InvocationTargetException e) {
-            throw unwrapInvocationTargetException(e);
-        }
-    }
-
-    private abstract static class Invocation {
-        private final Method method;
-        private final Object[] args;
-        private final Object target;
-
-        public Invocation(Object target, Method method, Object[] args) {
-            this.target = target;
-            this.method = method;
-            this.args = args;
-        }
-        public Object invoke() throws Exception {
-            
-            Object value = method.invoke(target, args);
-            return value;
-        }
-
-
-        public String toString() {
-            return method.getDeclaringClass().getName() + "." + method.getName();
-        }
-    }
-
-    private static class BeanInvocation extends Invocation {
-        public BeanInvocation(Object target, Method method, Object[] args) {
-            super(target, method, args);
-        }
-    }
-
-    private static class InterceptorInvocation extends Invocation {
-        public InterceptorInvocation(Object target, Method method, InvocationContext invocationContext) {
-            super(target, method, new Object[] {invocationContext});
-        }
-    }
-
-    private static class LifecycleInvocation extends Invocation {
-        private final InvocationContext invocationContext;
-
-        public LifecycleInvocation(Object target, Method method, InvocationContext invocationContext, Object[] args) {
-            super(target, method, args);
-            this.invocationContext = invocationContext;
-        }
-
-        public Object invoke() throws Exception {
-            // invoke the callback
-            super.invoke();
-
-            // we need to call proceed so callbacks in subclasses get invoked
-            Object value = invocationContext.proceed();
-            return value;
-        }
-    }
-
-    private static class NoOpInvocation extends Invocation {
-        public NoOpInvocation() {
-            super(null, null, null);
-        }
-
-        public Object invoke() throws IllegalAccessException, InvocationTargetException {
             return null;
         }
     }
 
-    // todo verify excpetion types
-
-    /**
-     * Business method interceptors can only throw exception allowed by the target business method.
-     * Lifecycle interceptors can only throw RuntimeException.
-     * @param e the invocation target exception of a reflection method invoke
-     * @return the cause of the exception
-     * @throws AssertionError if the cause is not an Exception or Error.
-     */
-    private Exception unwrapInvocationTargetException(InvocationTargetException e) {
-        Throwable cause = e.getCause();
-        if (cause == null) {
-            return e;
-        } else if (cause instanceof Exception) {
-            return (Exception) cause;
-        } else if (cause instanceof Error) {
-            throw (Error) cause;
-        } else {
-            throw new AssertionError(cause);
-        }
-    }
-
     public String toString() {
         String methodName = (method != null)? method.getName(): null;
 
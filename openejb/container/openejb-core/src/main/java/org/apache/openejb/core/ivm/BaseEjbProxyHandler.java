@@ -40,6 +40,7 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.WeakHashMap;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import javax.ejb.EJBException;
 import javax.ejb.NoSuchObjectLocalException;
@@ -61,10 +62,11 @@ import org.apache.openejb.core.ThreadContext;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.spi.ContainerSystem;
 import org.apache.openejb.spi.SecurityService;
+import org.apache.openejb.util.proxy.IndexedInvocationHandler;
 import org.apache.openejb.util.proxy.InvocationHandler;
 import org.apache.openejb.util.proxy.ProxyManager;
 
-public abstract class BaseEjbProxyHandler implements InvocationHandler, Serializable {
+public abstract class BaseEjbProxyHandler implements IndexedInvocationHandler, Serializable {
     private static final String OPENEJB_LOCALCOPY = "openejb.localcopy";
     private IntraVmCopyMonitor.State strategy = NONE;
 
@@ -107,6 +109,11 @@ public abstract class BaseEjbProxyHandler implements InvocationHandler, Serializ
     private transient WeakHashMap<Class,Object> interfaces;
     private transient WeakReference<Class> mainInterface;
 
+    // what invoke() resolves from the method, by proxy method index (see GeneratedProxyFactory)
+    private transient volatile Dispatch[] dispatches;
+    private static final AtomicReferenceFieldUpdater<BaseEjbProxyHandler, Dispatch[]> DISPATCHES =
+            AtomicReferenceFieldUpdater.newUpdater(BaseEjbProxyHandler.class, Dispatch[].class, "dispatches");
+
     public BaseEjbProxyHandler(BeanContext beanContext, Object pk, InterfaceType interfaceType, List<Class> interfaces, Class mainInterface) {
         this.container = (RpcContainer) beanContext.getContainer();
         this.deploymentID = beanContext.getDeploymentID();
@@ -222,26 +229,86 @@ public abstract class BaseEjbProxyHandler implements InvocationHandler, Serializ
 
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
         isValidReference(method);
+        return invoke(proxy, method, args, resolve(method));
+    }
+
+    public Object invoke(Object proxy, int index, Method method, Object[] args) throws Throwable {
+        isValidReference(method);
+
+        Dispatch[] resolved = dispatches;
+        Dispatch dispatch = (resolved != null && index < resolved.length) ? resolved[index] : null;
+        if (dispatch == null || dispatch.method != method) {
+            dispatch = resolve(method);
+            final int length = resolved == null ? 8 : (index < resolved.length ? resolved.length : resolved.length * 2);
+            final Dispatch[] copy = new Dispatch[Math.max(index + 1, length)];
+            if (resolved != null) {
+                System.arraycopy(resolved, 0, copy, 0, resolved.length);
+            }
+            copy[index] = dispatch;
+            // lost if the bean was redeployed meanwhile, the dispatches were reset
+            DISPATCHES.compareAndSet(this, resolved, copy);
+        }
+        return invoke(proxy, method, args, dispatch);
+    }
+
+    /**
+     * What only depends on the invoked method, computed once per method when the proxy
+     * passes a method index.
+     */
+    private static final class Dispatch {
+        private static final int OBJECT = 0;
+        private static final int INTRA_VM_PROXY = 1;
+        private static final int REMOVABLE = 2;
+        private static final int BUSINESS = 3;
+
+        private final Method method;
+        private final int kind;
+        private final Class interfce;
+        private final boolean noCopy;
+
+        private Dispatch(Method method, int kind, Class interfce, boolean noCopy) {
+            this.method = method;
+            this.kind = kind;
+            this.interfce = interfce;
+            this.noCopy = noCopy;
+        }
+    }
+
+    private Dispatch resolve(Method method) {
+        final Class<?> declaringClass = method.getDeclaringClass();
+        if (declaringClass == Object.class) {
+            return new Dispatch(method, Dispatch.OBJECT, null, false);
+        } else if (declaringClass == IntraVmProxy.class) {
+            return new Dispatch(method, Dispatch.INTRA_VM_PROXY, null, false);
+        } else if (declaringClass == BeanContext.Removable.class) {
+            return new Dispatch(method, Dispatch.REMOVABLE, BeanContext.Removable.class, false);
+        }
 
+        final BeanContext beanContext = getBeanContext();
+        final boolean noCopy = beanContext.isAsynchronous(method) || beanContext.getComponentType().equals(BeanType.MANAGED);
+        return new Dispatch(method, Dispatch.BUSINESS, getInvokedInterface(method), noCopy);
+    }
+
+    private Object invoke(Object proxy, Method method, Object[] args, Dispatch dispatch) throws Throwable {
         if (args == null) args = new Object[]{};
-        
-        if (method.getDeclaringClass() == Object.class) {
+
+        if (dispatch.kind == Dispatch.OBJECT) {
             final String methodName = method.getName();
 
             if (methodName.equals("toString")) return toString();
             else if (methodName.equals("equals")) return equals(args[0]) ? Boolean.TRUE : Boolean.FALSE;
             else if (methodName.equals("hashCode")) return new Integer(hashCode());
             else throw new UnsupportedOperationException("Unknown method: " + method);
-        } else if (method.getDeclaringClass() == IntraVmProxy.class) {
+        } else if (dispatch.kind == Dispatch.INTRA_VM_PROXY) {
             final String methodName = method.getName();
 
             if (methodName.equals("writeReplace")) return _writeReplace(proxy);
             else throw new UnsupportedOperationException("Unknown method: " + method);
-        } else if (method.getDeclaringClass() == BeanContext.Removable.class) {
+        } else if (dispatch.kind == Dispatch.REMOVABLE) {
             return _invoke(proxy, BeanContext.Removable.class, method, args);
         }
 
-        Class interfce = getInvokedInterface(method);
+        Class interfce = dispatch.interfce;
 
 
         ThreadContext callContext = ThreadContext.getThreadContext();
@@ -275,7 +342,7 @@ public abstract class BaseEjbProxyHandler implements InvocationHandler, Serializ
                 }
             }
             IntraVmCopyMonitor.State oldStrategy =  strategy;
-            if (getBeanContext().isAsynchronous(method) || getBeanContext().getComponentType().equals(BeanType.MANAGED)){
+            if (dispatch.noCopy){
                 strategy = IntraVmCopyMonitor.State.NONE;
             }
    
@@ -563,6 +630,9 @@ public abstract class BaseEjbProxyHandler implements InvocationHandler, Serializ
 
     public BeanContext getBeanContext() {
         BeanContext beanContext = beanContextRef.get();
+        if (beanContext != null && beanContext.isDestroyed()) {
+            beanContext = redeployed(beanContext);
+        }
         if (beanContext == null|| beanContext.isDestroyed()){
             invalidateReference();
             throw new IllegalStateException("Bean '"+deploymentID+"' has been undeployed.");
@@ -570,6 +640,38 @@ public abstract class BaseEjbProxyHandler implements InvocationHandler, Serializ
         return beanContext;
     }
 
+    /**
+     * The bean may have been redeployed with the same interfaces, in that case
+     * the proxy goes on with the new deployment.
+     */
+    private BeanContext redeployed(BeanContext replaced) {
+        final ContainerSystem containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
+        final BeanContext beanContext = containerSystem == null ? null : containerSystem.getBeanContext(deploymentID);
+        if (beanContext == null || beanContext.isDestroyed() || !(beanContext.getContainer() instanceof RpcContainer)) {
+            return null;
+        }
+        if (!exposesInterfaces(beanContext, replaced)) {
+            return null;
+        }
+
+        setBeanContext(beanContext);
+        container = (RpcContainer) beanContext.getContainer();
+        // resolved against the replaced bean
+        dispatches = null;
+        return beanContext;
+    }
+
+    private boolean exposesInterfaces(BeanContext beanContext, BeanContext replaced) {
+        final InterfaceType objectInterfaceType = interfaceType.isHome() ? interfaceType.getCounterpart() : interfaceType;
+        final List<Class> exposed = beanContext.getInterfaces(objectInterfaceType);
+        for (Class interfce : getInterfaces()) {
+            if (!exposed.contains(interfce)) {
+                return false;
+            }
+        }
+        return !interfaceType.isHome() || beanContext.getInterface(interfaceType) == replaced.getInterface(interfaceType);
+    }
+
     public void setBeanContext(BeanContext beanContext) {
         this.beanContextRef = new WeakReference<BeanContext>(beanContext);
     }
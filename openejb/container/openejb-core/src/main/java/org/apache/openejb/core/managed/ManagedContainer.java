@@ -26,6 +26,7 @@ import org.apache.openejb.OpenEJBRuntimeException;
 import org.apache.openejb.ProxyInfo;
 import org.apache.openejb.RpcContainer;
 import org.apache.openejb.SystemException;
+import org.apache.openejb.core.DeploymentRegistry;
 import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.InstanceContext;
 import org.apache.openejb.core.Operation;
@@ -42,7 +43,6 @@ import org.apache.openejb.core.transaction.JtaTransactionPolicy;
 import org.apache.openejb.core.transaction.TransactionPolicy;
 import org.apache.openejb.core.transaction.TransactionPolicy.TransactionSynchronization;
 import org.apache.openejb.loader.SystemInstance;
-import org.apache.openejb.monitoring.LocalMBeanServer;
 import org.apache.openejb.monitoring.ManagedMBean;
 import org.apache.openejb.monitoring.ObjectNameBuilder;
 import org.apache.openejb.monitoring.StatsInterceptor;
@@ -62,7 +62,6 @@ import javax.ejb.EJBLocalHome;
 import javax.ejb.RemoveException;
 import javax.ejb.SessionBean;
 import javax.ejb.SessionContext;
-import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import javax.naming.Context;
 import javax.naming.NamingException;
@@ -97,7 +96,7 @@ public class ManagedContainer implements RpcContainer {
     /**
      * Index used for getDeployments() and getDeploymentInfo(deploymentId).
      */
-    protected final Map<Object, BeanContext> deploymentsById = new HashMap<Object, BeanContext>();
+    protected final DeploymentRegistry deploymentsById = new DeploymentRegistry();
 
     protected final Cache<Object, Instance> cache;
     private final ConcurrentHashMap<Object, Instance> checkedOutInstances = new ConcurrentHashMap<Object, Instance>();
@@ -222,11 +221,11 @@ public class ManagedContainer implements RpcContainer {
         return containerID;
     }
 
-    public synchronized BeanContext[] getBeanContexts() {
-        return deploymentsById.values().toArray(new BeanContext[deploymentsById.size()]);
+    public BeanContext[] getBeanContexts() {
+        return deploymentsById.values();
     }
 
-    public synchronized BeanContext getBeanContext(Object deploymentID) {
+    public BeanContext getBeanContext(Object deploymentID) {
         return deploymentsById.get(deploymentID);
     }
 
@@ -239,16 +238,9 @@ public class ManagedContainer implements RpcContainer {
     public synchronized void undeploy(final BeanContext bean) throws OpenEJBException {
         Data data = (Data) bean.getContainerData();
 
-        MBeanServer server = LocalMBeanServer.get();
-        for (ObjectName objectName : data.jmxNames) {
-            try {
-                server.unregisterMBean(objectName);
-            } catch (Exception e) {
-                logger.error("Unable to unregister MBean "+objectName);
-            }
-        }
+        bean.unregisterMBeans();
 
-        deploymentsById.remove(bean.getDeploymentID());
+        deploymentsById.remove(bean);
         bean.setContainer(null);
         bean.setContainerData(null);
 
@@ -262,7 +254,7 @@ public class ManagedContainer implements RpcContainer {
     public synchronized void deploy(BeanContext beanContext) throws OpenEJBException {
         Map<Method, MethodType> methods = getLifecycleMethodsOfInterface(beanContext);
 
-        deploymentsById.put(beanContext.getDeploymentID(), beanContext);
+        deploymentsById.put(beanContext);
         beanContext.setContainer(this);
         Data data = new Data(new Index<Method, MethodType>(methods));
         beanContext.setContainerData(data);
@@ -272,7 +264,6 @@ public class ManagedContainer implements RpcContainer {
             StatsInterceptor stats = new StatsInterceptor(beanContext.getBeanClass());
             beanContext.addFirstSystemInterceptor(stats);
 
-            MBeanServer server = LocalMBeanServer.get();
 
             ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
             jmxName.set("J2EEServer", "openejb");
@@ -285,8 +276,7 @@ public class ManagedContainer implements RpcContainer {
             // register the invocation stats interceptor
             try {
                 ObjectName objectName = jmxName.set("j2eeType", "Invocations").build();
-                server.registerMBean(new ManagedMBean(stats), objectName);
-                data.jmxNames.add(objectName);
+                beanContext.registerMBean(new ManagedMBean(stats), objectName);
             } catch (Exception e) {
                 logger.error("Unable to register MBean ", e);
             }
@@ -1061,7 +1051,6 @@ public class ManagedContainer implements RpcContainer {
 
     private static class Data {
         private final Index<Method, MethodType> methodIndex;
-        private final List<ObjectName> jmxNames = new ArrayList<ObjectName>();
         
         private Data(Index<Method, MethodType> methodIndex) {
             this.methodIndex = methodIndex;
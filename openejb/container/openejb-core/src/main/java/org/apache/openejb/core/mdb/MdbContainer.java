@@ -23,7 +23,6 @@ import org.apache.openejb.ApplicationException;
 import org.apache.openejb.ContainerType;
 import org.apache.openejb.RpcContainer;
 import org.apache.openejb.InterfaceType;
-import org.apache.openejb.monitoring.LocalMBeanServer;
 import org.apache.openejb.monitoring.StatsInterceptor;
 import org.apache.openejb.monitoring.ObjectNameBuilder;
 import org.apache.openejb.monitoring.ManagedMBean;
@@ -53,7 +52,6 @@ import javax.resource.spi.ResourceAdapter;
 import javax.resource.spi.ActivationSpec;
 import javax.resource.spi.UnavailableException;
 import javax.resource.ResourceException;
-import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import javax.naming.NamingException;
 import javax.validation.ConstraintViolation; 
@@ -156,7 +154,6 @@ public class MdbContainer implements RpcContainer {
             StatsInterceptor stats = new StatsInterceptor(beanContext.getBeanClass());
             beanContext.addFirstSystemInterceptor(stats);
 
-            MBeanServer server = LocalMBeanServer.get();
 
             ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
             jmxName.set("J2EEServer", "openejb");
@@ -169,8 +166,7 @@ public class MdbContainer implements RpcContainer {
             // register the invocation stats interceptor
             try {
                 ObjectName objectName = jmxName.set("j2eeType", "Invocations").build();
-                server.registerMBean(new ManagedMBean(stats), objectName);
-                endpointFactory.jmxNames.add(objectName);
+                beanContext.registerMBean(new ManagedMBean(stats), objectName);
             } catch (Exception e) {
                 logger.error("Unable to register MBean ", e);
             }
@@ -263,14 +259,7 @@ public class MdbContainer implements RpcContainer {
             if (endpointFactory != null) {
                 resourceAdapter.endpointDeactivation(endpointFactory, endpointFactory.getActivationSpec());
 
-                MBeanServer server = LocalMBeanServer.get();
-                for (ObjectName objectName : endpointFactory.jmxNames) {
-                    try {
-                        server.unregisterMBean(objectName);
-                    } catch (Exception e) {
-                        logger.error("Unable to unregister MBean "+objectName);
-                    }
-                }
+                beanContext.unregisterMBeans();
             }
         } finally {
             beanContext.setContainer(null);
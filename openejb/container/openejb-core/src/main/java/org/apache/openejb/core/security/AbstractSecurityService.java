@@ -335,7 +335,8 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
         return new Subject(true, principals, new HashSet(), new HashSet());
     }
 
-    protected final static class SecurityContext {
+    // public so the ThreadContext keeps it in a field of its own
+    public final static class SecurityContext {
 
         private final Subject subject;
         private final AccessControlContext acc;
@@ -22,6 +22,7 @@ import org.apache.openejb.InterfaceType;
 import org.apache.openejb.OpenEJBException;
 import org.apache.openejb.ProxyInfo;
 import org.apache.openejb.RpcContainer;
+import org.apache.openejb.core.DeploymentRegistry;
 import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
@@ -61,7 +62,7 @@ public class SingletonContainer implements RpcContainer {
 
     private SingletonInstanceManager instanceManager;
 
-    private HashMap<String, BeanContext> deploymentRegistry = new HashMap<String, BeanContext>();
+    private final DeploymentRegistry deploymentRegistry = new DeploymentRegistry();
 
     private Object containerID = null;
     private SecurityService securityService;
@@ -82,13 +83,16 @@ public class SingletonContainer implements RpcContainer {
         this.accessTimeout = duration;
     }
 
-    public synchronized BeanContext[] getBeanContexts() {
-        return deploymentRegistry.values().toArray(new BeanContext[deploymentRegistry.size()]);
+    public void setLockStrategy(String strategy) {
+        instanceManager.setLockStrategy(SingletonInstanceManager.LockStrategy.valueOf(strategy.trim().toUpperCase()));
     }
 
-    public synchronized BeanContext getBeanContext(Object deploymentID) {
-        String id = (String) deploymentID;
-        return deploymentRegistry.get(id);
+    public BeanContext[] getBeanContexts() {
+        return deploymentRegistry.values();
+    }
+
+    public BeanContext getBeanContext(Object deploymentID) {
+        return deploymentRegistry.get(deploymentID);
     }
 
     public ContainerType getContainerType() {
@@ -101,11 +105,8 @@ public class SingletonContainer implements RpcContainer {
 
     public void deploy(BeanContext beanContext) throws OpenEJBException {
         instanceManager.deploy(beanContext);
-        String id = (String) beanContext.getDeploymentID();
-        synchronized (this) {
-            deploymentRegistry.put(id, beanContext);
-            beanContext.setContainer(this);
-        }
+        beanContext.setContainer(this);
+        deploymentRegistry.put(beanContext);
 
         EjbTimerService timerService = beanContext.getEjbTimerService();
         if (timerService != null) {
@@ -137,12 +138,9 @@ public class SingletonContainer implements RpcContainer {
         
         instanceManager.undeploy(beanContext);
         
-        synchronized (this) {
-            String id = (String) beanContext.getDeploymentID();
-            beanContext.setContainer(null);
-            beanContext.setContainerData(null);
-            deploymentRegistry.remove(id);
-        }
+        deploymentRegistry.remove(beanContext);
+        beanContext.setContainer(null);
+        beanContext.setContainerData(null);
     }
 
     /**
@@ -166,7 +164,7 @@ public class SingletonContainer implements RpcContainer {
 
         Method runMethod = beanContext.getMatchingBeanMethod(callMethod);
 
-        ThreadContext callContext = new ThreadContext(beanContext, primKey);
+        ThreadContext callContext = ThreadContext.obtain(beanContext, primKey);
         ThreadContext oldCallContext = ThreadContext.enter(callContext);
         try {
             boolean authorized = type == InterfaceType.TIMEOUT || getSecurityService().isCallerAuthorized(callMethod, type);
@@ -196,6 +194,7 @@ public class SingletonContainer implements RpcContainer {
 
         } finally {
             ThreadContext.exit(oldCallContext);
+            ThreadContext.release(callContext);
         }
     }
 
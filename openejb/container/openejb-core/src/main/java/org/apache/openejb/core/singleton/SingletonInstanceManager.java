@@ -29,8 +29,8 @@ import org.apache.openejb.core.timer.TimerServiceWrapper;
 import org.apache.openejb.core.transaction.EjbTransactionUtil;
 import org.apache.openejb.core.transaction.TransactionPolicy;
 import org.apache.openejb.core.transaction.TransactionType;
+import org.apache.openejb.loader.Options;
 import org.apache.openejb.loader.SystemInstance;
-import org.apache.openejb.monitoring.LocalMBeanServer;
 import org.apache.openejb.monitoring.ManagedMBean;
 import org.apache.openejb.monitoring.ObjectNameBuilder;
 import org.apache.openejb.monitoring.StatsInterceptor;
@@ -38,11 +38,11 @@ import org.apache.openejb.spi.ContainerSystem;
 import org.apache.openejb.spi.SecurityService;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.StripedReadWriteLock;
 
 import javax.ejb.EJBContext;
 import javax.ejb.NoSuchEJBException;
 import javax.ejb.SessionBean;
-import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import javax.naming.Context;
 import javax.naming.NamingException;
@@ -66,9 +66,27 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class SingletonInstanceManager {
     private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
 
+    /**
+     * Lock used for container-managed concurrency, can be set on the
+     * container or overridden per bean with the LockStrategy property
+     */
+    public static enum LockStrategy {
+        /**
+         * java.util.concurrent.locks.ReentrantReadWriteLock
+         */
+        REENTRANT,
+
+        /**
+         * {@link StripedReadWriteLock}, readers don't share a counter, better
+         * for read mostly singletons called by many threads
+         */
+        STRIPED
+    }
+
     private SecurityService securityService;
     private final SingletonContext sessionContext;
     private final WebServiceContext webServiceContext;
+    private LockStrategy lockStrategy = LockStrategy.REENTRANT;
 
     public SingletonInstanceManager(SecurityService securityService) {
         this.securityService = securityService;
@@ -76,6 +94,10 @@ public class SingletonInstanceManager {
         webServiceContext = new EjbWsContext(sessionContext);
     }
 
+    public void setLockStrategy(LockStrategy lockStrategy) {
+        this.lockStrategy = lockStrategy;
+    }
+
     protected void start(BeanContext beanContext) throws OpenEJBException {
         if (beanContext.isLoadOnStartup()) {
             initialize(beanContext);
@@ -190,6 +212,9 @@ public class SingletonInstanceManager {
             if (beanContext.isBeanManagedConcurrency()){
                 // Bean-Managed Concurrency
                 lock = new BeanManagedLock();
+            } else if (((Data) beanContext.getContainerData()).lockStrategy == LockStrategy.STRIPED) {
+                // Container-Managed Concurrency, read mostly
+                lock = new StripedReadWriteLock();
             } else {
                 // Container-Managed Concurrency
                 lock = new ReentrantReadWriteLock();
@@ -284,7 +309,9 @@ public class SingletonInstanceManager {
     }
 
     public void deploy(BeanContext beanContext) throws OpenEJBException {
-        Data data = new Data(beanContext);
+        Options options = new Options(beanContext.getProperties());
+
+        Data data = new Data(beanContext, options.get("LockStrategy", lockStrategy));
         beanContext.setContainerData(data);
 
         beanContext.set(EJBContext.class, this.sessionContext);
@@ -294,7 +321,6 @@ public class SingletonInstanceManager {
             StatsInterceptor stats = new StatsInterceptor(beanContext.getBeanClass());
             beanContext.addFirstSystemInterceptor(stats);
 
-            MBeanServer server = LocalMBeanServer.get();
 
             ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
             jmxName.set("J2EEServer", "openejb");
@@ -307,8 +333,7 @@ public class SingletonInstanceManager {
             // register the invocation stats interceptor
             try {
                 ObjectName objectName = jmxName.set("j2eeType", "Invocations").build();
-                server.registerMBean(new ManagedMBean(stats), objectName);
-                data.add(objectName);
+                beanContext.registerMBean(new ManagedMBean(stats), objectName);
             } catch (Exception e) {
                 logger.error("Unable to register MBean ", e);
             }
@@ -328,33 +353,21 @@ public class SingletonInstanceManager {
         Data data = (Data) beanContext.getContainerData();
         if (data == null) return;
 
-        MBeanServer server = LocalMBeanServer.get();
-        for (ObjectName objectName : data.jmxNames) {
-            try {
-                server.unregisterMBean(objectName);
-            } catch (Exception e) {
-                logger.error("Unable to unregister MBean "+objectName);
-            }
-        }
+        beanContext.unregisterMBeans();
 
         beanContext.setContainerData(null);
     }
 
     private final class Data {
         private final AtomicReference<Future<Instance>> singleton = new AtomicReference<Future<Instance>>();
-        private final List<ObjectName> jmxNames = new ArrayList<ObjectName>();
         private final BeanContext info;
+        private final LockStrategy lockStrategy;
 
-        public Data(BeanContext info) {
+        public Data(BeanContext info, LockStrategy lockStrategy) {
             this.info = info;
+            this.lockStrategy = lockStrategy;
         }
 
-        public ObjectName add(ObjectName name) {
-            jmxNames.add(name);
-            return name;
-        }
-
-
         public void initialize() throws OpenEJBException {
             SingletonInstanceManager.this.initialize(info);
         }
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the serialized state of the stateful sessions other servers
+ * replicated to this one until a client fails over and the session is
+ * activated here by the {@link ReplicatedCache}.
+ *
+ * A replica which wasn't updated for the idle timeout is dropped, in case
+ * the removal of the session never made it here.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ReplicaStore {
+
+    private final ConcurrentMap<Object, Replica> replicas = new ConcurrentHashMap<Object, Replica>();
+    private final long idleTimeout;
+    private volatile long lastPurge = System.currentTimeMillis();
+
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong activated = new AtomicLong();
+
+    /**
+     * @param idleTimeout milliseconds after which a replica which wasn't updated is dropped
+     */
+    public ReplicaStore(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @return the keys of the deltas which can't be applied since the base version isn't here
+     */
+    public Set<Object> apply(List<SessionDelta> deltas) {
+        final long now = System.currentTimeMillis();
+        final Set<Object> missing = new HashSet<Object>();
+
+        for (SessionDelta delta : deltas) {
+            if (delta.isRemoved()) {
+                replicas.remove(delta.getKey());
+                continue;
+            }
+
+            final Replica previous = replicas.get(delta.getKey());
+            if (delta.isFull()) {
+                replicas.put(delta.getKey(), new Replica(delta.getVersion(), delta.apply(null), now));
+            } else if (previous != null && previous.version == delta.getBase()) {
+                replicas.put(delta.getKey(), new Replica(delta.getVersion(), delta.apply(previous.state), now));
+            } else {
+                missing.add(delta.getKey());
+                rejected.incrementAndGet();
+                continue;
+            }
+            applied.incrementAndGet();
+        }
+
+        if (now - lastPurge > idleTimeout / 10) {
+            lastPurge = now;
+            purge(now);
+        }
+
+        return missing;
+    }
+
+    /**
+     * Removes the replica, the session is going to live here from now on.
+     *
+     * @return the serialized state or null if there is no replica
+     */
+    public byte[] take(Object key) {
+        final Replica replica = replicas.remove(key);
+        if (replica == null) return null;
+
+        activated.incrementAndGet();
+        return replica.state;
+    }
+
+    byte[] peek(Object key) {
+        final Replica replica = replicas.get(key);
+        return replica == null ? null : replica.state;
+    }
+
+    public boolean contains(Object key) {
+        return replicas.containsKey(key);
+    }
+
+    public int size() {
+        return replicas.size();
+    }
+
+    public long getApplied() {
+        return applied.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getActivated() {
+        return activated.get();
+    }
+
+    private void purge(long now) {
+        for (Iterator<Replica> iterator = replicas.values().iterator(); iterator.hasNext();) {
+            if (now - iterator.next().updated > idleTimeout) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Replica {
+        private final long version;
+        private final byte[] state;
+        private final long updated;
+
+        private Replica(long version, byte[] state, long updated) {
+            this.version = version;
+            this.state = state;
+            this.updated = updated;
+        }
+    }
+}
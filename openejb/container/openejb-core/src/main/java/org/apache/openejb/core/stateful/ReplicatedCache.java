@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import org.apache.openejb.SystemException;
+import org.apache.openejb.core.ivm.EjbObjectInputStream;
+import org.apache.openejb.core.ivm.IntraVmCopyMonitor;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link SimpleCache} sending the state of the sessions to a buddy server
+ * each time an instance is checked in, that is after each invocation or at
+ * the end of the transaction, and activating the sessions replicated here
+ * by other servers when a client fails over.
+ *
+ * The replication itself is done by the {@link SessionReplicator} and the
+ * {@link ReplicaStore} the server registers in the SystemInstance, without
+ * them this cache behaves like a SimpleCache.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ReplicatedCache extends SimpleCache<Object, Instance> {
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, ReplicatedCache.class);
+
+    private final Map<Object, Instance> checkedOut = new ConcurrentHashMap<Object, Instance>();
+
+    // sessions which couldn't be serialized once, they are not replicated any more
+    private final Map<Object, Boolean> notReplicated = new ConcurrentHashMap<Object, Boolean>();
+
+    public ReplicatedCache() {
+    }
+
+    @Override
+    public synchronized void setListener(CacheListener<Instance> listener) {
+        super.setListener(listener == null ? null : new ReplicatedListener(listener));
+    }
+
+    /**
+     * Sessions missing here are looked up in the replicas before the passivated ones.
+     */
+    @Override
+    public synchronized PassivationStrategy getPassivator() {
+        return new ReplicaActivation(super.getPassivator());
+    }
+
+    @Override
+    public void add(Object key, Instance value) {
+        super.add(key, value);
+        checkedOut.put(key, value);
+    }
+
+    @Override
+    public Instance checkOut(Object key) throws Exception {
+        final Instance instance = super.checkOut(key);
+        if (instance != null) {
+            checkedOut.put(key, instance);
+        }
+        return instance;
+    }
+
+    @Override
+    public void checkIn(Object key) {
+        final Instance instance = checkedOut.remove(key);
+        final SessionReplicator replicator = SystemInstance.get().getComponent(SessionReplicator.class);
+
+        // serialized before anyone else can check it out
+        if (instance != null && replicator != null && !notReplicated.containsKey(key)) {
+            final byte[] state = serialize(instance);
+            super.checkIn(key);
+            if (state != null) {
+                replicator.update(key, state);
+            }
+        } else {
+            super.checkIn(key);
+        }
+    }
+
+    @Override
+    public Instance remove(Object key) {
+        checkedOut.remove(key);
+        notReplicated.remove(key);
+        final Instance instance = super.remove(key);
+        replicateRemoval(key);
+        return instance;
+    }
+
+    @Override
+    public void removeAll(final CacheFilter<Instance> filter) {
+        super.removeAll(new CacheFilter<Instance>() {
+            public boolean matches(Instance instance) {
+                if (filter.matches(instance)) {
+                    checkedOut.remove(instance.primaryKey);
+                    notReplicated.remove(instance.primaryKey);
+                    replicateRemoval(instance.primaryKey);
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
+
+    private static void replicateRemoval(Object key) {
+        final SessionReplicator replicator = SystemInstance.get().getComponent(SessionReplicator.class);
+        if (replicator != null) {
+            replicator.remove(key);
+        }
+    }
+
+    private byte[] serialize(Instance instance) {
+        // a bean-managed transaction can't move to another server
+        if (instance.getBeanTransaction() != null) return null;
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        IntraVmCopyMonitor.prePassivationOperation();
+        try {
+            final ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(instance);
+            out.close();
+            return bytes.toByteArray();
+        } catch (Exception e) {
+            // logged once, the buddy drops what it has since it won't be updated any more
+            logger.warning("Can't replicate the stateful session " + instance.primaryKey + ", it won't be replicated any more: " + e.getMessage());
+            notReplicated.put(instance.primaryKey, Boolean.TRUE);
+            replicateRemoval(instance.primaryKey);
+            return null;
+        } finally {
+            IntraVmCopyMonitor.postPassivationOperation();
+        }
+    }
+
+    private static class ReplicaActivation implements PassivationStrategy {
+        private final PassivationStrategy passivator;
+
+        private ReplicaActivation(PassivationStrategy passivator) {
+            this.passivator = passivator;
+        }
+
+        public void init(Properties props) throws SystemException {
+            if (passivator != null) passivator.init(props);
+        }
+
+        public void passivate(Map stateTable) throws SystemException {
+            if (passivator != null) passivator.passivate(stateTable);
+        }
+
+        public Object activate(Object primaryKey) throws SystemException {
+            final ReplicaStore store = SystemInstance.get().getComponent(ReplicaStore.class);
+            final byte[] state = store == null ? null : store.take(primaryKey);
+            if (state == null) {
+                return passivator == null ? null : passivator.activate(primaryKey);
+            }
+
+            logger.info("Activating the replica of the stateful session " + primaryKey);
+            try {
+                final EjbObjectInputStream in = new EjbObjectInputStream(new ByteArrayInputStream(state));
+                try {
+                    return in.readObject();
+                } finally {
+                    in.close();
+                }
+            } catch (Exception e) {
+                throw new SystemException(e);
+            }
+        }
+    }
+
+    private class ReplicatedListener implements CacheListener<Instance> {
+        private final CacheListener<Instance> listener;
+
+        private ReplicatedListener(CacheListener<Instance> listener) {
+            this.listener = listener;
+        }
+
+        public void afterLoad(Instance instance) throws Exception {
+            listener.afterLoad(instance);
+        }
+
+        public void beforeStore(Instance instance) throws Exception {
+            listener.beforeStore(instance);
+        }
+
+        public void timedOut(Instance instance) {
+            checkedOut.remove(instance.primaryKey);
+            notReplicated.remove(instance.primaryKey);
+            replicateRemoval(instance.primaryKey);
+            listener.timedOut(instance);
+        }
+    }
+}
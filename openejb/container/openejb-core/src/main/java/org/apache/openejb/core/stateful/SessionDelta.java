@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * The change of the serialized state of a stateful session between two versions.
+ *
+ * Serializing the same bean twice mostly gives the same bytes except where a
+ * field changed, so only the bytes between the common prefix and the common
+ * suffix of both versions are sent. A delta with a base version of 0 holds
+ * the whole state.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SessionDelta {
+
+    private final Object key;
+    private final long version;
+    private final long base;
+    private final int prefix;
+    private final int suffix;
+    private final byte[] data;
+
+    private SessionDelta(Object key, long version, long base, int prefix, int suffix, byte[] data) {
+        this.key = key;
+        this.version = version;
+        this.base = base;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.data = data;
+    }
+
+    public static SessionDelta full(Object key, long version, byte[] state) {
+        return new SessionDelta(key, version, 0, 0, 0, state);
+    }
+
+    public static SessionDelta removed(Object key) {
+        return new SessionDelta(key, -1, 0, 0, 0, null);
+    }
+
+    public static SessionDelta diff(Object key, long version, long base, byte[] previous, byte[] state) {
+        final int max = Math.min(previous.length, state.length);
+
+        int prefix = 0;
+        while (prefix < max && previous[prefix] == state[prefix]) {
+            prefix++;
+        }
+
+        int suffix = 0;
+        while (suffix < max - prefix && previous[previous.length - 1 - suffix] == state[state.length - 1 - suffix]) {
+            suffix++;
+        }
+
+        final byte[] data = new byte[state.length - prefix - suffix];
+        System.arraycopy(state, prefix, data, 0, data.length);
+        return new SessionDelta(key, version, base, prefix, suffix, data);
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the version this delta applies to, 0 if it is the full state
+     */
+    public long getBase() {
+        return base;
+    }
+
+    public boolean isRemoved() {
+        return data == null;
+    }
+
+    public boolean isFull() {
+        return data != null && base == 0;
+    }
+
+    /**
+     * @return the number of bytes sent for the state
+     */
+    public int size() {
+        return data == null ? 0 : data.length;
+    }
+
+    public byte[] apply(byte[] previous) {
+        if (isFull()) return data;
+
+        final byte[] state = new byte[prefix + data.length + suffix];
+        System.arraycopy(previous, 0, state, 0, prefix);
+        System.arraycopy(data, 0, state, prefix, data.length);
+        System.arraycopy(previous, previous.length - suffix, state, prefix + data.length, suffix);
+        return state;
+    }
+
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeObject(key);
+        out.writeLong(version);
+        if (data == null) return;
+
+        out.writeLong(base);
+        out.writeInt(prefix);
+        out.writeInt(suffix);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    public static SessionDelta readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        final Object key = in.readObject();
+        final long version = in.readLong();
+        if (version < 0) return removed(key);
+
+        final long base = in.readLong();
+        final int prefix = in.readInt();
+        final int suffix = in.readInt();
+        final byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return new SessionDelta(key, version, base, prefix, suffix, data);
+    }
+
+    @Override
+    public String toString() {
+        return "SessionDelta{" +
+                "key=" + key +
+                ", version=" + version +
+                ", base=" + base +
+                ", size=" + size() +
+                '}';
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sends the state of the stateful sessions of this server to a buddy
+ * server in the background so a client can fail over without the
+ * session being lost.
+ *
+ * Updates of the same session waiting to be sent are merged and only the
+ * bytes which changed since the version the buddy has are sent. The queue
+ * is bounded: when it is full an update waits for the sender up to the
+ * timeout and is dropped after that, the next update of the session
+ * brings the buddy up to date. While the buddy can't be reached updates
+ * don't wait at all so invocations are never slowed down by a dead peer.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SessionReplicator implements Runnable {
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, SessionReplicator.class);
+
+    public interface Transport {
+        /**
+         * @return the keys of the deltas the buddy couldn't apply, the full state has to be sent for them
+         * @throws IOException if the buddy can't be reached
+         */
+        Set<Object> send(List<SessionDelta> deltas) throws IOException;
+    }
+
+    private final Transport transport;
+    private final int capacity;
+    private final long timeout;
+    private final int batch;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // guarded by lock, oldest first
+    private final LinkedHashMap<Object, Pending> pending = new LinkedHashMap<Object, Pending>();
+
+    // only used by the sender thread
+    private final Map<Object, Sent> sent = new HashMap<Object, Sent>();
+
+    // unique across sessions and restarts so a buddy never holds a different state under the same version
+    private final AtomicLong versions = new AtomicLong(System.currentTimeMillis() << 20);
+
+    private final AtomicLong replicated = new AtomicLong();
+    private final AtomicLong stateBytes = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long lag;
+    private volatile boolean healthy = true;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param capacity the number of sessions waiting to be sent before updates wait
+     * @param timeout  milliseconds an update waits for room in the queue
+     * @param batch    the number of sessions sent in one request
+     */
+    public SessionReplicator(Transport transport, int capacity, long timeout, int batch) {
+        this.transport = transport;
+        this.capacity = capacity;
+        this.timeout = timeout;
+        this.batch = batch;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+
+        running = true;
+        thread = new Thread(this, "SessionReplicator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Queues the serialized state of the session.
+     *
+     * @return false if the update was dropped
+     */
+    public boolean update(Object key, byte[] state) {
+        lock.lock();
+        try {
+            final Pending existing = pending.get(key);
+            if (existing != null) {
+                existing.state = state;
+                return true;
+            }
+
+            long wait = TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (pending.size() >= capacity && healthy && wait > 0) {
+                try {
+                    wait = notFull.awaitNanos(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            if (pending.size() >= capacity) {
+                dropped.incrementAndGet();
+                return false;
+            }
+
+            pending.put(key, new Pending(state));
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues the removal of the session, never waits.
+     */
+    public void remove(Object key) {
+        lock.lock();
+        try {
+            pending.remove(key);
+            pending.put(key, new Pending(null));
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void run() {
+        long backoff = 0;
+        while (running) {
+            final Map<Object, Pending> updates = take();
+            if (updates == null) continue;
+
+            try {
+                send(updates);
+                healthy = true;
+                backoff = 0;
+            } catch (IOException e) {
+                if (healthy) {
+                    logger.warning("Can't replicate the stateful sessions, retrying: " + e.getMessage());
+                }
+                healthy = false;
+                failures.incrementAndGet();
+
+                // the buddy may have been restarted or replaced
+                sent.clear();
+                requeue(updates);
+
+                backoff = Math.min(Math.max(backoff * 2, 100), 10000);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    // stopping
+                }
+            }
+        }
+    }
+
+    private Map<Object, Pending> take() {
+        lock.lock();
+        try {
+            while (pending.isEmpty()) {
+                if (!running) return null;
+                try {
+                    notEmpty.await();
+                } catch (InterruptedException e) {
+                    return null;
+                }
+            }
+
+            final Map<Object, Pending> updates = new LinkedHashMap<Object, Pending>();
+            for (Iterator<Map.Entry<Object, Pending>> iterator = pending.entrySet().iterator(); iterator.hasNext() && updates.size() < batch;) {
+                final Map.Entry<Object, Pending> entry = iterator.next();
+                updates.put(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+            notFull.signalAll();
+            return updates;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void send(Map<Object, Pending> updates) throws IOException {
+        final List<SessionDelta> deltas = new ArrayList<SessionDelta>(updates.size());
+        long oldest = Long.MAX_VALUE;
+
+        for (Map.Entry<Object, Pending> entry : updates.entrySet()) {
+            final Object key = entry.getKey();
+            final Pending update = entry.getValue();
+            oldest = Math.min(oldest, update.queued);
+
+            if (update.state == null) {
+                deltas.add(SessionDelta.removed(key));
+                continue;
+            }
+
+            final long version = versions.incrementAndGet();
+            final Sent previous = sent.get(key);
+            if (previous == null) {
+                deltas.add(SessionDelta.full(key, version, update.state));
+            } else {
+                deltas.add(SessionDelta.diff(key, version, previous.version, previous.state, update.state));
+            }
+        }
+
+        final Set<Object> missing = transport.send(deltas);
+
+        for (SessionDelta delta : deltas) {
+            final Object key = delta.getKey();
+            if (delta.isRemoved()) {
+                sent.remove(key);
+            } else if (missing != null && missing.contains(key)) {
+                // the buddy doesn't have the base version, send everything next time
+                sent.remove(key);
+            } else {
+                sent.put(key, new Sent(delta.getVersion(), updates.get(key).state));
+                replicated.incrementAndGet();
+                stateBytes.addAndGet(updates.get(key).state.length);
+                sentBytes.addAndGet(delta.size());
+            }
+        }
+
+        if (missing != null && !missing.isEmpty()) {
+            final Map<Object, Pending> retry = new LinkedHashMap<Object, Pending>();
+            for (Object key : missing) {
+                final Pending update = updates.get(key);
+                if (update != null) retry.put(key, update);
+            }
+            requeue(retry);
+        }
+
+        lag = System.currentTimeMillis() - oldest;
+    }
+
+    /**
+     * Puts back updates which weren't sent unless a newer one was queued in the meantime.
+     */
+    private void requeue(Map<Object, Pending> updates) {
+        lock.lock();
+        try {
+            final LinkedHashMap<Object, Pending> queue = new LinkedHashMap<Object, Pending>(updates);
+            for (Map.Entry<Object, Pending> entry : pending.entrySet()) {
+                queue.remove(entry.getKey());
+                queue.put(entry.getKey(), entry.getValue());
+            }
+            pending.clear();
+            pending.putAll(queue);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getPending() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return milliseconds the oldest update of the last batch waited before the buddy had it
+     */
+    public long getLag() {
+        return lag;
+    }
+
+    public long getReplicated() {
+        return replicated.get();
+    }
+
+    /**
+     * @return the size of the states replicated, to be compared with {@link #getSentBytes()}
+     */
+    public long getStateBytes() {
+        return stateBytes.get();
+    }
+
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    private static class Pending {
+        private byte[] state;
+        private final long queued = System.currentTimeMillis();
+
+        private Pending(byte[] state) {
+            this.state = state;
+        }
+    }
+
+    private static class Sent {
+        private final long version;
+        private final byte[] state;
+
+        private Sent(long version, byte[] state) {
+            this.version = version;
+            this.state = state;
+        }
+    }
+}
@@ -23,19 +23,26 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.openejb.OpenEJBRuntimeException;
+import org.apache.openejb.monitoring.Managed;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 import org.apache.openejb.util.Duration;
 
+@Managed
 public class SimpleCache<K, V> implements Cache<K, V> {
     public static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
 
@@ -49,6 +56,12 @@ public class SimpleCache<K, V> implements Cache<K, V> {
      */
     private final Queue<Entry> lru = new LinkedBlockingQueue<Entry>();
 
+    /**
+     * Values taken out of the cache which are not written yet, a check out
+     * takes them back if they are still queued or waits for the write
+     */
+    private final ConcurrentHashMap<K, Entry> passivating = new ConcurrentHashMap<K, Entry>();
+
     /**
      * Notified when values are loaded, stored, or timedOut
      */
@@ -70,6 +83,33 @@ public class SimpleCache<K, V> implements Cache<K, V> {
      */
     private int bulkPassivate;
 
+    /**
+     * The LRU is shrunk when it reaches the high watermark until it is down to
+     * the low watermark. They default to the capacity and to the capacity
+     * minus bulkPassivate.
+     */
+    private int highWatermark;
+    private int lowWatermark;
+
+    /**
+     * Number of threads writing the passivated values in parallel. With 0 the
+     * values are written by the thread processing the LRU.
+     */
+    private int passivationThreads;
+
+    /**
+     * Maximum number of values being passivated at once, the LRU isn't shrunk
+     * any further until they are written.
+     */
+    private int maxPassivating = 1000;
+
+    private ExecutorService passivationExecutor;
+
+    private final AtomicLong passivated = new AtomicLong();
+    private final AtomicLong activated = new AtomicLong();
+    private final AtomicLong rescued = new AtomicLong();
+    private final AtomicLong activationTime = new AtomicLong();
+
     /**
      * A bean may be destroyed if it isn't used in this length of time (in
      * milliseconds).
@@ -99,6 +139,17 @@ public class SimpleCache<K, V> implements Cache<K, V> {
     }
 
     public synchronized void init() {
+        if (passivationThreads > 0 && passivationExecutor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            passivationExecutor = Executors.newFixedThreadPool(passivationThreads, new ThreadFactory() {
+                public Thread newThread(Runnable runable) {
+                    Thread t = new Thread(runable, "Stateful passivation " + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
         if (frequency > 0 && future == null) {
             initScheduledExecutorService();
         
@@ -114,6 +165,11 @@ public class SimpleCache<K, V> implements Cache<K, V> {
         if (future != null) {
             future.cancel(false);
         }
+        if (passivationExecutor != null) {
+            // the queued values are still written
+            passivationExecutor.shutdown();
+            passivationExecutor = null;
+        }
     }
     
     private synchronized void initScheduledExecutorService() {
@@ -173,6 +229,82 @@ public class SimpleCache<K, V> implements Cache<K, V> {
         return timeOut;
     }
 
+    public synchronized int getHighWatermark() {
+        return highWatermark > 0 ? highWatermark : capacity;
+    }
+
+    public synchronized void setHighWatermark(int highWatermark) {
+        this.highWatermark = highWatermark;
+    }
+
+    public synchronized int getLowWatermark() {
+        if (lowWatermark > 0) return Math.min(lowWatermark, getHighWatermark());
+        return Math.max(0, getHighWatermark() - Math.max(1, bulkPassivate));
+    }
+
+    public synchronized void setLowWatermark(int lowWatermark) {
+        this.lowWatermark = lowWatermark;
+    }
+
+    public synchronized int getPassivationThreads() {
+        return passivationThreads;
+    }
+
+    public synchronized void setPassivationThreads(int passivationThreads) {
+        this.passivationThreads = passivationThreads;
+    }
+
+    public synchronized int getMaxPassivating() {
+        return maxPassivating;
+    }
+
+    public synchronized void setMaxPassivating(int maxPassivating) {
+        this.maxPassivating = maxPassivating;
+    }
+
+    @Managed
+    public int getSize() {
+        return cache.size();
+    }
+
+    @Managed
+    public int getPassivating() {
+        return passivating.size();
+    }
+
+    @Managed
+    public long getPassivated() {
+        return passivated.get();
+    }
+
+    @Managed
+    public long getActivated() {
+        return activated.get();
+    }
+
+    /**
+     * @return the values a check out took back before they were written
+     */
+    @Managed
+    public long getRescued() {
+        return rescued.get();
+    }
+
+    /**
+     * @return the bytes written by the passivator, when it keeps count
+     */
+    @Managed
+    public long getBytesWritten() {
+        final PassivationStrategy passivator = getPassivator();
+        return passivator instanceof SimplePassivater ? ((SimplePassivater) passivator).getBytesWritten() : 0;
+    }
+
+    @Managed
+    public double getAverageActivationTime() {
+        final long count = activated.get();
+        return count == 0 ? 0 : activationTime.get() / (count * 1000000.0);
+    }
+
     private static long ms(final String durationValue, final TimeUnit defaultTU) {
         final Duration duration = new Duration(durationValue.trim());
         // default was minutes
@@ -231,6 +363,13 @@ public class SimpleCache<K, V> implements Cache<K, V> {
         for (int i = 0; i < 10; i++) {
             // find the entry
             Entry entry = cache.get(key);
+            if (entry == null) {
+                final Entry queued = passivating.get(key);
+                if (queued != null && !takeBack(key, queued)) {
+                    // back in the cache, by this call or a concurrent one
+                    continue;
+                }
+            }
             if (entry == null) {
                 entry = loadEntry(key);
                 if (entry == null) {
@@ -247,6 +386,7 @@ public class SimpleCache<K, V> implements Cache<K, V> {
                     case CHECKED_OUT:
                         throw new IllegalStateException("The entry " + key + " is already checked-out");
                     case PASSIVATED:
+                    case STORING:
                         // Entry was passivated between get and lock, we need to load the Entry again
                         // If the cache somehow got corrupted by an entry containing in state PASSIVATED, this remove
                         // call will remove the corruption
@@ -296,6 +436,7 @@ public class SimpleCache<K, V> implements Cache<K, V> {
                         throw new IllegalStateException("The entry " + key + " is not checked-out");
                     }
                 case PASSIVATED:
+                case STORING:
                     // An entry in-use should not be passivated so we can only assume
                     // that the caller never checked out the bean in the first place
                     throw new IllegalStateException("The entry " + key + " is not checked-out");
@@ -345,6 +486,22 @@ public class SimpleCache<K, V> implements Cache<K, V> {
     }
 
     public void removeAll(CacheFilter<V> filter) {
+        // values waiting to be written are dropped
+        for (Iterator<Entry> iterator = passivating.values().iterator(); iterator.hasNext();) {
+            Entry entry = iterator.next();
+
+            entry.lock.lock();
+            try {
+                if (entry.getState() == EntryState.PASSIVATED && filter.matches(entry.getValue())) {
+                    iterator.remove();
+                    entry.setState(EntryState.REMOVED);
+                    entry.stored.countDown();
+                }
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+
         for (Iterator<Entry> iterator = cache.values().iterator(); iterator.hasNext();) {
             Entry entry = iterator.next();
 
@@ -385,6 +542,7 @@ public class SimpleCache<K, V> implements Cache<K, V> {
                         // bean is in use so cannot be passivated
                         continue;
                     case PASSIVATED:
+                    case STORING:
                         // Entry was passivated between get and lock
                         iterator.remove();
                         continue;
@@ -414,84 +572,151 @@ public class SimpleCache<K, V> implements Cache<K, V> {
             }
         }
 
-        // if there are to many beans in the lru, shink is by on bulkPassivate size
+        // if there are to many beans in the lru, shrink it down to the low watermark by bulkPassivate sized batches
         // bulkPassivate size is just an estimate, as locked or timed out beans are skipped
-        if (lru.size() >= getCapacity()) {
-            Map<K, V> valuesToStore = new LinkedHashMap<K, V>();
-            List<Entry> entries = new ArrayList<Entry>();
+        if (lru.size() >= getHighWatermark()) {
+            final int lowWatermark = getLowWatermark();
+            final int maxPassivating = getMaxPassivating();
 
             int bulkPassivate = getBulkPassivate();
             if (bulkPassivate < 1) bulkPassivate = 1;
-            for (int i = 0; i < bulkPassivate; i++) {
-                Entry entry = lru.poll();
-                if (entry == null) {
-                    // lru is empty
+
+            do {
+                if (passivating.size() >= maxPassivating) {
+                    // the writes are late, the next run continues
                     break;
                 }
 
-                if (!entry.lock.tryLock()) {
-                    // If two threads are running in this method, you could get a deadlock
-                    // due to lock acquisition order since this section gathers a group of
-                    // locks. Simply skip beans we can not obtain a lock on
-                    continue;
-                }
-                try {
-                    switch (entry.getState()) {
-                        case AVAILABLE:
-                            break;
-                        case CHECKED_OUT:
-                            // bean is in use so cannot be passivated
-                            continue;
-                        case PASSIVATED:
-                            // Entry was passivated between get and lock
-                            lru.remove(entry);
-                            continue;
-                        case REMOVED:
-                            // Entry was remmoved between get and lock
-                            lru.remove(entry);
-                            continue;
+                final List<Entry> entries = new ArrayList<Entry>(bulkPassivate);
+                for (int i = 0; i < bulkPassivate; i++) {
+                    Entry entry = lru.poll();
+                    if (entry == null) {
+                        // lru is empty
+                        break;
                     }
 
-                    // remove it from the cache
-                    cache.remove(entry.getKey());
-
-                    // there is a race condition where the item could get added back into the lru
-                    lru.remove(entry);
+                    if (!entry.lock.tryLock()) {
+                        // If two threads are running in this method, you could get a deadlock
+                        // due to lock acquisition order since this section gathers a group of
+                        // locks. Simply skip beans we can not obtain a lock on
+                        continue;
+                    }
+                    try {
+                        switch (entry.getState()) {
+                            case AVAILABLE:
+                                break;
+                            case CHECKED_OUT:
+                                // bean is in use so cannot be passivated
+                                continue;
+                            case PASSIVATED:
+                            case STORING:
+                                // Entry was passivated between get and lock
+                                lru.remove(entry);
+                                continue;
+                            case REMOVED:
+                                // Entry was remmoved between get and lock
+                                lru.remove(entry);
+                                continue;
+                        }
 
-                    // if the entry is actually timed out we just destroy it; otherwise it is written to disk
-                    if (entry.isTimedOut()) {
-                        entry.setState(EntryState.REMOVED);
-                        if (listener != null) {
-                            try {
-                                listener.timedOut(entry.getValue());
-                            } catch (Exception e) {
-                                logger.error("An unexpected exception occured from timedOut callback", e);
+                        // there is a race condition where the item could get added back into the lru
+                        lru.remove(entry);
+
+                        // if the entry is actually timed out we just destroy it; otherwise it is written to disk
+                        if (entry.isTimedOut()) {
+                            cache.remove(entry.getKey());
+                            entry.setState(EntryState.REMOVED);
+                            if (listener != null) {
+                                try {
+                                    listener.timedOut(entry.getValue());
+                                } catch (Exception e) {
+                                    logger.error("An unexpected exception occured from timedOut callback", e);
+                                }
                             }
+                        } else {
+                            // visible as passivating before it leaves the cache so a check out always finds it
+                            entry.setState(EntryState.PASSIVATED);
+                            entry.stored = new CountDownLatch(1);
+                            passivating.put(entry.getKey(), entry);
+                            cache.remove(entry.getKey());
+                            entries.add(entry);
                         }
-                    } else {
-                        // entry will be passivated, so we need to obtain an additional lock until the passivation is complete
-                        entry.lock.lock();
-                        entries.add(entry);
-
-                        entry.setState(EntryState.PASSIVATED);
-                        valuesToStore.put(entry.getKey(), entry.getValue());
+                    } finally {
+                        entry.lock.unlock();
                     }
-                } finally {
-                    entry.lock.unlock();
                 }
+
+                if (!entries.isEmpty()) {
+                    passivate(entries);
+                }
+            } while (lru.size() > lowWatermark && !lru.isEmpty());
+        }
+    }
+
+    /**
+     * Writes the entries on one of the passivation threads, or on this one
+     * if there are none.
+     */
+    private void passivate(final List<Entry> entries) {
+        final ExecutorService executor;
+        synchronized (this) {
+            executor = passivationExecutor;
+        }
+
+        if (executor != null) {
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        storeEntries(entries);
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                // shutting down
             }
+        }
+        storeEntries(entries);
+    }
 
-            if (!valuesToStore.isEmpty()) {
-                try {
-                    storeEntries(valuesToStore);
-                } finally {
-                    for (Entry entry : entries) {
-                        // release the extra passivation lock
-                        entry.lock.unlock();
+    /**
+     * Called by checkOut for an entry which is being passivated, puts it back
+     * in the cache if it wasn't written yet.
+     *
+     * @return true once the entry is written and has to be loaded, false if it
+     * is back in the cache (or removed) and has to be looked up again
+     */
+    private boolean takeBack(K key, Entry entry) throws InterruptedException {
+        final CountDownLatch stored;
+        entry.lock.lock();
+        try {
+            switch (entry.getState()) {
+                case PASSIVATED:
+                    if (passivating.get(key) != entry) {
+                        // written since it was looked up
+                        return true;
                     }
-                }
+                    // still queued, nothing was called on the bean yet
+                    entry.setState(EntryState.AVAILABLE);
+                    passivating.remove(key, entry);
+                    entry.stored.countDown();
+
+                    if (cache.putIfAbsent(key, entry) == null) {
+                        rescued.incrementAndGet();
+                    }
+                    return false;
+                case STORING:
+                    stored = entry.stored;
+                    break;
+                default:
+                    // taken back by a concurrent check out, or removed
+                    return false;
             }
+        } finally {
+            entry.lock.unlock();
         }
+
+        stored.await();
+        return true;
     }
 
     private Entry loadEntry(K key) throws Exception {
@@ -501,6 +726,7 @@ public class SimpleCache<K, V> implements Cache<K, V> {
         }
 
         V value = null;
+        final long start = System.nanoTime();
         try {
             value = (V) passivator.activate(key);
         } catch (Exception e) {
@@ -510,6 +736,8 @@ public class SimpleCache<K, V> implements Cache<K, V> {
         if (value == null) {
             return null;
         }
+        activationTime.addAndGet(System.nanoTime() - start);
+        activated.incrementAndGet();
 
         CacheListener<V> listener = this.getListener();
         if (listener != null) {
@@ -520,7 +748,46 @@ public class SimpleCache<K, V> implements Cache<K, V> {
         return entry;
     }
 
+    private void storeEntries(List<Entry> entries) {
+        Map<K, V> entriesToStore = new LinkedHashMap<K, V>();
+        for (Entry entry : entries) {
+            entry.lock.lock();
+            try {
+                if (entry.getState() != EntryState.PASSIVATED) {
+                    // taken back by a check out or removed while queued
+                    continue;
+                }
+                // from now on a check out waits until the value is written
+                entry.setState(EntryState.STORING);
+                entriesToStore.put(entry.getKey(), entry.getValue());
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+
+        try {
+            storeEntries(entriesToStore);
+        } finally {
+            for (Entry entry : entries) {
+                entry.lock.lock();
+                try {
+                    if (entry.getState() == EntryState.STORING) {
+                        passivating.remove(entry.getKey(), entry);
+                        entry.setState(EntryState.PASSIVATED);
+                        entry.stored.countDown();
+                    }
+                } finally {
+                    entry.lock.unlock();
+                }
+            }
+        }
+    }
+
     private void storeEntries(Map<K, V> entriesToStore) {
+        if (entriesToStore.isEmpty()) {
+            return;
+        }
+
         CacheListener<V> listener = this.getListener();
         for (Iterator<java.util.Map.Entry<K, V>> iterator = entriesToStore.entrySet().iterator(); iterator.hasNext();) {
             java.util.Map.Entry<K, V> entry = iterator.next();
@@ -543,13 +810,14 @@ public class SimpleCache<K, V> implements Cache<K, V> {
 
         try {
             passivator.passivate(entriesToStore);
+            passivated.addAndGet(entriesToStore.size());
         } catch (Exception e) {
             logger.error("An unexpected exception occured while writting the entries to disk", e);
         }
     }
 
     private enum EntryState {
-        AVAILABLE, CHECKED_OUT, PASSIVATED, REMOVED
+        AVAILABLE, CHECKED_OUT, PASSIVATED, STORING, REMOVED
     }
 
     private class Entry {
@@ -557,6 +825,8 @@ public class SimpleCache<K, V> implements Cache<K, V> {
         private final V value;
         private final ReentrantLock lock = new ReentrantLock();
         private EntryState state;
+        // released once the passivation is over
+        private CountDownLatch stored;
         private long lastAccess;
         private long timeOut;
 
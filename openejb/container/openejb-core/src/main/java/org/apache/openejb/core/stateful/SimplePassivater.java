@@ -21,6 +21,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.openejb.SystemException;
 import org.apache.openejb.core.EnvProps;
@@ -34,6 +35,7 @@ import org.apache.openejb.util.Logger;
 public class SimplePassivater implements PassivationStrategy {
     private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
     private File sessionDirectory;
+    private final AtomicLong bytesWritten = new AtomicLong();
 
     public SimplePassivater() throws SystemException {
         init(null);
@@ -73,6 +75,7 @@ public class SimplePassivater implements PassivationStrategy {
                 sessionFile.deleteOnExit();
                 IO.close(oos);
             }
+            bytesWritten.addAndGet(sessionFile.length());
 
         } catch (java.io.NotSerializableException nse) {
             logger.error("Passivation failed ", nse);
@@ -89,6 +92,10 @@ public class SimplePassivater implements PassivationStrategy {
         }
     }
 
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
     public Object activate(Object primaryKey) throws SystemException {
         try {
             String filename = primaryKey.toString().replace(':', '=');
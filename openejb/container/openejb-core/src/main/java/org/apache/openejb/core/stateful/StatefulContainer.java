@@ -27,6 +27,7 @@ import org.apache.openejb.ProxyInfo;
 import org.apache.openejb.RpcContainer;
 import org.apache.openejb.SystemException;
 import org.apache.openejb.cdi.CdiEjbBean;
+import org.apache.openejb.core.DeploymentRegistry;
 import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.InstanceContext;
 import org.apache.openejb.core.Operation;
@@ -43,7 +44,6 @@ import org.apache.openejb.core.transaction.JtaTransactionPolicy;
 import org.apache.openejb.core.transaction.TransactionPolicy;
 import org.apache.openejb.core.transaction.TransactionPolicy.TransactionSynchronization;
 import org.apache.openejb.loader.SystemInstance;
-import org.apache.openejb.monitoring.LocalMBeanServer;
 import org.apache.openejb.monitoring.ManagedMBean;
 import org.apache.openejb.monitoring.ObjectNameBuilder;
 import org.apache.openejb.monitoring.StatsInterceptor;
@@ -65,7 +65,6 @@ import javax.ejb.RemoveException;
 import javax.ejb.SessionBean;
 import javax.ejb.SessionContext;
 import javax.enterprise.context.Dependent;
-import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import javax.naming.Context;
 import javax.naming.NamingException;
@@ -103,7 +102,7 @@ public class StatefulContainer implements RpcContainer {
     /**
      * Index used for getDeployments() and getDeploymentInfo(deploymentId).
      */
-    protected final Map<Object, BeanContext> deploymentsById = new HashMap<Object, BeanContext>();
+    protected final DeploymentRegistry deploymentsById = new DeploymentRegistry();
 
     protected final Cache<Object, Instance> cache;
     private final ConcurrentHashMap<Object, Instance> checkedOutInstances = new ConcurrentHashMap<Object, Instance>();
@@ -239,11 +238,11 @@ public class StatefulContainer implements RpcContainer {
         return containerID;
     }
 
-    public synchronized BeanContext[] getBeanContexts() {
-        return deploymentsById.values().toArray(new BeanContext[deploymentsById.size()]);
+    public BeanContext[] getBeanContexts() {
+        return deploymentsById.values();
     }
 
-    public synchronized BeanContext getBeanContext(Object deploymentID) {
+    public BeanContext getBeanContext(Object deploymentID) {
         return deploymentsById.get(deploymentID);
     }
 
@@ -256,16 +255,9 @@ public class StatefulContainer implements RpcContainer {
     public synchronized void undeploy(final BeanContext beanContext) throws OpenEJBException {
         Data data = (Data) beanContext.getContainerData();
 
-        MBeanServer server = LocalMBeanServer.get();
-        for (ObjectName objectName : data.jmxNames) {
-            try {
-                server.unregisterMBean(objectName);
-            } catch (Exception e) {
-                logger.error("Unable to unregister MBean "+objectName);
-            }
-        }
+        beanContext.unregisterMBeans();
 
-        deploymentsById.remove(beanContext.getDeploymentID());
+        deploymentsById.remove(beanContext);
         beanContext.setContainer(null);
         beanContext.setContainerData(null);
 
@@ -281,7 +273,7 @@ public class StatefulContainer implements RpcContainer {
     public synchronized void deploy(BeanContext beanContext) throws OpenEJBException {
         Map<Method, MethodType> methods = getLifecycleMethodsOfInterface(beanContext);
 
-        deploymentsById.put(beanContext.getDeploymentID(), beanContext);
+        deploymentsById.put(beanContext);
         beanContext.setContainer(this);
         Data data = new Data(new Index<Method, MethodType>(methods));
         beanContext.setContainerData(data);
@@ -291,7 +283,6 @@ public class StatefulContainer implements RpcContainer {
             StatsInterceptor stats = new StatsInterceptor(beanContext.getBeanClass());
             beanContext.addFirstSystemInterceptor(stats);
 
-            MBeanServer server = LocalMBeanServer.get();
 
             ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
             jmxName.set("J2EEServer", "openejb");
@@ -304,11 +295,20 @@ public class StatefulContainer implements RpcContainer {
             // register the invocation stats interceptor
             try {
                 ObjectName objectName = jmxName.set("j2eeType", "Invocations").build();
-                server.registerMBean(new ManagedMBean(stats), objectName);
-                data.jmxNames.add(objectName);
+                beanContext.registerMBean(new ManagedMBean(stats), objectName);
             } catch (Exception e) {
                 logger.error("Unable to register MBean ", e);
             }
+
+            // register the passivation stats of the cache, shared by the beans of this container
+            if (cache instanceof SimpleCache) {
+                try {
+                    ObjectName objectName = jmxName.set("j2eeType", "Cache").build();
+                    beanContext.registerMBean(new ManagedMBean(cache), objectName);
+                } catch (Exception e) {
+                    logger.error("Unable to register MBean ", e);
+                }
+            }
         }
 
         try {
@@ -1163,7 +1163,6 @@ public class StatefulContainer implements RpcContainer {
 
     private static class Data {
         private final Index<Method, MethodType> methodIndex;
-        private final List<ObjectName> jmxNames = new ArrayList<ObjectName>();
         
         private Data(Index<Method, MethodType> methodIndex) {
             this.methodIndex = methodIndex;
@@ -87,6 +87,22 @@ public class StatefulContainerFactory {
     public void setFrequency(String s) {
         properties.put("Frequency", s);
     }
+
+    public void setHighWatermark(String s) {
+        properties.put("HighWatermark", s);
+    }
+
+    public void setLowWatermark(String s) {
+        properties.put("LowWatermark", s);
+    }
+
+    public void setPassivationThreads(String s) {
+        properties.put("PassivationThreads", s);
+    }
+
+    public void setMaxPassivating(String s) {
+        properties.put("MaxPassivating", s);
+    }
     
     public Properties getProperties() {
         return properties;
@@ -40,6 +40,7 @@ import org.apache.openejb.InterfaceType;
 import org.apache.openejb.OpenEJBException;
 import org.apache.openejb.ProxyInfo;
 import org.apache.openejb.SystemException;
+import org.apache.openejb.core.DeploymentRegistry;
 import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
@@ -61,7 +62,7 @@ public class StatelessContainer implements org.apache.openejb.RpcContainer {
 
     private StatelessInstanceManager instanceManager;
 
-    private HashMap<String, BeanContext> deploymentRegistry = new HashMap<String, BeanContext>();
+    private final DeploymentRegistry deploymentRegistry = new DeploymentRegistry();
 
     private Object containerID = null;
     private SecurityService securityService;
@@ -77,13 +78,12 @@ public class StatelessContainer implements org.apache.openejb.RpcContainer {
         }
     }
 
-    public synchronized BeanContext[] getBeanContexts() {
-        return deploymentRegistry.values().toArray(new BeanContext[deploymentRegistry.size()]);
+    public BeanContext[] getBeanContexts() {
+        return deploymentRegistry.values();
     }
 
-    public synchronized BeanContext getBeanContext(Object deploymentID) {
-        String id = (String) deploymentID;
-        return deploymentRegistry.get(id);
+    public BeanContext getBeanContext(Object deploymentID) {
+        return deploymentRegistry.get(deploymentID);
     }
 
     public ContainerType getContainerType() {
@@ -95,11 +95,8 @@ public class StatelessContainer implements org.apache.openejb.RpcContainer {
     }
 
     public void deploy(BeanContext beanContext) throws OpenEJBException {
-        String id = (String) beanContext.getDeploymentID();
-        synchronized (this) {
-            deploymentRegistry.put(id, beanContext);
-            beanContext.setContainer(this);
-        }
+        beanContext.setContainer(this);
+        deploymentRegistry.put(beanContext);
 
         EjbTimerService timerService = beanContext.getEjbTimerService();
         if (timerService != null) {
@@ -123,12 +120,9 @@ public class StatelessContainer implements org.apache.openejb.RpcContainer {
         
         instanceManager.undeploy(beanContext);
         
-        synchronized (this) {
-            String id = (String) beanContext.getDeploymentID();
-            beanContext.setContainer(null);
-            beanContext.setContainerData(null);
-            deploymentRegistry.remove(id);
-        }
+        deploymentRegistry.remove(beanContext);
+        beanContext.setContainer(null);
+        beanContext.setContainerData(null);
     }
 
     /**
@@ -152,7 +146,7 @@ public class StatelessContainer implements org.apache.openejb.RpcContainer {
 
         Method runMethod = beanContext.getMatchingBeanMethod(callMethod);
 
-        ThreadContext callContext = new ThreadContext(beanContext, primKey);
+        ThreadContext callContext = ThreadContext.obtain(beanContext, primKey);
         ThreadContext oldCallContext = ThreadContext.enter(callContext);
         Object bean = null;
         try {
@@ -188,6 +182,7 @@ public class StatelessContainer implements org.apache.openejb.RpcContainer {
                 }
             }
             ThreadContext.exit(oldCallContext);
+            ThreadContext.release(callContext);
         }
     }
 
@@ -36,7 +36,6 @@ import javax.ejb.ConcurrentAccessTimeoutException;
 import javax.ejb.EJBContext;
 import javax.ejb.SessionBean;
 import javax.ejb.SessionContext;
-import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import javax.naming.Context;
 import javax.naming.NamingException;
@@ -51,7 +50,6 @@ import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.core.interceptor.InterceptorStack;
 import org.apache.openejb.core.timer.TimerServiceWrapper;
 import org.apache.openejb.loader.Options;
-import org.apache.openejb.monitoring.LocalMBeanServer;
 import org.apache.openejb.monitoring.ManagedMBean;
 import org.apache.openejb.monitoring.ObjectNameBuilder;
 import org.apache.openejb.monitoring.StatsInterceptor;
@@ -331,7 +329,6 @@ public class StatelessInstanceManager {
         jmxName.set("j2eeType", "");
         jmxName.set("name", beanContext.getEjbName());
 
-        final MBeanServer server = LocalMBeanServer.get();
 
         // Create stats interceptor
         if (StatsInterceptor.isStatsActivated()) {
@@ -341,8 +338,7 @@ public class StatelessInstanceManager {
             // register the invocation stats interceptor
             try {
                 ObjectName objectName = jmxName.set("j2eeType", "Invocations").build();
-                server.registerMBean(new ManagedMBean(stats), objectName);
-                data.add(objectName);
+                beanContext.registerMBean(new ManagedMBean(stats), objectName);
             } catch (Exception e) {
                 logger.error("Unable to register MBean ", e);
             }
@@ -351,8 +347,7 @@ public class StatelessInstanceManager {
         // register the pool
         try {
             ObjectName objectName = jmxName.set("j2eeType", "Pool").build();
-            server.registerMBean(new ManagedMBean(data.pool), objectName);
-            data.add(objectName);
+            beanContext.registerMBean(new ManagedMBean(data.pool), objectName);
         } catch (Exception e) {
             logger.error("Unable to register MBean ", e);
         }
@@ -389,14 +384,7 @@ public class StatelessInstanceManager {
         Data data = (Data) beanContext.getContainerData();
         if (data == null) return;
 
-        MBeanServer server = LocalMBeanServer.get();
-        for (ObjectName objectName : data.jmxNames) {
-            try {
-                server.unregisterMBean(objectName);
-            } catch (Exception e) {
-                logger.error("Unable to unregister MBean "+objectName);
-            }
-        }
+        beanContext.unregisterMBeans();
 
         try {
             if (!data.closePool()) {
@@ -413,7 +401,6 @@ public class StatelessInstanceManager {
         private final Pool<Instance> pool;
         private final Duration accessTimeout;
         private final Duration closeTimeout;
-        private final List<ObjectName> jmxNames = new ArrayList<ObjectName>();
         private final SessionContext sessionContext;
 
         private Data(Pool<Instance> pool, Duration accessTimeout, Duration closeTimeout) {
@@ -442,11 +429,6 @@ public class StatelessInstanceManager {
         public boolean closePool() throws InterruptedException {
             return pool.close(closeTimeout.getTime(), closeTimeout.getUnit());
         }
-
-        public ObjectName add(ObjectName name) {
-            jmxNames.add(name);
-            return name;
-        }
     }
 
     private class InstanceCreatorRunnable implements Runnable {
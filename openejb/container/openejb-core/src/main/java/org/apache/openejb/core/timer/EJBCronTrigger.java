@@ -23,6 +23,7 @@ import org.quartz.impl.triggers.CronTriggerImpl;
 import javax.ejb.ScheduleExpression;
 import java.text.DateFormatSymbols;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
@@ -99,6 +100,8 @@ public class EJBCronTrigger extends CronTriggerImpl {
 
 	private TimeZone timezone;
 
+	private final CompiledSchedule schedule;
+
 	public EJBCronTrigger(ScheduleExpression expr) throws ParseException {
 	    
 		Map<Integer, String> fieldValues = new LinkedHashMap<Integer, String>();
@@ -132,6 +135,8 @@ public class EJBCronTrigger extends CronTriggerImpl {
 		if (!errors.isEmpty()) {
 			throw new ParseException(errors);
 		}
+
+		schedule = new CompiledSchedule(expressions);
 	}
 
 	/**
@@ -362,11 +367,19 @@ public class EJBCronTrigger extends CronTriggerImpl {
 		
 	}
 
+	/**
+	 * Looks for the next time allowed by the {@link CompiledSchedule}, the
+	 * bitmasks of the expressions are searched field by field in the local
+	 * time of the timezone.
+	 */
 	@Override
 	public Date getFireTimeAfter(Date afterTime) {
 	    log.debug("start to getFireTimeAfter:"+afterTime);
+	    if (afterTime == null) {
+	        afterTime = new Date();
+	    }
+
 		Calendar calendar = new GregorianCalendar(timezone);
-        // calendar.setLenient(false);
 		calendar.setFirstDayOfWeek(Calendar.SUNDAY);
 
 		// Calculate starting time
@@ -377,106 +390,11 @@ public class EJBCronTrigger extends CronTriggerImpl {
 			calendar.add(Calendar.SECOND, 1);
 		}
 
-		// Calculate time to give up scheduling
-		Calendar stopCalendar = new GregorianCalendar(timezone);
-		if (getEndTime() != null) {
-			stopCalendar.setTime(getEndTime());
-		} else {
-			int stopYear = calendar.get(Calendar.YEAR) + 100;
-			stopCalendar.set(Calendar.YEAR, stopYear);
-		}
+		Date fireTime = schedule.getNextTime(calendar, getEndTime());
 
-		int currentFieldIndex = 0;
-		
-        while (currentFieldIndex <= 6 && calendar.before(stopCalendar)) {
+		log.debug("end of getFireTimeAfter, result is:" + fireTime);
 
-           
-            FieldExpression expr = expressions[currentFieldIndex];
-            Integer value = expr.getNextValue(calendar);
-
-            /*
-             * 18.2.1.2 Expression Rules
-             * If dayOfMonth has a non-wildcard value and dayOfWeek has a non-wildcard value, then either the
-             * dayOfMonth field or the dayOfWeek field must match the current day (even though the other of the
-             * two fields need not match the current day).
-             */
-            if (currentFieldIndex == 2 && !(expressions[3] instanceof AsteriskExpression)) {
-                Calendar clonedCalendarDayOfWeek = (Calendar) calendar.clone();
-                Integer nextDayOfWeek = expressions[3].getNextValue(clonedCalendarDayOfWeek);
-                while (nextDayOfWeek == null) {
-                    clonedCalendarDayOfWeek.add(Calendar.DAY_OF_MONTH, 1);
-                    nextDayOfWeek = expressions[3].getNextValue(clonedCalendarDayOfWeek);
-                }
-
-                if (nextDayOfWeek != null) {
-                    clonedCalendarDayOfWeek.set(expressions[3].field, nextDayOfWeek);
-                    int newDayOfMonth = clonedCalendarDayOfWeek.get(expressions[2].field);
-                    
-                    if (value == null) {
-                        value = newDayOfMonth;
-                    } else if (clonedCalendarDayOfWeek.get(expressions[1].field)==calendar.get(expressions[1].field)){
-                        value = Math.min(value, newDayOfMonth);
-                    } 
-                    
-                    //Next valid DayOfWeek might exist in next month.
-                    if(expressions[1].getNextValue(clonedCalendarDayOfWeek)==null){
-                        return null;
-                    } else if (value != calendar.get(expressions[2].field)
-                            && clonedCalendarDayOfWeek.get(expressions[1].field) > calendar.get(expressions[1].field)) {
-                        calendar.set(Calendar.MONTH, clonedCalendarDayOfWeek.get(Calendar.MONTH));
-                    }
-                }
-            }
-
-            if (currentFieldIndex >= 1 && value == null) {
-
-                if (currentFieldIndex == 3 && !(expressions[2] instanceof AsteriskExpression)) {
-                    /*
-                     *18.2.1.2 Expression Rules, the day has been resolved when dayOfMonth expression
-                     *is not AsteriskExpression.
-                     */
-                    currentFieldIndex++;
-                } else {
-                    // No suitable value was found, so move back to the previous field
-                    // and increase the value
-                    // When current field is HOUR_OF_DAY, its upper field is DAY_OF_MONTH, so we need to -2 due to
-                    // DAY_OF_WEEK.
-                    int parentFieldIndex = currentFieldIndex == 4 ? currentFieldIndex - 2 : currentFieldIndex - 1;
-                    int maxAffectedFieldType = upadteCalendar(calendar, expressions[parentFieldIndex].field, 1);
-                    currentFieldIndex = CALENDAR_FIELD_TYPE_ORDERED_INDEX_MAP.get(maxAffectedFieldType);
-                    resetFields(calendar, maxAffectedFieldType, false);
-                }
-                
-            } else if (value != null) {
-                
-                int oldValue = calendar.get(expr.field);
-                if (oldValue != value) {
-                    
-                    if (currentFieldIndex == 3 && !(expressions[2] instanceof AsteriskExpression)) {
-                        /*
-                         *18.2.1.2 Expression Rules, the day has been resolved when dayOfMonth expression
-                         *is not AsteriskExpression.
-                         */
-                        currentFieldIndex++;
-                    } else {
-                        // The value has changed, so update the calendar and reset all
-                        // less significant fields
-                        calendar.set(expr.field, value);
-                        resetFields(calendar, expr.field, false);
-                        currentFieldIndex++;
-                    }
-                } else {
-                    currentFieldIndex++;
-                }
-            } else {
-                log.debug("end of getFireTimeAfter, result is:" + null);
-                return null;
-            }
-        }
-		
-		log.debug("end of getFireTimeAfter, result is:"+ (calendar.before(stopCalendar) ? calendar.getTime() : null));
-		
-		return calendar.before(stopCalendar) ? calendar.getTime() : null;
+		return fireTime;
 	}
 
 	/**
@@ -516,6 +434,279 @@ public class EJBCronTrigger extends CronTriggerImpl {
         }
     }
 
+	/**
+	 * The values allowed by the expressions as bitmasks, bit n standing for
+	 * the value n of the field, so looking for the next allowed value is a
+	 * single mask and numberOfTrailingZeros instead of walking a Calendar.
+	 *
+	 * The days of month which depend on the month ("Last", "-3", "1st Mon")
+	 * are computed once per month and the days of week are turned into days
+	 * of month from the weekday the month starts with. Dates are computed
+	 * from the fields directly, the timezone is only applied to the time
+	 * found.
+	 */
+	private static class CompiledSchedule {
+
+		private static final int MAX_YEAR = 9999;
+
+		// null when any year is allowed
+		private final BitSet years;
+		private final long months;
+		private final long hours;
+		private final long minutes;
+		private final long seconds;
+
+		private final FieldExpression daysOfMonthExpression;
+		private final long daysOfMonth;
+		private final boolean anyDayOfMonth;
+		private final boolean anyDayOfWeek;
+
+		// the days of month matching the days of week, indexed by the weekday of the 1st
+		private final long[] daysOfWeek = new long[8];
+
+		// the last month computed for a dynamic day of month expression
+		private MonthDays monthDays;
+
+		public CompiledSchedule(FieldExpression[] expressions) {
+			years = expressions[0] instanceof AsteriskExpression ? null : values(expressions[0], 1, MAX_YEAR);
+			months = mask(values(expressions[1], 0, 11));
+			hours = mask(values(expressions[4], 0, 23));
+			minutes = mask(values(expressions[5], 0, 59));
+			seconds = mask(values(expressions[6], 0, 59));
+
+			daysOfMonthExpression = expressions[2];
+			daysOfMonth = daysOfMonthExpression.isDynamic() ? 0 : mask(values(daysOfMonthExpression, 1, 31));
+			anyDayOfMonth = expressions[2] instanceof AsteriskExpression;
+			anyDayOfWeek = expressions[3] instanceof AsteriskExpression;
+
+			long weekdays = mask(values(expressions[3], 1, 7));
+			for (int first = 1; first <= 7; first++) {
+				for (int day = 1; day <= 31; day++) {
+					int weekday = (first - 1 + day - 1) % 7 + 1;
+					if ((weekdays & (1L << weekday)) != 0) {
+						daysOfWeek[first] |= 1L << day;
+					}
+				}
+			}
+		}
+
+		private static BitSet values(FieldExpression expression, int min, int max) {
+			BitSet values = new BitSet(max + 1);
+			expression.addValues(values, null, min, max);
+			return values;
+		}
+
+		private static long mask(BitSet values) {
+			long mask = 0;
+			for (int value = values.nextSetBit(0); value >= 0 && value < 64; value = values.nextSetBit(value + 1)) {
+				mask |= 1L << value;
+			}
+			return mask;
+		}
+
+		private static int next(long mask, int from) {
+			if (from > 63) {
+				return -1;
+			}
+			long remaining = mask & (-1L << from);
+			return remaining == 0 ? -1 : Long.numberOfTrailingZeros(remaining);
+		}
+
+		/**
+		 * @param calendar
+		 *            the first time which may be returned, in the timezone of the trigger
+		 * @param endTime
+		 *            the time to give up scheduling, 100 years from the calendar if null
+		 * @return the first allowed time from the calendar, keeping its milliseconds,
+		 *         or null if there is none before the end time
+		 */
+		public Date getNextTime(Calendar calendar, Date endTime) {
+			long from = calendar.getTimeInMillis();
+			long stop = Long.MAX_VALUE;
+			int stopYear;
+			if (endTime != null) {
+				Calendar stopCalendar = (Calendar) calendar.clone();
+				stopCalendar.setTime(endTime);
+				stop = endTime.getTime();
+				stopYear = stopCalendar.get(Calendar.YEAR);
+			} else {
+				stopYear = calendar.get(Calendar.YEAR) + 100;
+			}
+
+			int year = calendar.get(Calendar.YEAR);
+			int month = calendar.get(Calendar.MONTH);
+			int day = calendar.get(Calendar.DAY_OF_MONTH);
+			int hour = calendar.get(Calendar.HOUR_OF_DAY);
+			int minute = calendar.get(Calendar.MINUTE);
+			int second = calendar.get(Calendar.SECOND);
+			int millisecond = calendar.get(Calendar.MILLISECOND);
+
+			while (year <= stopYear) {
+				if (years != null && !years.get(year)) {
+					year = years.nextSetBit(year);
+					if (year < 0) {
+						return null;
+					}
+					month = 0;
+					day = 1;
+					hour = minute = second = 0;
+					continue;
+				}
+
+				int next = next(months, month);
+				if (next < 0) {
+					year++;
+					month = 0;
+					day = 1;
+					hour = minute = second = 0;
+					continue;
+				} else if (next != month) {
+					month = next;
+					day = 1;
+					hour = minute = second = 0;
+				}
+
+				next = next(getDays(year, month), day);
+				if (next < 0) {
+					month++;
+					day = 1;
+					hour = minute = second = 0;
+					continue;
+				} else if (next != day) {
+					day = next;
+					hour = minute = second = 0;
+				}
+
+				next = next(hours, hour);
+				if (next < 0) {
+					day++;
+					hour = minute = second = 0;
+					continue;
+				} else if (next != hour) {
+					hour = next;
+					minute = second = 0;
+				}
+
+				next = next(minutes, minute);
+				if (next < 0) {
+					hour++;
+					minute = second = 0;
+					continue;
+				} else if (next != minute) {
+					minute = next;
+					second = 0;
+				}
+
+				next = next(seconds, second);
+				if (next < 0) {
+					minute++;
+					second = 0;
+					continue;
+				}
+				second = next;
+
+				// a local time skipped when the clocks go forward is moved after the gap as the lenient calendar does
+				calendar.clear();
+				calendar.set(year, month, day, hour, minute, second);
+				calendar.set(Calendar.MILLISECOND, millisecond);
+				long time = calendar.getTimeInMillis();
+				if (endTime == null && year == stopYear) {
+					// the current date and time, a hundred years from now
+					Calendar stopCalendar = new GregorianCalendar(calendar.getTimeZone());
+					stopCalendar.set(Calendar.YEAR, stopYear);
+					stop = stopCalendar.getTimeInMillis();
+				}
+				if (time >= stop) {
+					return null;
+				} else if (time >= from) {
+					return new Date(time);
+				}
+
+				// the local time was repeated when the clocks went back, the first one already passed
+				second++;
+			}
+
+			return null;
+		}
+
+		private long getDays(int year, int month) {
+			int length = lengthOfMonth(year, month);
+			long days = ((1L << length) - 1) << 1;
+
+			long daysOfMonth = this.daysOfMonth;
+			if (daysOfMonthExpression.isDynamic()) {
+				daysOfMonth = getDynamicDays(year, month);
+			}
+
+			if (anyDayOfWeek) {
+				return daysOfMonth & days;
+			}
+
+			long daysOfWeek = this.daysOfWeek[firstDayOfWeek(year, month)];
+			if (anyDayOfMonth) {
+				return daysOfWeek & days;
+			}
+
+			// 18.2.1.2 Expression Rules, either the day of month or the day of week must match
+			return (daysOfMonth | daysOfWeek) & days;
+		}
+
+		private synchronized long getDynamicDays(int year, int month) {
+			if (monthDays == null || monthDays.year != year || monthDays.month != month) {
+				Calendar calendar = new GregorianCalendar(year, month, 1);
+				BitSet values = new BitSet(32);
+				daysOfMonthExpression.addValues(values, calendar, 1, calendar.getActualMaximum(Calendar.DAY_OF_MONTH));
+				monthDays = new MonthDays(year, month, mask(values));
+			}
+			return monthDays.days;
+		}
+
+		private static boolean isLeapYear(int year) {
+			return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+		}
+
+		private static int lengthOfMonth(int year, int month) {
+			switch (month) {
+			case Calendar.FEBRUARY:
+				return isLeapYear(year) ? 29 : 28;
+			case Calendar.APRIL:
+			case Calendar.JUNE:
+			case Calendar.SEPTEMBER:
+			case Calendar.NOVEMBER:
+				return 30;
+			default:
+				return 31;
+			}
+		}
+
+		/**
+		 * @return the Calendar.SUNDAY based weekday of the first day of the month
+		 */
+		private static int firstDayOfWeek(int year, int month) {
+			// days since 1970-01-01, a Thursday, proleptic gregorian
+			long y = year;
+			long m = month + 1;
+			long days = 365 * y + (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400 + (367 * m - 362) / 12;
+			if (m > 2) {
+				days -= isLeapYear(year) ? 1 : 2;
+			}
+			days -= 719528;
+			return (int) (((days + 4) % 7 + 7) % 7) + 1;
+		}
+
+		private static class MonthDays {
+			private final int year;
+			private final int month;
+			private final long days;
+
+			private MonthDays(int year, int month, long days) {
+				this.year = year;
+				this.month = month;
+				this.days = days;
+			}
+		}
+	}
+
 	public static class ParseException extends Exception {
 
 		private final Map<Integer, ParseException> children;
@@ -642,6 +833,31 @@ public class EJBCronTrigger extends CronTriggerImpl {
 		 */
 		public abstract Integer getPreviousValue(Calendar calendar);
 
+		/**
+		 * Sets the bits of all the values allowed by this expression, the
+		 * values getNextValue() returns unchanged.
+		 *
+		 * @param calendar
+		 *            a Calendar on the first day of the month, only used by
+		 *            the dynamic expressions of the day of month
+		 */
+		public abstract void addValues(BitSet values, Calendar calendar, int min, int max);
+
+		/**
+		 * @return true if the values depend on the month, like "Last" or "1st Mon"
+		 */
+		public boolean isDynamic() {
+			return false;
+		}
+
+		protected static void addValues(BitSet values, int start, int end, int min, int max) {
+			start = Math.max(start, min);
+			end = Math.min(end, max);
+			if (start <= end) {
+				values.set(start, end + 1);
+			}
+		}
+
 	}
 
 	private static class RangeExpression extends FieldExpression {
@@ -873,6 +1089,34 @@ public class EJBCronTrigger extends CronTriggerImpl {
             }
 		}
 
+        @Override
+        public void addValues(BitSet values, Calendar calendar, int min, int max) {
+
+            if (isDynamicRangeExpression) {
+
+                if ((startWeekdayExpr != null && startWeekdayExpr.getWeekdayInMonth(calendar) == null)
+                        || (endWeekdayExpr != null && endWeekdayExpr.getWeekdayInMonth(calendar) == null)) {
+                    return;
+                }
+
+                try {
+                    initStartEndValues(calendar);
+                } catch (ParseException e) {
+                    return;
+                }
+            }
+
+            addValues(values, start, end, min, max);
+            if (start2 != -1) {
+                addValues(values, start2, max, min, max);
+            }
+        }
+
+        @Override
+        public boolean isDynamic() {
+            return isDynamicRangeExpression;
+        }
+
        public List<Integer> getAllValuesInRange(Calendar calendar){
            
            List<Integer> values=new ArrayList<Integer>();
@@ -1014,9 +1258,34 @@ public class EJBCronTrigger extends CronTriggerImpl {
 			int currValue = calendar.get(field);
 			
 			Integer result =newValues.floor(currValue);
-            
+
 			return isValidResult(calendar, result)? result : null;
 		}
+
+		@Override
+		public void addValues(BitSet values, Calendar calendar, int min, int max) {
+
+			for (Integer value : this.values) {
+				addValues(values, value, value, min, max);
+			}
+
+			for (RangeExpression weekDayRangeExpression : weekDayRangeExpressions) {
+				weekDayRangeExpression.addValues(values, calendar, min, max);
+			}
+
+			for (WeekdayExpression weekdayExpression : weekDayExpressions) {
+				weekdayExpression.addValues(values, calendar, min, max);
+			}
+
+			for (DaysFromLastDayExpression daysFromLastDayExpression : daysFromLastDayExpressions) {
+				daysFromLastDayExpression.addValues(values, calendar, min, max);
+			}
+		}
+
+		@Override
+		public boolean isDynamic() {
+			return !weekDayRangeExpressions.isEmpty() || !weekDayExpressions.isEmpty() || !daysFromLastDayExpressions.isEmpty();
+		}
 	}
 
 	private static class IncrementExpression extends FieldExpression {
@@ -1082,6 +1351,14 @@ public class EJBCronTrigger extends CronTriggerImpl {
             return null;
         }
 
+		@Override
+		public void addValues(BitSet values, Calendar calendar, int min, int max) {
+			addValues(values, start, start, min, max);
+			for (int value = start + interval; interval > 0 && value <= max; value += interval) {
+				addValues(values, value, value, min, max);
+			}
+		}
+
 	}
 
 	private static class WeekdayExpression extends FieldExpression {
@@ -1137,6 +1414,19 @@ public class EJBCronTrigger extends CronTriggerImpl {
               return isValidResult(calendar, result)? result : null;
 		}
 
+		@Override
+		public void addValues(BitSet values, Calendar calendar, int min, int max) {
+			Integer nthDay = getWeekdayInMonth(calendar);
+			if (nthDay != null) {
+				addValues(values, nthDay, nthDay, min, max);
+			}
+		}
+
+		@Override
+		public boolean isDynamic() {
+			return true;
+		}
+
 	}
 
 	private static class DaysFromLastDayExpression extends FieldExpression {
@@ -1169,6 +1459,17 @@ public class EJBCronTrigger extends CronTriggerImpl {
 			return isValidResult(calendar, result)? result : null;
 		}
 
+		@Override
+		public void addValues(BitSet values, Calendar calendar, int min, int max) {
+			int value = calendar.getActualMaximum(field) - days;
+			addValues(values, value, value, min, max);
+		}
+
+		@Override
+		public boolean isDynamic() {
+			return true;
+		}
+
 	}
 
 	private static class AsteriskExpression extends FieldExpression {
@@ -1186,5 +1487,10 @@ public class EJBCronTrigger extends CronTriggerImpl {
         public Integer getPreviousValue(Calendar calendar) {
             return calendar.get(field);
         }
+
+        @Override
+        public void addValues(BitSet values, Calendar calendar, int min, int max) {
+            addValues(values, min, max, min, max);
+        }
     }
 }
\ No newline at end of file
@@ -51,11 +51,14 @@ public abstract class JtaTransactionPolicy implements TransactionPolicy {
     private Map<Object, Object> resources;
     private final List<TransactionSynchronization> synchronizations = new LinkedList<TransactionSynchronization>();
     private boolean rollbackOnly;
+    private final TransactionMetrics metrics;
+    private TransactionMetrics.Transaction measured;
 
     public JtaTransactionPolicy(TransactionType transactionType, TransactionManager transactionManager) {
         this.transactionType = transactionType;
         this.transactionManager = transactionManager;
         synchronizationRegistry = SystemInstance.get().getComponent(TransactionSynchronizationRegistry.class);
+        metrics = SystemInstance.get().getComponent(TransactionMetrics.class);
     }
 
     public TransactionType getTransactionType() {
@@ -189,6 +192,7 @@ public abstract class JtaTransactionPolicy implements TransactionPolicy {
         if (transaction != null) {
             try {
                 if (transaction.enlistResource(xaResource)) {
+                    if (measured != null) measured.enlisted();
                     return;
                 }
             } catch (Exception e) {
@@ -265,6 +269,10 @@ public abstract class JtaTransactionPolicy implements TransactionPolicy {
             throw new SystemException("Failed to begin a new transaction");
         }
 
+        if (metrics != null) {
+            measured = metrics.begin(transaction);
+        }
+
         txLogger.debug("TX {0}: Started transaction {1}", transactionType, transaction);
         return transaction;
     }
@@ -321,6 +329,8 @@ public abstract class JtaTransactionPolicy implements TransactionPolicy {
             return;
         }
 
+        final CommitTimer timer = measured == null ? null : new CommitTimer(tx);
+        TransactionMetrics.Outcome outcome = TransactionMetrics.Outcome.ROLLED_BACK;
         try {
             txLogger.debug("TX {0}: Committing transaction {1}", transactionType, tx);
             if (tx.equals(transactionManager.getTransaction())) {
@@ -329,6 +339,7 @@ public abstract class JtaTransactionPolicy implements TransactionPolicy {
             } else {
                 tx.commit();
             }
+            outcome = TransactionMetrics.Outcome.COMMITTED;
         } catch (RollbackException e) {
 
             txLogger.debug("The transaction has been rolled back rather than commited: {0}", e.getMessage());
@@ -337,11 +348,13 @@ public abstract class JtaTransactionPolicy implements TransactionPolicy {
 
         } catch (HeuristicMixedException e) {
 
+            outcome = TransactionMetrics.Outcome.HEURISTIC;
             txLogger.debug("A heuristic decision was made, some relevant updates have been committed while others have been rolled back: {0}", e.getMessage());
             throw new ApplicationException(new RemoteException("A heuristic decision was made, some relevant updates have been committed while others have been rolled back", e));
 
         } catch (HeuristicRollbackException e) {
 
+            outcome = TransactionMetrics.Outcome.HEURISTIC;
             txLogger.debug("A heuristic decision was made while commiting the transaction, some relevant updates have been rolled back: {0}", e.getMessage());
             throw new ApplicationException(new RemoteException("A heuristic decision was made while commiting the transaction, some relevant updates have been rolled back", e));
 
@@ -359,10 +372,53 @@ public abstract class JtaTransactionPolicy implements TransactionPolicy {
             txLogger.error("The Transaction Manager has encountered an unexpected error condition while attempting to commit the transaction: {0}", e.getMessage());
 
             throw new SystemException(e);
+        } finally {
+            if (timer != null) {
+                timer.completed(outcome);
+            }
+        }
+    }
+
+    /**
+     * Times the commit of a transaction begun by this policy, splitting the
+     * synchronizations from the commit of the resources when it can.
+     */
+    private class CommitTimer implements Synchronization {
+        private final long start = System.nanoTime();
+        private long beforeCompletion;
+
+        private CommitTimer(Transaction tx) {
+            try {
+                // interposed synchronizations are called after the other ones
+                if (tx.equals(transactionManager.getTransaction())) {
+                    synchronizationRegistry.registerInterposedSynchronization(this);
+                }
+            } catch (Exception e) {
+                // no split
+            }
+        }
+
+        public void beforeCompletion() {
+            beforeCompletion = System.nanoTime() - start;
+        }
+
+        public void afterCompletion(int status) {
+        }
+
+        private void completed(TransactionMetrics.Outcome outcome) {
+            final TransactionMetrics.Transaction transaction = measured;
+            measured = null;
+            metrics.completed(transaction, outcome, outcome == TransactionMetrics.Outcome.COMMITTED ? System.nanoTime() - start : 0, beforeCompletion);
         }
     }
 
     protected void rollbackTransaction(Transaction tx) throws SystemException {
+        if (measured != null) {
+            final TransactionMetrics.Transaction transaction = measured;
+            measured = null;
+            metrics.completed(transaction, TransactionMetrics.Outcome.ROLLED_BACK, 0, 0);
+        }
+
         try {
             txLogger.debug("TX {0}: Rolling back transaction {1}", transactionType, tx);
             if (tx.equals(transactionManager.getTransaction())) {
@@ -0,0 +1,408 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.transaction;
+
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.monitoring.ManagedCollection;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings and outcomes of the transactions started by the container, per
+ * bean method, recorded by {@link JtaTransactionPolicy}.
+ *
+ * Durations go in histograms with power of two buckets updated without
+ * locking, so recording a transaction is a handful of atomic increments.
+ *
+ * A transaction rolled back once it lived longer than the transaction
+ * timeout counts as timed out: the transaction manager would not have
+ * committed it anyway.
+ *
+ * @version $Rev$ $Date$
+ */
+public class TransactionMetrics {
+
+    public enum Outcome {
+        COMMITTED, ROLLED_BACK, TIMED_OUT, HEURISTIC
+    }
+
+    private final int top;
+    private final ConcurrentMap<Key, Stats> methods = new ConcurrentHashMap<Key, Stats>();
+    private final ConcurrentMap<Transaction, Transaction> active = new ConcurrentHashMap<Transaction, Transaction>();
+    private final AtomicLong started = new AtomicLong();
+    private volatile long timeout;
+
+    /**
+     * @param top the number of active transactions listed by {@link #getLongestRunning()}
+     */
+    public TransactionMetrics(int top) {
+        this.top = top;
+    }
+
+    /**
+     * @param seconds the timeout of the transactions begun by the container, 0 if they don't time out
+     */
+    public void setTransactionTimeout(int seconds) {
+        timeout = TimeUnit.SECONDS.toNanos(Math.max(0, seconds));
+    }
+
+    /**
+     * Called when the container begins a transaction for the invocation of the current ThreadContext.
+     */
+    public Transaction begin(Object tx) {
+        final ThreadContext threadContext = ThreadContext.getThreadContext();
+        final Transaction transaction = new Transaction(tx, threadContext == null ? null : threadContext.getBeanContext(),
+                threadContext == null ? null : threadContext.get(Method.class), timeout);
+        active.put(transaction, transaction);
+        started.incrementAndGet();
+        return transaction;
+    }
+
+    /**
+     * @param commitTime           nanoseconds spent in commit, 0 if it was rolled back
+     * @param beforeCompletionTime nanoseconds spent in the synchronizations before the resources were committed
+     */
+    public void completed(Transaction transaction, Outcome outcome, long commitTime, long beforeCompletionTime) {
+        if (active.remove(transaction) == null) return;
+
+        final long duration = System.nanoTime() - transaction.start;
+        if (outcome == Outcome.ROLLED_BACK && transaction.timeout > 0 && duration >= transaction.timeout) {
+            outcome = Outcome.TIMED_OUT;
+        }
+
+        // stateful containers only set the method once the transaction is started
+        Method method = transaction.method;
+        if (method == null) {
+            final ThreadContext threadContext = ThreadContext.getThreadContext();
+            if (threadContext != null) method = threadContext.get(Method.class);
+        }
+
+        final Key key = new Key(transaction.beanContext == null ? null : transaction.beanContext.getDeploymentID(), method);
+        Stats stats = methods.get(key);
+        if (stats == null) {
+            stats = new Stats(key);
+            final Stats existing = methods.putIfAbsent(key, stats);
+            if (existing != null) stats = existing;
+        }
+        stats.record(outcome, duration, commitTime, beforeCompletionTime, transaction.enlisted);
+    }
+
+    /**
+     * Drops the stats of the methods of an undeployed bean.
+     */
+    public void remove(Object deploymentId) {
+        for (Key key : methods.keySet()) {
+            if (deploymentId.equals(key.deploymentId)) {
+                methods.remove(key);
+            }
+        }
+    }
+
+    @Managed
+    public long getStarted() {
+        return started.get();
+    }
+
+    @Managed
+    public int getActive() {
+        return active.size();
+    }
+
+    /**
+     * @return the bean methods of the oldest active transactions with their age
+     */
+    @Managed
+    public String[] getLongestRunning() {
+        final List<Transaction> transactions = new ArrayList<Transaction>(active.keySet());
+        Collections.sort(transactions, new Comparator<Transaction>() {
+            public int compare(Transaction a, Transaction b) {
+                return a.start < b.start ? -1 : a.start == b.start ? 0 : 1;
+            }
+        });
+
+        final long now = System.nanoTime();
+        final int size = Math.min(top, transactions.size());
+        final String[] longest = new String[size];
+        for (int i = 0; i < size; i++) {
+            final Transaction transaction = transactions.get(i);
+            longest[i] = TimeUnit.NANOSECONDS.toMillis(now - transaction.start) + "ms " + transaction;
+        }
+        return longest;
+    }
+
+    @ManagedCollection(type = Stats.class, key = "method")
+    public Collection<Stats> stats() {
+        return methods.values();
+    }
+
+    public Stats getStats(Object deploymentId, Method method) {
+        return methods.get(new Key(deploymentId, method));
+    }
+
+    /**
+     * A transaction begun by the container, not completed yet.
+     */
+    public static class Transaction {
+        private final Object tx;
+        private final BeanContext beanContext;
+        private final Method method;
+        private final long start = System.nanoTime();
+        private final long timeout;
+        private int enlisted;
+
+        private Transaction(Object tx, BeanContext beanContext, Method method, long timeout) {
+            this.tx = tx;
+            this.beanContext = beanContext;
+            this.method = method;
+            this.timeout = timeout;
+        }
+
+        public void enlisted() {
+            enlisted++;
+        }
+
+        @Override
+        public String toString() {
+            return new Key(beanContext == null ? null : beanContext.getDeploymentID(), method) + " " + tx;
+        }
+    }
+
+    private static class Key {
+        private final Object deploymentId;
+        private final Method method;
+
+        private Key(Object deploymentId, Method method) {
+            this.deploymentId = deploymentId;
+            this.method = method;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            final Key key = (Key) o;
+            return (deploymentId == null ? key.deploymentId == null : deploymentId.equals(key.deploymentId))
+                    && (method == null ? key.method == null : method.equals(key.method));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (deploymentId == null ? 0 : deploymentId.hashCode()) + (method == null ? 0 : method.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return deploymentId + "." + (method == null ? "?" : method.getName());
+        }
+    }
+
+    public static class Stats {
+        // Used as the prefix for the MBeanAttributeInfo
+        private final String method;
+
+        private final Histogram duration = new Histogram();
+        private final Histogram commitTime = new Histogram();
+        private final Histogram beforeCompletionTime = new Histogram();
+        private final AtomicLong committed = new AtomicLong();
+        private final AtomicLong rolledBack = new AtomicLong();
+        private final AtomicLong timedOut = new AtomicLong();
+        private final AtomicLong heuristic = new AtomicLong();
+        private final AtomicLong enlisted = new AtomicLong();
+        private final AtomicLong maxEnlisted = new AtomicLong();
+
+        private Stats(Key key) {
+            final StringBuilder sb = new StringBuilder().append(key.deploymentId).append(".");
+            if (key.method == null) {
+                sb.append("?");
+            } else {
+                sb.append(key.method.getName()).append("(");
+                final Class<?>[] params = key.method.getParameterTypes();
+                for (int i = 0; i < params.length; i++) {
+                    if (i > 0) sb.append(",");
+                    sb.append(params[i].getSimpleName());
+                }
+                sb.append(")");
+            }
+            this.method = sb.toString();
+        }
+
+        private void record(Outcome outcome, long duration, long commitTime, long beforeCompletionTime, int enlisted) {
+            switch (outcome) {
+                case COMMITTED:
+                    committed.incrementAndGet();
+                    break;
+                case ROLLED_BACK:
+                    rolledBack.incrementAndGet();
+                    break;
+                case TIMED_OUT:
+                    timedOut.incrementAndGet();
+                    break;
+                case HEURISTIC:
+                    heuristic.incrementAndGet();
+                    break;
+            }
+
+            this.duration.record(duration);
+            if (commitTime > 0) this.commitTime.record(commitTime);
+            if (beforeCompletionTime > 0) this.beforeCompletionTime.record(beforeCompletionTime);
+
+            this.enlisted.addAndGet(enlisted);
+            long max = maxEnlisted.get();
+            while (enlisted > max && !maxEnlisted.compareAndSet(max, enlisted)) {
+                max = maxEnlisted.get();
+            }
+        }
+
+        @Managed
+        public long getCount() {
+            return duration.getCount();
+        }
+
+        @Managed
+        public long getCommitted() {
+            return committed.get();
+        }
+
+        @Managed
+        public long getRolledBack() {
+            return rolledBack.get();
+        }
+
+        @Managed
+        public long getTimedOut() {
+            return timedOut.get();
+        }
+
+        @Managed
+        public long getHeuristic() {
+            return heuristic.get();
+        }
+
+        @Managed
+        public double getMeanEnlistedResources() {
+            final long count = duration.getCount();
+            return count == 0 ? 0 : (double) enlisted.get() / count;
+        }
+
+        @Managed
+        public long getMaxEnlistedResources() {
+            return maxEnlisted.get();
+        }
+
+        @Managed
+        public double getMeanTime() {
+            return duration.getMean();
+        }
+
+        @Managed
+        public double getPercentile50() {
+            return duration.getPercentile(50.0);
+        }
+
+        @Managed
+        public double getPercentile99() {
+            return duration.getPercentile(99.0);
+        }
+
+        @Managed
+        public double getMaxTime() {
+            return duration.getMax();
+        }
+
+        @Managed
+        public double getCommitPercentile50() {
+            return commitTime.getPercentile(50.0);
+        }
+
+        @Managed
+        public double getCommitPercentile99() {
+            return commitTime.getPercentile(99.0);
+        }
+
+        @Managed
+        public double getBeforeCompletionPercentile99() {
+            return beforeCompletionTime.getPercentile(99.0);
+        }
+    }
+
+    /**
+     * Counts durations in buckets of powers of two microseconds, the
+     * percentiles are the upper bound of their bucket, in milliseconds.
+     */
+    public static class Histogram {
+        private static final int BUCKETS = 48;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long nanos) {
+            final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+
+            long current = max.get();
+            while (nanos > current && !max.compareAndSet(current, nanos)) {
+                current = max.get();
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public double getMean() {
+            final long n = count.get();
+            return n == 0 ? 0 : sum.get() / 1000000.0 / n;
+        }
+
+        public double getMax() {
+            return max.get() / 1000000.0;
+        }
+
+        public double getPercentile(double percentile) {
+            final long n = count.get();
+            if (n == 0) return 0;
+
+            final long rank = (long) Math.ceil(n * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    // bucket i holds the durations below 2^i microseconds
+                    return Math.min((1L << i) / 1000.0, getMax());
+                }
+            }
+            return getMax();
+        }
+    }
+}
@@ -98,11 +98,17 @@ public class JtaEntityManager implements EntityManager, Serializable {
     /**
      * Closes a non-extended entity manager if no transaction is active.  For methods on an
      * entity manager that do not require an active transaction, a temp entity manager is created
-     * for the operation and then closed.
+     * for the operation and then closed (or only cleared when it is bound to the current invocation, see
+     * {@link JtaEntityManagerRegistry#REUSE_NON_TX_ENTITY_MANAGER}).
      * @param entityManager the entity manager to close if non-extended and a transaction is not active
      */
     void closeIfNoTx(EntityManager entityManager) {
         if (!extended && !isTransactionActive()) {
+            if (registry.isInvocationScoped(entityManager)) {
+                // closed at the end of the invocation, just detach what was loaded
+                entityManager.clear();
+                return;
+            }
             entityManager.close();
             logger.debug("Closed EntityManager(unit=" + unitName + ", hashCode=" + entityManager.hashCode() + ")");
         }
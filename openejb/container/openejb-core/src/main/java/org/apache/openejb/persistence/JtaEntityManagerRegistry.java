@@ -17,6 +17,9 @@
 package org.apache.openejb.persistence;
 
 
+import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.core.ThreadContextListener;
+import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.util.Geronimo;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
@@ -29,6 +32,7 @@ import javax.transaction.Synchronization;
 import javax.transaction.TransactionSynchronizationRegistry;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The JtaEntityManagerRegistry tracks JTA entity managers for transaction and extended scoped
@@ -39,8 +43,20 @@ import java.util.Map;
  */
 public class JtaEntityManagerRegistry {
 
+    /**
+     * When true, outside of a transaction a single entity manager per persistence unit is used for the whole
+     * container invocation (instead of one per operation). It is cleared after each operation so loaded entities
+     * are still detached as required by the spec, and closed when the invocation exits.
+     * Queries created during the invocation must be executed before it ends.
+     */
+    public static final String REUSE_NON_TX_ENTITY_MANAGER = "openejb.jpa.reuse-non-tx-entity-manager";
+
     private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB.createChild("persistence"), JtaEntityManager.class);
-    
+
+    private final boolean reuseNonTxEntityManager;
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
     /**
      * Registry of transaction associated entity managers.
      */
@@ -60,7 +76,15 @@ public class JtaEntityManagerRegistry {
      * if transaction associated entity managers.
      */
     public JtaEntityManagerRegistry(TransactionSynchronizationRegistry transactionSynchronizationRegistry) {
+        this(transactionSynchronizationRegistry, SystemInstance.get().getOptions().get(REUSE_NON_TX_ENTITY_MANAGER, false));
+    }
+
+    public JtaEntityManagerRegistry(TransactionSynchronizationRegistry transactionSynchronizationRegistry, boolean reuseNonTxEntityManager) {
         this.transactionRegistry = transactionSynchronizationRegistry;
+        this.reuseNonTxEntityManager = reuseNonTxEntityManager;
+        if (reuseNonTxEntityManager) {
+            CloseInvocationEntityManagers.install();
+        }
     }
 
     /**
@@ -109,6 +133,25 @@ public class JtaEntityManagerRegistry {
             return entityManager;
         } else {
 
+            // outside of a transaction reuse the entity manager of the current invocation if any
+            InvocationEntityManagers invocationEntityManagers = null;
+            if (!transactionActive && reuseNonTxEntityManager) {
+                final ThreadContext threadContext = ThreadContext.getThreadContext();
+                if (threadContext != null) {
+                    invocationEntityManagers = threadContext.get(InvocationEntityManagers.class);
+                    if (invocationEntityManagers == null) {
+                        invocationEntityManagers = new InvocationEntityManagers();
+                        threadContext.set(InvocationEntityManagers.class, invocationEntityManagers);
+                    } else {
+                        final EntityManager entityManager = invocationEntityManagers.entityManagers.get(entityManagerFactory);
+                        if (entityManager != null && entityManager.isOpen()) {
+                            reused.incrementAndGet();
+                            return entityManager;
+                        }
+                    }
+                }
+            }
+
             // create a new entity manager
             EntityManager entityManager;
             if (properties != null) {
@@ -116,9 +159,14 @@ public class JtaEntityManagerRegistry {
             } else {
                 entityManager = entityManagerFactory.createEntityManager();
             }
+            created.incrementAndGet();
 
             logger.debug("Created EntityManager(unit=" + unitName + ", hashCode=" + entityManager.hashCode() + ")");
 
+            if (invocationEntityManagers != null) {
+                invocationEntityManagers.entityManagers.put(entityManagerFactory, entityManager);
+            }
+
             // if we are in a transaction associate the entity manager with the transaction; otherwise it is
             // expected the caller will close this entity manager after use
             if (transactionActive) {
@@ -129,6 +177,44 @@ public class JtaEntityManagerRegistry {
         }
     }
 
+    /**
+     * Is the specified entity manager bound to the current container invocation?
+     * Such an entity manager must not be closed after an operation, it is closed when the invocation exits.
+     * @param entityManager a non extended entity manager used outside of a transaction
+     * @return true if the entity manager is closed by the registry
+     */
+    public boolean isInvocationScoped(EntityManager entityManager) {
+        if (!reuseNonTxEntityManager) {
+            return false;
+        }
+
+        final ThreadContext threadContext = ThreadContext.getThreadContext();
+        if (threadContext == null) {
+            return false;
+        }
+
+        final InvocationEntityManagers invocationEntityManagers = threadContext.get(InvocationEntityManagers.class);
+        return invocationEntityManagers != null && invocationEntityManagers.entityManagers.containsValue(entityManager);
+    }
+
+    public boolean isReuseNonTxEntityManager() {
+        return reuseNonTxEntityManager;
+    }
+
+    /**
+     * @return number of non extended entity managers created by this registry
+     */
+    public long getCreatedEntityManagers() {
+        return created.get();
+    }
+
+    /**
+     * @return number of times an invocation scoped entity manager was reused instead of creating a new one
+     */
+    public long getReusedEntityManagers() {
+        return reused.get();
+    }
+
     /**
      * Adds the entity managers for the specified component to the registry.  This should be called when the component
      * is entered.
@@ -324,6 +410,51 @@ public class JtaEntityManagerRegistry {
         }
     }
 
+    /**
+     * Entity managers created outside of a transaction during a container invocation, by factory.
+     */
+    private static class InvocationEntityManagers {
+        private final Map<EntityManagerFactory, EntityManager> entityManagers = new HashMap<EntityManagerFactory, EntityManager>(2);
+    }
+
+    private static class CloseInvocationEntityManagers implements ThreadContextListener {
+        private static CloseInvocationEntityManagers instance;
+
+        /**
+         * The listener is stateless so one is shared by all the registries.
+         */
+        private static synchronized void install() {
+            if (instance == null) {
+                instance = new CloseInvocationEntityManagers();
+                ThreadContext.addThreadContextListener(instance);
+            }
+        }
+
+        @Override
+        public void contextEntered(ThreadContext oldContext, ThreadContext newContext) {
+            // no-op: the entity managers are bound lazily
+        }
+
+        @Override
+        public void contextExited(ThreadContext exitedContext, ThreadContext reenteredContext) {
+            final InvocationEntityManagers invocationEntityManagers = exitedContext.remove(InvocationEntityManagers.class);
+            if (invocationEntityManagers == null) {
+                return;
+            }
+
+            for (EntityManager entityManager : invocationEntityManagers.entityManagers.values()) {
+                try {
+                    if (entityManager.isOpen()) {
+                        entityManager.close();
+                        logger.debug("Closed EntityManager(hashCode=" + entityManager.hashCode() + ") at the end of the invocation");
+                    }
+                } catch (RuntimeException e) {
+                    logger.warning("Can't close EntityManager(hashCode=" + entityManager.hashCode() + ")", e);
+                }
+            }
+        }
+    }
+
     private static class CloseEntityManager implements Synchronization {
         private final EntityManager entityManager;
         private String unitName;
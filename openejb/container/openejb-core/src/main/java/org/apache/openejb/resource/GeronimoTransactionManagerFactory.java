@@ -27,6 +27,7 @@ import org.apache.geronimo.transaction.manager.WrapperNamedXAResource;
 import org.apache.openejb.loader.SystemInstance;
 
 import javax.transaction.xa.XAResource;
+import java.io.File;
 
 /**
  * @version $Rev$ $Date$
@@ -35,6 +36,7 @@ public class GeronimoTransactionManagerFactory {
 
     private static final byte[] DEFAULT_TM_ID = new byte[]{71, 84, 77, 73, 68};
     private static final int DEFAULT_BUFFER_SIZE = 32;
+    private static final int DEFAULT_MAPPED_FILE_SIZE = 4 * 1024 * 1024;
 
     public static GeronimoTransactionManager create(int defaultTransactionTimeoutSeconds,
                                                     boolean txRecovery,
@@ -52,13 +54,51 @@ public class GeronimoTransactionManagerFactory {
                                                     int maxLogFiles,
                                                     int minBuffers,
                                                     int threadsWaitingForceThreshold) throws Exception {
+        return create(defaultTransactionTimeoutSeconds, txRecovery, "howl", tmId, bufferClassName, bufferSizeKb,
+                checksumEnabled, adler32Checksum, flushSleepTimeMilliseconds, logFileDir, logFileExt, logFileName,
+                maxBlocksPerFile, maxBuffers, maxLogFiles, minBuffers, threadsWaitingForceThreshold);
+    }
+
+    /**
+     * @param txLog howl or mapped, see {@link MappedTransactionLog}
+     */
+    public static GeronimoTransactionManager create(int defaultTransactionTimeoutSeconds,
+                                                    boolean txRecovery,
+                                                    String txLog,
+                                                    byte[] tmId,
+                                                    String bufferClassName,
+                                                    int bufferSizeKb,
+                                                    boolean checksumEnabled,
+                                                    boolean adler32Checksum,
+                                                    int flushSleepTimeMilliseconds,
+                                                    String logFileDir,
+                                                    String logFileExt,
+                                                    String logFileName,
+                                                    int maxBlocksPerFile,
+                                                    int maxBuffers,
+                                                    int maxLogFiles,
+                                                    int minBuffers,
+                                                    int threadsWaitingForceThreshold) throws Exception {
         XidFactory xidFactory = null;
-        TransactionLog txLog = null;
+        TransactionLog transactionLog = null;
         if (txRecovery) {
             SystemInstance.get().setComponent(XAResourceWrapper.class, new GeronimoXAResourceWrapper());
             
             xidFactory = new XidFactoryImpl(tmId == null ? DEFAULT_TM_ID: tmId);
-            txLog = new HOWLLog(bufferClassName == null ? "org.apache.howl.log.BlockLogBuffer" : bufferClassName,
+        }
+
+        if (txRecovery && "mapped".equalsIgnoreCase(txLog)) {
+            File directory = new File(logFileDir);
+            if (!directory.isAbsolute()) {
+                directory = new File(SystemInstance.get().getBase().getDirectory("."), logFileDir);
+            }
+            final int fileSize = maxBlocksPerFile > 0 ? (bufferSizeKb == 0 ? DEFAULT_BUFFER_SIZE : bufferSizeKb) * 1024 * maxBlocksPerFile : DEFAULT_MAPPED_FILE_SIZE;
+
+            transactionLog = new MappedTransactionLog(directory, logFileName, logFileExt, maxLogFiles, fileSize,
+                    flushSleepTimeMilliseconds, threadsWaitingForceThreshold);
+            ((MappedTransactionLog) transactionLog).start();
+        } else if (txRecovery) {
+            transactionLog = new HOWLLog(bufferClassName == null ? "org.apache.howl.log.BlockLogBuffer" : bufferClassName,
                     bufferSizeKb == 0 ? DEFAULT_BUFFER_SIZE : bufferSizeKb,
                     checksumEnabled,
                     adler32Checksum,
@@ -73,10 +113,10 @@ public class GeronimoTransactionManagerFactory {
                     threadsWaitingForceThreshold,
                     xidFactory,
                     SystemInstance.get().getBase().getDirectory("."));
-            ((HOWLLog)txLog).doStart();
+            ((HOWLLog)transactionLog).doStart();
         }
 
-        return new GeronimoTransactionManager(defaultTransactionTimeoutSeconds, xidFactory, txLog);
+        return new GeronimoTransactionManager(defaultTransactionTimeoutSeconds, xidFactory, transactionLog);
     }
 
     public static class GeronimoXAResourceWrapper implements XAResourceWrapper {
@@ -0,0 +1,588 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.resource;
+
+import org.apache.geronimo.transaction.manager.LogException;
+import org.apache.geronimo.transaction.manager.Recovery;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfoImpl;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.transaction.xa.Xid;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Adler32;
+
+/**
+ * A transaction log writing to a ring of preallocated memory mapped files.
+ *
+ * The commit decision of the transactions running concurrently is forced
+ * to disk once for all of them: the first one to ask waits for those being
+ * written, up to the flush sleep time or until enough threads wait, and
+ * forces the file for everybody. Commit and rollback records are never
+ * forced, losing one only means recovery completes the transaction again.
+ *
+ * When a file is full the next one of the ring is reused and the decisions
+ * of the transactions not completed yet are written again at its start, so
+ * on startup only the files are read, oldest first, to find them.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MappedTransactionLog implements TransactionLog {
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, MappedTransactionLog.class);
+
+    private static final int MAGIC = 0x4f544c47;
+    // magic, generation
+    private static final int FILE_HEADER = 4 + 8;
+    // length, checksum, generation, type
+    private static final int RECORD_HEADER = 4 + 4 + 8 + 1;
+
+    private static final byte PREPARE = 1;
+    private static final byte COMMIT = 2;
+    private static final byte ROLLBACK = 3;
+
+    private final File directory;
+    private final String name;
+    private final String extension;
+    private final int fileCount;
+    private final int fileSize;
+    private final long maxWait;
+    private final int forceThreshold;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition joined = lock.newCondition();
+    private final Condition forcedCondition = lock.newCondition();
+
+    // threads between the start of a prepare and their wait for the force
+    private final AtomicInteger writers = new AtomicInteger();
+
+    // guarded by lock
+    private Segment[] segments;
+    private int current;
+    private long generation;
+    private long written;
+    private long forced;
+    private boolean forcing;
+    private int waiting;
+    private final Map<Key, Record> pending = new LinkedHashMap<Key, Record>();
+
+    private long forces;
+    private long forceTime;
+    private long forcedBytes;
+    private long unforcedBytes;
+
+    /**
+     * @param fileCount      the number of files of the ring, at least 2
+     * @param fileSize       the size of each file in bytes
+     * @param maxWait        milliseconds a force waits for the transactions being written
+     * @param forceThreshold force without waiting once that many threads wait, 0 or less to disable
+     */
+    public MappedTransactionLog(File directory, String name, String extension, int fileCount, int fileSize, long maxWait, int forceThreshold) {
+        this.directory = directory;
+        this.name = name;
+        this.extension = extension;
+        this.fileCount = Math.max(2, fileCount);
+        this.fileSize = fileSize;
+        this.maxWait = maxWait;
+        this.forceThreshold = forceThreshold;
+    }
+
+    public void start() throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Can't create the transaction log directory " + directory.getAbsolutePath());
+        }
+
+        lock.lock();
+        try {
+            segments = new Segment[fileCount];
+            for (int i = 0; i < fileCount; i++) {
+                segments[i] = new Segment(new File(directory, name + "." + i + "." + extension), fileSize);
+            }
+
+            // replay the files oldest first, the newest one is the one being written
+            final List<Segment> ordered = new ArrayList<Segment>();
+            for (Segment segment : segments) {
+                if (segment.generation == 0) continue;
+                int i = 0;
+                while (i < ordered.size() && ordered.get(i).generation < segment.generation) i++;
+                ordered.add(i, segment);
+            }
+            pending.clear();
+            for (Segment segment : ordered) {
+                segment.scan(pending);
+            }
+
+            if (ordered.isEmpty()) {
+                current = 0;
+                generation = 1;
+                segments[current].reset(generation);
+            } else {
+                current = Arrays.asList(segments).indexOf(ordered.get(ordered.size() - 1));
+                generation = segments[current].generation;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void stop() {
+        lock.lock();
+        try {
+            if (segments == null) return;
+            for (Segment segment : segments) {
+                segment.close();
+            }
+            segments = null;
+
+            // the transactions waiting for a force fail instead of forcing closed files
+            joined.signalAll();
+            forcedCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void begin(Xid xid) throws LogException {
+    }
+
+    public Object prepare(Xid xid, List<? extends TransactionBranchInfo> branches) throws LogException {
+        writers.incrementAndGet();
+        boolean appended = false;
+        final long sequence;
+        final Record record;
+        try {
+            final byte[] key = encode(xid);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(key.length + 64 * branches.size());
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(key.length);
+            out.write(key);
+            out.writeShort(branches.size());
+            for (TransactionBranchInfo branch : branches) {
+                out.write(encode(branch.getBranchXid()));
+                out.writeUTF(branch.getResourceName());
+            }
+            out.close();
+            record = new Record(new Key(key), bytes.toByteArray());
+
+            lock.lock();
+            try {
+                sequence = append(PREPARE, record.data);
+                pending.put(record.key, record);
+            } finally {
+                lock.unlock();
+            }
+            appended = true;
+        } catch (IOException e) {
+            throw new LogException("Can't write the transaction " + xid, e);
+        } finally {
+            // once appended, force() stops counting this transaction as a writer
+            if (!appended) writers.decrementAndGet();
+        }
+
+        force(sequence);
+        return record;
+    }
+
+    public void commit(Xid xid, Object logMark) throws LogException {
+        complete(COMMIT, xid, logMark);
+    }
+
+    public void rollback(Xid xid, Object logMark) throws LogException {
+        complete(ROLLBACK, xid, logMark);
+    }
+
+    private void complete(byte type, Xid xid, Object logMark) throws LogException {
+        final Key key = logMark instanceof Record ? ((Record) logMark).key : new Key(encode(xid));
+        lock.lock();
+        try {
+            append(type, key.bytes);
+            pending.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Collection<Recovery.XidBranchesPair> recover(XidFactory xidFactory) throws LogException {
+        lock.lock();
+        try {
+            final List<Recovery.XidBranchesPair> transactions = new ArrayList<Recovery.XidBranchesPair>(pending.size());
+            for (Record record : pending.values()) {
+                transactions.add(decode(xidFactory, record));
+            }
+            if (!transactions.isEmpty()) {
+                logger.info("Recovered " + transactions.size() + " transactions from the transaction log " + directory.getAbsolutePath());
+            }
+            return transactions;
+        } catch (IOException e) {
+            throw new LogException("Can't read the transaction log " + directory.getAbsolutePath(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called with the lock held.
+     *
+     * @return the sequence of the record to give to {@link #force(long)}
+     */
+    private long append(byte type, byte[] data) throws LogException {
+        if (segments == null) throw new LogException("The transaction log is stopped");
+
+        final int size = RECORD_HEADER + data.length;
+        if (FILE_HEADER + size > fileSize) {
+            throw new LogException("Transaction log record of " + size + " bytes doesn't fit in files of " + fileSize + " bytes");
+        }
+
+        if (!segments[current].fits(size)) {
+            rollover();
+        }
+
+        segments[current].write(type, data);
+        unforcedBytes += size;
+        return ++written;
+    }
+
+    private void rollover() throws LogException {
+        // everything written so far is on disk before the decisions it holds are
+        // only kept by their copy in the next file
+        segments[current].force();
+        if (written > forced) {
+            forced = written;
+            forcedCondition.signalAll();
+        }
+
+        current = (current + 1) % segments.length;
+        generation++;
+
+        final Segment segment = segments[current];
+        segment.reset(generation);
+        for (Record record : pending.values()) {
+            if (!segment.fits(RECORD_HEADER + record.data.length)) {
+                throw new LogException("Too many transactions waiting for completion to fit in a transaction log file of " + fileSize + " bytes");
+            }
+            segment.write(PREPARE, record.data);
+        }
+    }
+
+    /**
+     * Waits until the record is on disk, forcing the file for the records
+     * written in the meantime if no other thread is doing it.
+     */
+    private void force(long sequence) throws LogException {
+        boolean interrupted = false;
+        lock.lock();
+        try {
+            waiting++;
+            writers.decrementAndGet();
+            joined.signal();
+
+            while (forced < sequence) {
+                if (forcing) {
+                    forcedCondition.awaitUninterruptibly();
+                    continue;
+                }
+                forcing = true;
+
+                // give the transactions being written a chance to be part of this force
+                long wait = TimeUnit.MILLISECONDS.toNanos(maxWait);
+                while (wait > 0 && writers.get() > 0 && segments != null && (forceThreshold <= 0 || waiting < forceThreshold)) {
+                    try {
+                        wait = joined.awaitNanos(wait);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        break;
+                    }
+                }
+
+                if (segments == null) {
+                    forcing = false;
+                    forcedCondition.signalAll();
+                    throw new LogException("The transaction log is stopped");
+                }
+
+                final long target = written;
+                final long bytes = unforcedBytes;
+                final Segment segment = segments[current];
+                unforcedBytes = 0;
+
+                lock.unlock();
+                final long start = System.nanoTime();
+                try {
+                    segment.force();
+                } finally {
+                    final long time = System.nanoTime() - start;
+                    lock.lock();
+                    forces++;
+                    forceTime += time;
+                    forcedBytes += bytes;
+                    forcing = false;
+                    if (target > forced) forced = target;
+                    forcedCondition.signalAll();
+                }
+            }
+        } finally {
+            waiting--;
+            lock.unlock();
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public String getXMLStats() {
+        lock.lock();
+        try {
+            return "<MappedTransactionLog>" +
+                    "<forces>" + forces + "</forces>" +
+                    "<averageForceTime>" + getAverageForceTime() + "</averageForceTime>" +
+                    "<averageBytesPerForce>" + getAverageBytesPerForce() + "</averageBytesPerForce>" +
+                    "<pending>" + pending.size() + "</pending>" +
+                    "<generation>" + generation + "</generation>" +
+                    "</MappedTransactionLog>";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return milliseconds
+     */
+    public int getAverageForceTime() {
+        lock.lock();
+        try {
+            return forces == 0 ? 0 : (int) TimeUnit.NANOSECONDS.toMillis(forceTime / forces);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getAverageBytesPerForce() {
+        lock.lock();
+        try {
+            return forces == 0 ? 0 : (int) (forcedBytes / forces);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getForces() {
+        lock.lock();
+        try {
+            return forces;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static byte[] encode(Xid xid) {
+        final byte[] globalId = xid.getGlobalTransactionId();
+        final byte[] branchId = xid.getBranchQualifier();
+        final byte[] bytes = new byte[4 + 1 + globalId.length + 1 + branchId.length];
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.putInt(xid.getFormatId());
+        buffer.put((byte) globalId.length);
+        buffer.put(globalId);
+        buffer.put((byte) branchId.length);
+        buffer.put(branchId);
+        return bytes;
+    }
+
+    private static Xid decode(XidFactory xidFactory, DataInputStream in) throws IOException {
+        final int formatId = in.readInt();
+        final byte[] globalId = new byte[in.readUnsignedByte()];
+        in.readFully(globalId);
+        final byte[] branchId = new byte[in.readUnsignedByte()];
+        in.readFully(branchId);
+        return xidFactory.recover(formatId, globalId, branchId);
+    }
+
+    private static Recovery.XidBranchesPair decode(XidFactory xidFactory, Record record) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.data));
+        in.skipBytes(in.readUnsignedShort());
+
+        final Recovery.XidBranchesPair transaction = new Recovery.XidBranchesPair(decode(xidFactory, new DataInputStream(new ByteArrayInputStream(record.key.bytes))), record);
+        final int branches = in.readUnsignedShort();
+        for (int i = 0; i < branches; i++) {
+            final Xid branchXid = decode(xidFactory, in);
+            transaction.addBranch(new TransactionBranchInfoImpl(branchXid, in.readUTF()));
+        }
+        return transaction;
+    }
+
+    private static class Key {
+        private final byte[] bytes;
+        private final int hash;
+
+        private Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof Key && Arrays.equals(bytes, ((Key) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The commit decision of a transaction, also the log mark given back to the transaction manager.
+     */
+    private static class Record {
+        private final Key key;
+        private final byte[] data;
+
+        private Record(Key key, byte[] data) {
+            this.key = key;
+            this.data = data;
+        }
+    }
+
+    private static class Segment {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buffer;
+        private final int size;
+        private long generation;
+        private int position;
+
+        private Segment(File file, int size) throws IOException {
+            this.file = file;
+            this.size = size;
+
+            final boolean created = !file.exists() || file.length() < size;
+            raf = new RandomAccessFile(file, "rw");
+            if (created) {
+                // allocate the blocks now rather than on the first commits
+                final byte[] zeros = new byte[Math.min(size, 64 * 1024)];
+                raf.seek(raf.length());
+                for (long remaining = size - raf.length(); remaining > 0; remaining -= zeros.length) {
+                    raf.write(zeros, 0, (int) Math.min(zeros.length, remaining));
+                }
+                raf.getFD().sync();
+            }
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            generation = buffer.getInt(0) == MAGIC ? buffer.getLong(4) : 0;
+            position = FILE_HEADER;
+        }
+
+        private boolean fits(int recordSize) {
+            return position + recordSize <= size;
+        }
+
+        private void reset(long generation) {
+            this.generation = generation;
+            position = FILE_HEADER;
+            buffer.putLong(4, generation);
+            buffer.putInt(0, MAGIC);
+        }
+
+        private void write(byte type, byte[] data) {
+            final ByteBuffer record = buffer.duplicate();
+            record.position(position + 4 + 4);
+            record.putLong(generation);
+            record.put(type);
+            record.put(data);
+
+            buffer.putInt(position + 4, checksum(generation, type, data));
+            buffer.putInt(position, data.length);
+            position += RECORD_HEADER + data.length;
+        }
+
+        /**
+         * Reads the records up to the first one which wasn't completely
+         * written or belongs to a previous use of the file.
+         */
+        private void scan(Map<Key, Record> pending) throws IOException {
+            position = FILE_HEADER;
+            while (position + RECORD_HEADER <= size) {
+                final int length = buffer.getInt(position);
+                if (length <= 0 || position + RECORD_HEADER + length > size) break;
+                if (buffer.getLong(position + 8) != generation) break;
+
+                final byte type = buffer.get(position + 16);
+                final byte[] data = new byte[length];
+                final ByteBuffer record = buffer.duplicate();
+                record.position(position + RECORD_HEADER);
+                record.get(data);
+                if (buffer.getInt(position + 4) != checksum(generation, type, data)) break;
+
+                if (type == PREPARE) {
+                    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+                    final byte[] key = new byte[in.readUnsignedShort()];
+                    in.readFully(key);
+                    final Record prepared = new Record(new Key(key), data);
+                    pending.put(prepared.key, prepared);
+                } else {
+                    pending.remove(new Key(data));
+                }
+                position += RECORD_HEADER + length;
+            }
+        }
+
+        private void force() {
+            buffer.force();
+        }
+
+        private void close() {
+            try {
+                buffer.force();
+                raf.close();
+            } catch (IOException e) {
+                logger.warning("Can't close the transaction log file " + file.getAbsolutePath(), e);
+            }
+        }
+
+        private static int checksum(long generation, byte type, byte[] data) {
+            final Adler32 adler = new Adler32();
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                adler.update((int) (generation >>> shift));
+            }
+            adler.update(type);
+            adler.update(data, 0, data.length);
+            return (int) adler.getValue();
+        }
+    }
+}
@@ -16,15 +16,27 @@
  */
 package org.apache.openejb.util;
 
+import org.apache.openejb.loader.SystemInstance;
+
 import java.io.File;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Notifies a listener when an entry of a directory is added, updated or removed.
+ *
+ * An entry is only reported once it stopped changing for a poll interval.
+ * On Java 7 the directory tree is watched (openejb.deploy.monitor.watch = true)
+ * and only the entries which had file events are checked, otherwise every
+ * file of every entry is checked at each poll.
+ *
  * @version $Rev$ $Date$
  */
 public class DirectoryMonitor {
@@ -37,12 +49,27 @@ public class DirectoryMonitor {
 
     private final Listener listener;
 
-    private final Map files = new HashMap();
+    private final Map<String, FileInfo> files = new HashMap<String, FileInfo>();
 
     private final Timer timer;
 
+    private final DirectoryWatcher watcher;
+
+    // entries with file events -> time of the last one
+    private final Map<String, Long> pending = new HashMap<String, Long>();
+
+    private final AtomicLong notifications = new AtomicLong();
+    private final AtomicLong totalDetectionLatency = new AtomicLong();
+    private final AtomicLong totalListenerTime = new AtomicLong();
+    private volatile long lastDetectionLatency = -1;
+    private volatile long lastListenerTime = -1;
+
     public DirectoryMonitor(final File target, final Listener listener, final int pollIntervalMillis) {
-        assert listener == null : "No listener specified";
+        this(target, listener, pollIntervalMillis, SystemInstance.get().getOptions().get("openejb.deploy.monitor.watch", true));
+    }
+
+    public DirectoryMonitor(final File target, final Listener listener, final int pollIntervalMillis, final boolean watch) {
+        assert listener != null : "No listener specified";
         assert target.isDirectory() : "File specified is not a directory. " + target.getAbsolutePath();
         assert target.canRead() : "Directory specified cannot be read. " + target.getAbsolutePath();
         assert pollIntervalMillis > 0 : "Poll Interval must be above zero.";
@@ -53,6 +80,7 @@ public class DirectoryMonitor {
         this.pollIntervalMillis = pollIntervalMillis;
 
         this.timer = new Timer(this.getClass().getSimpleName());
+        this.watcher = watch ? DirectoryWatcher.create(target) : null;
     }
 
     private Logger getLogger() {
@@ -71,14 +99,54 @@ public class DirectoryMonitor {
         return listener;
     }
 
+    public boolean isWatching() {
+        return watcher != null && !watcher.isBroken();
+    }
+
+    /**
+     * @return milliseconds between the last modification of the last entry reported and its report
+     */
+    public long getLastDetectionLatency() {
+        return lastDetectionLatency;
+    }
+
+    public long getAverageDetectionLatency() {
+        final long count = notifications.get();
+        return count == 0 ? -1 : totalDetectionLatency.get() / count;
+    }
+
+    /**
+     * @return milliseconds the listener took to process the last change, i.e. the redeployment time
+     */
+    public long getLastListenerTime() {
+        return lastListenerTime;
+    }
+
+    public long getAverageListenerTime() {
+        final long count = notifications.get();
+        return count == 0 ? -1 : totalListenerTime.get() / count;
+    }
+
+    public long getNotifications() {
+        return notifications.get();
+    }
+
     public synchronized void stop() {
         timer.cancel();
+        if (watcher != null) {
+            watcher.stop();
+        }
     }
 
     public void start() {
+        if (watcher != null) {
+            // before the initial scan so no change is missed
+            watcher.start();
+        }
+
         initialize();
 
-        getLogger().debug("Scanner running.  Polling every " + pollIntervalMillis + " milliseconds.");
+        getLogger().debug("Scanner running.  Polling every " + pollIntervalMillis + " milliseconds" + (isWatching() ? ", watching for file events." : "."));
 
         timer.scheduleAtFixedRate(new TimerTask(){
             public void run() {
@@ -120,12 +188,22 @@ public class DirectoryMonitor {
     /**
      * Looks for changes to the immediate contents of the directory we're watching.
      */
-    public void scan() {
+    public synchronized void scan() {
 
         final File[] files = (target.isDirectory()) ? target.listFiles(): new File[]{target};
 
         final HashSet<String> missingFilesList = new HashSet<String>(this.files.keySet());
 
+        // null means every entry has to be checked
+        final Map<String, Long> events = (watcher != null) ? watcher.poll() : null;
+        if (events != null) {
+            pending.putAll(events);
+        } else {
+            pending.clear();
+        }
+
+        final long now = System.currentTimeMillis();
+
         if (files != null) {
             for (final File file : files) {
 
@@ -137,6 +215,24 @@ public class DirectoryMonitor {
                 }
 
                 final FileInfo oldStatus = oldInfo(file);
+
+                if (events != null && oldStatus != null) {
+                    final Long event = pending.get(oldStatus.getPath());
+
+                    if (event == null && !oldStatus.isChanging() && !oldStatus.isNewFile()) {
+                        // no file event, nothing to check
+                        continue;
+                    }
+
+                    if (event != null && now - event < pollIntervalMillis) {
+                        // still receiving events, wait for things to settle down
+                        oldStatus.setChanging(true);
+                        continue;
+                    }
+
+                    pending.remove(oldStatus.getPath());
+                }
+
                 final FileInfo newStatus = newInfo(file);
 
                 newStatus.diff(oldStatus);
@@ -152,10 +248,23 @@ public class DirectoryMonitor {
                 } else if (oldStatus.isNewFile()) {
                     // Used to be changing, now in (hopefully) its final state
                     getLogger().info("New File: " + newStatus);
+                    final long start = System.currentTimeMillis();
                     newStatus.setNewFile(!listener.fileAdded(file));
+                    notified(newStatus, start);
                 } else if (oldStatus.isChanging()) {
-                    getLogger().info("Updated File: " + newStatus);
-                    listener.fileUpdated(file);
+                    final long start = System.currentTimeMillis();
+                    final Set<File> modules = newStatus.getChangedModules();
+
+                    if (modules != null && listener instanceof ModuleListener) {
+                        getLogger().info("Updated Modules: " + newStatus + " " + modules);
+                        if (!((ModuleListener) listener).modulesUpdated(file, modules)) {
+                            listener.fileUpdated(file);
+                        }
+                    } else {
+                        getLogger().info("Updated File: " + newStatus);
+                        listener.fileUpdated(file);
+                    }
+                    notified(newStatus, start);
 
                     missingFilesList.remove(oldStatus.getPath());
                 }
@@ -167,14 +276,26 @@ public class DirectoryMonitor {
         for (final String path : missingFilesList) {
             getLogger().info("File removed: " + path);
 
+            pending.remove(path);
             if (listener.fileRemoved(new File(path))) {
                 this.files.remove(path);
             }
         }
     }
 
+    private void notified(final FileInfo info, final long start) {
+        final long end = System.currentTimeMillis();
+
+        lastDetectionLatency = Math.max(0, start - info.getModified());
+        lastListenerTime = end - start;
+
+        totalDetectionLatency.addAndGet(lastDetectionLatency);
+        totalListenerTime.addAndGet(lastListenerTime);
+        notifications.incrementAndGet();
+    }
+
     private FileInfo oldInfo(final File file) {
-        return (FileInfo) files.get(file.getAbsolutePath());
+        return files.get(file.getAbsolutePath());
     }
 
     /**
@@ -188,17 +309,65 @@ public class DirectoryMonitor {
         void fileUpdated(File file);
     }
 
+    /**
+     * Implemented by listeners able to only redeploy the modules of an exploded
+     * application which changed, like a single war of an ear.
+     */
+    public interface ModuleListener extends Listener {
+        /**
+         * @param modules the immediate children of the directory which were added, updated or removed
+         * @return false to update the whole directory with {@link #fileUpdated(File)} instead
+         */
+        boolean modulesUpdated(File file, Set<File> modules);
+    }
+
     /**
      * Provides details about a directory.
      */
     private static class DirectoryInfo extends FileInfo {
+
+        // immediate child -> highest last modified time in it
+        private final Map<String, Long> children;
+
+        // children of the last state which wasn't changing
+        private Map<String, Long> stable;
+
         public DirectoryInfo(final File dir) {
             //
             // We don't pay attention to the size of the directory or files in the
             // directory, only the highest last modified time of anything in the
             // directory.  Hopefully this is good enough.
             //
-            super(dir.getAbsolutePath(), 0, getLastModifiedInDir(dir));
+            this(dir, getLastModifiedOfChildren(dir));
+        }
+
+        private DirectoryInfo(final File dir, final Map<String, Long> children) {
+            super(dir.getAbsolutePath(), 0, max(dir.lastModified(), children));
+            this.children = children;
+        }
+
+        private static long max(long value, final Map<String, Long> children) {
+            for (final Long modified : children.values()) {
+                value = Math.max(value, modified);
+            }
+            return value;
+        }
+
+        private static Map<String, Long> getLastModifiedOfChildren(final File dir) {
+            final Map<String, Long> modified = new HashMap<String, Long>();
+            final File[] children = dir.listFiles();
+
+            if (children != null) {
+                for (final File child : children) {
+                    if (!child.canRead()) {
+                        continue;
+                    }
+
+                    modified.put(child.getName(), child.isDirectory() ? getLastModifiedInDir(child) : child.lastModified());
+                }
+            }
+
+            return modified;
         }
 
         private static long getLastModifiedInDir(final File dir) {
@@ -228,6 +397,41 @@ public class DirectoryMonitor {
 
             return value;
         }
+
+        @Override
+        public void setChanging(final boolean changing) {
+            if (changing && !isChanging()) {
+                stable = children;
+            }
+            super.setChanging(changing);
+        }
+
+        @Override
+        public void diff(final FileInfo old) {
+            super.diff(old);
+
+            if (old instanceof DirectoryInfo) {
+                final DirectoryInfo info = (DirectoryInfo) old;
+                stable = info.isChanging() ? info.stable : info.children;
+            }
+        }
+
+        @Override
+        public Set<File> getChangedModules() {
+            if (stable == null) return null;
+
+            final Set<String> names = new TreeSet<String>(stable.keySet());
+            names.addAll(children.keySet());
+
+            final Set<File> modules = new HashSet<File>();
+            for (final String name : names) {
+                final Long before = stable.get(name);
+                if (before == null || !before.equals(children.get(name))) {
+                    modules.add(new File(getPath(), name));
+                }
+            }
+            return modules;
+        }
     }
 
     /**
@@ -304,6 +508,13 @@ public class DirectoryMonitor {
             return size == info.size && modified == info.modified;
         }
 
+        /**
+         * @return the modules which changed since the last stable state or null if unknown
+         */
+        public Set<File> getChangedModules() {
+            return null;
+        }
+
         public String toString() {
             return path;
         }
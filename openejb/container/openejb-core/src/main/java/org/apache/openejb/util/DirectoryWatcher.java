@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records which entries of a directory had something change in their tree
+ * using the java.nio.file.WatchService of the JVM.
+ *
+ * OpenEJB still runs on Java 6 so the API is only used through reflection,
+ * {@link #create} returns null when it isn't there. Every sub directory
+ * has to be registered, if the OS limit of watches is reached the watcher
+ * gives up and the monitor goes back to polling.
+ *
+ * @version $Rev$ $Date$
+ */
+class DirectoryWatcher implements Runnable {
+
+    private static final Logger logger = DirectoryMonitor.logger;
+
+    private static final Api API = Api.load();
+
+    private final File target;
+    private final Object service;
+    private final Thread thread;
+
+    // WatchKey -> watched directory
+    private final Map<Object, File> keys = new ConcurrentHashMap<Object, File>();
+
+    // entry of the target -> time of its last event
+    private final Map<String, Long> events = new ConcurrentHashMap<String, Long>();
+
+    private final AtomicBoolean overflow = new AtomicBoolean(true);
+    private volatile boolean broken;
+
+    public static DirectoryWatcher create(final File target) {
+        if (API == null) return null;
+
+        try {
+            return new DirectoryWatcher(target);
+        } catch (Exception e) {
+            logger.warning("Can't watch " + target.getAbsolutePath() + ", polling it: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private DirectoryWatcher(final File target) throws Exception {
+        this.target = target.getAbsoluteFile();
+        this.service = API.newWatchService.invoke(API.fileSystem);
+        this.thread = new Thread(this, getClass().getSimpleName() + " " + target.getName());
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        if (!register(target)) {
+            broken = true;
+        }
+        thread.start();
+    }
+
+    public void stop() {
+        try {
+            API.close.invoke(service);
+        } catch (Exception e) {
+            // no-op
+        }
+        thread.interrupt();
+    }
+
+    /**
+     * @return the entries of the target which changed since the last call with the
+     * time of their last change or null if the watcher lost track of the changes
+     */
+    public Map<String, Long> poll() {
+        if (broken) return null;
+
+        if (overflow.getAndSet(false)) {
+            events.clear();
+            return null;
+        }
+
+        final Map<String, Long> changes = new HashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : events.entrySet()) {
+            if (events.remove(entry.getKey(), entry.getValue())) {
+                changes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return changes;
+    }
+
+    public boolean isBroken() {
+        return broken;
+    }
+
+    public void run() {
+        while (!broken) {
+            final Object key;
+            try {
+                key = API.take.invoke(service);
+            } catch (Exception e) {
+                // closed or interrupted
+                break;
+            }
+
+            try {
+                process(key);
+            } catch (Exception e) {
+                logger.debug("Can't process the file events of " + keys.get(key) + ": " + e.getMessage());
+                overflow.set(true);
+            }
+        }
+    }
+
+    private void process(final Object key) throws Exception {
+        final File directory = keys.get(key);
+        final long now = System.currentTimeMillis();
+
+        for (Object event : (List<?>) API.pollEvents.invoke(key)) {
+            final Object kind = API.kind.invoke(event);
+            if (kind == API.overflow || directory == null) {
+                overflow.set(true);
+                continue;
+            }
+
+            final File file = new File(directory, String.valueOf(API.context.invoke(event)));
+            final File entry = entry(file);
+            if (entry != null) {
+                events.put(entry.getAbsolutePath(), now);
+            }
+
+            if (kind == API.create && file.isDirectory() && !register(file)) {
+                broken = true;
+            }
+        }
+
+        if (!(Boolean) API.reset.invoke(key)) {
+            keys.remove(key);
+        }
+    }
+
+    /**
+     * @return the entry of the target the file is part of
+     */
+    private File entry(File file) {
+        while (file != null && !target.equals(file.getParentFile())) {
+            file = file.getParentFile();
+        }
+        return file;
+    }
+
+    private boolean register(final File directory) {
+        try {
+            final Object path = API.toPath.invoke(directory);
+            keys.put(API.register.invoke(path, service, API.kinds), directory);
+        } catch (InvocationTargetException e) {
+            logger.warning("Can't watch " + directory.getAbsolutePath() + ", polling " + target.getAbsolutePath() + ": " + e.getTargetException().getMessage());
+            return false;
+        } catch (Exception e) {
+            logger.warning("Can't watch " + directory.getAbsolutePath() + ", polling " + target.getAbsolutePath() + ": " + e.getMessage());
+            return false;
+        }
+
+        final File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory() && !register(child)) return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Api {
+        private Object fileSystem;
+        private Method newWatchService;
+        private Method toPath;
+        private Method register;
+        private Method take;
+        private Method close;
+        private Method pollEvents;
+        private Method reset;
+        private Method kind;
+        private Method context;
+        private Object kinds;
+        private Object create;
+        private Object overflow;
+
+        private static Api load() {
+            try {
+                final ClassLoader loader = Api.class.getClassLoader();
+                final Class<?> fileSystems = Class.forName("java.nio.file.FileSystems", true, loader);
+                final Class<?> fileSystem = Class.forName("java.nio.file.FileSystem", true, loader);
+                final Class<?> path = Class.forName("java.nio.file.Path", true, loader);
+                final Class<?> watchService = Class.forName("java.nio.file.WatchService", true, loader);
+                final Class<?> watchKey = Class.forName("java.nio.file.WatchKey", true, loader);
+                final Class<?> watchEvent = Class.forName("java.nio.file.WatchEvent", true, loader);
+                final Class<?> kind = Class.forName("java.nio.file.WatchEvent$Kind", true, loader);
+                final Class<?> standardKinds = Class.forName("java.nio.file.StandardWatchEventKinds", true, loader);
+
+                final Api api = new Api();
+                api.fileSystem = fileSystems.getMethod("getDefault").invoke(null);
+                api.newWatchService = fileSystem.getMethod("newWatchService");
+                api.toPath = File.class.getMethod("toPath");
+                api.register = path.getMethod("register", watchService, Array.newInstance(kind, 0).getClass());
+                api.take = watchService.getMethod("take");
+                api.close = watchService.getMethod("close");
+                api.pollEvents = watchKey.getMethod("pollEvents");
+                api.reset = watchKey.getMethod("reset");
+                api.kind = watchEvent.getMethod("kind");
+                api.context = watchEvent.getMethod("context");
+
+                api.create = standardKinds.getField("ENTRY_CREATE").get(null);
+                api.overflow = standardKinds.getField("OVERFLOW").get(null);
+                api.kinds = Array.newInstance(kind, 3);
+                Array.set(api.kinds, 0, api.create);
+                Array.set(api.kinds, 1, standardKinds.getField("ENTRY_MODIFY").get(null));
+                Array.set(api.kinds, 2, standardKinds.getField("ENTRY_DELETE").get(null));
+                return api;
+            } catch (Throwable e) {
+                // Java 6
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read/write lock for read mostly workloads.
+ *
+ * Readers only increment a counter picked from the calling thread id so
+ * concurrent readers don't all write to the same cache line as they do with
+ * {@link java.util.concurrent.locks.ReentrantReadWriteLock}. Writers take
+ * a plain reentrant lock, close the fast path to new readers and wait for
+ * the reader counters to drain. Readers arriving while a writer is active or
+ * waiting queue on the writer lock, so writers are never starved.
+ *
+ * Same reentrancy rules as ReentrantReadWriteLock: a reader can take the read
+ * lock again even if a writer is waiting, a writer can take the read lock and
+ * a reader can't upgrade to the write lock.
+ *
+ * @version $Rev$ $Date$
+ */
+public class StripedReadWriteLock implements ReadWriteLock {
+
+    // one counter every 128 bytes, avoids false sharing with adjacent line prefetch
+    private static final int PADDING = 16;
+    private static final long MAX_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ReentrantLock writer = new ReentrantLock();
+    private final AtomicLongArray readers;
+    private final int mask;
+    private volatile boolean writing;
+    private volatile Thread waitingWriter;
+
+    private final ThreadLocal<int[]> holds = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    private final Lock readLock = new ReadLock();
+    private final Lock writeLock = new WriteLock();
+
+    public StripedReadWriteLock() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public StripedReadWriteLock(int stripes) {
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        readers = new AtomicLongArray(size * PADDING);
+    }
+
+    public Lock readLock() {
+        return readLock;
+    }
+
+    public Lock writeLock() {
+        return writeLock;
+    }
+
+    public boolean isWriteLocked() {
+        return writer.isLocked();
+    }
+
+    public long getReadLockCount() {
+        long count = 0;
+        for (int i = 0; i <= mask; i++) {
+            count += readers.get(i * PADDING);
+        }
+        return count;
+    }
+
+    private int stripe() {
+        final long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32));
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return (h & mask) * PADDING;
+    }
+
+    private boolean tryFastRead(final int stripe, final int[] held) {
+        // a reentrant read always succeeds, a waiting writer is waiting for us anyway
+        final boolean reentrant = held[0] > 0;
+        if (writing && !reentrant) {
+            return false;
+        }
+
+        readers.incrementAndGet(stripe);
+        if (reentrant || !writing) {
+            held[0]++;
+            return true;
+        }
+
+        // a writer came in between, back off
+        releaseRead(stripe);
+        return false;
+    }
+
+    private void releaseRead(final int stripe) {
+        readers.decrementAndGet(stripe);
+        if (writing) {
+            final Thread thread = waitingWriter;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    private boolean acquireRead(final long time, final TimeUnit unit) throws InterruptedException {
+        final int stripe = stripe();
+        final int[] held = holds.get();
+        if (tryFastRead(stripe, held)) {
+            return true;
+        }
+
+        // slow path, wait for the writer to leave
+        final boolean locked;
+        if (time < 0) {
+            writer.lockInterruptibly();
+            locked = true;
+        } else {
+            locked = writer.tryLock(time, unit);
+        }
+        if (!locked) {
+            return false;
+        }
+
+        try {
+            readers.incrementAndGet(stripe);
+            held[0]++;
+        } finally {
+            writer.unlock();
+        }
+        return true;
+    }
+
+    private boolean acquireWrite(final long time, final TimeUnit unit) throws InterruptedException {
+        final long deadline = time < 0 ? 0 : System.nanoTime() + unit.toNanos(time);
+
+        final boolean locked;
+        if (time < 0) {
+            writer.lockInterruptibly();
+            locked = true;
+        } else {
+            locked = writer.tryLock(time, unit);
+        }
+        if (!locked) {
+            return false;
+        }
+
+        if (writer.getHoldCount() > 1) {
+            return true; // reentrant call, readers are already drained
+        }
+
+        writing = true;
+        waitingWriter = Thread.currentThread();
+        try {
+            while (getReadLockCount() != 0) {
+                long park = MAX_PARK;
+                if (time >= 0) {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        abortWrite();
+                        return false;
+                    }
+                    park = Math.min(park, remaining);
+                }
+
+                LockSupport.parkNanos(this, park);
+                if (Thread.interrupted()) {
+                    abortWrite();
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waitingWriter = null;
+        }
+        return true;
+    }
+
+    private void abortWrite() {
+        writing = false;
+        writer.unlock();
+    }
+
+    private class ReadLock implements Lock {
+        public void lock() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    acquireRead(-1, TimeUnit.NANOSECONDS);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public void lockInterruptibly() throws InterruptedException {
+            acquireRead(-1, TimeUnit.NANOSECONDS);
+        }
+
+        public boolean tryLock() {
+            final int stripe = stripe();
+            final int[] held = holds.get();
+            if (tryFastRead(stripe, held)) {
+                return true;
+            }
+            if (!writer.tryLock()) {
+                return false;
+            }
+            try {
+                readers.incrementAndGet(stripe);
+                held[0]++;
+            } finally {
+                writer.unlock();
+            }
+            return true;
+        }
+
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            return acquireRead(Math.max(0, time), unit);
+        }
+
+        public void unlock() {
+            final int[] held = holds.get();
+            if (held[0] == 0) {
+                throw new IllegalMonitorStateException();
+            }
+            held[0]--;
+            releaseRead(stripe());
+        }
+
+        public Condition newCondition() {
+            throw new UnsupportedOperationException("newCondition()");
+        }
+    }
+
+    private class WriteLock implements Lock {
+        public void lock() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    acquireWrite(-1, TimeUnit.NANOSECONDS);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public void lockInterruptibly() throws InterruptedException {
+            acquireWrite(-1, TimeUnit.NANOSECONDS);
+        }
+
+        public boolean tryLock() {
+            if (!writer.tryLock()) {
+                return false;
+            }
+            if (writer.getHoldCount() > 1) {
+                return true;
+            }
+
+            writing = true;
+            if (getReadLockCount() != 0) {
+                abortWrite();
+                return false;
+            }
+            return true;
+        }
+
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            return acquireWrite(Math.max(0, time), unit);
+        }
+
+        public void unlock() {
+            if (!writer.isHeldByCurrentThread()) {
+                throw new IllegalMonitorStateException();
+            }
+            if (writer.getHoldCount() == 1) {
+                writing = false;
+            }
+            writer.unlock();
+        }
+
+        public Condition newCondition() {
+            throw new UnsupportedOperationException("newCondition()");
+        }
+    }
+}
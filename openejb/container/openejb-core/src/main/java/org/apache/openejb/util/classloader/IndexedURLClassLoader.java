@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.openejb.util.classloader;
+
+import org.apache.openejb.loader.SystemInstance;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * URLClassLoader skipping the scan of its urls when a {@link PackageIndex}
+ * says the class or resource can't be there, and remembering the names
+ * it already failed to find when all its urls are jars.
+ *
+ * Parent delegation is unchanged, only the local lookup is shortcut.
+ */
+public class IndexedURLClassLoader extends URLClassLoader {
+    public static final boolean ACTIVE = SystemInstance.get().getOptions().get("openejb.classloader.package-index", true);
+    private static final int MAX_MISSES = SystemInstance.get().getOptions().get("openejb.classloader.negative-cache.size", 10000);
+
+    static {
+        // java 7 only, the access check passes since the caller is a ClassLoader subclass
+        try {
+            ClassLoader.class.getDeclaredMethod("registerAsParallelCapable").invoke(null);
+        } catch (Throwable ignored) {
+            // java 6
+        }
+    }
+
+    private final Map<String, Boolean> misses = new ConcurrentHashMap<String, Boolean>();
+    private volatile PackageIndex index;
+
+    public IndexedURLClassLoader(final URL[] urls, final ClassLoader parent) {
+        super(urls, parent);
+    }
+
+    public IndexedURLClassLoader(final URL[] urls) {
+        super(urls);
+    }
+
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException {
+        if (!ACTIVE) {
+            return super.findClass(name);
+        }
+
+        final String resourceName = name.replace('.', '/').concat(".class");
+        if (misses.containsKey(resourceName) || !index().mayContain(resourceName)) {
+            throw new ClassNotFoundException(name);
+        }
+
+        try {
+            return super.findClass(name);
+        } catch (ClassNotFoundException cnfe) {
+            miss(resourceName);
+            throw cnfe;
+        }
+    }
+
+    @Override
+    public URL findResource(final String name) {
+        if (!ACTIVE) {
+            return super.findResource(name);
+        }
+
+        if (misses.containsKey(name) || !index().mayContain(name)) {
+            return null;
+        }
+
+        final URL url = super.findResource(name);
+        if (url == null) {
+            miss(name);
+        }
+        return url;
+    }
+
+    @Override
+    public Enumeration<URL> findResources(final String name) throws IOException {
+        if (!ACTIVE) {
+            return super.findResources(name);
+        }
+
+        if (misses.containsKey(name) || !index().mayContain(name)) {
+            return Collections.enumeration(Collections.<URL>emptyList());
+        }
+        return super.findResources(name);
+    }
+
+    @Override
+    protected void addURL(final URL url) {
+        super.addURL(url);
+        index = null;
+        misses.clear();
+    }
+
+    private void miss(final String name) {
+        if (index().hasDirectories()) {
+            return; // the file can be added later
+        }
+        if (misses.size() >= MAX_MISSES) {
+            misses.clear();
+        }
+        misses.put(name, Boolean.TRUE);
+    }
+
+    private PackageIndex index() {
+        PackageIndex current = index;
+        if (current == null) {
+            synchronized (misses) {
+                current = index;
+                if (current == null) {
+                    current = new PackageIndex(getURLs());
+                    index = current;
+                }
+            }
+        }
+        return current;
+    }
+}
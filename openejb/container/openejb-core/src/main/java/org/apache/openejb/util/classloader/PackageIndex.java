@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.openejb.util.classloader;
+
+import org.apache.openejb.util.URLs;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Index of the packages (directories) available in a set of urls.
+ *
+ * The index is only used to answer "definitely not here" questions:
+ * if a resource lives in a package no url contains we can skip the
+ * linear scan of the urls. As soon as one url can't be indexed
+ * (remote url, unreadable jar, multi-release jar...) the index
+ * is marked incomplete and never answers negatively.
+ *
+ * Only jars are indexed. The content of a directory (exploded app)
+ * can change so the package is looked up on disk each time.
+ */
+public class PackageIndex {
+    private final Set<String> packages = new HashSet<String>();
+    private final List<File> directories = new ArrayList<File>();
+    private boolean complete = true;
+
+    public PackageIndex(final URL[] urls) {
+        final Set<String> visited = new HashSet<String>();
+        final LinkedList<URL> todo = new LinkedList<URL>();
+        for (URL url : urls) {
+            todo.add(url);
+        }
+
+        while (!todo.isEmpty() && complete) {
+            final URL url = todo.removeFirst();
+            if (!visited.add(url.toExternalForm())) {
+                continue;
+            }
+
+            final File file = file(url);
+            if (file == null) {
+                complete = false;
+                continue;
+            }
+
+            if (file.isDirectory() || (!file.exists() && url.getPath().endsWith("/"))) {
+                // may be created or filled later
+                directories.add(file);
+                continue;
+            }
+
+            if (!file.exists()) {
+                continue; // a missing jar can't provide anything
+            }
+
+            try {
+                indexJar(file, url, todo);
+            } catch (IOException e) {
+                complete = false;
+            }
+        }
+    }
+
+    /**
+     * @param resourceName a resource name as given to getResource (no leading slash)
+     * @return false only if the resource can't be in one of the indexed urls
+     */
+    public boolean mayContain(final String resourceName) {
+        if (!complete) {
+            return true;
+        }
+
+        final String packageName = packageOf(resourceName);
+        if (packages.contains(packageName)) {
+            return true;
+        }
+
+        for (File directory : directories) {
+            if (new File(directory, packageName).isDirectory()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return true if some urls are directories, their content isn't part of the index
+     */
+    public boolean hasDirectories() {
+        return !directories.isEmpty();
+    }
+
+    public int size() {
+        return packages.size();
+    }
+
+    private void indexJar(final File file, final URL url, final LinkedList<URL> todo) throws IOException {
+        final JarFile jar = new JarFile(file);
+        try {
+            final Manifest manifest = jar.getManifest();
+            if (manifest != null) {
+                final Attributes attributes = manifest.getMainAttributes();
+                if ("true".equalsIgnoreCase(attributes.getValue("Multi-Release"))) {
+                    complete = false;
+                    return;
+                }
+
+                // URLClassLoader follows the Class-Path entries so we have to index them too
+                final String classPath = attributes.getValue(Attributes.Name.CLASS_PATH);
+                if (classPath != null) {
+                    final StringTokenizer tokens = new StringTokenizer(classPath);
+                    while (tokens.hasMoreTokens()) {
+                        try {
+                            todo.add(new URL(url, tokens.nextToken()));
+                        } catch (MalformedURLException e) {
+                            complete = false;
+                            return;
+                        }
+                    }
+                }
+            }
+
+            packages.add("");
+            final Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                addParents(entries.nextElement().getName());
+            }
+        } finally {
+            try {
+                jar.close();
+            } catch (IOException ignored) {
+                // no-op
+            }
+        }
+    }
+
+    private void addParents(final String entry) {
+        String name = entry;
+        if (name.endsWith("/")) {
+            name = name.substring(0, name.length() - 1);
+            packages.add(name);
+        }
+
+        int idx = name.lastIndexOf('/');
+        while (idx > 0) {
+            name = name.substring(0, idx);
+            if (!packages.add(name)) {
+                return; // parents already added
+            }
+            idx = name.lastIndexOf('/');
+        }
+    }
+
+    private static String packageOf(final String resourceName) {
+        String name = resourceName;
+        if (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        if (name.endsWith("/")) {
+            name = name.substring(0, name.length() - 1);
+        }
+
+        final int idx = name.lastIndexOf('/');
+        if (idx < 0) {
+            return "";
+        }
+        return name.substring(0, idx);
+    }
+
+    private static File file(final URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return URLs.toFile(url);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util.proxy;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * Superclass of the proxy classes generated by {@link GeneratedProxyFactory}.
+ *
+ * Each generated method boxes its arguments and calls {@link #invoke(int, Object[])}
+ * with its own index, the Method instances are resolved once per proxy class.
+ */
+public abstract class GeneratedProxy {
+    private final InvocationHandler handler;
+    private final IndexedInvocationHandler indexed;
+    private final Method[] methods;
+
+    protected GeneratedProxy(InvocationHandler handler, Method[] methods) {
+        if (handler == null) throw new NullPointerException("handler is null");
+        this.handler = handler;
+        this.indexed = (handler instanceof IndexedInvocationHandler) ? (IndexedInvocationHandler) handler : null;
+        this.methods = methods;
+    }
+
+    // static so it can't clash with a method of the proxied interfaces
+    static InvocationHandler getHandler(GeneratedProxy proxy) {
+        return proxy.handler;
+    }
+
+    protected final Object invoke(int index, Object[] args) throws Throwable {
+        final Method method = methods[index];
+        try {
+            if (indexed != null) {
+                return indexed.invoke(this, index, method, args);
+            }
+            return handler.invoke(this, method, args);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            // same contract as java.lang.reflect.Proxy
+            for (Class<?> type : method.getExceptionTypes()) {
+                if (type.isInstance(t)) {
+                    throw t;
+                }
+            }
+            throw new UndeclaredThrowableException(t);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util.proxy;
+
+import org.apache.openejb.OpenEJBException;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.xbean.asm.ClassWriter;
+import org.apache.xbean.asm.MethodVisitor;
+import org.apache.xbean.asm.Opcodes;
+import org.apache.xbean.asm.Type;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ProxyFactory generating the proxy classes with ASM, as {@link LocalBeanProxyGeneratorImpl}
+ * does for the no-interface view.
+ *
+ * Each method of the generated class calls its handler with a constant index, handlers
+ * implementing {@link IndexedInvocationHandler} (the ejb proxy handlers) use it to skip
+ * resolving the invoked interface and method metadata on every call.
+ *
+ * Generated classes are cached per (interface set, class loader). Interfaces the generated
+ * class can't implement (non public, not visible from the class loader of the first one)
+ * fall back to java.lang.reflect.Proxy.
+ *
+ * @org.apache.xbean.XBean
+ */
+public class GeneratedProxyFactory implements ProxyFactory, Opcodes {
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, GeneratedProxyFactory.class);
+
+    private static final String SUPER = Type.getInternalName(GeneratedProxy.class);
+    private static final String HANDLER = Type.getDescriptor(java.lang.reflect.InvocationHandler.class);
+    private static final String METHODS = "methods";
+    private static final String METHODS_TYPE = Type.getDescriptor(Method[].class);
+    private static final String INVOKE = "(I[Ljava/lang/Object;)Ljava/lang/Object;";
+
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    private final Jdk13ProxyFactory jdk = new Jdk13ProxyFactory();
+    private final Map<ClassLoader, WeakReference<ProxyClassLoader>> loaders = new WeakHashMap<ClassLoader, WeakReference<ProxyClassLoader>>();
+
+    public void init(Properties props) throws OpenEJBException {
+    }
+
+    public InvocationHandler getInvocationHandler(Object proxy) throws IllegalArgumentException {
+        if (proxy instanceof GeneratedProxy) {
+            final InvocationHandler handler = (InvocationHandler) GeneratedProxy.getHandler((GeneratedProxy) proxy);
+            return handler.getInvocationHandler();
+        }
+        return jdk.getInvocationHandler(proxy);
+    }
+
+    public Class getProxyClass(Class interfce) throws IllegalArgumentException {
+        return getProxyClass(new Class[]{interfce});
+    }
+
+    public Class getProxyClass(Class[] interfaces) throws IllegalArgumentException {
+        if (interfaces.length < 1) {
+            throw new IllegalArgumentException("It's boring to implement 0 interfaces!");
+        }
+
+        final Class<?> proxyClass = generatedProxyClass(interfaces);
+        if (proxyClass != null) {
+            return proxyClass;
+        }
+        return jdk.getProxyClass(interfaces);
+    }
+
+    public boolean isProxyClass(Class cl) {
+        return (GeneratedProxy.class.isAssignableFrom(cl) && cl.getClassLoader() instanceof ProxyClassLoader) || jdk.isProxyClass(cl);
+    }
+
+    public Object newProxyInstance(Class interfce, InvocationHandler h) throws IllegalArgumentException {
+        return newProxyInstance(new Class[]{interfce}, h);
+    }
+
+    public Object newProxyInstance(Class[] interfaces, InvocationHandler handler) throws IllegalArgumentException {
+        if (interfaces.length < 1) {
+            throw new IllegalArgumentException("It's boring to implement 0 interfaces!");
+        }
+
+        final Class<?> proxyClass = generatedProxyClass(interfaces);
+        if (proxyClass == null) {
+            return jdk.newProxyInstance(interfaces, handler);
+        }
+
+        try {
+            return proxyClass.getConstructor(java.lang.reflect.InvocationHandler.class).newInstance(handler);
+        } catch (Exception e) {
+            throw (IllegalArgumentException) new IllegalArgumentException("Can't create proxy " + proxyClass.getName()).initCause(e);
+        }
+    }
+
+    /**
+     * @return the generated class or null if the jdk proxies have to be used
+     */
+    private Class<?> generatedProxyClass(Class[] interfaces) {
+        final ClassLoader classLoader = interfaces[0].getClassLoader();
+        if (classLoader == null || !isSupported(interfaces, classLoader)) {
+            return null;
+        }
+
+        final ProxyClassLoader proxyClassLoader = proxyClassLoader(classLoader);
+        try {
+            return proxyClassLoader.proxyClass(interfaces);
+        } catch (Throwable e) {
+            logger.debug("Can't generate a proxy for " + Arrays.asList(interfaces) + ", using jdk proxies: " + e);
+            return null;
+        }
+    }
+
+    private synchronized ProxyClassLoader proxyClassLoader(ClassLoader classLoader) {
+        final WeakReference<ProxyClassLoader> reference = loaders.get(classLoader);
+        ProxyClassLoader loader = (reference == null) ? null : reference.get();
+        if (loader == null) {
+            loader = new ProxyClassLoader(classLoader);
+            // weak: the generated classes are kept by their instances, not by the cache
+            loaders.put(classLoader, new WeakReference<ProxyClassLoader>(loader));
+        }
+        return loader;
+    }
+
+    private static boolean isSupported(Class[] interfaces, ClassLoader classLoader) {
+        for (Class<?> interfce : interfaces) {
+            if (!interfce.isInterface() || !Modifier.isPublic(interfce.getModifiers())) {
+                return false;
+            }
+            try {
+                if (Class.forName(interfce.getName(), false, classLoader) != interfce) {
+                    return false;
+                }
+            } catch (ClassNotFoundException e) {
+                return false; // interfaces from several class loaders (OSGi)
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Methods of the interfaces plus equals/hashCode/toString, by signature.
+     *
+     * @return null if two interfaces declare the same signature with a different contract
+     */
+    static Method[] methods(Class[] interfaces) throws NoSuchMethodException {
+        final Map<String, Method> methods = new LinkedHashMap<String, Method>();
+        methods.put("hashCode()", Object.class.getMethod("hashCode"));
+        methods.put("equals(java.lang.Object)", Object.class.getMethod("equals", Object.class));
+        methods.put("toString()", Object.class.getMethod("toString"));
+
+        for (Class<?> interfce : interfaces) {
+            for (Method method : interfce.getMethods()) {
+                final String signature = signature(method);
+                final Method existing = methods.get(signature);
+                if (existing == null) {
+                    methods.put(signature, method);
+                } else if (existing.getDeclaringClass() != Object.class
+                        && (existing.getReturnType() != method.getReturnType()
+                            || !Arrays.equals(existing.getExceptionTypes(), method.getExceptionTypes()))) {
+                    return null;
+                }
+            }
+        }
+        return methods.values().toArray(new Method[methods.size()]);
+    }
+
+    private static String signature(Method method) {
+        final StringBuilder sb = new StringBuilder(method.getName()).append('(');
+        final Class<?>[] types = method.getParameterTypes();
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(types[i].getName());
+        }
+        return sb.append(')').toString();
+    }
+
+    static byte[] generate(String className, Class[] interfaces, Method[] methods) {
+        final String[] interfaceNames = new String[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaceNames[i] = Type.getInternalName(interfaces[i]);
+        }
+
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_5, ACC_PUBLIC + ACC_FINAL + ACC_SUPER + ACC_SYNTHETIC, className, null, SUPER, interfaceNames);
+
+        cw.visitField(ACC_PUBLIC + ACC_STATIC, METHODS, METHODS_TYPE, null, null).visitEnd();
+
+        // constructor(InvocationHandler)
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "(" + HANDLER + ")V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(GETSTATIC, className, METHODS, METHODS_TYPE);
+        mv.visitMethodInsn(INVOKESPECIAL, SUPER, "<init>", "(" + HANDLER + METHODS_TYPE + ")V");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        for (int index = 0; index < methods.length; index++) {
+            generateMethod(cw, methods[index], index);
+        }
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void generateMethod(ClassWriter cw, Method method, int index) {
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        final Class<?>[] exceptionTypes = method.getExceptionTypes();
+        final String[] exceptions = new String[exceptionTypes.length];
+        for (int i = 0; i < exceptionTypes.length; i++) {
+            exceptions[i] = Type.getInternalName(exceptionTypes[i]);
+        }
+
+        final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC + ACC_FINAL, method.getName(), Type.getMethodDescriptor(method), null, exceptions);
+        mv.visitCode();
+
+        // this.invoke(index, new Object[]{ args... })
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitLdcInsn(index);
+        if (parameterTypes.length == 0) {
+            mv.visitInsn(ACONST_NULL); // as java.lang.reflect.Proxy
+        } else {
+            mv.visitLdcInsn(parameterTypes.length);
+            mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+
+            int slot = 1;
+            for (int i = 0; i < parameterTypes.length; i++) {
+                final Class<?> type = parameterTypes[i];
+                mv.visitInsn(DUP);
+                mv.visitLdcInsn(i);
+                mv.visitVarInsn(Type.getType(type).getOpcode(ILOAD), slot);
+                if (type.isPrimitive()) {
+                    final String wrapper = wrapper(type);
+                    mv.visitMethodInsn(INVOKESTATIC, wrapper, "valueOf", "(" + Type.getDescriptor(type) + ")L" + wrapper + ";");
+                }
+                mv.visitInsn(AASTORE);
+                slot += Type.getType(type).getSize();
+            }
+        }
+        mv.visitMethodInsn(INVOKEVIRTUAL, SUPER, "invoke", INVOKE);
+
+        final Class<?> returnType = method.getReturnType();
+        if (returnType == Void.TYPE) {
+            mv.visitInsn(POP);
+            mv.visitInsn(RETURN);
+        } else if (returnType.isPrimitive()) {
+            final String wrapper = wrapper(returnType);
+            mv.visitTypeInsn(CHECKCAST, wrapper);
+            mv.visitMethodInsn(INVOKEVIRTUAL, wrapper, returnType.getName() + "Value", "()" + Type.getDescriptor(returnType));
+            mv.visitInsn(Type.getType(returnType).getOpcode(IRETURN));
+        } else {
+            if (returnType != Object.class) {
+                mv.visitTypeInsn(CHECKCAST, Type.getInternalName(returnType));
+            }
+            mv.visitInsn(ARETURN);
+        }
+
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static String wrapper(Class<?> type) {
+        if (type == Boolean.TYPE) {
+            return "java/lang/Boolean";
+        } else if (type == Byte.TYPE) {
+            return "java/lang/Byte";
+        } else if (type == Character.TYPE) {
+            return "java/lang/Character";
+        } else if (type == Short.TYPE) {
+            return "java/lang/Short";
+        } else if (type == Integer.TYPE) {
+            return "java/lang/Integer";
+        } else if (type == Long.TYPE) {
+            return "java/lang/Long";
+        } else if (type == Float.TYPE) {
+            return "java/lang/Float";
+        } else if (type == Double.TYPE) {
+            return "java/lang/Double";
+        }
+        throw new IllegalArgumentException("not a primitive: " + type);
+    }
+
+    /**
+     * Defines the proxy classes of the interfaces of one class loader and caches them.
+     */
+    private static class ProxyClassLoader extends ClassLoader {
+        private final Map<List<Class>, Class<?>> proxies = new HashMap<List<Class>, Class<?>>();
+
+        private ProxyClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            // the application class loader may not see the container classes
+            if (GeneratedProxy.class.getName().equals(name)) {
+                return GeneratedProxy.class;
+            }
+            return super.loadClass(name, resolve);
+        }
+
+        private synchronized Class<?> proxyClass(Class[] interfaces) throws Exception {
+            final List<Class> key = new ArrayList<Class>(Arrays.asList(interfaces));
+            Class<?> proxyClass = proxies.get(key);
+            if (proxyClass == null) {
+                final Method[] methods = methods(interfaces);
+                if (methods == null) {
+                    throw new IllegalArgumentException("methods with the same signature and different return or exception types");
+                }
+
+                final String name = "org.apache.openejb.util.proxy.$GeneratedProxy" + ids.incrementAndGet();
+                final byte[] bytes = generate(name.replace('.', '/'), interfaces, methods);
+                proxyClass = defineClass(name, bytes, 0, bytes.length, GeneratedProxyFactory.class.getProtectionDomain());
+                proxyClass.getField(METHODS).set(null, methods);
+                proxies.put(key, proxyClass);
+            }
+            return proxyClass;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util.proxy;
+
+import java.lang.reflect.Method;
+
+/**
+ * Handler of the proxies created by {@link GeneratedProxyFactory}.
+ *
+ * The proxy passes the index of the invoked method in its class, a handler
+ * can use it to cache what it resolves from the method instead of doing it
+ * on each call. The index is only meaningful for the Method instance passed
+ * with it.
+ */
+public interface IndexedInvocationHandler extends InvocationHandler {
+
+    public Object invoke(Object proxy, int index, Method method, Object[] args) throws Throwable;
+
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import junit.framework.TestCase;
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.Injection;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.LocalInitialContextFactory;
+import org.apache.openejb.core.timer.EjbTimerServiceImpl;
+import org.apache.openejb.core.timer.TimerData;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.spi.ContainerSystem;
+
+import javax.annotation.Resource;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.management.ObjectName;
+import javax.naming.InitialContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Properties;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class BeanRedeployTest extends TestCase {
+
+    private Assembler assembler;
+
+    public void test() throws Exception {
+        System.setProperty(javax.naming.Context.INITIAL_CONTEXT_FACTORY, LocalInitialContextFactory.class.getName());
+
+        final ConfigurationFactory config = new ConfigurationFactory();
+        assembler = new Assembler();
+
+        assembler.createTransactionManager(config.configureService(TransactionServiceInfo.class));
+        assembler.createSecurityService(config.configureService(SecurityServiceInfo.class));
+        assembler.createContainer(config.configureService(StatelessSessionContainerInfo.class));
+
+        final EjbJar ejbJar = new EjbJar("redeploy");
+        ejbJar.addEnterpriseBean(new StatelessBean(TimedBean.class));
+        final EjbJarInfo ejbJarInfo = config.configureApplication(ejbJar);
+        assembler.createApplication(ejbJarInfo);
+
+        final TimedBean bean = (TimedBean) new InitialContext().lookup("TimedBeanLocalBean");
+        bean.schedule("tick");
+
+        final ContainerSystem containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
+        final BeanContext replaced = containerSystem.getBeanContext("TimedBean");
+        final TimerData replacedTimer = timers(replaced).iterator().next();
+
+        final ObjectName pool = new ObjectName("openejb.management:J2EEServer=openejb,J2EEApplication=null,EJBModule=redeploy,StatelessSessionBean=TimedBean,j2eeType=Pool,name=TimedBean");
+        assertTrue(LocalMBeanServer.get().isRegistered(pool));
+
+        // build the new bean the way the assembler does
+        final EnterpriseBeanInfo beanInfo = ejbJarInfo.enterpriseBeans.get(0);
+        final Properties containers = new Properties();
+        containers.put(beanInfo.containerId, replaced.getContainer());
+        final BeanContext beanContext = new EjbJarBuilder(containers, replaced.getModuleContext().getAppContext())
+                .build(ejbJarInfo, new ArrayList<Injection>()).get("TimedBean");
+        beanContext.setTransactionPolicyFactory(replaced.getTransactionPolicyFactory());
+        beanContext.setEjbTimerService(new EjbTimerServiceImpl(beanContext));
+
+        assembler.redeploy(beanContext);
+        assertSame(beanContext, containerSystem.getBeanContext("TimedBean"));
+
+        // the timer moved to the new bean
+        assertTrue(replacedTimer.isCancelled());
+        assertTrue(timers(replaced).isEmpty());
+        final Collection<TimerData> timers = timers(beanContext);
+        assertEquals(1, timers.size());
+        final TimerData timer = timers.iterator().next();
+        assertEquals("tick", timer.getInfo());
+        assertEquals(beanContext.getEjbTimeout(), timer.getTimeoutMethod());
+        assertFalse(timer.isCancelled());
+
+        // undeploying the replaced bean leaves the MBeans and the timers of the new one alone
+        final long end = System.currentTimeMillis() + 10000;
+        while (assembler.getDrainer().getDraining().length > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, assembler.getDrainer().getDraining().length);
+        assertTrue(replaced.isDestroyed());
+
+        assertTrue(LocalMBeanServer.get().isRegistered(pool));
+        assertFalse(timer.isCancelled());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (assembler != null) {
+            assembler.destroy();
+        }
+        SystemInstance.reset();
+    }
+
+    private static Collection<TimerData> timers(BeanContext beanContext) {
+        return ((EjbTimerServiceImpl) beanContext.getEjbTimerService()).getTimerStore().getTimers((String) beanContext.getDeploymentID());
+    }
+
+    public static class TimedBean {
+
+        @Resource
+        private TimerService timerService;
+
+        public void schedule(String info) {
+            timerService.createIntervalTimer(3600000, 3600000, new TimerConfig(info, false));
+        }
+
+        @Timeout
+        public void timeout(Timer timer) {
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import junit.framework.TestCase;
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.EjbJarInfo;
+import org.apache.openejb.assembler.classic.ResourceInfo;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class AppInfoCacheTest extends TestCase {
+
+    private File base;
+    private File app;
+    private AppInfoCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        base = Files.tmpdir();
+        app = new File(base, "app");
+        assertTrue(new File(app, "META-INF").mkdirs());
+        IO.writeString(new File(app, "META-INF/ejb-jar.xml"), "<ejb-jar/>");
+
+        final File directory = new File(base, "cache");
+        assertTrue(directory.mkdirs());
+        cache = new AppInfoCache(directory, "environment".getBytes());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.delete(base);
+    }
+
+    public void testHit() throws Exception {
+        final List<File> files = Collections.singletonList(app);
+        final String fingerprint = cache.fingerprint(app.getAbsolutePath(), files);
+        assertNotNull(fingerprint);
+        assertNull(cache.get(app.getAbsolutePath(), fingerprint));
+
+        final AppInfoCache.Entry entry = new AppInfoCache.Entry(appInfo());
+        final ResourceInfo resource = new ResourceInfo();
+        resource.id = "app/Default DataSource";
+        entry.resources.add(resource);
+        cache.put(app.getAbsolutePath(), fingerprint, entry);
+
+        final String again = cache.fingerprint(app.getAbsolutePath(), files);
+        assertEquals(fingerprint, again);
+
+        final AppInfoCache.Entry cached = cache.get(app.getAbsolutePath(), again);
+        assertNotNull(cached);
+        assertEquals("app", cached.appInfo.appId);
+        assertEquals("Bean", cached.appInfo.ejbJars.get(0).moduleName);
+        assertEquals("app/Default DataSource", cached.resources.get(0).id);
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    public void testChangedArchive() throws Exception {
+        final List<File> files = Collections.singletonList(app);
+        final String fingerprint = cache.fingerprint(app.getAbsolutePath(), files);
+        cache.put(app.getAbsolutePath(), fingerprint, new AppInfoCache.Entry(appInfo()));
+
+        IO.writeString(new File(app, "META-INF/beans.xml"), "<beans/>");
+
+        final String changed = cache.fingerprint(app.getAbsolutePath(), files);
+        assertFalse(fingerprint.equals(changed));
+        assertNull(cache.get(app.getAbsolutePath(), changed));
+
+        cache.put(app.getAbsolutePath(), changed, new AppInfoCache.Entry(appInfo()));
+        assertEquals("older entries are removed", 1, cache.getDirectory().list().length);
+    }
+
+    public void testChangedEnvironment() throws Exception {
+        final List<File> files = Collections.singletonList(app);
+        final AppInfoCache other = new AppInfoCache(cache.getDirectory(), "other environment".getBytes());
+
+        assertFalse(cache.fingerprint(app.getAbsolutePath(), files).equals(other.fingerprint(app.getAbsolutePath(), files)));
+    }
+
+    public void testMissingPath() throws Exception {
+        final List<File> files = Collections.singletonList(app);
+        final String fingerprint = cache.fingerprint(app.getAbsolutePath(), files);
+
+        final AppInfo appInfo = appInfo();
+        appInfo.ejbJars.get(0).path = new File(base, "removed").getAbsolutePath();
+        cache.put(app.getAbsolutePath(), fingerprint, new AppInfoCache.Entry(appInfo));
+
+        assertNull(cache.get(app.getAbsolutePath(), fingerprint));
+        assertEquals("invalid entries are removed", 0, cache.getDirectory().list().length);
+    }
+
+    private AppInfo appInfo() {
+        final AppInfo appInfo = new AppInfo();
+        appInfo.appId = "app";
+        appInfo.path = app.getAbsolutePath();
+
+        final EjbJarInfo ejbJar = new EjbJarInfo();
+        ejbJar.moduleName = "Bean";
+        ejbJar.path = app.getAbsolutePath();
+        appInfo.ejbJars.add(ejbJar);
+        return appInfo;
+    }
+}
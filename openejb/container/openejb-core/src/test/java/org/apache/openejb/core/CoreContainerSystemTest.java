@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core;
+
+import junit.framework.TestCase;
+import org.apache.openejb.AppContext;
+import org.apache.openejb.core.ivm.naming.IvmJndiFactory;
+import org.apache.openejb.loader.SystemInstance;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class CoreContainerSystemTest extends TestCase {
+
+    public void testContextsByClassLoader() throws Exception {
+        final CoreContainerSystem containerSystem = new CoreContainerSystem(new IvmJndiFactory());
+        final ClassLoader appLoader = new URLClassLoader(new URL[0], getClass().getClassLoader());
+        final ClassLoader webLoader = new URLClassLoader(new URL[0], appLoader);
+
+        assertTrue(containerSystem.getContexts(appLoader).isEmpty());
+        assertTrue(containerSystem.getContexts(null).isEmpty());
+
+        long generation = containerSystem.getGeneration();
+
+        final AppContext appContext = new AppContext("app", SystemInstance.get(), appLoader, null, null, false);
+        containerSystem.addAppContext(appContext);
+        assertEquals(1, containerSystem.getContexts(appLoader).size());
+        assertSame(appContext, containerSystem.getContexts(appLoader).get(0));
+        assertFalse(generation == containerSystem.getGeneration());
+        generation = containerSystem.getGeneration();
+
+        final WebContext webContext = new WebContext(appContext);
+        webContext.setId("web");
+        webContext.setClassLoader(webLoader);
+        containerSystem.addWebContext(webContext);
+        assertSame(webContext, containerSystem.getContexts(webLoader).get(0));
+        assertFalse(generation == containerSystem.getGeneration());
+
+        containerSystem.removeWebContext(webContext);
+        containerSystem.removeAppContext("app");
+        assertTrue(containerSystem.getContexts(appLoader).isEmpty());
+        assertTrue(containerSystem.getContexts(webLoader).isEmpty());
+    }
+
+    public void testGenerationIsUniqueAcrossContainerSystems() throws Exception {
+        final CoreContainerSystem a = new CoreContainerSystem(new IvmJndiFactory());
+        final CoreContainerSystem b = new CoreContainerSystem(new IvmJndiFactory());
+        assertFalse(a.getGeneration() == b.getGeneration());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core;
+
+import org.apache.openejb.AppContext;
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.ModuleContext;
+import org.apache.openejb.loader.SystemInstance;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DeploymentRegistryTest {
+    private ModuleContext moduleContext;
+
+    @Before
+    public void init() throws Exception {
+        SystemInstance.init(new Properties());
+        moduleContext = new ModuleContext("foo", null, "bar", new AppContext("foo", SystemInstance.get(), null, null, null, false), null);
+    }
+
+    @Test
+    public void replace() throws Exception {
+        final DeploymentRegistry registry = new DeploymentRegistry();
+        final BeanContext first = bean("Orange");
+        final BeanContext other = bean("Apple");
+
+        assertNull(registry.put(first));
+        assertNull(registry.put(other));
+        assertEquals(2, registry.size());
+        assertEquals(2, registry.getVersion());
+
+        final BeanContext second = bean("Orange");
+        assertSame(first, registry.put(second));
+        assertSame(second, registry.get("Orange"));
+        assertEquals(2, registry.size());
+        assertEquals(3, registry.getVersion());
+
+        // undeploying the replaced bean leaves the new one alone
+        assertFalse(registry.remove(first));
+        assertSame(second, registry.get("Orange"));
+        assertEquals(3, registry.getVersion());
+
+        assertTrue(registry.remove(second));
+        assertNull(registry.get("Orange"));
+        assertEquals(1, registry.size());
+        assertSame(other, registry.values()[0]);
+    }
+
+    @Test
+    public void values() throws Exception {
+        final DeploymentRegistry registry = new DeploymentRegistry();
+        assertEquals(0, registry.values().length);
+
+        registry.put(bean("Orange"));
+        final BeanContext[] values = registry.values();
+        values[0] = null;
+        assertEquals("Orange", registry.values()[0].getDeploymentID());
+    }
+
+    @Test
+    public void drain() throws Exception {
+        final BeanContext replaced = bean("Orange");
+        final DeploymentDrainer drainer = new DeploymentDrainer(60000, 100);
+
+        final ThreadContext oldContext = ThreadContext.enter(new ThreadContext(replaced, null));
+        try {
+            assertEquals(1, replaced.getInFlight());
+
+            drainer.drain(replaced);
+            drainer.check();
+            assertEquals(1, drainer.getDraining().length);
+            assertEquals(1, drainer.getInFlight());
+            assertFalse(replaced.isDestroyed());
+        } finally {
+            ThreadContext.exit(oldContext);
+        }
+
+        assertEquals(0, replaced.getInFlight());
+        drainer.check();
+        assertEquals(0, drainer.getDraining().length);
+        assertEquals(1, drainer.getDrained());
+        assertEquals(0, drainer.getForced());
+        assertTrue(replaced.isDestroyed());
+        drainer.stop();
+    }
+
+    @Test
+    public void timeout() throws Exception {
+        final BeanContext replaced = bean("Orange");
+        final DeploymentDrainer drainer = new DeploymentDrainer(0, 100);
+
+        final ThreadContext oldContext = ThreadContext.enter(new ThreadContext(replaced, null));
+        try {
+            drainer.drain(replaced);
+            Thread.sleep(10);
+            drainer.check();
+            assertEquals(1, drainer.getForced());
+            assertTrue(replaced.isDestroyed());
+        } finally {
+            ThreadContext.exit(oldContext);
+        }
+        drainer.stop();
+    }
+
+    private BeanContext bean(String id) throws Exception {
+        return new BeanContext(id, null, moduleContext, Object.class, null, new HashMap<String, String>());
+    }
+}
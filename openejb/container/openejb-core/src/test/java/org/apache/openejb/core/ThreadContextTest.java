@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core;
+
+import org.apache.openejb.AppContext;
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.ModuleContext;
+import org.apache.openejb.core.security.AbstractSecurityService.SecurityContext;
+import org.apache.openejb.loader.SystemInstance;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.security.auth.Subject;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ThreadContextTest {
+    private BeanContext beanContext;
+
+    @Before
+    public void init() throws Exception {
+        SystemInstance.init(new Properties());
+        beanContext = new BeanContext("foo", null, new ModuleContext("foo", null, "bar", new AppContext("foo", SystemInstance.get(), null, null, null, false), null), Object.class, null, new HashMap<String, String>());
+    }
+
+    @Test
+    public void data() throws Exception {
+        final ThreadContext context = new ThreadContext(beanContext, null);
+        final Method method = Object.class.getMethod("toString");
+
+        assertNull(context.set(Method.class, method));
+        assertSame(method, context.get(Method.class));
+
+        final SecurityContext securityContext = new SecurityContext(new Subject());
+        assertNull(context.set(SecurityContext.class, securityContext));
+        assertSame(securityContext, context.get(SecurityContext.class));
+
+        for (Class<?> type : new Class<?>[]{String.class, Integer.class, Long.class, Double.class, Float.class}) {
+            assertNull(context.set((Class<Object>) type, type.getName()));
+        }
+        assertEquals(Integer.class.getName(), context.get(Integer.class));
+        assertEquals(Float.class.getName(), context.get(Float.class));
+        assertEquals(Float.class.getName(), context.remove(Float.class));
+        assertNull(context.get(Float.class));
+        assertEquals(String.class.getName(), context.set(String.class, "foo"));
+        assertEquals("foo", context.get(String.class));
+
+        final ThreadContext copy = new ThreadContext(context);
+        assertSame(method, copy.get(Method.class));
+        assertSame(securityContext, copy.get(SecurityContext.class));
+        assertEquals("foo", copy.get(String.class));
+        assertEquals(Double.class.getName(), copy.get(Double.class));
+
+        assertSame(securityContext, context.remove(SecurityContext.class));
+        assertNull(context.get(SecurityContext.class));
+        assertSame(securityContext, copy.get(SecurityContext.class));
+    }
+
+    @Test
+    public void nestedAndRecycled() throws Exception {
+        final List<String> events = new ArrayList<String>();
+        final ThreadContextListener listener = new ThreadContextListener() {
+            @Override
+            public void contextEntered(final ThreadContext oldContext, final ThreadContext newContext) {
+                events.add("enter " + (oldContext != null));
+            }
+
+            @Override
+            public void contextExited(final ThreadContext exitedContext, final ThreadContext reenteredContext) {
+                events.add("exit " + (reenteredContext != null));
+            }
+        };
+        ThreadContext.addThreadContextListener(listener);
+        try {
+            final ThreadContext outer = ThreadContext.obtain(beanContext, "outer");
+            final ThreadContext oldOuter = ThreadContext.enter(outer);
+            outer.set(String.class, "outer");
+            outer.set(SecurityContext.class, new SecurityContext(new Subject()));
+
+            final ThreadContext inner = ThreadContext.obtain(beanContext, "inner");
+            assertNotSame(outer, inner);
+            final ThreadContext oldInner = ThreadContext.enter(inner);
+            assertSame(inner, ThreadContext.getThreadContext());
+            assertNull(inner.get(String.class));
+            ThreadContext.exit(oldInner);
+            ThreadContext.release(inner);
+
+            assertSame(outer, ThreadContext.getThreadContext());
+            assertEquals("outer", outer.get(String.class));
+
+            ThreadContext.exit(oldOuter);
+            ThreadContext.release(outer);
+            assertSame(oldOuter, ThreadContext.getThreadContext());
+
+            // released contexts are reused without their previous state
+            final ThreadContext reused = ThreadContext.obtain(beanContext, "reused");
+            assertSame(outer, reused);
+            assertSame(beanContext, reused.getBeanContext());
+            assertEquals("reused", reused.getPrimaryKey());
+            assertNull(reused.get(String.class));
+            assertNull(reused.get(SecurityContext.class));
+            assertNull(reused.getCurrentOperation());
+        } finally {
+            ThreadContext.removeThreadContextListener(listener);
+        }
+
+        assertEquals(4, events.size());
+        assertEquals("enter false", events.get(0));
+        assertEquals("enter true", events.get(1));
+        assertEquals("exit true", events.get(2));
+        assertEquals("exit false", events.get(3));
+    }
+}
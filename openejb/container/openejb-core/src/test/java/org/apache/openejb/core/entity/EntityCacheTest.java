@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.entity;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class EntityCacheTest extends TestCase {
+
+    public void testTakeAndPut() throws Exception {
+        final EntityCache<String> cache = new EntityCache<String>(10);
+        assertNull(cache.take(1));
+
+        cache.put(1, "one");
+        assertEquals("one", cache.take(1));
+
+        // nobody else gets it until it is put back
+        assertNull(cache.take(1));
+
+        cache.put(1, "one");
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    public void testStaleReader() throws Exception {
+        final EntityCache<String> cache = new EntityCache<String>(10);
+
+        final long stamp = cache.stamp();
+        cache.invalidate(1);
+        assertFalse(cache.put(1, "stale", stamp));
+        assertNull(cache.take(1));
+
+        assertTrue(cache.put(2, "two", cache.stamp()));
+        cache.invalidate(2);
+        assertNull(cache.take(2));
+    }
+
+    public void testReaderLoadingBeforeTheWriterCommits() throws Exception {
+        final EntityCache<String> cache = new EntityCache<String>(10);
+
+        // the writer stores its state, then a reader loads the entity before the commit
+        cache.invalidate(1);
+        final long stamp = cache.stamp();
+
+        // once committed, the reader can't replace the fresh instance with its stale state
+        cache.put(1, "fresh");
+        assertFalse(cache.put(1, "stale", stamp));
+        assertEquals("fresh", cache.take(1));
+    }
+
+    public void testEviction() throws Exception {
+        final EntityCache<String> cache = new EntityCache<String>(3);
+        for (int i = 0; i < 3; i++) {
+            cache.put(i, "v" + i);
+        }
+
+        // 0 is used again so 1 is the one put back the longest time ago
+        cache.put(0, cache.take(0));
+        cache.put(3, "v3");
+
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.take(1));
+        assertEquals("v0", cache.take(0));
+        assertEquals("v2", cache.take(2));
+        assertEquals("v3", cache.take(3));
+    }
+
+    public void testTakeAndPutDoesNotGrow() throws Exception {
+        final EntityCache<String> cache = new EntityCache<String>(2);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        for (int i = 0; i < 1000; i++) {
+            cache.put(1, cache.take(1));
+        }
+
+        assertEquals(0, cache.getEvictions());
+        assertEquals("two", cache.take(2));
+        assertEquals("one", cache.take(1));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.interceptor;
+
+import junit.framework.TestCase;
+import org.apache.openejb.core.Operation;
+
+import javax.interceptor.InvocationContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ReflectionInvocationContextTest extends TestCase {
+
+    public void testAroundInvoke() throws Exception {
+        final Bean bean = new Bean();
+        final List<Interceptor> interceptors = new ArrayList<Interceptor>();
+        interceptors.add(new Interceptor(new Around("a"), Around.class.getMethod("invoke", InvocationContext.class)));
+        interceptors.add(new Interceptor(new Around("b"), Around.class.getMethod("invoke", InvocationContext.class)));
+
+        final InvocationContext context = new ReflectionInvocationContext(Operation.BUSINESS, interceptors, bean, Bean.class.getMethod("echo", String.class, int.class), "x", 1);
+        assertEquals("abx1", context.proceed());
+        assertEquals(Arrays.asList("a", "b"), context.getContextData().get("calls"));
+    }
+
+    public void testSetParameters() throws Exception {
+        final InvocationContext context = new ReflectionInvocationContext(Operation.BUSINESS, new ArrayList<Interceptor>(), new Bean(), Bean.class.getMethod("echo", String.class, int.class), "x", 1);
+
+        context.setParameters(new Object[]{"y", 2});
+        assertEquals("y2", context.proceed());
+
+        try {
+            context.setParameters(new Object[]{"y", null});
+            fail("null for a primitive");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        try {
+            context.setParameters(new Object[]{1, 2});
+            fail("wrong type");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        try {
+            context.setParameters(new Object[]{"y"});
+            fail("wrong length");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testCallbacksInSuperclasses() throws Exception {
+        final Bean bean = new Bean();
+        final List<Interceptor> interceptors = new ArrayList<Interceptor>();
+        interceptors.add(new Interceptor(bean, Parent.class.getDeclaredMethod("parentPostConstruct")));
+        interceptors.add(new Interceptor(bean, Bean.class.getDeclaredMethod("postConstruct")));
+
+        final InvocationContext context = new ReflectionInvocationContext(Operation.POST_CONSTRUCT, interceptors, bean, null);
+        assertNull(context.proceed());
+        assertEquals(Arrays.asList("parent", "bean"), bean.callbacks);
+
+        try {
+            context.getParameters();
+            fail("callbacks can't access parameters");
+        } catch (IllegalStateException e) {
+            // ok
+        }
+    }
+
+    public void testExceptionsAreNotWrapped() throws Exception {
+        final InvocationContext context = new ReflectionInvocationContext(Operation.BUSINESS, new ArrayList<Interceptor>(), new Bean(), Bean.class.getMethod("fail"));
+        try {
+            context.proceed();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            assertEquals("fail", e.getMessage());
+        }
+    }
+
+    public static class Around {
+        private final String name;
+
+        public Around(String name) {
+            this.name = name;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Object invoke(InvocationContext context) throws Exception {
+            List<String> calls = (List<String>) context.getContextData().get("calls");
+            if (calls == null) {
+                calls = new ArrayList<String>();
+                context.getContextData().put("calls", calls);
+            }
+            calls.add(name);
+            return name + context.proceed();
+        }
+    }
+
+    public static class Parent {
+        protected final List<String> callbacks = new ArrayList<String>();
+
+        private void parentPostConstruct() {
+            callbacks.add("parent");
+        }
+    }
+
+    public static class Bean extends Parent {
+        void postConstruct() {
+            callbacks.add("bean");
+        }
+
+        public String echo(String value, int count) {
+            return value + count;
+        }
+
+        public String fail() {
+            throw new UnsupportedOperationException("fail");
+        }
+    }
+}
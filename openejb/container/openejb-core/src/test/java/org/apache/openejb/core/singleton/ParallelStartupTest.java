@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.singleton;
+
+import junit.framework.TestCase;
+import org.apache.openejb.OpenEJBException;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.assembler.classic.EjbJarInfo;
+import org.apache.openejb.assembler.classic.ProxyFactoryInfo;
+import org.apache.openejb.assembler.classic.SecurityServiceInfo;
+import org.apache.openejb.assembler.classic.SingletonSessionContainerInfo;
+import org.apache.openejb.assembler.classic.StartupReadiness;
+import org.apache.openejb.assembler.classic.TransactionServiceInfo;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ivm.naming.InitContextFactory;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.loader.SystemInstance;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.DependsOn;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ParallelStartupTest extends TestCase {
+
+    private static final CyclicBarrier barrier = new CyclicBarrier(3);
+    private static final List<String> actual = new CopyOnWriteArrayList<String>();
+
+    public void test() throws Exception {
+        System.setProperty(javax.naming.Context.INITIAL_CONTEXT_FACTORY, InitContextFactory.class.getName());
+        SystemInstance.get().setProperty("openejb.startup.threads", "4");
+
+        Assembler assembler = new Assembler();
+        ConfigurationFactory config = new ConfigurationFactory();
+
+        assembler.createProxyFactory(config.configureService(ProxyFactoryInfo.class));
+        assembler.createTransactionManager(config.configureService(TransactionServiceInfo.class));
+        assembler.createSecurityService(config.configureService(SecurityServiceInfo.class));
+        assembler.createContainer(config.configureService(SingletonSessionContainerInfo.class));
+
+        EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new SingletonBean(Red.class));
+        ejbJar.addEnterpriseBean(new SingletonBean(Green.class));
+        ejbJar.addEnterpriseBean(new SingletonBean(Blue.class));
+        ejbJar.addEnterpriseBean(new SingletonBean(White.class));
+
+        // the @PostConstruct of the first three only return when they run at the same time
+        assembler.createApplication(config.configureApplication(ejbJar));
+
+        assertEquals(4, actual.size());
+        assertEquals("white", actual.get(3));
+
+        StartupReadiness readiness = assembler.getReadiness();
+        assertSame(readiness, SystemInstance.get().getComponent(StartupReadiness.class));
+        assertEquals(0, readiness.getWarmingApplications());
+        assertEquals(4, readiness.getWarmedBeans());
+        assertEquals(0, readiness.getFailedApplications());
+    }
+
+    public void testFailedStartIsNotWarmed() throws Exception {
+        System.setProperty(javax.naming.Context.INITIAL_CONTEXT_FACTORY, InitContextFactory.class.getName());
+        SystemInstance.get().setProperty("openejb.startup.threads", "4");
+
+        Assembler assembler = new Assembler();
+        ConfigurationFactory config = new ConfigurationFactory();
+
+        assembler.createProxyFactory(config.configureService(ProxyFactoryInfo.class));
+        assembler.createTransactionManager(config.configureService(TransactionServiceInfo.class));
+        assembler.createSecurityService(config.configureService(SecurityServiceInfo.class));
+        assembler.createContainer(config.configureService(SingletonSessionContainerInfo.class));
+
+        EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new SingletonBean(Broken.class));
+        EjbJarInfo ejbJarInfo = config.configureApplication(ejbJar);
+
+        try {
+            assembler.createApplication(ejbJarInfo);
+            fail("the @PostConstruct of Broken fails");
+        } catch (OpenEJBException expected) {
+            // ok
+        }
+
+        StartupReadiness readiness = assembler.getReadiness();
+        assertEquals(0, readiness.getWarmingApplications());
+        assertEquals(0, readiness.getWarmedBeans());
+        assertEquals(1, readiness.getFailedApplications());
+        assertEquals(ejbJarInfo.moduleName, readiness.getLastFailedApplication());
+    }
+
+    private static void callback(String name) throws Exception {
+        if (!"white".equals(name)) {
+            barrier.await(30, TimeUnit.SECONDS);
+        }
+        actual.add(name);
+    }
+
+    @Singleton
+    @Startup
+    public static class Red {
+        @PostConstruct
+        public void construct() throws Exception {
+            callback("red");
+        }
+    }
+
+    @Singleton
+    @Startup
+    public static class Green {
+        @PostConstruct
+        public void construct() throws Exception {
+            callback("green");
+        }
+    }
+
+    @Singleton
+    @Startup
+    public static class Blue {
+        @PostConstruct
+        public void construct() throws Exception {
+            callback("blue");
+        }
+    }
+
+    @Singleton
+    @Startup
+    public static class Broken {
+        @PostConstruct
+        public void construct() {
+            throw new IllegalStateException("can't start");
+        }
+    }
+
+    @Singleton
+    @Startup
+    @DependsOn({"Red", "Green", "Blue"})
+    public static class White {
+        @PostConstruct
+        public void construct() throws Exception {
+            callback("white");
+        }
+    }
+}
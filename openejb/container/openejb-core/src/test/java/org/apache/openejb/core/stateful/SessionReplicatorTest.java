@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class SessionReplicatorTest extends TestCase {
+
+    private final ReplicaStore store = new ReplicaStore(60000);
+    private final Buddy buddy = new Buddy();
+    private SessionReplicator replicator;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (replicator != null) replicator.stop();
+    }
+
+    public void testDelta() throws Exception {
+        final byte[] previous = state(1000, 1);
+        final byte[] state = previous.clone();
+        state[500] = 42;
+
+        final SessionDelta delta = SessionDelta.diff("key", 2, 1, previous, state);
+        assertEquals(1, delta.size());
+        assertTrue(Arrays.equals(state, delta.apply(previous)));
+
+        // grown and shrunk states
+        final byte[] longer = state(1200, 1);
+        assertTrue(Arrays.equals(longer, SessionDelta.diff("key", 3, 2, state, longer).apply(state)));
+        assertTrue(Arrays.equals(previous, SessionDelta.diff("key", 4, 3, longer, previous).apply(longer)));
+    }
+
+    public void testReplication() throws Exception {
+        replicator = new SessionReplicator(buddy, 100, 1000, 10);
+        replicator.start();
+
+        final byte[] state = state(1000, 1);
+        replicator.update("a", state.clone());
+        await("a", state);
+
+        state[10] = 7;
+        replicator.update("a", state.clone());
+        await("a", state);
+
+        // only the changed byte was sent the second time
+        assertEquals(2, replicator.getReplicated());
+        assertEquals(2000, replicator.getStateBytes());
+        assertEquals(1001, replicator.getSentBytes());
+
+        replicator.remove("a");
+        while (store.contains("a")) {
+            Thread.sleep(10);
+        }
+    }
+
+    public void testResync() throws Exception {
+        replicator = new SessionReplicator(buddy, 100, 1000, 10);
+        replicator.start();
+
+        replicator.update("a", state(100, 1));
+        await("a", state(100, 1));
+
+        // the buddy lost the replica, the next delta can't be applied
+        store.take("a");
+        final byte[] state = state(100, 2);
+        replicator.update("a", state);
+        await("a", state);
+
+        assertEquals(1, store.getRejected());
+    }
+
+    public void testBackpressure() throws Exception {
+        buddy.blocked = new CountDownLatch(1);
+        replicator = new SessionReplicator(buddy, 2, 50, 1);
+        replicator.start();
+
+        // the sender is stuck on the first one, the next two fill the queue
+        replicator.update("a", state(10, 1));
+        while (replicator.getPending() > 0) {
+            Thread.sleep(10);
+        }
+        assertTrue(replicator.update("b", state(10, 1)));
+        assertTrue(replicator.update("c", state(10, 1)));
+
+        // merged with the queued one
+        assertTrue(replicator.update("b", state(10, 2)));
+
+        final long start = System.currentTimeMillis();
+        assertFalse(replicator.update("d", state(10, 1)));
+        assertTrue(System.currentTimeMillis() - start >= 40);
+        assertEquals(1, replicator.getDropped());
+
+        buddy.blocked.countDown();
+        await("b", state(10, 2));
+        await("c", state(10, 1));
+        assertFalse(store.contains("d"));
+    }
+
+    public void testBuddyDown() throws Exception {
+        buddy.down = true;
+        replicator = new SessionReplicator(buddy, 1, 10000, 1);
+        replicator.start();
+
+        replicator.update("a", state(10, 1));
+        while (replicator.isHealthy()) {
+            Thread.sleep(10);
+        }
+
+        // no waiting for a dead buddy
+        final long start = System.currentTimeMillis();
+        replicator.update("b", state(10, 1));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+
+        buddy.down = false;
+        await("a", state(10, 1));
+        assertTrue(replicator.getFailures() > 0);
+    }
+
+    private void await(String key, byte[] expected) throws Exception {
+        final long end = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < end) {
+            if (Arrays.equals(expected, store.peek(key))) return;
+            Thread.sleep(10);
+        }
+        fail("Session " + key + " not replicated");
+    }
+
+    private static byte[] state(int size, int seed) {
+        final byte[] state = new byte[size];
+        for (int i = 0; i < size; i++) {
+            state[i] = (byte) (i * seed);
+        }
+        return state;
+    }
+
+    private class Buddy implements SessionReplicator.Transport {
+        private volatile CountDownLatch blocked;
+        private volatile boolean down;
+
+        public Set<Object> send(List<SessionDelta> deltas) throws IOException {
+            if (down) throw new IOException("down");
+
+            final CountDownLatch latch = blocked;
+            if (latch != null) {
+                try {
+                    latch.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException("interrupted");
+                }
+            }
+            return store.apply(deltas);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import junit.framework.TestCase;
+import org.apache.openejb.SystemException;
+import org.apache.openejb.util.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class SimpleCacheTest extends TestCase {
+
+    public void testWatermarks() throws Exception {
+        final Store store = new Store();
+        final Listener listener = new Listener();
+        final SimpleCache<String, String> cache = cache(listener, store, 0);
+        cache.setHighWatermark(8);
+        cache.setLowWatermark(3);
+        cache.setBulkPassivate(2);
+        cache.init();
+
+        for (int i = 0; i < 8; i++) {
+            cache.add("k" + i, "v" + i);
+            cache.checkIn("k" + i);
+        }
+        cache.processLRU();
+
+        // passivated in batches of two until there are no more than three left
+        assertEquals(6, store.size());
+        assertEquals(6, cache.getPassivated());
+        assertEquals(6, listener.stored.size());
+        assertEquals(2, cache.getSize());
+        assertEquals(0, cache.getPassivating());
+
+        // the least recently used ones went to the store
+        assertEquals("v0", cache.checkOut("k0"));
+        assertEquals(1, cache.getActivated());
+        assertEquals(1, listener.loaded.size());
+        assertEquals("v7", cache.checkOut("k7"));
+        assertEquals(1, cache.getActivated());
+        cache.destroy();
+    }
+
+    public void testAsynchronousPassivation() throws Exception {
+        final Store store = new Store();
+        final Listener listener = new Listener();
+        final SimpleCache<String, String> cache = cache(listener, store, 2);
+        cache.init();
+
+        store.block();
+        for (int i = 0; i < 4; i++) {
+            cache.add("k" + i, "v" + i);
+            cache.checkIn("k" + i);
+        }
+        cache.processLRU();
+
+        // the LRU isn't waiting for the store
+        assertEquals(4, cache.getPassivating() + cache.getSize());
+        assertTrue(cache.getPassivating() > 0);
+        assertEquals(0, store.size());
+
+        store.release();
+        for (int i = 0; i < 100 && cache.getPassivating() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, cache.getPassivating());
+        assertEquals(store.size(), cache.getPassivated());
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals("v" + i, cache.checkOut("k" + i));
+        }
+        assertEquals(store.activated, cache.getActivated());
+        assertEquals(cache.getPassivated(), cache.getActivated());
+        cache.destroy();
+    }
+
+    public void testCheckOutWaitsForTheStore() throws Exception {
+        final Store store = new Store();
+        final SimpleCache<String, String> cache = cache(new Listener(), store, 1);
+        cache.setBulkPassivate(1);
+        cache.init();
+
+        store.block();
+        cache.add("k", "v");
+        cache.checkIn("k");
+        cache.processLRU();
+
+        // the value is being written
+        store.writing.await(10, TimeUnit.SECONDS);
+        assertEquals(1, cache.getPassivating());
+
+        final List<Object> result = new ArrayList<Object>();
+        final Thread thread = new Thread() {
+            public void run() {
+                try {
+                    result.add(cache.checkOut("k"));
+                } catch (Exception e) {
+                    result.add(e);
+                }
+            }
+        };
+        thread.start();
+        thread.join(100);
+        assertTrue(result.isEmpty());
+
+        store.release();
+        thread.join(10000);
+        assertEquals("v", result.get(0));
+        assertEquals(1, cache.getPassivated());
+        assertEquals(1, cache.getActivated());
+        cache.destroy();
+    }
+
+    public void testQueuedValueIsTakenBack() throws Exception {
+        final Store store = new Store();
+        final Listener listener = new Listener();
+        final SimpleCache<String, String> cache = cache(listener, store, 1);
+        cache.setBulkPassivate(1);
+        cache.init();
+
+        // the only thread is busy with the first value
+        store.block();
+        cache.add("a", "va");
+        cache.checkIn("a");
+        cache.processLRU();
+        store.writing.await(10, TimeUnit.SECONDS);
+
+        cache.add("b", "vb");
+        cache.checkIn("b");
+        cache.processLRU();
+        assertEquals(2, cache.getPassivating());
+
+        assertEquals("vb", cache.checkOut("b"));
+        assertEquals(1, cache.getRescued());
+        assertFalse(listener.stored.contains("vb"));
+
+        store.release();
+        assertEquals("va", cache.checkOut("a"));
+        assertEquals(1, cache.getPassivated());
+        assertEquals(0, cache.getPassivating());
+        cache.checkIn("b");
+        cache.destroy();
+    }
+
+    public void testConcurrentCheckOutsOfAQueuedValue() throws Exception {
+        final Store store = new Store();
+        final SimpleCache<String, String> cache = cache(new Listener(), store, 1);
+        cache.setBulkPassivate(1);
+        cache.init();
+
+        // the only thread is busy with the first value, the others stay queued
+        store.block();
+        cache.add("a", "va");
+        cache.checkIn("a");
+        cache.processLRU();
+        store.writing.await(10, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 200; i++) {
+            final String key = "k" + i;
+            cache.add(key, "v" + i);
+            cache.checkIn(key);
+            cache.processLRU();
+
+            // one of them takes the value back, the others find it checked out
+            final Thread[] threads = new Thread[8];
+            final CyclicBarrier start = new CyclicBarrier(threads.length);
+            final List<Object> results = new CopyOnWriteArrayList<Object>();
+            for (int j = 0; j < threads.length; j++) {
+                threads[j] = new Thread() {
+                    public void run() {
+                        try {
+                            start.await();
+                            results.add(String.valueOf(cache.checkOut(key)));
+                        } catch (IllegalStateException e) {
+                            results.add(e);
+                        } catch (Exception e) {
+                            results.add(String.valueOf(e));
+                        }
+                    }
+                };
+                threads[j].start();
+            }
+            for (Thread thread : threads) {
+                thread.join(10000);
+            }
+
+            assertEquals(threads.length, results.size());
+            assertTrue(String.valueOf(results), results.remove("v" + i));
+            for (Object result : results) {
+                assertTrue(String.valueOf(results), result instanceof IllegalStateException);
+            }
+            cache.checkIn(key);
+        }
+
+        store.release();
+        cache.destroy();
+    }
+
+    public void testMaxPassivating() throws Exception {
+        final Store store = new Store();
+        final SimpleCache<String, String> cache = cache(new Listener(), store, 1);
+        cache.setBulkPassivate(1);
+        cache.setMaxPassivating(2);
+        cache.init();
+
+        store.block();
+        for (int i = 0; i < 5; i++) {
+            cache.add("k" + i, "v" + i);
+            cache.checkIn("k" + i);
+        }
+        cache.processLRU();
+
+        assertEquals(2, cache.getPassivating());
+        assertEquals(3, cache.getSize());
+
+        store.release();
+        cache.destroy();
+    }
+
+    private static SimpleCache<String, String> cache(Listener listener, Store store, int threads) {
+        final SimpleCache<String, String> cache = new SimpleCache<String, String>(listener, store, 0, 100, new Duration(-1, TimeUnit.SECONDS));
+        cache.setFrequency("0");
+        cache.setPassivationThreads(threads);
+        return cache;
+    }
+
+    private static class Listener implements Cache.CacheListener<String> {
+        private final List<String> loaded = new ArrayList<String>();
+        private final List<String> stored = new ArrayList<String>();
+
+        public synchronized void afterLoad(String value) {
+            loaded.add(value);
+        }
+
+        public synchronized void beforeStore(String value) {
+            stored.add(value);
+        }
+
+        public void timedOut(String value) {
+        }
+    }
+
+    private static class Store implements PassivationStrategy {
+        private final Map<Object, Object> values = new ConcurrentHashMap<Object, Object>();
+        private final CountDownLatch writing = new CountDownLatch(1);
+        private volatile CountDownLatch blocked = new CountDownLatch(0);
+        private volatile int activated;
+
+        public void block() {
+            blocked = new CountDownLatch(1);
+        }
+
+        public void release() {
+            blocked.countDown();
+        }
+
+        public int size() {
+            return values.size();
+        }
+
+        public void init(Properties props) {
+        }
+
+        public void passivate(Map stateTable) throws SystemException {
+            writing.countDown();
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                throw new SystemException(e);
+            }
+            values.putAll(stateTable);
+        }
+
+        public Object activate(Object primaryKey) {
+            final Object value = values.remove(primaryKey);
+            if (value != null) activated++;
+            return value;
+        }
+    }
+}
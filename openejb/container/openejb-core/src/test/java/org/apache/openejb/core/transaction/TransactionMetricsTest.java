@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.transaction;
+
+import junit.framework.TestCase;
+import org.apache.openejb.AppContext;
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.ModuleContext;
+import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.loader.SystemInstance;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class TransactionMetricsTest extends TestCase {
+
+    public void testHistogram() throws Exception {
+        final TransactionMetrics.Histogram histogram = new TransactionMetrics.Histogram();
+        assertEquals(0.0, histogram.getPercentile(99.0));
+
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(0.128, histogram.getPercentile(50.0), 0.0001);
+        assertEquals(0.128, histogram.getPercentile(99.0), 0.0001);
+        assertEquals(50.0, histogram.getPercentile(100.0), 0.0001);
+        assertEquals(50.0, histogram.getMax(), 0.0001);
+        assertEquals((99 * 0.1 + 50) / 100, histogram.getMean(), 0.0001);
+    }
+
+    public void testOutcomes() throws Exception {
+        final TransactionMetrics metrics = new TransactionMetrics(2);
+
+        final TransactionMetrics.Transaction first = metrics.begin("tx1");
+        first.enlisted();
+        first.enlisted();
+        Thread.sleep(5);
+        final TransactionMetrics.Transaction second = metrics.begin("tx2");
+        final TransactionMetrics.Transaction third = metrics.begin("tx3");
+
+        assertEquals(3, metrics.getActive());
+        final String[] longest = metrics.getLongestRunning();
+        assertEquals(2, longest.length);
+        assertTrue(longest[0], longest[0].endsWith("tx1"));
+
+        metrics.completed(first, TransactionMetrics.Outcome.COMMITTED, TimeUnit.MILLISECONDS.toNanos(1), 0);
+        metrics.completed(second, TransactionMetrics.Outcome.ROLLED_BACK, 0, 0);
+        metrics.completed(third, TransactionMetrics.Outcome.TIMED_OUT, 0, 0);
+        // completed twice by mistake
+        metrics.completed(third, TransactionMetrics.Outcome.ROLLED_BACK, 0, 0);
+
+        assertEquals(0, metrics.getActive());
+        assertEquals(3, metrics.getStarted());
+
+        final TransactionMetrics.Stats stats = metrics.getStats(null, null);
+        assertEquals(3, stats.getCount());
+        assertEquals(1, stats.getCommitted());
+        assertEquals(1, stats.getRolledBack());
+        assertEquals(1, stats.getTimedOut());
+        assertEquals(2, stats.getMaxEnlistedResources());
+        assertTrue(stats.getCommitPercentile99() > 0);
+        assertTrue(stats.getMaxTime() >= 5);
+    }
+
+    public void testRollbackPastTheTimeoutIsATimeout() throws Exception {
+        final TransactionMetrics metrics = new TransactionMetrics(2);
+        metrics.setTransactionTimeout(1);
+
+        final TransactionMetrics.Transaction quick = metrics.begin("tx1");
+        metrics.completed(quick, TransactionMetrics.Outcome.ROLLED_BACK, 0, 0);
+
+        final TransactionMetrics.Transaction slow = metrics.begin("tx2");
+        Thread.sleep(1100);
+        metrics.completed(slow, TransactionMetrics.Outcome.ROLLED_BACK, 0, 0);
+
+        final TransactionMetrics.Stats stats = metrics.getStats(null, null);
+        assertEquals(1, stats.getRolledBack());
+        assertEquals(1, stats.getTimedOut());
+    }
+
+    public void testStatsOfUndeployedBeansAreDropped() throws Exception {
+        final TransactionMetrics metrics = new TransactionMetrics(2);
+        final AppContext appContext = new AppContext("app", SystemInstance.get(), null, null, null, false);
+        final ModuleContext moduleContext = new ModuleContext("module", null, "app", appContext, null);
+        for (String id : new String[] { "kept", "undeployed" }) {
+            final BeanContext beanContext = new BeanContext(id, null, moduleContext, Object.class, null, new HashMap<String, String>());
+            final ThreadContext oldContext = ThreadContext.enter(new ThreadContext(beanContext, null));
+            try {
+                metrics.completed(metrics.begin("tx"), TransactionMetrics.Outcome.COMMITTED, 0, 0);
+            } finally {
+                ThreadContext.exit(oldContext);
+            }
+        }
+        assertEquals(2, metrics.stats().size());
+
+        metrics.remove("undeployed");
+        assertEquals(1, metrics.stats().size());
+        assertNotNull(metrics.getStats("kept", null));
+        assertNull(metrics.getStats("undeployed", null));
+    }
+}
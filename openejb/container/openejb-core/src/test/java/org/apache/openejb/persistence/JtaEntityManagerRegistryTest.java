@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.persistence;
+
+import org.apache.openejb.AppContext;
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.ModuleContext;
+import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.loader.SystemInstance;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.transaction.Status;
+import javax.transaction.TransactionSynchronizationRegistry;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+public class JtaEntityManagerRegistryTest {
+    private final Counters counters = new Counters();
+    private BeanContext beanContext;
+    private EntityManagerFactory factory;
+    private TransactionSynchronizationRegistry noTx;
+
+    @Before
+    public void init() throws Exception {
+        SystemInstance.init(new Properties());
+        beanContext = new BeanContext("foo", null, new ModuleContext("foo", null, "bar", new AppContext("foo", SystemInstance.get(), null, null, null, false), null), Object.class, null, new HashMap<String, String>());
+
+        factory = proxy(EntityManagerFactory.class, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("createEntityManager".equals(method.getName())) {
+                    counters.created++;
+                    return entityManager();
+                }
+                return null;
+            }
+        });
+        noTx = proxy(TransactionSynchronizationRegistry.class, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("getTransactionStatus".equals(method.getName())) {
+                    return Status.STATUS_NO_TRANSACTION;
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void entityManagerPerOperation() {
+        final JtaEntityManagerRegistry registry = new JtaEntityManagerRegistry(noTx, false);
+        final JtaEntityManager em = new JtaEntityManager("unit", registry, factory, null, false);
+
+        final ThreadContext old = ThreadContext.enter(new ThreadContext(beanContext, null));
+        try {
+            em.find(Object.class, 1);
+            em.find(Object.class, 2);
+        } finally {
+            ThreadContext.exit(old);
+        }
+
+        assertEquals(2, counters.created);
+        assertEquals(2, counters.closed);
+        assertEquals(2, registry.getCreatedEntityManagers());
+        assertEquals(0, registry.getReusedEntityManagers());
+    }
+
+    @Test
+    public void entityManagerPerInvocation() {
+        final JtaEntityManagerRegistry registry = new JtaEntityManagerRegistry(noTx, true);
+        final JtaEntityManager em = new JtaEntityManager("unit", registry, factory, null, false);
+
+        final ThreadContext old = ThreadContext.enter(new ThreadContext(beanContext, null));
+        try {
+            em.find(Object.class, 1);
+            em.find(Object.class, 2);
+            em.find(Object.class, 3);
+
+            assertEquals(1, counters.created);
+            assertEquals(0, counters.closed);
+            assertEquals(3, counters.cleared); // entities are still detached after each operation
+        } finally {
+            ThreadContext.exit(old);
+        }
+
+        assertEquals(1, counters.closed);
+        assertEquals(1, registry.getCreatedEntityManagers());
+        assertEquals(2, registry.getReusedEntityManagers());
+
+        // outside of an invocation nothing can be reused
+        em.find(Object.class, 4);
+        assertEquals(2, counters.created);
+        assertEquals(2, counters.closed);
+    }
+
+    private EntityManager entityManager() {
+        return proxy(EntityManager.class, new InvocationHandler() {
+            private boolean open = true;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                final String name = method.getName();
+                if ("close".equals(name)) {
+                    open = false;
+                    counters.closed++;
+                } else if ("clear".equals(name)) {
+                    counters.cleared++;
+                } else if ("isOpen".equals(name)) {
+                    return open;
+                } else if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                } else if ("equals".equals(name)) {
+                    return proxy == args[0];
+                }
+                return null;
+            }
+        });
+    }
+
+    private static <T> T proxy(final Class<T> api, final InvocationHandler handler) {
+        return api.cast(Proxy.newProxyInstance(JtaEntityManagerRegistryTest.class.getClassLoader(), new Class<?>[]{api}, handler));
+    }
+
+    private static class Counters {
+        private int created;
+        private int closed;
+        private int cleared;
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.resource;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.transaction.manager.LogException;
+import org.apache.geronimo.transaction.manager.Recovery;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfoImpl;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.apache.geronimo.transaction.manager.XidFactoryImpl;
+
+import javax.transaction.xa.Xid;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class MappedTransactionLogTest extends TestCase {
+
+    private final XidFactory xidFactory = new XidFactoryImpl("test".getBytes());
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("txlog", "");
+        directory.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(directory);
+    }
+
+    public void testRecovery() throws Exception {
+        MappedTransactionLog log = start(64 * 1024);
+        assertTrue(log.recover(xidFactory).isEmpty());
+
+        final Xid committed = xidFactory.createXid();
+        final Xid rolledBack = xidFactory.createXid();
+        final Xid inDoubt = xidFactory.createXid();
+
+        log.commit(committed, log.prepare(committed, branches(committed, "jdbc")));
+        log.rollback(rolledBack, log.prepare(rolledBack, branches(rolledBack, "jms")));
+        log.prepare(inDoubt, branches(inDoubt, "jdbc", "jms"));
+        log.stop();
+
+        log = start(64 * 1024);
+        final Collection<Recovery.XidBranchesPair> recovered = log.recover(xidFactory);
+        assertEquals(1, recovered.size());
+
+        final Recovery.XidBranchesPair transaction = recovered.iterator().next();
+        assertXid(inDoubt, transaction.getXid());
+        assertEquals(2, transaction.getBranches().size());
+        for (TransactionBranchInfo branch : transaction.getBranches()) {
+            assertTrue(branch.getResourceName().equals("jdbc") || branch.getResourceName().equals("jms"));
+            assertEquals(Arrays.toString(inDoubt.getGlobalTransactionId()), Arrays.toString(branch.getBranchXid().getGlobalTransactionId()));
+        }
+
+        // completed with the mark given back by the recovery
+        log.commit(transaction.getXid(), transaction.getMark());
+        log.stop();
+
+        log = start(64 * 1024);
+        assertTrue(log.recover(xidFactory).isEmpty());
+        log.stop();
+    }
+
+    public void testFilesReused() throws Exception {
+        MappedTransactionLog log = start(4 * 1024);
+
+        final Xid inDoubt = xidFactory.createXid();
+        log.prepare(inDoubt, branches(inDoubt, "jdbc"));
+
+        // enough to go around the files several times
+        for (int i = 0; i < 500; i++) {
+            final Xid xid = xidFactory.createXid();
+            log.commit(xid, log.prepare(xid, branches(xid, "jdbc", "jms")));
+        }
+        log.stop();
+
+        log = start(4 * 1024);
+        final Collection<Recovery.XidBranchesPair> recovered = log.recover(xidFactory);
+        assertEquals(1, recovered.size());
+        assertXid(inDoubt, recovered.iterator().next().getXid());
+        log.stop();
+    }
+
+    public void testGroupCommit() throws Exception {
+        final MappedTransactionLog log = start(1024 * 1024);
+        final int transactions = run(log, 16, 100);
+
+        assertTrue(log.recover(xidFactory).isEmpty());
+        assertTrue("forces " + log.getForces(), log.getForces() < transactions);
+        log.stop();
+    }
+
+    public void testFailedPrepareDoesNotDelayTheNextForce() throws Exception {
+        final MappedTransactionLog log = start(64 * 1024, 10000);
+
+        final Xid failed = xidFactory.createXid();
+        final List<TransactionBranchInfo> broken = new ArrayList<TransactionBranchInfo>();
+        broken.add(new Branch(xidFactory.createBranch(failed, 1)) {
+            @Override
+            public String getResourceName() {
+                throw new IllegalStateException("broken resource");
+            }
+        });
+        try {
+            log.prepare(failed, broken);
+            fail("the prepare of a broken branch can't succeed");
+        } catch (IllegalStateException expected) {
+            // ok
+        }
+
+        // nobody is writing anymore, so the force doesn't wait for the 10s maxWait
+        final long start = System.currentTimeMillis();
+        final Xid xid = xidFactory.createXid();
+        log.commit(xid, log.prepare(xid, branches(xid, "jdbc")));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        log.stop();
+    }
+
+    public void testStopWhileForcing() throws Exception {
+        final MappedTransactionLog log = start(64 * 1024, 10000);
+
+        // a second writer keeps the first prepare waiting to join its force
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Xid blocked = xidFactory.createXid();
+        final List<TransactionBranchInfo> slow = new ArrayList<TransactionBranchInfo>();
+        slow.add(new Branch(xidFactory.createBranch(blocked, 1)) {
+            @Override
+            public String getResourceName() {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "jdbc";
+            }
+        });
+        final Thread writer = new Thread() {
+            public void run() {
+                try {
+                    log.prepare(blocked, slow);
+                } catch (LogException expected) {
+                    // stopped before it was appended
+                }
+            }
+        };
+        writer.start();
+        writing.await();
+
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread preparing = new Thread() {
+            public void run() {
+                try {
+                    final Xid xid = xidFactory.createXid();
+                    log.prepare(xid, branches(xid, "jms"));
+                } catch (Throwable t) {
+                    error.set(t);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        preparing.start();
+        Thread.sleep(200);
+
+        final long start = System.currentTimeMillis();
+        log.stop();
+        done.await();
+        final long time = System.currentTimeMillis() - start;
+
+        release.countDown();
+        writer.join();
+
+        assertTrue(time < 5000);
+        assertTrue(String.valueOf(error.get()), error.get() instanceof LogException);
+    }
+
+    private MappedTransactionLog start(int fileSize) throws Exception {
+        return start(fileSize, 50);
+    }
+
+    private MappedTransactionLog start(int fileSize, long maxWait) throws Exception {
+        final MappedTransactionLog log = new MappedTransactionLog(directory, "txlog", "log", 2, fileSize, maxWait, -1);
+        log.start();
+        return log;
+    }
+
+    private int run(final TransactionLog log, int threads, final int transactions) throws Exception {
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < transactions; j++) {
+                            final Xid xid = xidFactory.createXid();
+                            log.commit(xid, log.prepare(xid, branches(xid, "jdbc", "jms")));
+                        }
+                    } catch (Throwable t) {
+                        error.set(t);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        if (error.get() != null) throw new Exception(error.get());
+        return threads * transactions;
+    }
+
+    private List<TransactionBranchInfo> branches(Xid xid, String... resources) {
+        final List<TransactionBranchInfo> branches = new ArrayList<TransactionBranchInfo>();
+        for (int i = 0; i < resources.length; i++) {
+            branches.add(new TransactionBranchInfoImpl(xidFactory.createBranch(xid, i + 1), resources[i]));
+        }
+        return branches;
+    }
+
+    private abstract static class Branch implements TransactionBranchInfo {
+        private final Xid branchXid;
+
+        private Branch(Xid branchXid) {
+            this.branchXid = branchXid;
+        }
+
+        public Xid getBranchXid() {
+            return branchXid;
+        }
+    }
+
+    private static void assertXid(Xid expected, Xid actual) {
+        assertEquals(expected.getFormatId(), actual.getFormatId());
+        assertTrue(Arrays.equals(expected.getGlobalTransactionId(), actual.getGlobalTransactionId()));
+        assertTrue(Arrays.equals(expected.getBranchQualifier(), actual.getBranchQualifier()));
+    }
+
+    private static void delete(File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
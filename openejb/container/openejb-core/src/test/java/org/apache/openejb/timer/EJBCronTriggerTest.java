@@ -697,6 +697,56 @@ public class EJBCronTriggerTest {
 	    assertTrue(parseExceptionThrown);
     
     }
-	
-	
+
+    @Test(timeout = 5000)
+    public void testBothDayOfMonthAndDayOfWeekNextMonthNotAllowed() throws ParseException {
+        ScheduleExpression expr = new ScheduleExpression().dayOfMonth(29).month(1).dayOfWeek("Wed").start(new Date(0));
+        EJBCronTrigger trigger = new EJBCronTrigger(expr);
+        // the next Wednesday is in February but the 29th still is in January
+        assertEquals(new GregorianCalendar(2015, 0, 29, 0, 0, 0).getTime(), trigger.getFireTimeAfter(new GregorianCalendar(2015, 0, 28, 0, 0, 0).getTime()));
+        assertEquals(new GregorianCalendar(2016, 0, 6, 0, 0, 0).getTime(), trigger.getFireTimeAfter(new GregorianCalendar(2015, 0, 29, 0, 0, 0).getTime()));
+    }
+
+    @Test(timeout = 5000)
+    public void testWeekdayInMonthAfterMidMonth() throws ParseException {
+        ScheduleExpression expr = new ScheduleExpression().dayOfMonth("1st Sat").start(new Date(0));
+        EJBCronTrigger trigger = new EJBCronTrigger(expr);
+        // Sunday the 6th, the first Saturday of January 2008 was the 5th
+        assertEquals(new GregorianCalendar(2008, 1, 2, 0, 0, 0).getTime(), trigger.getFireTimeAfter(new GregorianCalendar(2008, 0, 6, 0, 0, 0).getTime()));
+    }
+
+    @Test(timeout = 5000)
+    public void testDynamicRangeWithDayOfWeek() throws ParseException {
+        ScheduleExpression expr = new ScheduleExpression().dayOfMonth("Last Sat-Last").dayOfWeek("Wed").start(new Date(0));
+        EJBCronTrigger trigger = new EJBCronTrigger(expr);
+        assertEquals(new GregorianCalendar(2014, 5, 28, 0, 0, 0).getTime(), trigger.getFireTimeAfter(new GregorianCalendar(2014, 5, 27, 12, 0, 0).getTime()));
+        assertEquals(new GregorianCalendar(2014, 5, 29, 0, 0, 0).getTime(), trigger.getFireTimeAfter(new GregorianCalendar(2014, 5, 28, 0, 0, 0).getTime()));
+        assertEquals(new GregorianCalendar(2014, 6, 2, 0, 0, 0).getTime(), trigger.getFireTimeAfter(new GregorianCalendar(2014, 5, 30, 0, 0, 0).getTime()));
+    }
+
+    @Test(timeout = 5000)
+    public void testNoFireTimeBeforeAfterTime() throws ParseException {
+        ScheduleExpression expr = new ScheduleExpression().dayOfMonth(-7).month(12).dayOfWeek("Sat").year("2010-2013").start(new Date(0));
+        EJBCronTrigger trigger = new EJBCronTrigger(expr);
+        assertEquals(new GregorianCalendar(2011, 11, 31, 0, 0, 0).getTime(), trigger.getFireTimeAfter(new GregorianCalendar(2011, 11, 26, 17, 47, 14).getTime()));
+        assertNull(trigger.getFireTimeAfter(new GregorianCalendar(2013, 11, 28, 0, 0, 0).getTime()));
+    }
+
+    @Test(timeout = 5000)
+    public void testCommonExpressions() throws ParseException {
+        ScheduleExpression[] expressions = {
+                new ScheduleExpression().hour("*").minute("*/5"),
+                new ScheduleExpression().dayOfMonth("Last").hour(23).minute(30),
+                new ScheduleExpression().dayOfWeek("Mon-Fri").hour("9-17").minute("0,30"),
+                new ScheduleExpression().dayOfMonth("1st Mon").month("Jan,Apr,Jul,Oct").hour(6),
+                new ScheduleExpression().second("*/10").minute("*").hour("*"),
+                new ScheduleExpression().dayOfMonth(15).dayOfWeek("Fri").hour(12)
+        };
+
+        Date after = new GregorianCalendar(2011, 2, 13, 7, 6, 40).getTime();
+        for (ScheduleExpression expression : expressions) {
+            EJBCronTrigger trigger = new EJBCronTrigger(expression.start(new Date(0)));
+            assertTrue(trigger.getFireTimeAfter(after).after(after));
+        }
+    }
 }
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util;
+
+import junit.framework.TestCase;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class DirectoryMonitorTest extends TestCase {
+
+    private File target;
+    private File app;
+    private DirectoryMonitor monitor;
+    private final BlockingQueue<String> notifications = new LinkedBlockingQueue<String>();
+
+    @Override
+    protected void setUp() throws Exception {
+        target = Files.tmpdir();
+        app = new File(target, "app");
+        write(new File(app, "web.war/index.html"), "index");
+        write(new File(app, "ejb.jar/META-INF/ejb-jar.xml"), "<ejb-jar/>");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (monitor != null) monitor.stop();
+        Files.delete(target);
+    }
+
+    public void testPolling() throws Exception {
+        changes(false);
+        assertFalse(monitor.isWatching());
+    }
+
+    public void testWatching() throws Exception {
+        changes(true);
+    }
+
+    private void changes(final boolean watch) throws Exception {
+        monitor = new DirectoryMonitor(target, new Recorder(), 100, watch);
+        monitor.start();
+
+        assertEquals("added app", next());
+
+        // only the war changed
+        write(new File(app, "web.war/index.html"), "updated");
+        assertEquals("modules app [web.war]", next());
+
+        final File other = new File(target, "other.jar");
+        write(other, "jar");
+        assertEquals("added other.jar", next());
+
+        Files.delete(other);
+        assertEquals("removed other.jar", next());
+
+        assertNull(notifications.poll(500, TimeUnit.MILLISECONDS));
+
+        assertEquals(3, monitor.getNotifications());
+        assertTrue(monitor.getLastDetectionLatency() >= 0);
+        assertTrue(monitor.getAverageListenerTime() >= 0);
+    }
+
+    private String next() throws InterruptedException {
+        return notifications.poll(10, TimeUnit.SECONDS);
+    }
+
+    private static void write(final File file, final String content) throws Exception {
+        file.getParentFile().mkdirs();
+        IO.writeString(file, content);
+
+        // make sure the change is visible whatever the file system precision
+        final long modified = file.lastModified();
+        file.setLastModified(Math.max(System.currentTimeMillis(), modified) + 2000);
+    }
+
+    private class Recorder implements DirectoryMonitor.ModuleListener {
+        public boolean modulesUpdated(final File file, final Set<File> modules) {
+            final StringBuilder names = new StringBuilder();
+            for (File module : modules) {
+                names.append(names.length() == 0 ? "" : ", ").append(module.getName());
+            }
+            notifications.add("modules " + file.getName() + " [" + names + "]");
+            return true;
+        }
+
+        public boolean fileAdded(final File file) {
+            notifications.add("added " + file.getName());
+            return true;
+        }
+
+        public boolean fileRemoved(final File file) {
+            notifications.add("removed " + file.getName());
+            return true;
+        }
+
+        public void fileUpdated(final File file) {
+            notifications.add("updated " + file.getName());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.util;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class StripedReadWriteLockTest extends TestCase {
+
+    public void testReaders() throws Exception {
+        final StripedReadWriteLock lock = new StripedReadWriteLock(4);
+
+        assertTrue(lock.readLock().tryLock());
+        assertTrue(lock.readLock().tryLock(0, TimeUnit.SECONDS));
+        assertEquals(2, lock.getReadLockCount());
+
+        // readers exclude the writer
+        assertFalse(lock.writeLock().tryLock());
+        assertFalse(lock.writeLock().tryLock(10, TimeUnit.MILLISECONDS));
+        assertFalse(lock.isWriteLocked());
+
+        lock.readLock().unlock();
+        lock.readLock().unlock();
+        assertEquals(0, lock.getReadLockCount());
+
+        assertTrue(lock.writeLock().tryLock());
+        lock.writeLock().unlock();
+    }
+
+    public void testWriterExcludesReaders() throws Exception {
+        final StripedReadWriteLock lock = new StripedReadWriteLock(4);
+        lock.writeLock().lock();
+
+        final AtomicBoolean acquired = new AtomicBoolean(true);
+        final Thread reader = new Thread() {
+            public void run() {
+                try {
+                    acquired.set(lock.readLock().tryLock(10, TimeUnit.MILLISECONDS));
+                } catch (InterruptedException e) {
+                    // no-op
+                }
+            }
+        };
+        reader.start();
+        reader.join();
+        assertFalse(acquired.get());
+
+        // reentrant write and read inside the write lock
+        assertTrue(lock.writeLock().tryLock());
+        assertTrue(lock.readLock().tryLock());
+        lock.readLock().unlock();
+        lock.writeLock().unlock();
+        assertTrue(lock.isWriteLocked());
+
+        lock.writeLock().unlock();
+        assertFalse(lock.isWriteLocked());
+        assertTrue(lock.readLock().tryLock());
+        lock.readLock().unlock();
+    }
+
+    public void testWaitingWriterBlocksNewReaders() throws Exception {
+        final StripedReadWriteLock lock = new StripedReadWriteLock(4);
+        lock.readLock().lock();
+
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch written = new CountDownLatch(1);
+        final Thread writer = new Thread() {
+            public void run() {
+                writing.countDown();
+                lock.writeLock().lock();
+                lock.writeLock().unlock();
+                written.countDown();
+            }
+        };
+        writer.start();
+        writing.await();
+        while (!lock.isWriteLocked()) {
+            Thread.sleep(1);
+        }
+
+        // the writer is waiting, a new reader has to wait too
+        final AtomicBoolean acquired = new AtomicBoolean(true);
+        final Thread reader = new Thread() {
+            public void run() {
+                try {
+                    acquired.set(lock.readLock().tryLock(10, TimeUnit.MILLISECONDS));
+                } catch (InterruptedException e) {
+                    // no-op
+                }
+            }
+        };
+        reader.start();
+        reader.join();
+        assertFalse(acquired.get());
+
+        // but the current reader can still reenter
+        assertTrue(lock.readLock().tryLock(10, TimeUnit.MILLISECONDS));
+        lock.readLock().unlock();
+
+        lock.readLock().unlock();
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+        assertFalse(lock.isWriteLocked());
+    }
+
+    public void testWriterTimeoutReleasesReaders() throws Exception {
+        final StripedReadWriteLock lock = new StripedReadWriteLock(4);
+        lock.readLock().lock();
+
+        final AtomicBoolean acquired = new AtomicBoolean(true);
+        final Thread writer = new Thread() {
+            public void run() {
+                try {
+                    acquired.set(lock.writeLock().tryLock(10, TimeUnit.MILLISECONDS));
+                } catch (InterruptedException e) {
+                    // no-op
+                }
+            }
+        };
+        writer.start();
+        writer.join();
+        assertFalse(acquired.get());
+        assertFalse(lock.isWriteLocked());
+
+        final Lock read = lock.readLock();
+        final Thread reader = new Thread() {
+            public void run() {
+                acquired.set(read.tryLock());
+                read.unlock();
+            }
+        };
+        reader.start();
+        reader.join();
+        assertTrue(acquired.get());
+
+        lock.readLock().unlock();
+    }
+
+    public void testUnlockWithoutLock() throws Exception {
+        final StripedReadWriteLock lock = new StripedReadWriteLock();
+        try {
+            lock.readLock().unlock();
+            fail();
+        } catch (IllegalMonitorStateException e) {
+            // ok
+        }
+        try {
+            lock.writeLock().unlock();
+            fail();
+        } catch (IllegalMonitorStateException e) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.openejb.util.classloader;
+
+import junit.framework.TestCase;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.util.Archives;
+import org.apache.openejb.util.One;
+import org.apache.openejb.util.Two;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class IndexedURLClassLoaderTest extends TestCase {
+    public void testJarIndex() throws Exception {
+        final Map<String, String> entries = new HashMap<String, String>();
+        entries.put("META-INF/beans.xml", "<beans/>");
+
+        final File jar = Archives.jarArchive(entries, "index", One.class);
+        final PackageIndex index = new PackageIndex(new URL[]{jar.toURI().toURL()});
+
+        assertTrue(index.isComplete());
+        assertTrue(index.mayContain("org/apache/openejb/util/One.class"));
+        assertTrue(index.mayContain("org/apache/openejb/util/Unknown.class"));
+        assertTrue(index.mayContain("META-INF/beans.xml"));
+        assertTrue(index.mayContain("org/apache"));
+        assertFalse(index.mayContain("org/foo/Bar.class"));
+        assertFalse(index.mayContain("META-INF/services/foo"));
+    }
+
+    public void testDirectoryIndex() throws Exception {
+        final File dir = Archives.fileArchive(new Class[]{One.class});
+        final PackageIndex index = new PackageIndex(new URL[]{dir.toURI().toURL()});
+
+        assertTrue(index.isComplete());
+        assertTrue(index.mayContain("org/apache/openejb/util/One.class"));
+        assertFalse(index.mayContain("com/acme/Foo.class"));
+
+        // exploded apps can change
+        assertTrue(new File(dir, "com/acme").mkdirs());
+        assertTrue(index.mayContain("com/acme/Foo.class"));
+    }
+
+    public void testDirectoryContentChanges() throws Exception {
+        final File dir = Archives.fileArchive(new Class[]{One.class});
+        final IndexedURLClassLoader loader = new IndexedURLClassLoader(new URL[]{dir.toURI().toURL()}, null);
+        assertNull(loader.getResource("com/acme/foo.txt"));
+        assertNull(loader.getResource("org/apache/openejb/util/foo.txt"));
+
+        final File acme = new File(dir, "com/acme");
+        assertTrue(acme.mkdirs());
+        IO.writeString(new File(acme, "foo.txt"), "foo");
+        IO.writeString(new File(dir, "org/apache/openejb/util/foo.txt"), "foo");
+
+        assertNotNull(loader.getResource("com/acme/foo.txt"));
+        assertNotNull(loader.getResource("org/apache/openejb/util/foo.txt"));
+    }
+
+    public void testNotFileUrl() throws Exception {
+        final PackageIndex index = new PackageIndex(new URL[]{new URL("http://localhost/foo.jar")});
+        assertFalse(index.isComplete());
+        assertTrue(index.mayContain("org/foo/Bar.class"));
+    }
+
+    public void testLoad() throws Exception {
+        final File jar = Archives.jarArchive(new HashMap<String, String>(), "load", One.class, Two.class);
+        final IndexedURLClassLoader loader = new IndexedURLClassLoader(new URL[]{jar.toURI().toURL()}, null);
+
+        assertSame(loader, loader.loadClass(One.class.getName()).getClassLoader());
+        assertNotNull(loader.getResource("org/apache/openejb/util/Two.class"));
+        assertNull(loader.getResource("org/apache/openejb/util/Missing.class"));
+        assertNull(loader.getResource("org/apache/openejb/util/Missing.class")); // now from the negative cache
+        assertNull(loader.getResource("org/foo/Bar.class"));
+        assertTrue(Collections.list(loader.getResources("org/foo/Bar.class")).isEmpty());
+
+        try {
+            loader.loadClass("org.foo.Bar");
+            fail();
+        } catch (ClassNotFoundException expected) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util.proxy;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class GeneratedProxyFactoryTest extends TestCase {
+
+    private final GeneratedProxyFactory factory = new GeneratedProxyFactory();
+
+    public void testPrimitivesAndObjects() throws Exception {
+        final Handler handler = new Handler();
+        final Calculator calculator = (Calculator) factory.newProxyInstance(Calculator.class, handler);
+
+        assertFalse(Proxy.isProxyClass(calculator.getClass()));
+        assertTrue(factory.isProxyClass(calculator.getClass()));
+        assertSame(handler, factory.getInvocationHandler(calculator));
+
+        assertEquals(5, calculator.add(2, 3));
+        assertEquals(7L, calculator.add(3L, 4L));
+        assertEquals(1.5d, calculator.half(3), 0d);
+        assertEquals("ab", calculator.concat("a", "b"));
+        calculator.reset();
+        assertEquals(5, handler.calls.size());
+        assertEquals("reset", handler.calls.get(4).getName());
+    }
+
+    public void testIndexedDispatch() throws Exception {
+        final IndexedHandler handler = new IndexedHandler();
+        final Calculator calculator = (Calculator) factory.newProxyInstance(Calculator.class, handler);
+
+        calculator.add(1, 1);
+        calculator.add(1, 1);
+        calculator.concat("a", "b");
+
+        assertEquals(0, handler.calls.size());
+        assertEquals(3, handler.indexes.size());
+        assertEquals(handler.indexes.get(0), handler.indexes.get(1));
+        assertFalse(handler.indexes.get(0).equals(handler.indexes.get(2)));
+    }
+
+    public void testObjectMethods() throws Exception {
+        final Handler handler = new Handler();
+        final Calculator calculator = (Calculator) factory.newProxyInstance(Calculator.class, handler);
+
+        assertEquals("toString", calculator.toString());
+        assertEquals(42, calculator.hashCode());
+        assertTrue(calculator.equals(calculator));
+    }
+
+    public void testExceptions() throws Exception {
+        final Handler handler = new Handler();
+        final Calculator calculator = (Calculator) factory.newProxyInstance(Calculator.class, handler);
+
+        try {
+            calculator.fail(new IOException("declared"));
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertEquals("declared", e.getMessage());
+        }
+
+        try {
+            calculator.fail(new IllegalStateException("runtime"));
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("runtime", e.getMessage());
+        }
+
+        try {
+            calculator.fail(new Exception("undeclared"));
+            fail("expected UndeclaredThrowableException");
+        } catch (UndeclaredThrowableException e) {
+            assertEquals("undeclared", e.getCause().getMessage());
+        }
+    }
+
+    public void testClassIsCached() throws Exception {
+        final Class a = factory.getProxyClass(new Class[]{Calculator.class, Named.class});
+        final Class b = factory.getProxyClass(new Class[]{Calculator.class, Named.class});
+        assertSame(a, b);
+        assertTrue(Named.class.isAssignableFrom(a));
+    }
+
+    public void testNonPublicInterfaceFallsBack() throws Exception {
+        final Hidden hidden = (Hidden) factory.newProxyInstance(Hidden.class, new Handler());
+
+        assertTrue(Proxy.isProxyClass(hidden.getClass()));
+        assertTrue(factory.isProxyClass(hidden.getClass()));
+        assertEquals(0, hidden.value());
+    }
+
+    public static interface Calculator {
+        int add(int a, int b);
+
+        long add(long a, long b);
+
+        double half(int a);
+
+        String concat(String a, String b);
+
+        void reset();
+
+        void fail(Exception e) throws IOException;
+    }
+
+    public static interface Named {
+        String getName();
+    }
+
+    static interface Hidden {
+        int value();
+    }
+
+    public static class Handler implements InvocationHandler {
+        protected final List<Method> calls = new ArrayList<Method>();
+
+        public InvocationHandler getInvocationHandler() {
+            return this;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            calls.add(method);
+            return handle(method, args);
+        }
+
+        protected Object handle(Method method, Object[] args) throws Throwable {
+            final String name = method.getName();
+            if (name.equals("toString")) return "toString";
+            if (name.equals("hashCode")) return 42;
+            if (name.equals("equals")) return true;
+            if (name.equals("add") && method.getReturnType() == int.class) return (Integer) args[0] + (Integer) args[1];
+            if (name.equals("add")) return (Long) args[0] + (Long) args[1];
+            if (name.equals("half")) return (Integer) args[0] / 2d;
+            if (name.equals("concat")) return "" + args[0] + args[1];
+            if (name.equals("fail")) throw (Throwable) args[0];
+            if (name.equals("value")) return 0;
+            return null;
+        }
+    }
+
+    public static class IndexedHandler extends Handler implements IndexedInvocationHandler {
+        private final List<Integer> indexes = new ArrayList<Integer>();
+
+        public Object invoke(Object proxy, int index, Method method, Object[] args) throws Throwable {
+            indexes.add(index);
+            return handle(method, args);
+        }
+    }
+}
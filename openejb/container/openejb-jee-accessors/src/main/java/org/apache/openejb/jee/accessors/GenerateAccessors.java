@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.jee.accessors;
+
+import org.apache.openejb.jee.Application;
+import org.apache.openejb.jee.ApplicationClient;
+import org.apache.openejb.jee.Beans;
+import org.apache.openejb.jee.Connector;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.FacesConfig;
+import org.apache.openejb.jee.HandlerChains;
+import org.apache.openejb.jee.JAXBContextFactory;
+import org.apache.openejb.jee.JavaWsdlMapping;
+import org.apache.openejb.jee.JaxbJavaee;
+import org.apache.openejb.jee.Persistence;
+import org.apache.openejb.jee.TldTaglib;
+import org.apache.openejb.jee.WebApp;
+import org.apache.openejb.jee.WebFragment;
+import org.apache.openejb.jee.Webservices;
+import org.apache.openejb.jee.bval.ValidationConfigType;
+import org.apache.openejb.jee.jpa.EntityMappings;
+import org.apache.openejb.jee.jpa.fragment.PersistenceFragment;
+import org.apache.openejb.jee.oejb3.OpenejbJar;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Run at build time with the openejb-jaxbagent: creating the JAXBContext of
+ * every descriptor makes JAXB generate its accessor classes, the agent writes
+ * them to the output directory and this class lists them in
+ * {@link JaxbJavaee#ACCESSORS_INDEX} so they can be loaded instead of generated.
+ *
+ * @version $Rev$ $Date$
+ */
+public class GenerateAccessors {
+
+    public static final Class[] DESCRIPTORS = {
+            Application.class,
+            ApplicationClient.class,
+            Beans.class,
+            Connector.class,
+            EjbJar.class,
+            FacesConfig.class,
+            HandlerChains.class,
+            JavaWsdlMapping.class,
+            Persistence.class,
+            TldTaglib.class,
+            WebApp.class,
+            WebFragment.class,
+            Webservices.class,
+            ValidationConfigType.class,
+            EntityMappings.class,
+            OpenejbJar.class,
+            org.apache.openejb.jee.jpa.unit.Persistence.class,
+            PersistenceFragment.class
+    };
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("usage: GenerateAccessors <output directory>");
+            System.exit(1);
+        }
+
+        final File output = new File(args[0]);
+
+        JAXBContextFactory.newInstance(DESCRIPTORS);
+
+        final Set<String> accessors = new TreeSet<String>();
+        collect(output, "", accessors);
+        if (accessors.isEmpty()) {
+            throw new IllegalStateException("No JAXB accessor written in " + output.getAbsolutePath() + ", is the openejb-jaxbagent installed?");
+        }
+
+        final File index = new File(output, JaxbJavaee.ACCESSORS_INDEX);
+        if (!index.getParentFile().exists() && !index.getParentFile().mkdirs()) {
+            throw new IOException("Can't create " + index.getParentFile().getAbsolutePath());
+        }
+
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(index), "UTF-8");
+        try {
+            for (String accessor : accessors) {
+                writer.write(accessor);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+
+        System.out.println("Wrote " + accessors.size() + " JAXB accessors in " + index.getAbsolutePath());
+    }
+
+    private static void collect(final File dir, final String pkg, final Set<String> accessors) {
+        final File[] files = dir.listFiles();
+        if (files == null) return;
+
+        for (File file : files) {
+            final String name = file.getName();
+            if (file.isDirectory()) {
+                collect(file, pkg + name + ".", accessors);
+            } else if (name.endsWith(".class") && name.contains("$JaxbAccessor")) {
+                accessors.add(pkg + name.substring(0, name.length() - ".class".length()));
+            }
+        }
+    }
+}
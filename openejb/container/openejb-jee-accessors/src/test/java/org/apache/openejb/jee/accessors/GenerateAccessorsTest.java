@@ -16,49 +16,39 @@
  */
 package org.apache.openejb.jee.accessors;
 
-import org.apache.openejb.jee.Application;
-import org.apache.openejb.jee.ApplicationClient;
-import org.apache.openejb.jee.Beans;
-import org.apache.openejb.jee.Connector;
-import org.apache.openejb.jee.EjbJar;
-import org.apache.openejb.jee.FacesConfig;
-import org.apache.openejb.jee.HandlerChains;
-import org.apache.openejb.jee.JAXBContextFactory;
-import org.apache.openejb.jee.JavaWsdlMapping;
-import org.apache.openejb.jee.Persistence;
-import org.apache.openejb.jee.TldTaglib;
-import org.apache.openejb.jee.WebApp;
-import org.apache.openejb.jee.WebFragment;
-import org.apache.openejb.jee.Webservices;
-import org.apache.openejb.jee.bval.ValidationConfigType;
-import org.apache.openejb.jee.jpa.EntityMappings;
-import org.apache.openejb.jee.jpa.fragment.PersistenceFragment;
-import org.apache.openejb.jee.oejb3.OpenejbJar;
+import org.apache.openejb.jee.JaxbJavaee;
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
 public class GenerateAccessorsTest {
 
     @Test
     public void test() throws Exception {
-        JAXBContextFactory.newInstance(
-                Application.class,
-                ApplicationClient.class,
-                Beans.class,
-                Connector.class,
-                EjbJar.class,
-                FacesConfig.class,
-                HandlerChains.class,
-                JavaWsdlMapping.class,
-                Persistence.class,
-                TldTaglib.class,
-                WebApp.class,
-                WebFragment.class,
-                Webservices.class,
-                ValidationConfigType.class,
-                EntityMappings.class,
-                OpenejbJar.class,
-                org.apache.openejb.jee.jpa.unit.Persistence.class,
-                PersistenceFragment.class
-        );
+        final ClassLoader loader = JaxbJavaee.class.getClassLoader();
+        final InputStream index = loader.getResourceAsStream(JaxbJavaee.ACCESSORS_INDEX);
+        assertNotNull("accessors not generated at build time", index);
+
+        int accessors = 0;
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(index, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final Class<?> accessor = Class.forName(line, false, loader);
+                assertTrue(accessor.getName(), accessor.getName().contains("$JaxbAccessor"));
+                accessors++;
+            }
+        } finally {
+            reader.close();
+        }
+        assertTrue(accessors > 0);
+
+        // the generated accessors must be usable by the JAXB runtime
+        assertNotNull(JaxbJavaee.getContext(GenerateAccessors.DESCRIPTORS[4]));
     }
 }
@@ -16,19 +16,30 @@
  */
 package org.apache.openejb.jee;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.net.URL;
 import java.util.AbstractMap;
-import java.util.HashMap;
+import java.util.Enumeration;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
@@ -40,7 +51,6 @@ import javax.xml.bind.ValidationEvent;
 import javax.xml.bind.ValidationEventHandler;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Source;
 import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamSource;
@@ -62,7 +72,17 @@ import org.xml.sax.helpers.XMLFilterImpl;
 public class JaxbJavaee {
     public static final ThreadLocal<Set<String>> currentPublicId = new ThreadLocal<Set<String>>();
 
-    private static Map<Class<?>,JAXBContext> jaxbContexts = new HashMap<Class<?>,JAXBContext>();
+    /**
+     * Written by openejb-jee-accessors, one JAXB accessor class name per line
+     */
+    public static final String ACCESSORS_INDEX = "META-INF/org.apache.openejb.jee/jaxb-accessors";
+
+    private static final Logger log = Logger.getLogger(JaxbJavaee.class.getName());
+
+    // a context is built once even if several threads ask for it at the same time
+    private static final ConcurrentMap<Class<?>, Future<JAXBContext>> jaxbContexts = new ConcurrentHashMap<Class<?>, Future<JAXBContext>>();
+
+    private static final AtomicBoolean accessorsLoaded = new AtomicBoolean();
 
     public static <T>String marshal(Class<T> type, Object object) throws JAXBException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -81,13 +101,93 @@ public class JaxbJavaee {
         marshaller.marshal(object, out);
     }
 
-    public static <T>JAXBContext getContext(Class<T> type) throws JAXBException {
-        JAXBContext jaxbContext = jaxbContexts.get(type);
-        if (jaxbContext == null) {
-            jaxbContext = JAXBContextFactory.newInstance(type);
-            jaxbContexts.put(type, jaxbContext);
+    public static <T>JAXBContext getContext(final Class<T> type) throws JAXBException {
+        Future<JAXBContext> future = jaxbContexts.get(type);
+        if (future == null) {
+            final FutureTask<JAXBContext> task = new FutureTask<JAXBContext>(new Callable<JAXBContext>() {
+                public JAXBContext call() throws Exception {
+                    loadAccessors();
+                    return JAXBContextFactory.newInstance(type);
+                }
+            });
+            future = jaxbContexts.putIfAbsent(type, task);
+            if (future == null) {
+                future = task;
+                task.run();
+            }
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JAXBException("Interrupted while waiting for the JAXBContext of " + type.getName(), e);
+        } catch (ExecutionException e) {
+            jaxbContexts.remove(type, future); // let the next call try again
+            final Throwable cause = e.getCause();
+            if (cause instanceof JAXBException) throw (JAXBException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new JAXBException(cause);
+        }
+    }
+
+    /**
+     * Builds the JAXBContexts of the given descriptor types in a background
+     * thread so they are ready, or almost, when the first descriptor is read.
+     *
+     * @param types root classes of the descriptors about to be read
+     */
+    public static void warmup(final Class<?>... types) {
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                for (Class<?> type : types) {
+                    try {
+                        getContext(type);
+                    } catch (Throwable e) {
+                        // will fail again, and be reported, when the descriptor is read
+                        log.log(Level.FINE, "Can't create the JAXBContext of " + type.getName(), e);
+                    }
+                }
+            }
+        }, "OpenEJB JAXB warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Loads the accessor classes generated at build time by openejb-jee-accessors.
+     * JAXB only generates and defines the accessors it can't find already loaded
+     * in the class loader of the model.
+     */
+    private static void loadAccessors() {
+        if (!accessorsLoaded.compareAndSet(false, true)) return;
+
+        final ClassLoader loader = JaxbJavaee.class.getClassLoader();
+        if (loader == null) return;
+
+        int loaded = 0;
+        try {
+            final Enumeration<URL> indexes = loader.getResources(ACCESSORS_INDEX);
+            while (indexes.hasMoreElements()) {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(indexes.nextElement().openStream(), "UTF-8"));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (line.length() == 0 || line.startsWith("#")) continue;
+
+                        Class.forName(line, false, loader);
+                        loaded++;
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        } catch (Throwable e) {
+            // built against another JAXB implementation or not visible, JAXB generates them
+            log.log(Level.FINE, "Stopped loading the pre-generated JAXB accessors after " + loaded + " classes", e);
         }
-        return jaxbContext;
     }
 
     /**
@@ -103,11 +203,7 @@ public class JaxbJavaee {
      */
     public static <T>Object unmarshalJavaee(Class<T> type, InputStream in) throws ParserConfigurationException, SAXException, JAXBException {
         
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        
-        SAXParser parser = factory.newSAXParser();
+        SAXParser parser = SAXParserPool.acquire(false);
 
         JAXBContext ctx = JaxbJavaee.getContext(type);
         Unmarshaller unmarshaller = ctx.createUnmarshaller();
@@ -133,6 +229,7 @@ public class JaxbJavaee {
             return element.getValue();
         } finally {
             currentPublicId.set(null);
+            SAXParserPool.release(parser);
         }
     }
 
@@ -151,10 +248,7 @@ public class JaxbJavaee {
     public static <T>Object unmarshal(Class<T> type, InputStream in, boolean validate) throws ParserConfigurationException, SAXException, JAXBException {
         InputSource inputSource = new InputSource(in);
 
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(validate);
-        SAXParser parser = factory.newSAXParser();
+        SAXParser parser = SAXParserPool.acquire(validate);
 
         JAXBContext ctx = JaxbJavaee.getContext(type);
         Unmarshaller unmarshaller = ctx.createUnmarshaller();
@@ -175,6 +269,7 @@ public class JaxbJavaee {
             return unmarshaller.unmarshal(source);
         } finally {
             currentPublicId.set(null);
+            SAXParserPool.release(parser);
         }
     }
 
@@ -192,10 +287,7 @@ public class JaxbJavaee {
     public static <T>Object unmarshalTaglib(Class<T> type, InputStream in) throws ParserConfigurationException, SAXException, JAXBException {
         InputSource inputSource = new InputSource(in);
 
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        SAXParser parser = factory.newSAXParser();
+        SAXParser parser = SAXParserPool.acquire(false);
 
         JAXBContext ctx = JaxbJavaee.getContext(type);
         Unmarshaller unmarshaller = ctx.createUnmarshaller();
@@ -217,6 +309,7 @@ public class JaxbJavaee {
             return unmarshaller.unmarshal(source);
         } finally {
             currentPublicId.set(null);
+            SAXParserPool.release(parser);
         }
     }
 
@@ -233,10 +326,7 @@ public class JaxbJavaee {
     public static <T>Object unmarshalHandlerChains(Class<T> type, InputStream in) throws ParserConfigurationException, SAXException, JAXBException {
         InputSource inputSource = new InputSource(in);
 
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        SAXParser parser = factory.newSAXParser();
+        SAXParser parser = SAXParserPool.acquire(false);
 
         JAXBContext ctx = JaxbJavaee.getContext(type);
         Unmarshaller unmarshaller = ctx.createUnmarshaller();
@@ -260,6 +350,7 @@ public class JaxbJavaee {
             return unmarshaller.unmarshal(source);
         } finally {
             currentPublicId.set(null);
+            SAXParserPool.release(parser);
         }
     }
 
@@ -493,31 +584,31 @@ public class JaxbJavaee {
         }
         
         // get the parser
-        SAXParserFactory parserfactory = SAXParserFactory.newInstance();
-        parserfactory.setNamespaceAware(true);
-        parserfactory.setValidating(false);
-        SAXParser parser = parserfactory.newSAXParser();
-        
-        // get the xml filter
-        Javaee6SchemaFilter xmlFilter = new Javaee6SchemaFilter(parser.getXMLReader());
-        
-        // get the source
-        SAXSource sourceForValidate = new SAXSource(xmlFilter, new InputSource(in));
-        
-        // get the schema
-        SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-        
-        JaxbJavaeeSchemaResourceResolver resourceResolver = new JaxbJavaeeSchemaResourceResolver();  
-        schemaFactory.setResourceResolver(resourceResolver);  
-        
-        Schema schema = schemaFactory.newSchema(
-                new Source[] {
-                        new StreamSource(xmlSchemaURL.openStream()),
-                        new StreamSource(javaeeSchemaURL.openStream())
-                });
-
-        // validate
-        schema.newValidator().validate(sourceForValidate);
+        SAXParser parser = SAXParserPool.acquire(false);
+        try {
+            // get the xml filter
+            Javaee6SchemaFilter xmlFilter = new Javaee6SchemaFilter(parser.getXMLReader());
+
+            // get the source
+            SAXSource sourceForValidate = new SAXSource(xmlFilter, new InputSource(in));
+
+            // get the schema
+            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+
+            JaxbJavaeeSchemaResourceResolver resourceResolver = new JaxbJavaeeSchemaResourceResolver();
+            schemaFactory.setResourceResolver(resourceResolver);
+
+            Schema schema = schemaFactory.newSchema(
+                    new Source[] {
+                            new StreamSource(xmlSchemaURL.openStream()),
+                            new StreamSource(javaeeSchemaURL.openStream())
+                    });
+
+            // validate
+            schema.newValidator().validate(sourceForValidate);
+        } finally {
+            SAXParserPool.release(parser);
+        }
     }
     
     private static URL getSchemaURL(String xsdFileName){
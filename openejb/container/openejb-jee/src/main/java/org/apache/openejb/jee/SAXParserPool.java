@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.jee;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Namespace aware SAXParsers, reset and reused between descriptors.
+ *
+ * Looking up the SAXParserFactory implementation and building a parser is
+ * a good part of the time spent reading a small descriptor. A parser is
+ * only used by one thread at a time: take it with {@link #acquire(boolean)}
+ * and give it back with {@link #release(SAXParser)} in a finally block.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class SAXParserPool {
+    private static final int MAX_IDLE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final DefaultHandler NO_HANDLER = new DefaultHandler();
+
+    private static final Pool VALIDATING = new Pool(true);
+    private static final Pool NON_VALIDATING = new Pool(false);
+
+    private SAXParserPool() {
+        // no-op
+    }
+
+    public static SAXParser acquire(final boolean validating) throws ParserConfigurationException, SAXException {
+        return (validating ? VALIDATING : NON_VALIDATING).acquire();
+    }
+
+    public static void release(final SAXParser parser) {
+        if (parser == null) return;
+
+        try {
+            // don't keep the last unmarshaller and its document alive
+            final XMLReader reader = parser.getXMLReader();
+            reader.setContentHandler(NO_HANDLER);
+            reader.setDTDHandler(NO_HANDLER);
+            reader.setEntityResolver(NO_HANDLER);
+            reader.setErrorHandler(NO_HANDLER);
+            parser.reset();
+        } catch (Exception e) {
+            return; // not resettable, let it go
+        }
+
+        (parser.isValidating() ? VALIDATING : NON_VALIDATING).release(parser);
+    }
+
+    /**
+     * The pools are shared by all the applications, the factory is looked up
+     * with the container classloader and not with the context one of the
+     * application which happens to load this class first, it could ship its
+     * own parser.
+     */
+    static SAXParserFactory newFactory() {
+        final Thread thread = Thread.currentThread();
+        final ClassLoader oldCl = thread.getContextClassLoader();
+        thread.setContextClassLoader(SAXParserPool.class.getClassLoader());
+        try {
+            return SAXParserFactory.newInstance();
+        } finally {
+            thread.setContextClassLoader(oldCl);
+        }
+    }
+
+    private static class Pool {
+        private final SAXParserFactory factory;
+        private final Queue<SAXParser> idle = new ConcurrentLinkedQueue<SAXParser>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private Pool(final boolean validating) {
+            factory = newFactory();
+            factory.setNamespaceAware(true);
+            factory.setValidating(validating);
+        }
+
+        private SAXParser acquire() throws ParserConfigurationException, SAXException {
+            final SAXParser parser = idle.poll();
+            if (parser != null) {
+                size.decrementAndGet();
+                return parser;
+            }
+
+            // SAXParserFactory is not guaranteed to be thread safe
+            synchronized (factory) {
+                return factory.newSAXParser();
+            }
+        }
+
+        private void release(final SAXParser parser) {
+            if (size.incrementAndGet() > MAX_IDLE) {
+                size.decrementAndGet();
+                return;
+            }
+            idle.offer(parser);
+        }
+    }
+}
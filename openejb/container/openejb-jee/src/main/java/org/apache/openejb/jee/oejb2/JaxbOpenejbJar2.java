@@ -19,8 +19,6 @@ package org.apache.openejb.jee.oejb2;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.HashMap;
-import java.util.Map;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
@@ -29,27 +27,20 @@ import javax.xml.bind.ValidationEvent;
 import javax.xml.bind.ValidationEventHandler;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.sax.SAXSource;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.apache.openejb.jee.JAXBContextFactory;
+import org.apache.openejb.jee.JaxbJavaee;
+import org.apache.openejb.jee.SAXParserPool;
 
 /**
  * @version $Rev$ $Date$
  */
 public class JaxbOpenejbJar2 {
 
-    private static final Map<Class<?>,JAXBContext> contexts = new HashMap<Class<?>,JAXBContext>();
-
     private static JAXBContext getContext(Class<?> type) throws JAXBException {
-        JAXBContext jaxbContext = contexts.get(type);
-        if (jaxbContext == null) {
-            jaxbContext = JAXBContextFactory.newInstance(type);
-            contexts.put(type, jaxbContext);
-        }
-        return jaxbContext;
+        return JaxbJavaee.getContext(type);
     }
 
     public static <T>String marshal(Class<T> type, Object object) throws JAXBException {
@@ -76,10 +67,7 @@ public class JaxbOpenejbJar2 {
     public static <T>Object unmarshal(Class<T> type, InputStream in, final boolean logErrors) throws ParserConfigurationException, SAXException, JAXBException {
         InputSource inputSource = new InputSource(in);
 
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        SAXParser parser = factory.newSAXParser();
+        SAXParser parser = SAXParserPool.acquire(false);
 
         JAXBContext ctx = getContext(type);
         Unmarshaller unmarshaller = ctx.createUnmarshaller();
@@ -108,6 +96,10 @@ public class JaxbOpenejbJar2 {
 
         SAXSource source = new SAXSource(xmlFilter, inputSource);
 
-        return unmarshaller.unmarshal(source, type);
+        try {
+            return unmarshaller.unmarshal(source, type);
+        } finally {
+            SAXParserPool.release(parser);
+        }
     }
 }
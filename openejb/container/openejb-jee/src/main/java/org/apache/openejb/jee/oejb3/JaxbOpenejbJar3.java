@@ -21,7 +21,8 @@ import org.xml.sax.InputSource;
 import org.xml.sax.XMLReader;
 import org.xml.sax.Attributes;
 import org.xml.sax.helpers.XMLFilterImpl;
-import org.apache.openejb.jee.JAXBContextFactory;
+import org.apache.openejb.jee.JaxbJavaee;
+import org.apache.openejb.jee.SAXParserPool;
 
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.JAXBContext;
@@ -31,7 +32,6 @@ import javax.xml.bind.ValidationEventHandler;
 import javax.xml.bind.ValidationEvent;
 import javax.xml.bind.JAXBElement;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParserFactory;
 import javax.xml.parsers.SAXParser;
 import javax.xml.transform.sax.SAXSource;
 import java.io.ByteArrayOutputStream;
@@ -44,7 +44,6 @@ import java.io.IOException;
  * @version $Rev$ $Date$
  */
 public class JaxbOpenejbJar3 {
-    private static JAXBContext jaxbContext;
 
     public static <T>String marshal(Class<T> type, Object object) throws JAXBException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -63,19 +62,13 @@ public class JaxbOpenejbJar3 {
     }
 
     private static <T>JAXBContext getContext(Class<T> type) throws JAXBException {
-        if (jaxbContext == null) {
-            jaxbContext = JAXBContextFactory.newInstance(type);
-        }
-        return jaxbContext;
+        return JaxbJavaee.getContext(type);
     }
 
     public static <T> T unmarshal(Class<T> type, InputStream in) throws ParserConfigurationException, SAXException, JAXBException {
         InputSource inputSource = new InputSource(in);
 
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        SAXParser parser = factory.newSAXParser();
+        SAXParser parser = SAXParserPool.acquire(false);
 
         JAXBContext ctx = getContext(type);
         Unmarshaller unmarshaller = ctx.createUnmarshaller();
@@ -92,7 +85,12 @@ public class JaxbOpenejbJar3 {
 
         SAXSource source = new SAXSource(xmlFilter, inputSource);
 
-        Object o = unmarshaller.unmarshal(source);
+        Object o;
+        try {
+            o = unmarshaller.unmarshal(source);
+        } finally {
+            SAXParserPool.release(parser);
+        }
         if (o instanceof JAXBElement) {
             JAXBElement element = (JAXBElement) o;
             return (T) element.getValue();
@@ -21,7 +21,8 @@ import org.xml.sax.InputSource;
 import org.xml.sax.XMLReader;
 import org.xml.sax.Attributes;
 import org.xml.sax.helpers.XMLFilterImpl;
-import org.apache.openejb.jee.JAXBContextFactory;
+import org.apache.openejb.jee.JaxbJavaee;
+import org.apache.openejb.jee.SAXParserPool;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
@@ -30,12 +31,9 @@ import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.ValidationEventHandler;
 import javax.xml.bind.ValidationEvent;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParserFactory;
 import javax.xml.parsers.SAXParser;
 import javax.xml.transform.sax.SAXSource;
 import java.util.Set;
-import java.util.Map;
-import java.util.HashMap;
 import java.util.TreeSet;
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
@@ -49,8 +47,6 @@ import java.io.IOException;
 public class JaxbWls {
     public static final ThreadLocal<Set<String>> currentPublicId = new ThreadLocal<Set<String>>();
 
-    private static Map<Class<?>, JAXBContext> jaxbContexts = new HashMap<Class<?>,JAXBContext>();
-
     public static <T>String marshal(Class<T> type, Object object) throws JAXBException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
@@ -69,21 +65,13 @@ public class JaxbWls {
     }
 
     private static <T>JAXBContext getContext(Class<T> type) throws JAXBException {
-        JAXBContext jaxbContext = JaxbWls.jaxbContexts.get(type);
-        if (jaxbContext == null) {
-            jaxbContext = JAXBContextFactory.newInstance(type);
-            JaxbWls.jaxbContexts.put(type, jaxbContext);
-        }
-        return jaxbContext;
+        return JaxbJavaee.getContext(type);
     }
 
     public static <T>Object unmarshal(Class<T> type, InputStream in) throws ParserConfigurationException, SAXException, JAXBException {
         InputSource inputSource = new InputSource(in);
 
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        SAXParser parser = factory.newSAXParser();
+        SAXParser parser = SAXParserPool.acquire(false);
 
         JAXBContext ctx = JaxbWls.getContext(type);
         Unmarshaller unmarshaller = ctx.createUnmarshaller();
@@ -105,6 +93,7 @@ public class JaxbWls {
             return unmarshaller.unmarshal(source, type);
         } finally {
             JaxbWls.currentPublicId.set(null);
+            SAXParserPool.release(parser);
         }
     }
 
@@ -26,8 +26,13 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
@@ -110,6 +115,31 @@ public class JeeTest extends TestCase {
         assertNotNull("Unable to get the StatefulTimeout value", sbean.getStatefulTimeout());
     }
 
+    public void testConcurrentUnmarshal() throws Exception {
+        final String fileName = "ejb-jar-timeout.xml";
+        final byte[] content = readContent(getClass().getClassLoader().getResourceAsStream(fileName)).getBytes();
+
+        final ExecutorService es = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int i = 0; i < 64; i++) {
+                results.add(es.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return JaxbJavaee.unmarshalJavaee(EjbJar.class, new ByteArrayInputStream(content));
+                    }
+                }));
+            }
+            for (Future<Object> result : results) {
+                final EjbJar ejbJar = (EjbJar) result.get();
+                assertNotNull(((SessionBean) ejbJar.getEnterpriseBean("A")).getStatefulTimeout());
+            }
+        } finally {
+            es.shutdown();
+        }
+
+        assertSame(JaxbJavaee.getContext(EjbJar.class), JaxbJavaee.getContext(EjbJar.class));
+    }
+
     public void testSessionSynchronization() throws Exception {
         String fileName = "ejb-session-synchronization.xml";
         InputStream in = this.getClass().getClassLoader().getResourceAsStream(fileName);
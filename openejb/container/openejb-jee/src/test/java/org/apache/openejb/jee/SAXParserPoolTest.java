@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.jee;
+
+import junit.framework.TestCase;
+
+import javax.xml.parsers.FactoryConfigurationError;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.FileWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class SAXParserPoolTest extends TestCase {
+
+    public void testParserIsReused() throws Exception {
+        final SAXParser parser = SAXParserPool.acquire(false);
+        assertTrue(parser.isNamespaceAware());
+        SAXParserPool.release(parser);
+
+        assertSame(parser, SAXParserPool.acquire(false));
+    }
+
+    public void testFactoryIgnoresTheParserOfTheApplication() throws Exception {
+        final File app = File.createTempFile("app", "");
+        app.delete();
+        final File services = new File(app, "META-INF/services");
+        services.mkdirs();
+        final FileWriter writer = new FileWriter(new File(services, SAXParserFactory.class.getName()));
+        try {
+            writer.write("org.acme.MissingSAXParserFactory\n");
+        } finally {
+            writer.close();
+        }
+
+        final Thread thread = Thread.currentThread();
+        final ClassLoader oldCl = thread.getContextClassLoader();
+        final ClassLoader appCl = new URLClassLoader(new URL[] { app.toURI().toURL() }, getClass().getClassLoader());
+        thread.setContextClassLoader(appCl);
+        try {
+            try {
+                SAXParserFactory.newInstance();
+                fail("the application parser should be looked up");
+            } catch (FactoryConfigurationError expected) {
+                // the application would get its own parser
+            }
+
+            assertNotNull(SAXParserPool.newFactory().newSAXParser());
+            assertSame(appCl, thread.getContextClassLoader());
+        } finally {
+            thread.setContextClassLoader(oldCl);
+            new File(services, SAXParserFactory.class.getName()).delete();
+            services.delete();
+            services.getParentFile().delete();
+            app.delete();
+        }
+    }
+}
@@ -54,7 +54,7 @@ public class Client {
     private boolean FINER = logger.isLoggable(Level.FINER);
 
     public static final ThreadLocal<Set<URI>> failed = new ThreadLocal<Set<URI>>();
-    private static final ProtocolMetaData PROTOCOL_VERSION = new ProtocolMetaData("3.1");
+    private static final ProtocolMetaData PROTOCOL_VERSION = new ProtocolMetaData("3.3");
     private static final int maxConditionRetry = Integer.parseInt(System.getProperty("openejb.client.retry.condition.max", "20"));
 
     private List<Class<? extends Throwable>> retryConditions = new CopyOnWriteArrayList<Class<? extends Throwable>>();
@@ -272,8 +272,12 @@ public class Client {
             /* Read response */
             /*----------------------------------*/
             try {
-                final ClusterResponse clusterResponse = new ClusterResponse();
+                final ClusterResponse clusterResponse = new ClusterResponse(protocolMetaData);
                 clusterResponse.readExternal(objectIn);
+                if (clusterResponse.getServerLoad() >= 0 && conn instanceof LeastLoadedConnectionStrategy.TrackedConnection) {
+                    ((LeastLoadedConnectionStrategy.TrackedConnection) conn).setServerLoad(clusterResponse.getServerLoad());
+                }
+                getContext(server).getLookupCache().setDeploymentVersion(clusterResponse.getDeploymentVersion());
                 switch (clusterResponse.getResponseCode()) {
                     case UPDATE: {
                         setClusterMetaData(server, clusterResponse.getUpdatedMetaData());
@@ -440,6 +444,7 @@ public class Client {
         private final ServerMetaData serverMetaData;
         private ClusterMetaData clusterMetaData;
         private Options options;
+        private final LookupCache lookupCache = new LookupCache();
 
         private Context(final ServerMetaData serverMetaData) {
             this.serverMetaData = serverMetaData;
@@ -495,6 +500,10 @@ public class Client {
             return options;
         }
 
+        public LookupCache getLookupCache() {
+            return lookupCache;
+        }
+
         public Set<URI> diff(final Set<URI> a, final Set<URI> b) {
             final Set<URI> diffs = new HashSet<URI>();
             for (final URI uri : b) {
@@ -31,6 +31,9 @@ public class ClusterResponse implements Response {
     private Code responseCode;
     private ClusterMetaData updatedMetaData;
     private Throwable failure;
+    private ProtocolMetaData protocol;
+    private int serverLoad = -1;
+    private long deploymentVersion = -1;
 
     public ClusterResponse(Code responseCode) {
         this.responseCode = responseCode;
@@ -39,6 +42,14 @@ public class ClusterResponse implements Response {
     public ClusterResponse() {
     }
 
+    /**
+     * @param protocol the version the other side speaks, the server load is only exchanged from 3.2
+     *                 and the deployment version from 3.3
+     */
+    public ClusterResponse(ProtocolMetaData protocol) {
+        this.protocol = protocol;
+    }
+
     public Code getResponseCode() {
         return responseCode;
     }
@@ -65,6 +76,36 @@ public class ClusterResponse implements Response {
         this.failure = failure;
     }
 
+    /**
+     * @return the requests the server was processing or -1 if it didn't tell
+     */
+    public int getServerLoad() {
+        return serverLoad;
+    }
+
+    public void setServerLoad(int serverLoad) {
+        this.serverLoad = serverLoad;
+    }
+
+    /**
+     * @return the version of the deployments of the server, which changes each time an application
+     *         is deployed or undeployed, or -1 if it didn't tell
+     */
+    public long getDeploymentVersion() {
+        return deploymentVersion;
+    }
+
+    public void setDeploymentVersion(long deploymentVersion) {
+        this.deploymentVersion = deploymentVersion;
+    }
+
+    private boolean hasServerLoad() {
+        return protocol != null && protocol.isAtLeast(3, 2);
+    }
+
+    private boolean hasDeploymentVersion() {
+        return protocol != null && protocol.isAtLeast(3, 3);
+    }
 
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         byte i = in.readByte();
@@ -80,6 +121,14 @@ public class ClusterResponse implements Response {
                 failure = (IOException) in.readObject();
             }
         }
+
+        if (hasServerLoad()) {
+            serverLoad = in.readInt();
+        }
+
+        if (hasDeploymentVersion()) {
+            deploymentVersion = in.readLong();
+        }
     }
 
     public void writeExternal(ObjectOutput out) throws IOException {
@@ -94,5 +143,13 @@ public class ClusterResponse implements Response {
                 out.writeObject(failure);
             }
         }
+
+        if (hasServerLoad()) {
+            out.writeInt(serverLoad);
+        }
+
+        if (hasDeploymentVersion()) {
+            out.writeLong(deploymentVersion);
+        }
     }
 }
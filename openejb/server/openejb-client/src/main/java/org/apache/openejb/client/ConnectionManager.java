@@ -55,6 +55,8 @@ public class ConnectionManager {
         registerStrategy("random", new RandomConnectionStrategy());
         registerStrategy("roundrobin", new RoundRobinConnectionStrategy());
         registerStrategy("round-robin", strategies.get("roundrobin"));
+        registerStrategy("leastloaded", new LeastLoadedConnectionStrategy());
+        registerStrategy("least-loaded", strategies.get("leastloaded"));
         registerStrategy("default", strategies.get("sticky"));
     }
 
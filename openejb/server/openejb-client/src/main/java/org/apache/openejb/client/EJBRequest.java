@@ -32,6 +32,11 @@ import org.omg.CORBA.ORB;
 
 public class EJBRequest implements ClusterableRequest {
 
+    /**
+     * Resolves the method of the requests read by this thread, the server sets a caching one.
+     */
+    public static ThreadLocal<MethodResolver> methodResolver = new DefaultedThreadLocal<MethodResolver>(new ReflectionMethodResolver());
+
     private transient RequestMethodCode requestMethod;
     private transient int deploymentCode = 0;
     private transient Object clientIdentity;
@@ -241,7 +246,7 @@ public class EJBRequest implements ClusterableRequest {
 
             if (interfaceClass != null) {
                 try {
-                    methodInstance = interfaceClass.getMethod(methodName, methodParamTypes);
+                    methodInstance = methodResolver.get().resolve(interfaceClass, methodName, methodParamTypes);
                 } catch (NoSuchMethodException nsme) {
                     //if (result == null) result = nsme;
                 }
@@ -576,5 +581,14 @@ public class EJBRequest implements ClusterableRequest {
         body.writeExternal(out);
     }
 
+    public static interface MethodResolver {
+        Method resolve(Class interfaceClass, String methodName, Class[] parameterTypes) throws NoSuchMethodException;
+    }
+
+    public static class ReflectionMethodResolver implements MethodResolver {
+        public Method resolve(final Class interfaceClass, final String methodName, final Class[] parameterTypes) throws NoSuchMethodException {
+            return interfaceClass.getMethod(methodName, parameterTypes);
+        }
+    }
 }
 
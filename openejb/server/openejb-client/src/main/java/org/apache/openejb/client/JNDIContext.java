@@ -118,6 +118,10 @@ public class JNDIContext implements InitialContextFactory, Context {
         final String strategy = context.getOptions().get("openejb.client.connection.strategy", "default");
         context.getClusterMetaData().setConnectionStrategy(strategy);
 
+        final LookupCache lookupCache = context.getLookupCache();
+        lookupCache.setMaxSize(context.getOptions().get("openejb.client.lookup.cache.size", lookupCache.getMaxSize()));
+        lookupCache.setTimeToLive(context.getOptions().get("openejb.client.lookup.cache.ttl", lookupCache.getTimeToLive()));
+
         Client.fireEvent(new RemoteInitialContextCreated(location));
 
         //TODO:1: Either aggressively initiate authentication or wait for the
@@ -207,10 +211,10 @@ public class JNDIContext implements InitialContextFactory, Context {
 
         if (name == null) throw new InvalidNameException("The name cannot be null");
         else if (name.equals("")) return new JNDIContext(this);
-        else if (name.startsWith("java:")) name = name.replaceFirst("^java:", "");
+        else if (name.startsWith("java:")) name = name.substring("java:".length());
         else if (!name.startsWith("/")) name = tail + name;
 
-        String prop = name.replaceFirst("comp/env/", "");
+        String prop = removeFirst(name, "comp/env/");
         String value = System.getProperty(prop);
         if (value != null) {
             return parseEntry(prop, value);
@@ -220,20 +224,27 @@ public class JNDIContext implements InitialContextFactory, Context {
             return getDefaultOrb();
         }
 
-        JNDIRequest req = new JNDIRequest();
-        req.setRequestMethod(RequestMethodCode.JNDI_LOOKUP);
-        req.setRequestString(name);
-        req.setModuleId(moduleId);
-
-        JNDIResponse res = null;
-        try {
-            res = request(req);
-        } catch (Exception e) {
-            if (e instanceof RemoteException && e.getCause() instanceof ConnectException) {
-                e = (Exception) e.getCause();
-                throw (ServiceUnavailableException) new ServiceUnavailableException("Cannot lookup '" + name + "'.").initCause(e);
+        final LookupCache lookupCache = Client.getContext(server).getLookupCache();
+        final Object identity = client == null ? null : client.getClientIdentity();
+        JNDIResponse res = lookupCache.get(name, moduleId, identity);
+
+        if (res == null) {
+            JNDIRequest req = new JNDIRequest();
+            req.setRequestMethod(RequestMethodCode.JNDI_LOOKUP);
+            req.setRequestString(name);
+            req.setModuleId(moduleId);
+
+            final long version = lookupCache.getDeploymentVersion();
+            try {
+                res = request(req);
+            } catch (Exception e) {
+                if (e instanceof RemoteException && e.getCause() instanceof ConnectException) {
+                    e = (Exception) e.getCause();
+                    throw (ServiceUnavailableException) new ServiceUnavailableException("Cannot lookup '" + name + "'.").initCause(e);
+                }
+                throw (NamingException) new NamingException("Cannot lookup '" + name + "'.").initCause(e);
             }
-            throw (NamingException) new NamingException("Cannot lookup '" + name + "'.").initCause(e);
+            lookupCache.put(name, moduleId, identity, res, version);
         }
 
         switch (res.getResponseCode()) {
@@ -298,6 +309,12 @@ public class JNDIContext implements InitialContextFactory, Context {
         }
     }
 
+    private static String removeFirst(String name, String part) {
+        final int index = name.indexOf(part);
+        if (index < 0) return name;
+        return name.substring(0, index) + name.substring(index + part.length());
+    }
+
     private Object parseEntry(String name, String value) throws NamingException {
         try {
             URI uri = new URI(value);
@@ -362,7 +379,7 @@ public class JNDIContext implements InitialContextFactory, Context {
 
     public NamingEnumeration<NameClassPair> list(String name) throws NamingException {
         if (name == null) throw new InvalidNameException("The name cannot be null");
-        else if (name.startsWith("java:")) name = name.replaceFirst("^java:", "");
+        else if (name.startsWith("java:")) name = name.substring("java:".length());
         else if (!name.startsWith("/")) name = tail + name;
 
         JNDIRequest req = new JNDIRequest(RequestMethodCode.JNDI_LIST, name);
@@ -0,0 +1,334 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.event.FailoverSelection;
+import org.apache.openejb.client.event.LeastLoadedFailoverSelection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends each request to the better of two randomly picked servers
+ * (power of two choices), the better one being the server with the
+ * fewest requests in flight weighted by its average response time.
+ *
+ * For each server the strategy tracks:
+ * <ul>
+ * <li>the requests this client sent and didn't get the response of yet</li>
+ * <li>an exponentially weighted moving average of the response time</li>
+ * <li>the requests in flight the server itself reported in its last response, if it does (OEJP/3.2)</li>
+ * </ul>
+ *
+ * A server which can't be connected to or fails while processing a request
+ * is ejected for a while, the delay doubling with each consecutive failure.
+ * Ejected servers are only tried once all the others failed.
+ *
+ * <pre>
+ * openejb.client.connection.leastloaded.ejection = 1000 (milliseconds, first ejection)
+ * openejb.client.connection.leastloaded.ejection.max = 30000
+ * </pre>
+ *
+ * @version $Rev$ $Date$
+ */
+public class LeastLoadedConnectionStrategy extends AbstractConnectionStrategy {
+
+    /**
+     * Weight of the last response time in the average
+     */
+    private static final double DECAY = 0.3;
+
+    /**
+     * A load reported by a server is ignored once it is older than that
+     */
+    private static final long LOAD_TTL = TimeUnit.SECONDS.toNanos(2);
+
+    private final ConcurrentMap<URI, Stats> stats = new ConcurrentHashMap<URI, Stats>();
+    private final Random random = new Random();
+    private final long ejection;
+    private final long maxEjection;
+
+    public LeastLoadedConnectionStrategy() {
+        this(Long.parseLong(System.getProperty("openejb.client.connection.leastloaded.ejection", "1000")),
+                Long.parseLong(System.getProperty("openejb.client.connection.leastloaded.ejection.max", "30000")));
+    }
+
+    /**
+     * @param ejection    first ejection delay, in milliseconds
+     * @param maxEjection longest ejection delay, in milliseconds
+     */
+    public LeastLoadedConnectionStrategy(long ejection, long maxEjection) {
+        this.ejection = TimeUnit.MILLISECONDS.toNanos(Math.max(1, ejection));
+        this.maxEjection = TimeUnit.MILLISECONDS.toNanos(Math.max(ejection, maxEjection));
+    }
+
+    @Override
+    protected FailoverSelection createFailureEvent(Set<URI> remaining, Set<URI> failed, URI uri) {
+        return new LeastLoadedFailoverSelection(remaining, failed, uri);
+    }
+
+    @Override
+    protected Iterable<URI> createIterable(ClusterMetaData cluster) {
+        return new LeastLoadedIterable(cluster);
+    }
+
+    @Override
+    protected Connection connect(ClusterMetaData cluster, URI uri) throws IOException {
+        final Stats stats = stats(uri);
+        final long start = System.nanoTime();
+
+        stats.outstanding.incrementAndGet();
+        boolean connected = false;
+        try {
+            final Connection connection = new TrackedConnection(super.connect(cluster, uri), stats, start);
+            connected = true;
+            return connection;
+        } finally {
+            if (!connected) {
+                stats.outstanding.decrementAndGet();
+                failed(stats);
+            }
+        }
+    }
+
+    Stats stats(URI uri) {
+        Stats existing = stats.get(uri);
+        if (existing == null) {
+            existing = new Stats();
+            final Stats previous = stats.putIfAbsent(uri, existing);
+            if (previous != null) existing = previous;
+        }
+        return existing;
+    }
+
+    private void failed(Stats stats) {
+        final int failures = ++stats.failures;
+        stats.ejectedUntil = System.nanoTime() + Math.min(maxEjection, ejection << Math.min(failures - 1, 20));
+    }
+
+    private void succeeded(Stats stats, long time) {
+        stats.failures = 0;
+
+        final double latency = stats.latency;
+        stats.latency = (latency < 0) ? time : latency + DECAY * (time - latency);
+    }
+
+    /**
+     * @return the index of the server to try next amongst the first size items
+     */
+    int select(URI[] items, int size) {
+        if (size == 1) return 0;
+
+        final long now = System.nanoTime();
+
+        final int first = available(items, size, random.nextInt(size), now);
+        if (first < 0) return soonest(items, size);
+
+        int second = available(items, size, random.nextInt(size), now);
+        if (second == first) {
+            second = available(items, size, (first + 1) % size, now);
+        }
+        if (second == first) return first;
+
+        return compare(stats(items[first]), stats(items[second]), now) <= 0 ? first : second;
+    }
+
+    /**
+     * @return the first server, from start, which isn't ejected or -1
+     */
+    private int available(URI[] items, int size, int start, long now) {
+        for (int i = 0; i < size; i++) {
+            final int index = (start + i) % size;
+            if (!stats(items[index]).isEjected(now)) return index;
+        }
+        return -1;
+    }
+
+    /**
+     * Every server is ejected, try the one which will be back first
+     */
+    private int soonest(URI[] items, int size) {
+        int soonest = 0;
+        for (int i = 1; i < size; i++) {
+            if (stats(items[i]).ejectedUntil - stats(items[soonest]).ejectedUntil < 0) {
+                soonest = i;
+            }
+        }
+        return soonest;
+    }
+
+    private static int compare(Stats a, Stats b, long now) {
+        double latencyA = a.latency;
+        double latencyB = b.latency;
+
+        // a server never used yet is assumed to be as fast as the other one
+        if (latencyA < 0) latencyA = latencyB;
+        if (latencyB < 0) latencyB = latencyA;
+        if (latencyA < 0) latencyA = latencyB = 1;
+
+        return Double.compare(latencyA * (a.queue(now) + 1), latencyB * (b.queue(now) + 1));
+    }
+
+    static class Stats {
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        // lost updates only lose a sample, no need to synchronize these
+        private volatile double latency = -1;
+        private volatile int load = -1;
+        private volatile long loadTime;
+        private volatile int failures;
+        private volatile long ejectedUntil;
+
+        int getOutstanding() {
+            return outstanding.get();
+        }
+
+        double getLatency() {
+            return latency;
+        }
+
+        boolean isEjected(long now) {
+            return failures > 0 && ejectedUntil - now > 0;
+        }
+
+        /**
+         * The server load includes the requests of this client
+         * but may be stale, the highest of both is used
+         */
+        private int queue(long now) {
+            final int queue = outstanding.get();
+            final int load = this.load;
+            if (load > queue && now - loadTime < LOAD_TTL) return load;
+            return queue;
+        }
+    }
+
+    private class LeastLoadedIterable implements Iterable<URI> {
+        private final URI[] locations;
+
+        private LeastLoadedIterable(ClusterMetaData clusterMetaData) {
+            this.locations = clusterMetaData.getLocations();
+        }
+
+        @Override
+        public Iterator<URI> iterator() {
+            return new LeastLoadedIterator(locations);
+        }
+    }
+
+    private class LeastLoadedIterator implements Iterator<URI> {
+        private final URI[] items;
+        private int size;
+
+        private LeastLoadedIterator(URI[] items) {
+            this.items = Arrays.copyOf(items, items.length);
+            this.size = items.length;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return size > 0;
+        }
+
+        @Override
+        public URI next() {
+            if (!hasNext()) throw new NoSuchElementException();
+
+            final int selected = select(items, size--);
+
+            final URI location = items[selected];
+
+            // Take the last location and move it into the place where selected was.
+            items[selected] = items[size];
+            items[size] = null;
+
+            return location;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+
+    /**
+     * Counts the request as outstanding until the connection is given back
+     */
+    class TrackedConnection implements Connection {
+        private final Connection delegate;
+        private final Stats stats;
+        private final long start;
+        private boolean done;
+
+        private TrackedConnection(Connection delegate, Stats stats, long start) {
+            this.delegate = delegate;
+            this.stats = stats;
+            this.start = start;
+        }
+
+        void setServerLoad(int load) {
+            stats.loadTime = System.nanoTime();
+            stats.load = load;
+        }
+
+        @Override
+        public void discard() {
+            if (!done) {
+                done = true;
+                stats.outstanding.decrementAndGet();
+                failed(stats);
+            }
+            delegate.discard();
+        }
+
+        @Override
+        public URI getURI() {
+            return delegate.getURI();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!done) {
+                done = true;
+                stats.outstanding.decrementAndGet();
+                succeeded(stats, System.nanoTime() - start);
+            }
+            delegate.close();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return delegate.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOuputStream() throws IOException {
+            return delegate.getOuputStream();
+        }
+    }
+}
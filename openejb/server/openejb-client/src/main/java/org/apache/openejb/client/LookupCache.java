@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The results of the JNDI lookups which don't change as long as nothing is
+ * deployed or undeployed on the server: the metadata of EJB homes and
+ * stateless or singleton business interfaces, datasources and simple env
+ * entries. Lookups of the same name then don't need a round trip.
+ *
+ * The least recently used results are dropped above the maximum size and
+ * every result expires after the time to live. All of them are dropped when
+ * the deployment version the server sends with each response changes.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LookupCache {
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    private volatile int maxSize = 1000;
+    private volatile long timeToLive = 60000;
+    private volatile long deploymentVersion = -1;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize 0 disables the cache
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        if (maxSize <= 0) clear();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @param timeToLive milliseconds a result stays valid
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public long getDeploymentVersion() {
+        return deploymentVersion;
+    }
+
+    /**
+     * Drops all the results if the deployments of the server changed.
+     *
+     * @param version the version the server sent, -1 if it didn't send any
+     */
+    public void setDeploymentVersion(long version) {
+        if (version < 0 || version == deploymentVersion) return;
+
+        deploymentVersion = version;
+        clear();
+    }
+
+    /**
+     * @param identity the client identity the lookup is done with, or null
+     * @return the cached response or null
+     */
+    public JNDIResponse get(String name, String moduleId, Object identity) {
+        if (maxSize <= 0) return null;
+
+        final Key key = new Key(name, moduleId, identity);
+        final Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && (entry.version != deploymentVersion || entry.expires < System.currentTimeMillis())) {
+                entries.remove(key);
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return new JNDIResponse(entry.responseCode, entry.result);
+    }
+
+    /**
+     * Caches the response if it can be reused.
+     *
+     * @param version the {@link #getDeploymentVersion()} before the lookup was sent
+     */
+    public void put(String name, String moduleId, Object identity, JNDIResponse response, long version) {
+        if (maxSize <= 0 || !isCacheable(response)) return;
+
+        final Entry entry = new Entry(response.getResponseCode(), response.getResult(), version, System.currentTimeMillis() + timeToLive);
+        synchronized (entries) {
+            entries.put(new Key(name, moduleId, identity), entry);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    static boolean isCacheable(JNDIResponse response) {
+        final Object result = response.getResult();
+        switch (response.getResponseCode()) {
+            case ResponseCodes.JNDI_EJBHOME:
+            case ResponseCodes.JNDI_DATA_SOURCE:
+                return true;
+
+            case ResponseCodes.JNDI_BUSINESS_OBJECT:
+                // each lookup of a stateful bean is a new session
+                return !((EJBMetaDataImpl) result).isStatefulSession();
+
+            case ResponseCodes.JNDI_OK:
+                return result instanceof String || result instanceof Number || result instanceof Boolean || result instanceof Character;
+
+            default:
+                return false;
+        }
+    }
+
+    private static class Key {
+        private final String name;
+        private final String moduleId;
+        private final Object identity;
+
+        private Key(String name, String moduleId, Object identity) {
+            this.name = name;
+            this.moduleId = moduleId;
+            this.identity = identity;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            final Key key = (Key) o;
+
+            return name.equals(key.name)
+                    && (moduleId == null ? key.moduleId == null : moduleId.equals(key.moduleId))
+                    && (identity == null ? key.identity == null : identity.equals(key.identity));
+        }
+
+        public int hashCode() {
+            int result = name.hashCode();
+            result = 31 * result + (moduleId != null ? moduleId.hashCode() : 0);
+            result = 31 * result + (identity != null ? identity.hashCode() : 0);
+            return result;
+        }
+    }
+
+    private static class Entry {
+        private final int responseCode;
+        private final Object result;
+        private final long version;
+        private final long expires;
+
+        private Entry(int responseCode, Object result, long version, long expires) {
+            this.responseCode = responseCode;
+            this.result = result;
+            this.version = version;
+            this.expires = expires;
+        }
+    }
+}
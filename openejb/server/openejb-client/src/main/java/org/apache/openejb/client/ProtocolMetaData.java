@@ -74,6 +74,10 @@ public class ProtocolMetaData {
         return major+"."+minor;
     }
 
+    public boolean isAtLeast(int major, int minor) {
+        return this.major > major || (this.major == major && this.minor >= minor);
+    }
+
     public String getSpec() {
         return id+"/"+major+"."+minor;
     }
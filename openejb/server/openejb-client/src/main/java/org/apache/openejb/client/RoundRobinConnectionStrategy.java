@@ -20,7 +20,6 @@ import org.apache.openejb.client.event.FailoverSelection;
 import org.apache.openejb.client.event.RoundRobinFailoverSelection;
 
 import java.net.URI;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Set;
@@ -50,21 +49,20 @@ public class RoundRobinConnectionStrategy extends AbstractConnectionStrategy {
         }
 
         private class RoundRobinIterator implements Iterator<URI> {
-            private final Set<URI> seen = new HashSet<URI>();
+            private int count;
 
             @Override
             public boolean hasNext() {
-                return seen.size() < locations.length;
+                return count < locations.length;
             }
 
             @Override
             public URI next() {
                 if (!hasNext()) throw new NoSuchElementException();
 
-                final URI location = locations[index()];
-                seen.add(location);
+                count++;
 
-                return location;
+                return locations[index()];
             }
 
             @Override
@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class LeastLoadedConnectionStrategyTest extends TestCase {
+
+    private final URI one = URI.create("leastloaded://one:4201");
+    private final URI two = URI.create("leastloaded://two:4201");
+    private final URI three = URI.create("leastloaded://three:4201");
+
+    private LeastLoadedConnectionStrategy strategy;
+    private ClusterMetaData cluster;
+
+    @Override
+    protected void setUp() throws Exception {
+        ConnectionManager.registerFactory("leastloaded", new ConnectionFactory() {
+            public Connection getConnection(URI uri) throws IOException {
+                if (uri.getHost().equals("down")) throw new IOException("down");
+                return new MockConnection(uri);
+            }
+        });
+
+        strategy = new LeastLoadedConnectionStrategy(50, 200);
+        cluster = new ClusterMetaData(System.currentTimeMillis(), one, two);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ConnectionManager.unregisterFactory("leastloaded");
+    }
+
+    public void testFewestOutstanding() throws Exception {
+        final Connection first = strategy.connect(cluster, one);
+        final Connection second = strategy.connect(cluster, one);
+        assertEquals(2, strategy.stats(one).getOutstanding());
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(two, first(strategy.createIterable(cluster)));
+        }
+
+        first.close();
+        second.close();
+        assertEquals(0, strategy.stats(one).getOutstanding());
+    }
+
+    public void testFastest() throws Exception {
+        final Connection slow = strategy.connect(cluster, one);
+        Thread.sleep(50);
+        slow.close();
+
+        strategy.connect(cluster, two).close();
+
+        assertTrue(strategy.stats(one).getLatency() > strategy.stats(two).getLatency());
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(two, first(strategy.createIterable(cluster)));
+        }
+    }
+
+    public void testServerLoad() throws Exception {
+        strategy.connect(cluster, two).close();
+
+        final Connection connection = strategy.connect(cluster, one);
+        ((LeastLoadedConnectionStrategy.TrackedConnection) connection).setServerLoad(100000);
+        connection.close();
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(two, first(strategy.createIterable(cluster)));
+        }
+    }
+
+    public void testEjection() throws Exception {
+        strategy.connect(cluster, one).discard();
+        assertTrue(strategy.stats(one).isEjected(System.nanoTime()));
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(two, first(strategy.createIterable(cluster)));
+        }
+
+        Thread.sleep(100);
+        assertFalse(strategy.stats(one).isEjected(System.nanoTime()));
+
+        // a failed connection ejects the server too
+        final URI down = URI.create("leastloaded://down:4201");
+        try {
+            strategy.connect(new ClusterMetaData(System.currentTimeMillis(), down), down);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // pass
+        }
+        assertTrue(strategy.stats(down).isEjected(System.nanoTime()));
+        assertEquals(0, strategy.stats(down).getOutstanding());
+    }
+
+    public void testEveryLocationOnce() throws Exception {
+        cluster = new ClusterMetaData(System.currentTimeMillis(), one, two, three);
+        strategy.connect(cluster, two).discard();
+
+        final Set<URI> seen = new HashSet<URI>();
+        final Iterator<URI> iterator = strategy.createIterable(cluster).iterator();
+        while (iterator.hasNext()) {
+            assertTrue(seen.add(iterator.next()));
+        }
+        assertEquals(3, seen.size());
+    }
+
+    public void testServerLoadOnTheWire() throws Exception {
+        final ClusterResponse current = new ClusterResponse(new ProtocolMetaData("3.2"));
+        current.setCurrent();
+        current.setServerLoad(7);
+        assertEquals(7, roundTrip(current, new ProtocolMetaData("3.2")).getServerLoad());
+
+        // older clients and servers don't know about it
+        final ClusterResponse old = new ClusterResponse(new ProtocolMetaData("3.1"));
+        old.setCurrent();
+        old.setServerLoad(7);
+        assertEquals(-1, roundTrip(old, new ProtocolMetaData("3.1")).getServerLoad());
+    }
+
+    private static ClusterResponse roundTrip(ClusterResponse response, ProtocolMetaData protocol) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        response.writeExternal(out);
+        out.writeByte(42);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        final ClusterResponse read = new ClusterResponse(protocol);
+        read.readExternal(in);
+        assertEquals("the stream is left where the request starts", 42, in.readByte());
+        return read;
+    }
+
+    private static URI first(Iterable<URI> iterable) {
+        return iterable.iterator().next();
+    }
+
+    private static class MockConnection implements Connection {
+        private final URI uri;
+
+        private MockConnection(URI uri) {
+            this.uri = uri;
+        }
+
+        public URI getURI() {
+            return uri;
+        }
+
+        public void discard() {
+        }
+
+        public void close() throws IOException {
+        }
+
+        public InputStream getInputStream() throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        public OutputStream getOuputStream() throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class LookupCacheTest extends TestCase {
+
+    public void testHitAndMiss() throws Exception {
+        final LookupCache cache = new LookupCache();
+        assertNull(cache.get("comp/env/name", null, null));
+
+        cache.put("comp/env/name", null, null, new JNDIResponse(ResponseCodes.JNDI_OK, "value"), cache.getDeploymentVersion());
+        final JNDIResponse response = cache.get("comp/env/name", null, null);
+        assertEquals(ResponseCodes.JNDI_OK, response.getResponseCode());
+        assertEquals("value", response.getResult());
+
+        // other modules and identities don't see it
+        assertNull(cache.get("comp/env/name", "module", null));
+        assertNull(cache.get("comp/env/name", null, "user"));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    public void testNotCacheable() throws Exception {
+        final LookupCache cache = new LookupCache();
+        cache.put("context", null, null, new JNDIResponse(ResponseCodes.JNDI_CONTEXT, null), -1);
+        cache.put("missing", null, null, new JNDIResponse(ResponseCodes.JNDI_NOT_FOUND, null), -1);
+        cache.put("mutable", null, null, new JNDIResponse(ResponseCodes.JNDI_OK, new StringBuilder()), -1);
+
+        final EJBMetaDataImpl stateful = new EJBMetaDataImpl(null, null, "STATEFUL", InterfaceType.BUSINESS_REMOTE, null, null);
+        cache.put("stateful", null, null, new JNDIResponse(ResponseCodes.JNDI_BUSINESS_OBJECT, stateful), -1);
+        assertEquals(0, cache.size());
+
+        final EJBMetaDataImpl stateless = new EJBMetaDataImpl(null, null, "STATELESS", InterfaceType.BUSINESS_REMOTE, null, null);
+        cache.put("stateless", null, null, new JNDIResponse(ResponseCodes.JNDI_BUSINESS_OBJECT, stateless), -1);
+        assertSame(stateless, cache.get("stateless", null, null).getResult());
+    }
+
+    public void testDeploymentVersion() throws Exception {
+        final LookupCache cache = new LookupCache();
+        cache.setDeploymentVersion(1);
+        cache.put("name", null, null, new JNDIResponse(ResponseCodes.JNDI_OK, "value"), 1);
+
+        // servers not sending any version don't change anything
+        cache.setDeploymentVersion(-1);
+        assertNotNull(cache.get("name", null, null));
+
+        cache.setDeploymentVersion(2);
+        assertNull(cache.get("name", null, null));
+
+        // looked up before the version changed
+        cache.put("name", null, null, new JNDIResponse(ResponseCodes.JNDI_OK, "value"), 1);
+        assertNull(cache.get("name", null, null));
+    }
+
+    public void testTimeToLive() throws Exception {
+        final LookupCache cache = new LookupCache();
+        cache.setTimeToLive(-1);
+        cache.put("name", null, null, new JNDIResponse(ResponseCodes.JNDI_OK, "value"), -1);
+        assertNull(cache.get("name", null, null));
+    }
+
+    public void testMaxSize() throws Exception {
+        final LookupCache cache = new LookupCache();
+        cache.setMaxSize(2);
+        cache.put("one", null, null, new JNDIResponse(ResponseCodes.JNDI_OK, 1), -1);
+        cache.put("two", null, null, new JNDIResponse(ResponseCodes.JNDI_OK, 2), -1);
+        assertNotNull(cache.get("one", null, null));
+        cache.put("three", null, null, new JNDIResponse(ResponseCodes.JNDI_OK, 3), -1);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("two", null, null));
+        assertNotNull(cache.get("one", null, null));
+
+        cache.setMaxSize(0);
+        cache.put("four", null, null, new JNDIResponse(ResponseCodes.JNDI_OK, 4), -1);
+        assertEquals(0, cache.size());
+    }
+
+    public void testDeploymentVersionOnTheWire() throws Exception {
+        final ClusterResponse current = new ClusterResponse(new ProtocolMetaData("3.3"));
+        current.setCurrent();
+        current.setDeploymentVersion(42);
+        assertEquals(42, roundTrip(current, new ProtocolMetaData("3.3")).getDeploymentVersion());
+
+        final ClusterResponse old = new ClusterResponse(new ProtocolMetaData("3.2"));
+        old.setCurrent();
+        old.setDeploymentVersion(42);
+        assertEquals(-1, roundTrip(old, new ProtocolMetaData("3.2")).getDeploymentVersion());
+    }
+
+    private static ClusterResponse roundTrip(ClusterResponse response, ProtocolMetaData protocol) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        response.writeExternal(out);
+        out.writeByte(42);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        final ClusterResponse read = new ClusterResponse(protocol);
+        read.readExternal(in);
+        assertEquals("the stream is left where the request starts", 42, in.readByte());
+        return read;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+
+public class ProtocolMetaDataTest extends TestCase {
+
+    public void testIsAtLeast() throws Exception {
+        ProtocolMetaData protocol = new ProtocolMetaData("3.2");
+        assertTrue(protocol.isAtLeast(3, 1));
+        assertTrue(protocol.isAtLeast(3, 2));
+        assertFalse(protocol.isAtLeast(3, 3));
+        assertTrue(protocol.isAtLeast(2, 9));
+        assertFalse(protocol.isAtLeast(4, 0));
+    }
+
+    public void testHigherMajorVersionIsNewer() throws Exception {
+        ProtocolMetaData protocol = new ProtocolMetaData("4.0");
+        assertTrue(protocol.isAtLeast(3, 2));
+        assertTrue(protocol.isAtLeast(3, 3));
+        assertTrue(protocol.isAtLeast(4, 0));
+        assertFalse(protocol.isAtLeast(4, 1));
+    }
+
+    public void testExternalization() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ProtocolMetaData("4.1").writeExternal(out);
+
+        ProtocolMetaData protocol = new ProtocolMetaData();
+        protocol.readExternal(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("OEJP", protocol.getId());
+        assertEquals("4.1", protocol.getVersion());
+        assertTrue(protocol.isAtLeast(3, 3));
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.cxf;
+
+import org.apache.openejb.OpenEjbContainer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+import javax.ejb.Stateless;
+import javax.ejb.embeddable.EJBContainer;
+import javax.jws.WebService;
+import javax.xml.bind.annotation.XmlMimeType;
+import javax.xml.namespace.QName;
+import javax.xml.ws.BindingType;
+import javax.xml.ws.Service;
+import javax.xml.ws.soap.MTOM;
+import javax.xml.ws.soap.MTOMFeature;
+import javax.xml.ws.soap.SOAPBinding;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MTOM upload and download of payloads larger than the heap through the
+ * embedded http server and EjbWsContainer. The pom runs it alone with a
+ * small -Xmx, nothing on the way can hold a whole payload in memory.
+ */
+public class MtomStreamingTest {
+    private static final long SIZE = 256L * 1024 * 1024;
+
+    private static EJBContainer container;
+
+    @BeforeClass public static void start() {
+        final Properties properties = new Properties();
+        properties.setProperty(OpenEjbContainer.OPENEJB_EMBEDDED_REMOTABLE, "true");
+
+        container = EJBContainer.createEJBContainer(properties);
+    }
+
+    @AfterClass public static void close() {
+        container.close();
+    }
+
+    @Test public void uploadAndDownload() throws Exception {
+        assertTrue("run with a heap smaller than the payload", Runtime.getRuntime().maxMemory() < SIZE);
+
+        final Streaming streaming = Service.create(
+                new URL("http://localhost:4204/openejb-cxf/StreamingBean?wsdl"),
+                new QName("http://cxf.server.openejb.apache.org/", "StreamingBeanService"))
+                .getPort(Streaming.class, new MTOMFeature());
+
+        assertEquals(Payload.checksum(SIZE), streaming.upload(new DataHandler(new Payload(SIZE))));
+        assertEquals(Payload.checksum(SIZE), Payload.checksum(streaming.download(SIZE).getInputStream()));
+    }
+
+    @MTOM
+    @WebService
+    @Stateless
+    @BindingType(SOAPBinding.SOAP11HTTP_MTOM_BINDING)
+    public static class StreamingBean implements Streaming {
+        public long upload(final DataHandler data) {
+            try {
+                return Payload.checksum(data.getInputStream());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public DataHandler download(final long size) {
+            return new DataHandler(new Payload(size));
+        }
+    }
+
+    @WebService(portName = "StreamingBeanPort")
+    public static interface Streaming {
+        long upload(@XmlMimeType("application/octet-stream") DataHandler data);
+
+        @XmlMimeType("application/octet-stream")
+        DataHandler download(long size);
+    }
+
+    /**
+     * Generated content, the sum of its bytes tells if something was lost or reordered.
+     */
+    public static class Payload implements DataSource {
+        private final long size;
+
+        public Payload(final long size) {
+            this.size = size;
+        }
+
+        public InputStream getInputStream() {
+            return new InputStream() {
+                private long position;
+
+                @Override public int read() {
+                    if (position == size) {
+                        return -1;
+                    }
+                    return value(position++);
+                }
+
+                @Override public int read(final byte[] b, final int off, final int len) {
+                    if (position == size) {
+                        return -1;
+                    }
+                    final int n = (int) Math.min(len, size - position);
+                    for (int i = 0; i < n; i++) {
+                        b[off + i] = (byte) value(position++);
+                    }
+                    return n;
+                }
+            };
+        }
+
+        public OutputStream getOutputStream() throws IOException {
+            throw new IOException("read only");
+        }
+
+        public String getContentType() {
+            return "application/octet-stream";
+        }
+
+        public String getName() {
+            return "payload";
+        }
+
+        private static int value(final long position) {
+            return (int) ((position * 31 + position / 4096) & 0xff);
+        }
+
+        public static long checksum(final long size) {
+            long checksum = 0;
+            for (long position = 0; position < size; position++) {
+                checksum = checksum * 31 + value(position);
+            }
+            return checksum;
+        }
+
+        public static long checksum(final InputStream in) throws IOException {
+            try {
+                final byte[] buffer = new byte[8192];
+                long checksum = 0;
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    for (int i = 0; i < n; i++) {
+                        checksum = checksum * 31 + (buffer[i] & 0xff);
+                    }
+                }
+                return checksum;
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.openejb.server.ejbd;
 import org.apache.openejb.client.ClusterRequest;
 import org.apache.openejb.client.ClusterResponse;
 import org.apache.openejb.client.ClusterMetaData;
+import org.apache.openejb.client.ProtocolMetaData;
 import org.apache.openejb.server.DiscoveryListener;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
@@ -50,8 +51,20 @@ public class ClusterRequestHandler implements DiscoveryListener {
 
 
     public void processRequest(ObjectInputStream in, ObjectOutputStream out) throws IOException {
+        processRequest(null, in, out, -1, -1);
+    }
+
+    /**
+     * @param protocol the version the client speaks
+     * @param load     the requests the server is processing, sent to clients supporting it
+     * @param deploymentVersion changes each time an application is deployed or undeployed, sent to
+     *                 clients supporting it so they can drop the lookups they cached
+     */
+    public void processRequest(ProtocolMetaData protocol, ObjectInputStream in, ObjectOutputStream out, int load, long deploymentVersion) throws IOException {
         ClusterRequest req = new ClusterRequest();
-        ClusterResponse res = new ClusterResponse();
+        ClusterResponse res = new ClusterResponse(protocol);
+        res.setServerLoad(load);
+        res.setDeploymentVersion(deploymentVersion);
 
         try {
             req.readExternal(in);
@@ -89,6 +102,13 @@ public class ClusterRequestHandler implements DiscoveryListener {
         }
     }
 
+    /**
+     * @return the ejbd servers of the cluster known to this server
+     */
+    public URI[] getLocations() {
+        return data.current().getLocations();
+    }
+
     private void sendErrorResponse(String message, Throwable t, ClusterResponse res, ObjectOutputStream out) throws IOException {
         logger.fatal(message, t);
         t = new IOException("The server has encountered a fatal error: " + message + " " + t).initCause(t);
@@ -22,36 +22,62 @@ import java.util.Map;
 
 import org.apache.openejb.BeanContext;
 import org.apache.openejb.client.EJBRequest;
+import org.apache.openejb.core.DeploymentRegistry;
 import org.apache.openejb.util.Messages;
 
 public class DeploymentIndex {
 
     Messages messages = new Messages("org.apache.openejb.server.ejbd");
 
-    BeanContext[] deployments = null;
+    /**
+     * The deployment ids by the code sent to the clients. The BeanContext
+     * is looked up in the registry on each request so a code stays valid
+     * when its bean is redeployed.
+     */
+    Object[] deploymentIds = null;
 
-    Map index = null;
+    Map<Object, Integer> index = null;
+
+    final DeploymentRegistry deployments;
 
     public DeploymentIndex(BeanContext[] beanContexts) {
-        BeanContext[] ds = beanContexts;
+        this(registry(beanContexts), beanContexts);
+    }
+
+    public DeploymentIndex(DeploymentRegistry deployments) {
+        this(deployments, deployments.values());
+    }
 
-        deployments = new BeanContext[ ds.length + 1 ];
+    private DeploymentIndex(DeploymentRegistry deployments, BeanContext[] beanContexts) {
+        this.deployments = deployments;
 
-        System.arraycopy(ds, 0, deployments, 1, ds.length);
+        deploymentIds = new Object[ beanContexts.length + 1 ];
 
-        index = new HashMap(deployments.length);
-        for (int i = 1; i < deployments.length; i++) {
-            index.put(deployments[i].getDeploymentID(), new Integer(i));
+        index = new HashMap<Object, Integer>(deploymentIds.length);
+        for (int i = 1; i < deploymentIds.length; i++) {
+            deploymentIds[i] = beanContexts[i - 1].getDeploymentID();
+            index.put(deploymentIds[i], Integer.valueOf(i));
         }
     }
 
+    private static DeploymentRegistry registry(BeanContext[] beanContexts) {
+        DeploymentRegistry registry = new DeploymentRegistry();
+        for (BeanContext beanContext : beanContexts) {
+            registry.put(beanContext);
+        }
+        return registry;
+    }
+
     public BeanContext getDeployment(EJBRequest req) throws RemoteException {
 
         BeanContext info = null;
 
         int deploymentCode = req.getDeploymentCode();
-        if (deploymentCode > 0 && deploymentCode < deployments.length) {
-            info = deployments[deploymentCode];
+        if (deploymentCode > 0 && deploymentCode < deploymentIds.length) {
+            info = getDeployment(deploymentCode);
+            if (info == null) {
+                throw new RemoteException(messages.format("noSuchDeploymentIdAndCode", req.getDeploymentId(), req.getDeploymentCode()));
+            }
             req.setDeploymentId((String) info.getDeploymentID());
             return info;
         }
@@ -67,10 +93,15 @@ public class DeploymentIndex {
 
         req.setDeploymentCode(idCode);
 
-        if (req.getDeploymentCode() < 0 || req.getDeploymentCode() >= deployments.length) {
+        if (req.getDeploymentCode() < 0 || req.getDeploymentCode() >= deploymentIds.length) {
             throw new RemoteException(messages.format("invalidDeploymentIdAndCode", req.getDeploymentId(), req.getDeploymentCode()));
         }
-        return deployments[req.getDeploymentCode()];
+
+        info = getDeployment(req.getDeploymentCode());
+        if (info == null) {
+            throw new RemoteException(messages.format("noSuchDeploymentIdAndCode", req.getDeploymentId(), req.getDeploymentCode()));
+        }
+        return info;
     }
 
     public int getDeploymentIndex(BeanContext deployment) {
@@ -78,13 +109,13 @@ public class DeploymentIndex {
     }
 
     public int getDeploymentIndex(String deploymentID) {
-        Integer idCode = (Integer) index.get(deploymentID);
+        Integer idCode = index.get(deploymentID);
 
         return (idCode == null) ? -1 : idCode.intValue();
     }
 
     public BeanContext getDeployment(String deploymentID) {
-        return getDeployment(getDeploymentIndex(deploymentID));
+        return deployments.get(deploymentID);
     }
 
     public BeanContext getDeployment(Integer index) {
@@ -92,7 +123,7 @@ public class DeploymentIndex {
     }
 
     public BeanContext getDeployment(int index) {
-        return deployments[index];
+        Object deploymentId = deploymentIds[index];
+        return (deploymentId == null) ? null : deployments.get(deploymentId);
     }
 }
-
@@ -19,6 +19,10 @@ package org.apache.openejb.server.ejbd;
 import org.apache.openejb.BeanContext;
 import org.apache.openejb.ProxyInfo;
 import org.apache.openejb.client.*;
+import org.apache.openejb.core.CoreContainerSystem;
+import org.apache.openejb.core.stateful.ReplicaStore;
+import org.apache.openejb.core.stateful.SessionReplicator;
+import org.apache.openejb.loader.Options;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.server.DiscoveryAgent;
 import org.apache.openejb.spi.ContainerSystem;
@@ -26,14 +30,19 @@ import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 import org.apache.openejb.util.Messages;
 
+import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
 import java.net.Socket;
+import java.net.URI;
 import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
 
-    private static final ProtocolMetaData PROTOCOL_VERSION = new ProtocolMetaData("3.1");
+    private static final ProtocolMetaData PROTOCOL_VERSION = new ProtocolMetaData("3.3");
 
     private static final Messages _messages = new Messages("org.apache.openejb.server.util.resources");
     static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_SERVER_REMOTE, "org.apache.openejb.server.util.resources");
@@ -44,9 +53,13 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
     private JndiRequestHandler jndiHandler;
     private AuthRequestHandler authHandler;
     private ClusterRequestHandler clusterHandler;
+    private ReplicationRequestHandler replicationHandler;
 
     boolean stop = false;
 
+    // requests being processed, sent to the clients as a load hint
+    private final AtomicInteger active = new AtomicInteger();
+
     static EjbDaemon instance;
     private ContainerSystem containerSystem;
 
@@ -70,11 +83,59 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
         jndiHandler = new JndiRequestHandler(this);
         authHandler = new AuthRequestHandler(this);
         clusterHandler = new ClusterRequestHandler(this);
+        // the secret is not read through the Options which log the values
+        final Options options = new Options(props);
+        replicationHandler = new ReplicationRequestHandler(props.getProperty("replication.secret"),
+                options.get("replication.max-size", 64 * 1024 * 1024),
+                options.get("replication.max-sessions", 10000),
+                options.get("replication.max-age", 300000L));
 
         DiscoveryAgent discovery = SystemInstance.get().getComponent(DiscoveryAgent.class);
         if (discovery != null) {
             discovery.setDiscoveryListener(clusterHandler);
         }
+
+        initReplication(props);
+    }
+
+    /**
+     * Stateful sessions are replicated to a buddy server when the ejbd
+     * service has the "replication" property set to true and a
+     * "replication.secret" shared by the servers.
+     */
+    private void initReplication(Properties props) throws Exception {
+        final Options options = new Options(props);
+        if (!options.get("replication", false)) return;
+
+        final SecretKeySpec secret = ReplicationRequestHandler.key(props.getProperty("replication.secret"));
+        if (secret == null) {
+            logger.error("The stateful sessions are not replicated, the ejbd service has no replication.secret");
+            return;
+        }
+
+        final SystemInstance system = SystemInstance.get();
+        if (system.getComponent(SessionReplicator.class) != null) return;
+
+        final List<URI> buddies = new ArrayList<URI>();
+        for (String buddy : options.get("replication.buddies", "").split(",")) {
+            if (buddy.trim().length() > 0) buddies.add(new URI(buddy.trim()));
+        }
+
+        final EjbdReplicationTransport transport = new EjbdReplicationTransport(this, buddies, options.get("port", 0), secret);
+        final SessionReplicator replicator = new SessionReplicator(transport,
+                options.get("replication.queue", 10000),
+                options.get("replication.timeout", 100L),
+                options.get("replication.batch", 100));
+
+        system.setComponent(ReplicaStore.class, new ReplicaStore(options.get("replication.idle", 3600000L)));
+        system.setComponent(SessionReplicator.class, replicator);
+        replicator.start();
+
+        logger.info("Replicating the stateful sessions to " + (buddies.isEmpty() ? "the discovered servers" : buddies.toString()));
+    }
+
+    ClusterRequestHandler getClusterHandler() {
+        return clusterHandler;
     }
 
     public void service(Socket socket) throws IOException {
@@ -126,6 +187,7 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
         RequestType requestType = null;
         byte requestTypeByte = RequestType.NOP_REQUEST.getCode();
 
+        active.incrementAndGet();
         try {
 
             // Read Protocol Version
@@ -149,7 +211,7 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
             }
 
             if (requestType == RequestType.CLUSTER_REQUEST) {
-                processClusterRequest(ois, oos);
+                processClusterRequest(protocolMetaData, ois, oos);
             }
 
             requestTypeByte = (byte) ois.read();
@@ -172,6 +234,9 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
                 case AUTH_REQUEST:
                     processAuthRequest(ois, oos);
                     break;
+                case REPLICATION_REQUEST:
+                    replicationHandler.processRequest(ois, oos);
+                    break;
                 default:
                     logger.error("\"" + requestType + " " + protocolMetaData.getSpec() + "\" FAIL \"Unknown request type " + requestType);
                     break;
@@ -184,6 +249,7 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
             logger.error("\"" + requestType + " " + protocolMetaData.getSpec() + "\" FAIL \"Unexpected error - " + e.getMessage() + "\"", e);
         } finally {
 
+            active.decrementAndGet();
             ClientObjectFactory.serverMetaData.remove();
 
             if (null != oos) {
@@ -211,8 +277,16 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
         }
     }
 
-    private void processClusterRequest(ObjectInputStream in, ObjectOutputStream out) throws IOException {
-        clusterHandler.processRequest(in, out);
+    private void processClusterRequest(ProtocolMetaData protocolMetaData, ObjectInputStream in, ObjectOutputStream out) throws IOException {
+        // this request doesn't count
+        clusterHandler.processRequest(protocolMetaData, in, out, active.get() - 1, getDeploymentVersion());
+    }
+
+    long getDeploymentVersion() {
+        if (containerSystem instanceof CoreContainerSystem) {
+            return ((CoreContainerSystem) containerSystem).getGeneration();
+        }
+        return -1;
     }
 
     protected BeanContext getDeployment(EJBRequest req) throws RemoteException {
@@ -52,6 +52,8 @@ class EjbRequestHandler {
 
     private final Map<String, AtomicBoolean> asynchronousInvocationCancelMap = new ConcurrentHashMap<String, AtomicBoolean>();
 
+    private final MethodCache methodCache = new MethodCache();
+
     EjbRequestHandler(final EjbDaemon daemon) {
         this.daemon = daemon;
 
@@ -69,6 +71,10 @@ class EjbRequestHandler {
         EJBHomeProxyHandle.resolver.set(SERVER_SIDE_RESOLVER);
         EJBObjectProxyHandle.resolver.set(SERVER_SIDE_RESOLVER);
 
+        // Resolve the methods once, until the next deployment or undeployment
+        methodCache.setDeploymentVersion(daemon.getDeploymentVersion());
+        EJBRequest.methodResolver.set(methodCache);
+
         final EJBRequest req = new EJBRequest();
         byte version = req.getVersion();
         final EJBResponse res = new EJBResponse();
@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.client.ClusterMetaData;
+import org.apache.openejb.client.ClusterRequest;
+import org.apache.openejb.client.ClusterResponse;
+import org.apache.openejb.client.Connection;
+import org.apache.openejb.client.ConnectionManager;
+import org.apache.openejb.client.EjbObjectInputStream;
+import org.apache.openejb.client.ProtocolMetaData;
+import org.apache.openejb.client.RequestType;
+import org.apache.openejb.client.ServerMetaData;
+import org.apache.openejb.core.stateful.SessionDelta;
+import org.apache.openejb.core.stateful.SessionReplicator;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sends the stateful sessions to the buddy server over the ejbd protocol.
+ *
+ * The buddy is the first server of the "replication.buddies" list of the
+ * ejbd service which can be reached or, when there is no such list, of the
+ * servers found by the discovery agent. The server stays the buddy as long
+ * as it answers.
+ *
+ * @version $Rev$ $Date$
+ */
+class EjbdReplicationTransport implements SessionReplicator.Transport {
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_SERVER_REMOTE.createChild("replication"), EjbdReplicationTransport.class);
+
+    private static final ProtocolMetaData PROTOCOL_VERSION = new ProtocolMetaData("3.3");
+
+    private final EjbDaemon daemon;
+    private final List<URI> buddies;
+    private final int port;
+    private final SecretKeySpec secret;
+
+    private volatile URI buddy;
+
+    /**
+     * @param buddies the servers to replicate to, the discovered ones if empty
+     * @param port    the port of this server, to recognize it in the discovered ones
+     * @param secret  the replication secret the requests are signed with
+     */
+    EjbdReplicationTransport(EjbDaemon daemon, List<URI> buddies, int port, SecretKeySpec secret) {
+        this.daemon = daemon;
+        this.buddies = buddies;
+        this.port = port;
+        this.secret = secret;
+    }
+
+    public URI getBuddy() {
+        return buddy;
+    }
+
+    public Set<Object> send(List<SessionDelta> deltas) throws IOException {
+        IOException failure = null;
+        for (URI uri : candidates()) {
+            try {
+                final Set<Object> missing = send(uri, deltas);
+                if (!uri.equals(buddy)) {
+                    logger.info("Replicating the stateful sessions to " + uri);
+                    buddy = uri;
+                }
+                return missing;
+            } catch (IOException e) {
+                logger.debug("Can't replicate the stateful sessions to " + uri + ": " + e.getMessage());
+                failure = e;
+            }
+        }
+
+        if (failure != null) throw failure;
+        throw new IOException("No server to replicate the stateful sessions to");
+    }
+
+    private List<URI> candidates() {
+        final List<URI> uris = new ArrayList<URI>(buddies);
+        if (uris.isEmpty()) {
+            for (URI uri : daemon.getClusterHandler().getLocations()) {
+                if (!isLocal(uri)) uris.add(uri);
+            }
+            Collections.sort(uris);
+        }
+
+        final URI current = buddy;
+        if (current != null && uris.remove(current)) {
+            uris.add(0, current);
+        }
+        return uris;
+    }
+
+    private boolean isLocal(URI uri) {
+        if (uri.getPort() != port) return false;
+        try {
+            final InetAddress address = InetAddress.getByName(uri.getHost());
+            return address.isLoopbackAddress() || address.isAnyLocalAddress() || NetworkInterface.getByInetAddress(address) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private Set<Object> send(URI uri, List<SessionDelta> deltas) throws IOException {
+        final Connection conn = ConnectionManager.getConnection(uri);
+        try {
+            final OutputStream out = conn.getOuputStream();
+            PROTOCOL_VERSION.writeExternal(out);
+
+            final ObjectOutputStream objectOut = new ObjectOutputStream(out);
+            new ServerMetaData(uri).writeExternal(objectOut);
+
+            // the server always expects the cluster request first
+            final ClusterRequest clusterRequest = new ClusterRequest(new ClusterMetaData(0));
+            objectOut.write(clusterRequest.getRequestType().getCode());
+            clusterRequest.writeExternal(objectOut);
+
+            objectOut.write(RequestType.REPLICATION_REQUEST.getCode());
+            ReplicationRequestHandler.write(objectOut, deltas, secret);
+            objectOut.flush();
+            out.flush();
+
+            final InputStream in = conn.getInputStream();
+            final ProtocolMetaData protocolMetaData = new ProtocolMetaData();
+            protocolMetaData.readExternal(in);
+
+            final ObjectInputStream objectIn = new EjbObjectInputStream(in);
+            new ClusterResponse(protocolMetaData).readExternal(objectIn);
+
+            if (!objectIn.readBoolean()) {
+                throw new IOException(uri + ": " + objectIn.readUTF());
+            }
+
+            final int count = objectIn.readInt();
+            final Set<Object> missing = new HashSet<Object>(count);
+            for (int i = 0; i < count; i++) {
+                missing.add(objectIn.readObject());
+            }
+
+            conn.close();
+            return missing;
+        } catch (IOException e) {
+            conn.discard();
+            throw e;
+        } catch (ClassNotFoundException e) {
+            conn.discard();
+            throw (IOException) new IOException("Cannot read the response of " + uri).initCause(e);
+        }
+    }
+}
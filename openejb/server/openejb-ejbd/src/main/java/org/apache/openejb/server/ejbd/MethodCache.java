@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.client.EJBRequest;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the methods the requests were resolved to by interface, name
+ * and parameter types so each call doesn't go through Class.getMethod, which
+ * searches the interface and copies the Method it returns.
+ *
+ * A lookup doesn't allocate anything. The cache is emptied when the
+ * deployments change so undeployed classes aren't kept.
+ *
+ * @version $Rev$ $Date$
+ */
+class MethodCache implements EJBRequest.MethodResolver {
+
+    private final ConcurrentMap<Class, ConcurrentMap<String, Entry[]>> methods = new ConcurrentHashMap<Class, ConcurrentMap<String, Entry[]>>();
+    private volatile long deploymentVersion = -1;
+
+    public void setDeploymentVersion(long deploymentVersion) {
+        if (this.deploymentVersion != deploymentVersion) {
+            methods.clear();
+            this.deploymentVersion = deploymentVersion;
+        }
+    }
+
+    public Method resolve(Class interfaceClass, String methodName, Class[] parameterTypes) throws NoSuchMethodException {
+        ConcurrentMap<String, Entry[]> byName = methods.get(interfaceClass);
+        if (byName == null) {
+            byName = new ConcurrentHashMap<String, Entry[]>();
+            final ConcurrentMap<String, Entry[]> existing = methods.putIfAbsent(interfaceClass, byName);
+            if (existing != null) byName = existing;
+        }
+
+        final Entry[] overloads = byName.get(methodName);
+        if (overloads != null) {
+            for (Entry entry : overloads) {
+                if (entry.matches(parameterTypes)) return entry.method;
+            }
+        }
+
+        final Method method = interfaceClass.getMethod(methodName, parameterTypes);
+
+        // a concurrent miss may replace this entry, the method is resolved again next time
+        final Entry[] updated = overloads == null ? new Entry[1] : Arrays.copyOf(overloads, overloads.length + 1);
+        updated[updated.length - 1] = new Entry(parameterTypes.clone(), method);
+        byName.put(methodName, updated);
+        return method;
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentMap<String, Entry[]> byName : methods.values()) {
+            for (Entry[] overloads : byName.values()) {
+                size += overloads.length;
+            }
+        }
+        return size;
+    }
+
+    private static class Entry {
+        private final Class[] parameterTypes;
+        private final Method method;
+
+        private Entry(Class[] parameterTypes, Method method) {
+            this.parameterTypes = parameterTypes;
+            this.method = method;
+        }
+
+        private boolean matches(Class[] types) {
+            if (types.length != parameterTypes.length) return false;
+
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] != parameterTypes[i]) return false;
+            }
+            return true;
+        }
+    }
+}
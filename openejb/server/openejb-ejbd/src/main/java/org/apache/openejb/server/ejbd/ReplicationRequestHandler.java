@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.core.ivm.EjbObjectInputStream;
+import org.apache.openejb.core.stateful.ReplicaStore;
+import org.apache.openejb.core.stateful.SessionDelta;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Receives the stateful sessions replicated by other servers, see {@link EjbdReplicationTransport}.
+ *
+ * The deltas are signed with the "replication.secret" of the ejbd service
+ * which has to be the same on all the servers. A request which isn't signed
+ * with it, or which is too old, is refused before anything is deserialized
+ * so a client of the ejbd port can't push the state of a session.
+ *
+ * @version $Rev$ $Date$
+ */
+class ReplicationRequestHandler {
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_SERVER_REMOTE.createChild("replication"), ReplicationRequestHandler.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec secret;
+    private final int maxSize;
+    private final int maxSessions;
+    private final long maxAge;
+
+    /**
+     * @param secret      the shared secret, replication is refused without it
+     * @param maxSize     maximum number of bytes of a request
+     * @param maxSessions maximum number of sessions in a request
+     * @param maxAge      milliseconds after which a request is refused, bounds the replay of a captured request
+     */
+    ReplicationRequestHandler(String secret, int maxSize, int maxSessions, long maxAge) {
+        this.secret = key(secret);
+        this.maxSize = maxSize;
+        this.maxSessions = maxSessions;
+        this.maxAge = maxAge;
+    }
+
+    public void processRequest(ObjectInputStream in, ObjectOutputStream out) throws IOException {
+        final ReplicaStore store = SystemInstance.get().getComponent(ReplicaStore.class);
+        if (store == null || secret == null) {
+            out.writeBoolean(false);
+            out.writeUTF("Replication is not enabled on this server");
+            return;
+        }
+
+        final int size = in.readInt();
+        if (size < 0 || size > maxSize) {
+            refuse(out, "Replication request of " + size + " bytes refused, the limit is " + maxSize);
+            return;
+        }
+        final byte[] payload = new byte[size];
+        in.readFully(payload);
+
+        final byte[] expected = sign(secret, payload);
+        final int signatureSize = in.readInt();
+        final byte[] signature = new byte[signatureSize == expected.length ? signatureSize : 0];
+        in.readFully(signature);
+
+        if (!MessageDigest.isEqual(signature, expected)) {
+            refuse(out, "Replication request refused, it isn't signed with the replication secret");
+            return;
+        }
+
+        final List<SessionDelta> deltas;
+        try {
+            final ObjectInputStream deltaIn = new EjbObjectInputStream(new ByteArrayInputStream(payload));
+            final long sent = deltaIn.readLong();
+            if (Math.abs(System.currentTimeMillis() - sent) > maxAge) {
+                refuse(out, "Replication request refused, it was sent " + (System.currentTimeMillis() - sent) + "ms ago");
+                return;
+            }
+
+            final int count = deltaIn.readInt();
+            if (count < 0 || count > maxSessions) {
+                refuse(out, "Replication request of " + count + " sessions refused, the limit is " + maxSessions);
+                return;
+            }
+
+            deltas = new ArrayList<SessionDelta>(count);
+            for (int i = 0; i < count; i++) {
+                deltas.add(SessionDelta.readExternal(deltaIn));
+            }
+        } catch (ClassNotFoundException e) {
+            throw (IOException) new IOException("Cannot read the replicated sessions").initCause(e);
+        }
+
+        final Set<Object> missing = store.apply(deltas);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Replicated " + deltas.size() + " sessions, " + missing.size() + " to resend, " + store.size() + " replicas");
+        }
+
+        out.writeBoolean(true);
+        out.writeInt(missing.size());
+        for (Object key : missing) {
+            out.writeObject(key);
+        }
+    }
+
+    private void refuse(ObjectOutputStream out, String message) throws IOException {
+        logger.warning(message);
+        out.writeBoolean(false);
+        out.writeUTF(message);
+    }
+
+    /**
+     * Writes the signed deltas as expected by {@link #processRequest}.
+     */
+    static void write(ObjectOutputStream out, List<SessionDelta> deltas, SecretKeySpec secret) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream deltaOut = new ObjectOutputStream(bytes);
+        deltaOut.writeLong(System.currentTimeMillis());
+        deltaOut.writeInt(deltas.size());
+        for (SessionDelta delta : deltas) {
+            delta.writeExternal(deltaOut);
+        }
+        deltaOut.close();
+
+        final byte[] payload = bytes.toByteArray();
+        final byte[] signature = sign(secret, payload);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt(signature.length);
+        out.write(signature);
+    }
+
+    static SecretKeySpec key(String secret) {
+        if (secret == null || secret.length() == 0) return null;
+        try {
+            return new SecretKeySpec(secret.getBytes("UTF-8"), ALGORITHM);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] sign(SecretKeySpec secret, byte[] payload) throws IOException {
+        try {
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secret);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw (IOException) new IOException("Cannot sign the replicated sessions").initCause(e);
+        }
+    }
+}
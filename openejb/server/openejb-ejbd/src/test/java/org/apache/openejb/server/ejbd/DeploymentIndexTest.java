@@ -22,6 +22,7 @@ import java.rmi.RemoteException;
 import org.apache.openejb.BeanContext;
 import org.apache.openejb.ModuleContext;
 import org.apache.openejb.SystemException;
+import org.apache.openejb.core.DeploymentRegistry;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.client.EJBMetaDataImpl;
 import org.apache.openejb.client.EJBRequest;
@@ -52,6 +53,29 @@ public class DeploymentIndexTest {
         assert request.getDeploymentId().equals(info.getDeploymentID());
     }
 
+    @Test
+    public void testRedeployedDeployment() throws RemoteException, SystemException {
+        DeploymentRegistry registry = new DeploymentRegistry();
+        registry.put(beanContext);
+        DeploymentIndex index = new DeploymentIndex(registry);
+
+        BeanContext redeployed = new BeanContext("aDeploymentId", null, beanContext.getModuleContext(), DeploymentIndexTest.class, null, null, null, null, null, null, null, null, null, null, false);
+        registry.put(redeployed);
+
+        // the code sent to the clients before the redeploy still works
+        EJBMetaDataImpl ejbMetadataWithId = new EJBMetaDataImpl(null, null, null, null, null, 1, InterfaceType.BUSINESS_REMOTE, null, null);
+        EJBRequest request = new EJBRequest(null, ejbMetadataWithId, method, null, null);
+        assert redeployed == index.getDeployment(request);
+
+        registry.remove(redeployed);
+        try {
+            index.getDeployment(new EJBRequest(null, ejbMetadataWithId, method, null, null));
+            assert false : "undeployed";
+        } catch (RemoteException expected) {
+            // ok
+        }
+    }
+
     @Test(expected = RemoteException.class)
     public void testGetDeploymentEJBRequestRemoteException() throws RemoteException {
         // 0 causes DeploymentIndex to move further
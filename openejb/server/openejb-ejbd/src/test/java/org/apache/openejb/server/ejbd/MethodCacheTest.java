@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.client.EJBMetaDataImpl;
+import org.apache.openejb.client.EJBRequest;
+import org.apache.openejb.client.InterfaceType;
+import org.apache.openejb.client.RequestMethodCode;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class MethodCacheTest {
+
+    @After
+    public void tearDown() {
+        EJBRequest.methodResolver.remove();
+    }
+
+    @Test
+    public void testResolvesOverloadsOnce() throws Exception {
+        final MethodCache cache = new MethodCache();
+
+        final Method addInts = cache.resolve(Calculator.class, "add", new Class[]{int.class, int.class});
+        final Method addLongs = cache.resolve(Calculator.class, "add", new Class[]{long.class, long.class});
+
+        assertEquals(Calculator.class.getMethod("add", int.class, int.class), addInts);
+        assertEquals(Calculator.class.getMethod("add", long.class, long.class), addLongs);
+        assertNotSame(addInts, addLongs);
+
+        assertSame(addInts, cache.resolve(Calculator.class, "add", new Class[]{int.class, int.class}));
+        assertSame(addLongs, cache.resolve(Calculator.class, "add", new Class[]{long.class, long.class}));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testMissingMethodIsNotCached() throws Exception {
+        final MethodCache cache = new MethodCache();
+        try {
+            cache.resolve(Calculator.class, "subtract", new Class[]{int.class, int.class});
+            fail("NoSuchMethodException expected");
+        } catch (NoSuchMethodException expected) {
+            // no-op
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testClearedWhenTheDeploymentsChange() throws Exception {
+        final MethodCache cache = new MethodCache();
+        cache.setDeploymentVersion(1);
+        cache.resolve(Calculator.class, "echo", new Class[]{String.class});
+
+        cache.setDeploymentVersion(1);
+        assertEquals(1, cache.size());
+
+        cache.setDeploymentVersion(2);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testResolvesTheRequestMethods() throws Exception {
+        final MethodCache cache = new MethodCache();
+        EJBRequest.methodResolver.set(cache);
+
+        final Method add = Calculator.class.getMethod("add", int.class, int.class);
+        final byte[] request = serialize(add, new Object[]{1, 2});
+        assertEquals(add, read(request));
+        assertSame(read(request), read(request));
+        assertEquals(1, cache.size());
+    }
+
+    private static Method read(byte[] request) throws Exception {
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(request));
+        final EJBRequest req = new EJBRequest();
+        req.readExternal(in);
+        req.getBody().readExternal(in);
+        return req.getMethodInstance();
+    }
+
+    private static byte[] serialize(Method method, Object[] args) throws Exception {
+        final EJBMetaDataImpl ejb = new EJBMetaDataImpl(null, null, null, "STATELESS", "Calculator", 1, InterfaceType.BUSINESS_REMOTE, Arrays.<Class>asList(Calculator.class), null);
+        final EJBRequest req = new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, args, null);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        req.writeExternal(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    public static interface Calculator {
+        int add(int a, int b);
+
+        long add(long a, long b);
+
+        String echo(String s);
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import junit.framework.TestCase;
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.core.stateful.ReplicaStore;
+import org.apache.openejb.core.stateful.SessionDelta;
+import org.apache.openejb.core.stateful.SessionReplicator;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServiceDaemon;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Replicates sessions to an ejbd server on the loopback interface.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ReplicationTest extends TestCase {
+
+    private ServiceDaemon server;
+
+    @Override
+    protected void setUp() throws Exception {
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+
+        final Properties props = new Properties();
+        props.setProperty("replication", "true");
+        props.setProperty("replication.secret", "secret");
+        server = new ServiceDaemon(new EjbServer(), 0, "localhost");
+        server.init(props);
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop();
+
+        final SessionReplicator replicator = SystemInstance.get().removeComponent(SessionReplicator.class);
+        if (replicator != null) replicator.stop();
+        SystemInstance.get().removeComponent(ReplicaStore.class);
+
+        OpenEJB.destroy();
+    }
+
+    public void testReplication() throws Exception {
+        final ReplicaStore store = SystemInstance.get().getComponent(ReplicaStore.class);
+        assertNotNull(store);
+
+        final URI uri = new URI("ejbd://localhost:" + server.getPort());
+        final EjbdReplicationTransport transport = new EjbdReplicationTransport(EjbDaemon.getEjbDaemon(), Collections.singletonList(uri), -1, ReplicationRequestHandler.key("secret"));
+
+        final byte[] state = new byte[100];
+        assertTrue(transport.send(Arrays.asList(SessionDelta.full("session", 1, state))).isEmpty());
+        assertEquals(uri, transport.getBuddy());
+
+        final byte[] updated = state.clone();
+        updated[50] = 1;
+        assertTrue(transport.send(Arrays.asList(SessionDelta.diff("session", 2, 1, state, updated))).isEmpty());
+
+        // not based on what the buddy has
+        final Set<Object> missing = transport.send(Arrays.asList(SessionDelta.diff("session", 3, 1, state, updated)));
+        assertEquals(Collections.singleton("session"), missing);
+
+        assertTrue(Arrays.equals(updated, store.take("session")));
+    }
+
+    public void testNoBuddy() throws Exception {
+        final EjbdReplicationTransport transport = new EjbdReplicationTransport(EjbDaemon.getEjbDaemon(), Collections.<URI>emptyList(), server.getPort(), ReplicationRequestHandler.key("secret"));
+        try {
+            transport.send(Arrays.asList(SessionDelta.removed("session")));
+            fail("There is no other server");
+        } catch (IOException expected) {
+            // no-op
+        }
+    }
+
+    public void testWrongSecret() throws Exception {
+        final URI uri = new URI("ejbd://localhost:" + server.getPort());
+        final EjbdReplicationTransport transport = new EjbdReplicationTransport(EjbDaemon.getEjbDaemon(), Collections.singletonList(uri), -1, ReplicationRequestHandler.key("guess"));
+        try {
+            transport.send(Arrays.asList(SessionDelta.full("session", 1, new byte[10])));
+            fail("The request isn't signed with the secret of the server");
+        } catch (IOException expected) {
+            // no-op
+        }
+
+        assertFalse(SystemInstance.get().getComponent(ReplicaStore.class).contains("session"));
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a request body sent with "Transfer-Encoding: chunked" as it is read
+ * so the body never has to be held in memory.
+ *
+ * Closing this stream doesn't close the connection.
+ */
+public class ChunkedInputStream extends InputStream {
+    private final InputStream in;
+    private int remaining;
+    private boolean started;
+    private boolean eof;
+
+    public ChunkedInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) return -1;
+
+        final int b = in.read();
+        if (b == -1) throw new EOFException("Unexpected end of the chunked body");
+        remaining--;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!nextChunk()) return -1;
+
+        final int read = in.read(b, off, Math.min(len, remaining));
+        if (read == -1) throw new EOFException("Unexpected end of the chunked body");
+        remaining -= read;
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return eof ? 0 : Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the connection is closed by the server
+    }
+
+    /**
+     * @return false once the last chunk was read
+     */
+    private boolean nextChunk() throws IOException {
+        if (eof) return false;
+        if (remaining > 0) return true;
+
+        if (started) {
+            // the line feed ending the previous chunk
+            readLine();
+        }
+        started = true;
+
+        final String line = readLine();
+        if (line == null) throw new EOFException("Unexpected end of the chunked body");
+
+        final int extension = line.indexOf(';');
+        final int size;
+        try {
+            size = Integer.parseInt((extension < 0 ? line : line.substring(0, extension)).trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid chunk size: " + line);
+        }
+
+        if (size == 0) {
+            // skip the trailer headers
+            for (String trailer = readLine(); trailer != null && trailer.length() > 0; trailer = readLine()) {
+                // no-op
+            }
+            eof = true;
+            return false;
+        }
+
+        remaining = size;
+        return true;
+    }
+
+    private String readLine() throws IOException {
+        final StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r') line.append((char) c);
+        }
+        if (c == -1 && line.length() == 0) return null;
+        return line.toString();
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Sends a response body with "Transfer-Encoding: chunked", used once the
+ * body outgrows the response buffer and its length can't be known upfront.
+ *
+ * Small writes are gathered so each chunk is at least the buffer size.
+ */
+public class ChunkedOutputStream extends OutputStream {
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count;
+    private boolean finished;
+
+    public ChunkedOutputStream(OutputStream out, int size) {
+        this.out = out;
+        this.buffer = new byte[size];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) writeBuffer();
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len >= buffer.length) {
+            writeBuffer();
+            writeChunk(b, off, len);
+            return;
+        }
+
+        if (count + len > buffer.length) writeBuffer();
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBuffer();
+        out.flush();
+    }
+
+    /**
+     * Sends the last chunk, the connection stays open.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        finished = true;
+
+        writeBuffer();
+        out.write(LAST_CHUNK);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    private void writeBuffer() throws IOException {
+        if (count == 0) return;
+        writeChunk(buffer, 0, count);
+        count = 0;
+    }
+
+    private void writeChunk(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return;
+        if (finished) throw new IOException("The last chunk was already sent");
+
+        out.write(Integer.toHexString(len).getBytes("ISO-8859-1"));
+        out.write(CRLF);
+        out.write(b, off, len);
+        out.write(CRLF);
+    }
+}
@@ -73,6 +73,11 @@ public class HttpRequestImpl implements HttpRequest {
      */
     private URI uri;
 
+    /**
+     * 5.1.3    HTTP-Version
+     */
+    private String version;
+
     /**
      * the headers for this page
      */
@@ -101,10 +106,10 @@ public class HttpRequestImpl implements HttpRequest {
     private Map<String,String> cookies;
 
     /**
-     * the content of the body of the request
+     * the content of the body of the request, null while it is streamed from the socket
      */
     private byte[] body;
-    private ServletByteArrayIntputStream in;
+    private ServletInputStream in;
     private int length;
     private String contentType;
 
@@ -307,7 +312,7 @@ public class HttpRequestImpl implements HttpRequest {
      * @throws java.io.IOException if an exception is thrown
      */
     protected void readMessage(InputStream input) throws IOException {
-        DataInput in = new DataInputStream(input);
+        DataInputStream in = new DataInputStream(input);
 
         readRequestLine(in);
         readHeaders(in);
@@ -327,6 +332,17 @@ public class HttpRequestImpl implements HttpRequest {
             }
             builder.append("\n");
 
+            if (body == null) {
+                // only when debugging, the listener reads the body from memory then
+                try {
+                    body = readFully(in);
+                    in = new ServletByteArrayIntputStream(body);
+                } catch (IOException e) {
+                    body = new byte[0];
+                    in = new ServletByteArrayIntputStream(body);
+                }
+            }
+
             final String text = new String(body);
             if (formatXml && OpenEJBHttpServer.isTextXml(headers)) {
                 builder.append(OpenEJBHttpServer.reformat(text)).append("\n");
@@ -361,6 +377,10 @@ public class HttpRequestImpl implements HttpRequest {
         parseMethod(lineParts);
         /* [2] Parse the URI */
         parseURI(lineParts);
+        /* [3] Parse the version */
+        if (lineParts.hasMoreTokens()) {
+            version = lineParts.nextToken();
+        }
     }
 
     /**
@@ -535,12 +555,13 @@ public class HttpRequestImpl implements HttpRequest {
         return !method.equals(Method.GET.name()) && !method.equals(Method.DELETE.name());
     }
     /**
-     * reads the body from the data input passed in
+     * reads the body from the data input passed in, unless it is a form the body
+     * is read by the listener straight from the socket
      *
      * @param in the data input with the body of the page
      * @throws java.io.IOException if an exception is thrown
      */
-    private void readBody(DataInput in) throws IOException {
+    private void readBody(DataInputStream in) throws IOException {
         //System.out.println("Body Length: " + body.length);
         // Content-type: application/x-www-form-urlencoded
         // or multipart/form-data
@@ -584,29 +605,9 @@ public class HttpRequestImpl implements HttpRequest {
                     //System.out.println(name + ": " + value);
             }
         } else if (hasBody() && CHUNKED.equals(headers.get(TRANSFER_ENCODING))) {
-            try {
-                ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
-                for (String line = in.readLine(); line != null; line = in.readLine()) {
-                    // read the size line which is in hex
-                    String sizeString = line.split(";", 2)[0];
-                    int size = Integer.parseInt(sizeString, 16);
-
-                    // if size is 0 we are done
-                    if (size == 0) break;
-
-                    // read the chunk and append to byte array
-                    byte[] chunk = new byte[size];
-                    in.readFully(chunk);
-                    out.write(chunk);
-
-                    // read off the trailing new line characters after the chunk
-                    in.readLine();
-                }
-                body = out.toByteArray();
-                this.in = new ServletByteArrayIntputStream(body);
-            } catch (Exception e) {
-                throw (IOException)new IOException("Unable to read chunked body").initCause(e);
-            }
+            this.in = new ServletIntputStreamAdapter(new ChunkedInputStream(in));
+        } else if (hasBody() && length >= 0) {
+            this.in = new ServletIntputStreamAdapter(new ContentLengthInputStream(in, length));
         } else if (hasBody()){
             // TODO This really is terrible
             body = readContent(in);
@@ -620,6 +621,29 @@ public class HttpRequestImpl implements HttpRequest {
 
     }
 
+    /**
+     * Skips what the listener didn't read of the body so the client
+     * isn't reset while it is still sending it.
+     */
+    protected void skipBody() throws IOException {
+        if (body != null) return;
+
+        final byte[] buffer = new byte[8192];
+        while (in.read(buffer, 0, buffer.length) != -1) {
+            // no-op
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
     private byte[] readContent(DataInput in) throws IOException {
         if (length >= 0) {
             byte[] body = new byte[length];
@@ -877,6 +901,13 @@ public class HttpRequestImpl implements HttpRequest {
         return uri.getScheme();
     }
 
+    /**
+     * @return the HTTP version of the request line, "HTTP/1.0" if there is none
+     */
+    protected String getVersion() {
+        return version == null ? "HTTP/1.0" : version;
+    }
+
     @Override
     public BufferedReader getReader() throws IOException {
         return null;
@@ -958,4 +989,43 @@ public class HttpRequestImpl implements HttpRequest {
             return getRequestURI();
         }
     }
+
+    /**
+     * Reads the body up to the Content-Length from the socket, closing it doesn't close the connection.
+     */
+    private static class ContentLengthInputStream extends InputStream {
+        private final InputStream in;
+        private int remaining;
+
+        private ContentLengthInputStream(InputStream in, int length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+
+            final int b = in.read();
+            if (b == -1) throw new EOFException("Unexpected end of the request body, " + remaining + " bytes missing");
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (remaining <= 0) return -1;
+
+            final int read = in.read(b, off, Math.min(len, remaining));
+            if (read == -1) throw new EOFException("Unexpected end of the request body, " + remaining + " bytes missing");
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return Math.min(in.available(), remaining);
+        }
+    }
 }
\ No newline at end of file
@@ -53,8 +53,13 @@ public class HttpResponseImpl implements HttpResponse {
 
     /** the writer for the response */
     private transient PrintWriter writer;
-    /** the raw body */
+    /** the raw body, or what wasn't sent yet of it once the response is streamed */
     private transient ServletByteArrayOutputStream sosi;
+    /** the stream given to the listener */
+    private transient BodyOutputStream body;
+
+    /** the default size the body can reach before it is streamed */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
 
     /** the HTTP version */
     public static final String HTTP_VERSION = "HTTP/1.1";
@@ -74,10 +79,29 @@ public class HttpResponseImpl implements HttpResponse {
     private String encoding = "UTF-8";
     private Locale locale = Locale.getDefault();
 
+    /** the connection, the body is buffered entirely while there is none */
+    private transient OutputStream output;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
     protected void setRequest(HttpRequestImpl request){
         this.request = request;
     }
 
+    /** sets the connection the response is streamed to when the body
+     * outgrows the buffer, the status and headers can't change after that
+     * @param output the output stream to the browser
+     */
+    protected void setOutput(OutputStream output){
+        this.output = output;
+    }
+
+    /**
+     * @return true if the status line and the headers were already sent
+     */
+    protected boolean isStreaming(){
+        return body.target != null;
+    }
+
     /** sets a header to be sent back to the browser
      * @param name the name of the header
      * @param value the value of the header
@@ -199,7 +223,7 @@ public class HttpResponseImpl implements HttpResponse {
      * @return the OutputStream to send data to the browser
      */
     public ServletOutputStream getOutputStream(){
-        return sosi;
+        return body;
     }
 
     @Override
@@ -209,16 +233,20 @@ public class HttpResponseImpl implements HttpResponse {
 
     @Override
     public boolean isCommitted() {
-        return commited;
+        return commited || isStreaming();
     }
 
     public void flushBuffer() throws IOException {
-        // there is really no way to flush
+        writer.flush();
+        if (output != null && content == null) {
+            body.stream();
+            body.flush();
+        }
     }
 
     @Override
     public int getBufferSize() {
-        return sosi.getOutputStream().size();
+        return bufferSize;
     }
 
     @Override
@@ -284,17 +312,24 @@ public class HttpResponseImpl implements HttpResponse {
 
     /** resets the data to be sent to the browser */
     public void reset(){
+        checkNotStreaming();
         initBody();
     }
 
     @Override
     public void resetBuffer() {
+        checkNotStreaming();
         sosi.getOutputStream().reset();
     }
 
     @Override
     public void setBufferSize(int i) {
-        // no-op
+        checkNotStreaming();
+        bufferSize = i;
+    }
+
+    private void checkNotStreaming() {
+        if (isStreaming()) throw new IllegalStateException("The response is already committed");
     }
 
     @Override
@@ -356,6 +391,24 @@ public class HttpResponseImpl implements HttpResponse {
      * @throws java.io.IOException if an exception is thrown
      */
     protected void writeMessage(OutputStream output, boolean indent) throws IOException{
+        // what is left in the writer may still make the body outgrow the buffer
+        writer.flush();
+        if (isStreaming()) {
+            if (output == this.output) {
+                body.finish();
+            } else {
+                // only the head is left to be printed
+                DataOutputStream out = new DataOutputStream(output);
+                writeResponseLine(out);
+                writeHeaders(out);
+                out.writeBytes(CRLF);
+                out.writeBytes("[streamed body]");
+                out.writeBytes(CRLF);
+                out.flush();
+            }
+            return;
+        }
+
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
     	DataOutputStream out = new DataOutputStream(baos);
         //DataOutput log = new DataOutputStream(System.out);
@@ -375,7 +428,36 @@ public class HttpResponseImpl implements HttpResponse {
      /** initalizes the body */
     private void initBody(){
         sosi = new ServletByteArrayOutputStream();
-        writer = new PrintWriter(sosi);
+        body = new BodyOutputStream();
+        writer = new PrintWriter(body);
+    }
+
+    /** sends the response line and the headers and switches the body to
+     * chunks, or to the end of the connection for HTTP/1.0 clients
+     * @return the stream the rest of the body is written to
+     * @throws java.io.IOException if an exception is thrown
+     */
+    private OutputStream startStreaming() throws IOException {
+        final boolean chunked = request == null || !"HTTP/1.0".equals(request.getVersion());
+
+        headers.remove("Content-Length");
+        if (chunked) {
+            setHeader("Transfer-Encoding", "chunked");
+        }
+        setCookieHeader();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        writeResponseLine(out);
+        writeHeaders(out);
+        out.writeBytes(CRLF);
+        out.flush();
+        output.write(baos.toByteArray());
+
+        final OutputStream target = chunked ? new ChunkedOutputStream(output, bufferSize) : output;
+        sosi.getOutputStream().writeTo(target);
+        sosi.getOutputStream().reset();
+        return target;
     }
 
     /** Creates a string version of the response similar to:
@@ -629,9 +711,8 @@ public class HttpResponseImpl implements HttpResponse {
         /** Response body */
         byte[] body = (byte[]) in.readObject();
         //System.out.println("[] body "+body.length );
-        sosi = new ServletByteArrayOutputStream();
+        initBody();
         sosi.write(body);
-        writer = new PrintWriter(sosi);
 
     }
     /**
@@ -644,4 +725,60 @@ public class HttpResponseImpl implements HttpResponse {
     public void setStatusMessage(String responseString) {
         this.setResponseString(responseString);
     }
+
+    /** Buffers the body until it outgrows the buffer size, then streams
+     * it to the connection.
+     */
+    private class BodyOutputStream extends ServletOutputStream {
+        /** null while the body is buffered */
+        private OutputStream target;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (target != null) {
+                target.write(b);
+                return;
+            }
+            sosi.write(b);
+            overflow();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (target != null) {
+                target.write(b, off, len);
+                return;
+            }
+            sosi.getOutputStream().write(b, off, len);
+            overflow();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // only an explicit flushBuffer() commits a buffered response
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+        private void overflow() throws IOException {
+            if (sosi.getOutputStream().size() > bufferSize && output != null && content == null) {
+                stream();
+            }
+        }
+
+        private void stream() throws IOException {
+            if (target == null) {
+                target = startStreaming();
+            }
+        }
+
+        private void finish() throws IOException {
+            if (target instanceof ChunkedOutputStream) {
+                ((ChunkedOutputStream) target).finish();
+            } else {
+                target.flush();
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -30,6 +30,7 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -53,6 +54,7 @@ public class OpenEJBHttpServer implements HttpServer {
     private HttpListener listener;
     private Set<Output> print;
     private boolean indent;
+    private int bufferSize = HttpResponseImpl.DEFAULT_BUFFER_SIZE;
 
     public OpenEJBHttpServer() {
         this(getHttpListenerRegistry());
@@ -83,9 +85,10 @@ public class OpenEJBHttpServer implements HttpServer {
 
     public void service(Socket socket) throws ServiceException, IOException {
         /**
-         * The InputStream used to receive incoming messages from the client.
+         * The InputStream used to receive incoming messages from the client,
+         * buffered since the request line and headers are read byte per byte.
          */
-        InputStream in = socket.getInputStream();
+        InputStream in = new BufferedInputStream(socket.getInputStream());
         /**
          * The OutputStream used to send outgoing response messages to the client.
          */
@@ -123,6 +126,7 @@ public class OpenEJBHttpServer implements HttpServer {
         options.setLogger(new OptionsLog(log));
         print = options.getAll("print", OpenEJBHttpServer.Output.class);
         indent = print.size() > 0 && options.get("indent.xml", false);
+        bufferSize = options.get("buffer.size", HttpResponseImpl.DEFAULT_BUFFER_SIZE);
 
     }
 
@@ -155,28 +159,37 @@ public class OpenEJBHttpServer implements HttpServer {
      * @param out    the output stream to the browser
      */
     private void processRequest(URI socketURI, InputStream in, OutputStream out) {
-        HttpResponseImpl response = null;
+        HttpResponseImpl response = new HttpResponseImpl();
+        response.setBufferSize(bufferSize);
+        if (print == null || !print.contains(Output.RESPONSE)) {
+            // printed responses are kept in memory
+            response.setOutput(out);
+        }
+
         try {
-            response = process(socketURI, in);
+            process(socketURI, in, response);
 
         } catch (Throwable t) {
-            response = HttpResponseImpl.createError(t.getMessage(), t);
-        } finally {
-            try {
-                response.writeMessage(out, false);
-                if (print.size() > 0 && print.contains(Output.RESPONSE)) {
-                    response.writeMessage(new LoggerOutputStream(log, "debug"), indent);
-                }
-            } catch (Throwable t2) {
-                log.error("Could not write response", t2);
+            if (response.isStreaming()) {
+                // the status was sent already, the missing end of the body tells the client something went wrong
+                log.error("Could not stream the response", t);
+                return;
             }
+            response = HttpResponseImpl.createError(t.getMessage(), t);
         }
 
+        try {
+            response.writeMessage(out, false);
+            if (print.size() > 0 && print.contains(Output.RESPONSE)) {
+                response.writeMessage(new LoggerOutputStream(log, "debug"), indent);
+            }
+        } catch (Throwable t2) {
+            log.error("Could not write response", t2);
+        }
     }
 
-    private HttpResponseImpl process(URI socketURI, InputStream in) throws OpenEJBException {
+    private void process(URI socketURI, InputStream in, HttpResponseImpl res) throws OpenEJBException {
         HttpRequestImpl req = new HttpRequestImpl(socketURI);
-        HttpResponseImpl res = new HttpResponseImpl();
 
         try {
             req.readMessage(in);
@@ -214,11 +227,10 @@ public class OpenEJBHttpServer implements HttpServer {
 
         try {
             listener.onMessage(req, res);
+            req.skipBody();
         } catch (Throwable t) {
             throw new OpenEJBException("Error occurred while executing the module " + location + "\n" + t.getClass().getName() + ":\n" + t.getMessage(), t);
         }
-
-        return res;
     }
 
 
@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+
+public class HttpStreamingTest extends TestCase {
+
+    private static final int LARGE = 64 * 1024 * 1024;
+
+    public void testContentLengthBodyIsReadByTheListener() throws Exception {
+        final byte[] head = ("POST /ws/Calculator HTTP/1.1\r\n" +
+                "Host: localhost:4204\r\n" +
+                "Content-Type: text/xml\r\n" +
+                "Content-Length: " + LARGE + "\r\n" +
+                "\r\n").getBytes("ISO-8859-1");
+        final Payload payload = new Payload(LARGE);
+        final CountingInputStream socket = new CountingInputStream(new SequenceInputStream(new ByteArrayInputStream(head), payload));
+
+        final HttpRequestImpl request = new HttpRequestImpl(new URI("http://localhost:4204"));
+        request.readMessage(socket);
+
+        // nothing of the body was read yet
+        assertEquals(head.length, socket.count);
+        assertEquals(LARGE, request.getContentLength());
+
+        assertEquals(Payload.checksum(LARGE), checksum(request.getInputStream(), LARGE));
+        assertEquals(-1, request.getInputStream().read());
+    }
+
+    public void testChunkedBody() throws Exception {
+        final String message = "POST /ws/Calculator HTTP/1.1\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                "5;name=value\r\nHello\r\n" +
+                "7\r\n, World\r\n" +
+                "0\r\n" +
+                "Trailer: ignored\r\n" +
+                "\r\n";
+
+        final HttpRequestImpl request = new HttpRequestImpl(new URI("http://localhost:4204"));
+        request.readMessage(new ByteArrayInputStream(message.getBytes("ISO-8859-1")));
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        copy(request.getInputStream(), body);
+        assertEquals("Hello, World", body.toString("ISO-8859-1"));
+    }
+
+    public void testSmallResponseHasContentLength() throws Exception {
+        final ByteArrayOutputStream socket = new ByteArrayOutputStream();
+        final HttpResponseImpl response = new HttpResponseImpl();
+        response.setOutput(socket);
+        response.getWriter().print("<html/>");
+
+        assertEquals(0, socket.size());
+        response.writeMessage(socket, false);
+
+        final String message = socket.toString("ISO-8859-1");
+        assertTrue(message, message.contains("Content-Length: 7\r\n"));
+        assertFalse(message, message.contains("Transfer-Encoding"));
+        assertTrue(message, message.endsWith("\r\n\r\n<html/>"));
+    }
+
+    public void testLargeResponseIsChunked() throws Exception {
+        final int size = 4 * 1024 * 1024;
+        final ByteArrayOutputStream socket = new ByteArrayOutputStream();
+        final HttpResponseImpl response = new HttpResponseImpl();
+        response.setOutput(socket);
+
+        final OutputStream out = response.getOutputStream();
+        final Payload payload = new Payload(size);
+        final byte[] buffer = new byte[1000];
+        int read;
+        while ((read = payload.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, read);
+        }
+
+        // sent while the listener was still writing
+        assertTrue(response.isStreaming());
+        assertTrue(response.isCommitted());
+        assertTrue(socket.size() > size - 2 * HttpResponseImpl.DEFAULT_BUFFER_SIZE);
+
+        response.writeMessage(socket, false);
+
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(socket.toByteArray()));
+        assertEquals("HTTP/1.1 200 OK", in.readLine());
+        boolean chunked = false;
+        for (String header = in.readLine(); header.length() > 0; header = in.readLine()) {
+            assertFalse(header, header.startsWith("Content-Length"));
+            chunked |= header.equals("Transfer-Encoding: chunked");
+        }
+        assertTrue(chunked);
+
+        assertEquals(Payload.checksum(size), checksum(new ChunkedInputStream(in), size));
+        assertEquals(-1, in.read());
+    }
+
+    private static long checksum(InputStream in, int expected) throws IOException {
+        final byte[] buffer = new byte[8192];
+        long checksum = 0;
+        int total = 0;
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+            for (int i = 0; i < read; i++) {
+                checksum = checksum * 31 + buffer[i];
+            }
+            total += read;
+        }
+        assertEquals(expected, total);
+        return checksum;
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    /**
+     * Generates the body instead of holding it in memory.
+     */
+    private static class Payload extends InputStream {
+        private final int size;
+        private int position;
+
+        private Payload(int size) {
+            this.size = size;
+        }
+
+        private static byte at(int position) {
+            return (byte) (position % 251);
+        }
+
+        private static long checksum(int size) {
+            long checksum = 0;
+            for (int i = 0; i < size; i++) {
+                checksum = checksum * 31 + at(i);
+            }
+            return checksum;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return position < size ? at(position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= size) return -1;
+
+            final int read = Math.min(len, size - position);
+            for (int i = 0; i < read; i++) {
+                b[off + i] = at(position++);
+            }
+            return read;
+        }
+    }
+
+    private static class CountingInputStream extends InputStream {
+        private final InputStream in;
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = in.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = in.read(b, off, len);
+            if (read > 0) count += read;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,891 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.server.discovery;
+
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.monitoring.Event;
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.server.DiscoveryAgent;
+import org.apache.openejb.server.DiscoveryListener;
+import org.apache.openejb.server.SelfManaging;
+import org.apache.openejb.server.ServerService;
+import org.apache.openejb.server.ServiceException;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.OptionsLog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Discovery for big groups, where the full mesh of the multipoint agent
+ * and its full service lists don't scale anymore.
+ *
+ * Every member has a version, bumped each time its services change, and a
+ * heartbeat, bumped every round.  Each round (heart_rate) a member sends
+ * over UDP to a bounded number of random live members (fanout):
+ * <ul>
+ * <li>a digest: (member, version, heartbeat) of every live member it knows</li>
+ * <li>the services of the members which recently changed (a rumor, resent
+ * for a few rounds to reach the whole group in O(log n) rounds)</li>
+ * </ul>
+ *
+ * A member receiving a digest asks for the services of the members it knows
+ * an older version of and sends back the ones the sender is late on, so
+ * any lost delta is repaired by the next digest exchange.  Services are only
+ * sent when they changed, never with the heartbeats.
+ *
+ * Failures are detected with a {@link PhiAccrualFailureDetector} fed by
+ * the heartbeats gossiped for each member.
+ *
+ * The initialServers are only used to join the group and when no other
+ * member is known. Versions and heartbeats start at the current time so a
+ * restarted member always wins over what the group remembers of it.
+ *
+ * @version $Rev$ $Date$
+ */
+public class GossipDiscoveryAgent implements DiscoveryAgent, ServerService, SelfManaging {
+
+    private static final Logger log = Logger.getInstance(LogCategory.OPENEJB_SERVER.createChild("discovery").createChild("gossip"), GossipDiscoveryAgent.class);
+
+    private static final byte PROTOCOL = 1;
+    private static final byte DIGEST = 1;
+    private static final byte DELTA = 2;
+    private static final byte REQUEST = 3;
+
+    // stay far enough from the 64k limit of a datagram
+    private static final int PACKET_SIZE = 32 * 1024;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    @Managed
+    private String host = "127.0.0.1";
+
+    @Managed
+    private int port = 4213;
+
+    @Managed
+    private long heartRate = 500;
+
+    @Managed
+    private int fanout = 3;
+
+    @Managed
+    private double phiThreshold = 8;
+
+    private String discoveryHost;
+    private String initialServers = "";
+    private String group = "default";
+    private int retransmitMultiplier = 3;
+    private long reconnectDelay = 5000;
+    private long removeDelay = 60000;
+
+    private final Set<InetSocketAddress> seeds = new LinkedHashSet<InetSocketAddress>();
+
+    // guarded by members
+    private final Map<String, Member> members = new HashMap<String, Member>();
+    private final Map<String, Integer> rumors = new HashMap<String, Integer>();
+    private final Set<String> registered = new LinkedHashSet<String>();
+    private long version = System.currentTimeMillis();
+    private Member me;
+
+    private final Random random = new Random();
+    private DatagramSocket socket;
+    private Thread thread;
+    private DiscoveryListener discoveryListener;
+
+    @Managed
+    private final Event rounds = new Event();
+
+    @Managed
+    private final Event packetsSent = new Event();
+
+    @Managed
+    private final Event packetsReceived = new Event();
+
+    @Managed
+    private final Event failures = new Event();
+
+    private final Executor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        public Thread newThread(Runnable runable) {
+            Thread t = new Thread(runable, "Discovery Agent Notifier");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    public void init(Properties props) {
+
+        final Options options = new Options(props);
+        options.setLogger(new OptionsLog(log));
+
+        host = props.getProperty("bind", host);
+        port = options.get("port", port);
+        discoveryHost = options.get("discoveryHost", host);
+        initialServers = options.get("initialServers", initialServers);
+        group = options.get("group", group);
+        heartRate = options.get("heart_rate", heartRate);
+        fanout = options.get("fanout", fanout);
+        phiThreshold = options.get("phi_threshold", phiThreshold);
+        retransmitMultiplier = options.get("retransmit_multiplier", retransmitMultiplier);
+        reconnectDelay = options.get("reconnect_delay", reconnectDelay);
+        removeDelay = options.get("remove_delay", removeDelay);
+
+        final StringTokenizer st = new StringTokenizer(initialServers, ",");
+        while (st.hasMoreTokens()) {
+            String string = st.nextToken().trim();
+            if (string.length() == 0) continue;
+            if (!string.contains("://")) {
+                string = "gossip://" + string;
+            }
+            final URI uri = URI.create(string);
+            seeds.add(new InetSocketAddress(uri.getHost(), uri.getPort()));
+        }
+    }
+
+    public String getIP() {
+        return host;
+    }
+
+    @Override
+    public String getName() {
+        return "gossip";
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getInitialServers() {
+        return initialServers;
+    }
+
+    public void setDiscoveryListener(DiscoveryListener listener) {
+        this.discoveryListener = listener;
+    }
+
+    public void registerService(URI serviceUri) throws IOException {
+        synchronized (members) {
+            if (!registered.add(serviceUri.toString())) return;
+            changed();
+        }
+        fireServiceAddedEvent(serviceUri.toString());
+    }
+
+    public void unregisterService(URI serviceUri) throws IOException {
+        synchronized (members) {
+            if (!registered.remove(serviceUri.toString())) return;
+            changed();
+        }
+        fireServiceRemovedEvent(serviceUri.toString());
+    }
+
+    public void reportFailed(URI serviceUri) {
+        final String service = serviceUri.toString();
+        final long now = System.currentTimeMillis();
+
+        synchronized (members) {
+            for (Member member : members.values()) {
+                if (member != me && member.alive && member.services.contains(service) && !member.failed.containsKey(service)) {
+                    // ignored until the member is seen alive again after the delay
+                    member.failed.put(service, now + reconnectDelay);
+                    fireServiceRemovedEvent(service);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+    }
+
+    @Managed
+    public void start() throws ServiceException {
+        try {
+            if (running.compareAndSet(false, true)) {
+                log.info("GossipDiscoveryAgent Starting");
+
+                socket = new DatagramSocket(new InetSocketAddress(host, port));
+                port = socket.getLocalPort();
+
+                synchronized (members) {
+                    me = new Member("gossip://" + discoveryHost.toLowerCase() + ":" + port);
+                    me.heartbeat = System.currentTimeMillis();
+                    changed();
+                    members.put(me.id, me);
+                }
+
+                thread = new Thread(new Runnable() {
+                    public void run() {
+                        _run();
+                    }
+                });
+                thread.setName("GossipDiscoveryAgent." + me.id);
+                thread.setDaemon(true);
+                thread.start();
+
+                log.info("GossipDiscoveryAgent Started " + me.id);
+            }
+        } catch (Exception e) {
+            running.set(false);
+            throw new ServiceException(port + "", e);
+        }
+    }
+
+    @Managed
+    public void stop() throws ServiceException {
+        if (running.compareAndSet(true, false)) {
+            log.info("GossipDiscoveryAgent Stopping");
+
+            // leave: let the group know our services are gone without waiting for the failure detection
+            final List<byte[]> packets;
+            final List<SocketAddress> targets;
+            synchronized (members) {
+                me.services = Collections.emptySet();
+                me.version = ++version;
+                packets = encode(DELTA, Collections.singletonList(me));
+                targets = targets();
+            }
+            send(targets, packets);
+
+            socket.close();
+            try {
+                thread.join(heartRate * 2);
+            } catch (InterruptedException e) {
+                Thread.interrupted();
+            }
+
+            synchronized (members) {
+                members.clear();
+                rumors.clear();
+                me = null;
+            }
+        }
+    }
+
+    public void service(InputStream in, OutputStream out) throws ServiceException, IOException {
+    }
+
+    public void service(Socket socket) throws ServiceException, IOException {
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    @Managed
+    public URI getURI() {
+        final Member member = me;
+        return member != null ? URI.create(member.id) : null;
+    }
+
+    @Managed
+    public int getMembers() {
+        synchronized (members) {
+            return members.size();
+        }
+    }
+
+    @Managed
+    public int getAliveMembers() {
+        synchronized (members) {
+            int alive = 0;
+            for (Member member : members.values()) {
+                if (member.alive) alive++;
+            }
+            return alive;
+        }
+    }
+
+    @Managed
+    public long getRounds() {
+        return rounds.get();
+    }
+
+    @Managed
+    public long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    @Managed
+    public long getPacketsReceived() {
+        return packetsReceived.get();
+    }
+
+    @Managed
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @Managed
+    public String getFailuresLatest() {
+        return failures.getLatest();
+    }
+
+    /**
+     * Our services changed, the new version has to be spread
+     */
+    private void changed() {
+        version++;
+        if (me != null) {
+            me.services = Collections.unmodifiableSet(new LinkedHashSet<String>(registered));
+            me.version = version;
+            rumor(me);
+        }
+    }
+
+    private void _run() {
+        final byte[] buffer = new byte[64 * 1024];
+        final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+        long next = System.currentTimeMillis();
+        while (running.get()) {
+            try {
+                final long now = System.currentTimeMillis();
+                if (now >= next) {
+                    round(now);
+
+                    next += heartRate;
+                    if (next <= now) { // we were late, don't try to catch up
+                        next = now + heartRate;
+                    }
+                    continue;
+                }
+
+                socket.setSoTimeout((int) Math.max(1, next - now));
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                packetsReceived.record();
+
+                receive(packet);
+            } catch (SocketTimeoutException e) {
+                // time for a round
+            } catch (IOException e) {
+                if (running.get()) {
+                    log.error("Gossip failure: " + e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                log.error("Gossip failure", e);
+            }
+        }
+    }
+
+    private void round(long now) {
+        final List<SocketAddress> targets;
+        final List<byte[]> packets = new ArrayList<byte[]>();
+
+        synchronized (members) {
+            rounds.record();
+
+            me.heartbeat++;
+
+            detect(now);
+
+            targets = targets();
+
+            packets.addAll(encode(DIGEST, live()));
+
+            final List<Member> delta = rumors();
+            if (delta.size() > 0) {
+                packets.addAll(encode(DELTA, delta));
+            }
+        }
+
+        send(targets, packets);
+    }
+
+    /**
+     * Up to fanout random live members and, when alone or from time to time
+     * to heal partitions, one of the initial servers
+     */
+    private List<SocketAddress> targets() {
+        final List<Member> alive = new ArrayList<Member>();
+        for (Member member : members.values()) {
+            if (member != me && member.alive) alive.add(member);
+        }
+        Collections.shuffle(alive, random);
+
+        final List<SocketAddress> targets = new ArrayList<SocketAddress>();
+        for (Member member : alive) {
+            if (targets.size() >= fanout) break;
+            targets.add(member.address);
+        }
+
+        if (seeds.size() > 0 && (alive.isEmpty() || random.nextInt(alive.size() + 1) == 0)) {
+            final List<InetSocketAddress> list = new ArrayList<InetSocketAddress>(seeds);
+            final InetSocketAddress seed = list.get(random.nextInt(list.size()));
+            if (!isMe(seed) && !targets.contains(seed)) {
+                targets.add(seed);
+            }
+        }
+
+        return targets;
+    }
+
+    private boolean isMe(InetSocketAddress address) {
+        return address.getPort() == port && (address.equals(me.address) || address.getAddress() != null && address.getAddress().equals(socket.getLocalAddress()));
+    }
+
+    private List<Member> live() {
+        final List<Member> live = new ArrayList<Member>();
+        for (Member member : members.values()) {
+            if (member.alive) live.add(member);
+        }
+        return live;
+    }
+
+    private void rumor(Member member) {
+        // enough rounds to reach the whole group with a high probability
+        final int size = members.size() + 1;
+        final int rounds = retransmitMultiplier * (32 - Integer.numberOfLeadingZeros(size));
+        rumors.put(member.id, Math.max(1, rounds));
+    }
+
+    private List<Member> rumors() {
+        final List<Member> delta = new ArrayList<Member>();
+
+        final Iterator<Map.Entry<String, Integer>> iterator = rumors.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Integer> entry = iterator.next();
+            final Member member = members.get(entry.getKey());
+            if (member != null) {
+                delta.add(member);
+            }
+
+            if (member == null || entry.getValue() <= 1) {
+                iterator.remove();
+            } else {
+                entry.setValue(entry.getValue() - 1);
+            }
+        }
+        return delta;
+    }
+
+    private void detect(long now) {
+        final Iterator<Member> iterator = members.values().iterator();
+        while (iterator.hasNext()) {
+            final Member member = iterator.next();
+            if (member == me) continue;
+
+            if (member.alive) {
+                final double phi = member.detector.phi(now);
+                if (phi > phiThreshold) {
+                    member.alive = false;
+                    member.deadSince = now;
+                    failures.record();
+                    log.info(String.format("Suspected Member{id=%s, phi=%.1f}", member.id, phi));
+                    fireServicesRemovedEvent(member, member.services);
+                }
+            } else if (now - member.deadSince > removeDelay) {
+                // by now everyone stopped gossiping about it
+                iterator.remove();
+                rumors.remove(member.id);
+            }
+        }
+    }
+
+    private void receive(DatagramPacket packet) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+
+        if (in.readByte() != PROTOCOL) return;
+        if (!group.equals(in.readUTF())) return;
+
+        final String sender = in.readUTF();
+        final byte type = in.readByte();
+        final boolean complete = in.readBoolean();
+
+        final long now = System.currentTimeMillis();
+        final List<byte[]> reply = new ArrayList<byte[]>();
+
+        synchronized (members) {
+            if (me == null || sender.equals(me.id)) return;
+
+            switch (type) {
+                case DIGEST: {
+                    final List<String> wanted = new ArrayList<String>();
+                    final List<Member> newer = new ArrayList<Member>();
+                    final Set<String> listed = new HashSet<String>();
+
+                    while (in.available() > 0) {
+                        final String id = in.readUTF();
+                        final long version = in.readLong();
+                        final long heartbeat = in.readLong();
+                        listed.add(id);
+
+                        if (id.equals(me.id)) {
+                            outdated(version);
+                            continue;
+                        }
+
+                        final Member member = members.get(id);
+                        if (member == null || version > member.version) {
+                            wanted.add(id);
+                        } else if (version < member.version && member.alive) {
+                            newer.add(member);
+                        }
+
+                        if (member != null) {
+                            heartbeat(member, heartbeat, now);
+                        }
+                    }
+
+                    if (complete) {
+                        for (Member member : live()) {
+                            if (!listed.contains(member.id)) newer.add(member);
+                        }
+                    }
+
+                    if (wanted.size() > 0) reply.addAll(encode(REQUEST, wanted));
+                    if (newer.size() > 0) reply.addAll(encode(DELTA, newer));
+                }
+                break;
+
+                case DELTA: {
+                    while (in.available() > 0) {
+                        final String id = in.readUTF();
+                        final long version = in.readLong();
+                        final long heartbeat = in.readLong();
+                        final int size = in.readInt();
+                        final Set<String> services = new LinkedHashSet<String>();
+                        for (int i = 0; i < size; i++) {
+                            services.add(in.readUTF());
+                        }
+
+                        if (id.equals(me.id)) {
+                            outdated(version);
+                            continue;
+                        }
+
+                        update(id, version, heartbeat, Collections.unmodifiableSet(services), now);
+                    }
+                }
+                break;
+
+                case REQUEST: {
+                    final List<Member> requested = new ArrayList<Member>();
+                    while (in.available() > 0) {
+                        final Member member = members.get(in.readUTF());
+                        if (member != null && member.alive) requested.add(member);
+                    }
+
+                    if (requested.size() > 0) reply.addAll(encode(DELTA, requested));
+                }
+                break;
+            }
+        }
+
+        send(Collections.singletonList(packet.getSocketAddress()), reply);
+    }
+
+    /**
+     * The group knows a newer version of us than we do, we restarted faster
+     * than the clock moved, make sure our current services win
+     */
+    private void outdated(long version) {
+        if (version >= me.version) {
+            this.version = version;
+            changed();
+        }
+    }
+
+    private void update(String id, long version, long heartbeat, Set<String> services, long now) {
+        Member member = members.get(id);
+
+        if (member == null) {
+            member = new Member(id);
+            member.version = version;
+            member.heartbeat = heartbeat;
+            member.services = services;
+            member.detector.heartbeat(now);
+            members.put(id, member);
+            rumor(member);
+
+            log.info("Discovered Member{id=" + id + "}");
+            fireServicesAddedEvent(member, services);
+            return;
+        }
+
+        if (version > member.version) {
+            final Set<String> old = member.services;
+            member.version = version;
+            member.services = services;
+            rumor(member);
+
+            if (member.alive) {
+                final Set<String> removed = new LinkedHashSet<String>(old);
+                removed.removeAll(services);
+                fireServicesRemovedEvent(member, removed);
+
+                final Set<String> added = new LinkedHashSet<String>(services);
+                added.removeAll(old);
+                fireServicesAddedEvent(member, added);
+            }
+            member.failed.keySet().retainAll(services);
+        }
+
+        heartbeat(member, heartbeat, now);
+    }
+
+    private void heartbeat(Member member, long heartbeat, long now) {
+        if (heartbeat <= member.heartbeat) return;
+
+        member.heartbeat = heartbeat;
+        member.detector.heartbeat(now);
+
+        if (!member.alive) {
+            if (now - member.deadSince < reconnectDelay) return;
+
+            log.info("Recovered Member{id=" + member.id + "}");
+            member.alive = true;
+            member.failed.clear();
+            member.detector = newDetector();
+            member.detector.heartbeat(now);
+            fireServicesAddedEvent(member, member.services);
+        }
+
+        if (member.failed.size() > 0) {
+            final Iterator<Map.Entry<String, Long>> iterator = member.failed.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<String, Long> entry = iterator.next();
+                if (entry.getValue() <= now) {
+                    iterator.remove();
+                    fireServiceAddedEvent(entry.getKey());
+                }
+            }
+        }
+    }
+
+    private List<byte[]> encode(byte type, List<?> entries) {
+        final List<byte[]> packets = new ArrayList<byte[]>();
+        try {
+            ByteArrayOutputStream packet = null;
+            final ByteArrayOutputStream entry = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(entry);
+
+            for (Object object : entries) {
+                entry.reset();
+                if (type == REQUEST) {
+                    out.writeUTF((String) object);
+                } else {
+                    final Member member = (Member) object;
+                    out.writeUTF(member.id);
+                    out.writeLong(member.version);
+                    out.writeLong(member.heartbeat);
+                    if (type == DELTA) {
+                        out.writeInt(member.services.size());
+                        for (String service : member.services) {
+                            out.writeUTF(service);
+                        }
+                    }
+                }
+                out.flush();
+
+                if (packet != null && packet.size() + entry.size() > PACKET_SIZE) {
+                    packets.add(packet.toByteArray());
+                    packet = null;
+                }
+                if (packet == null) {
+                    packet = header(type);
+                }
+                entry.writeTo(packet);
+            }
+
+            if (packet != null) {
+                packets.add(packet.toByteArray());
+            }
+
+            // a digest split in several packets doesn't list everything we know
+            if (packets.size() == 1) {
+                packets.get(0)[complete(packets.get(0))] = 1;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // in memory
+        }
+        return packets;
+    }
+
+    private ByteArrayOutputStream header(byte type) throws IOException {
+        final ByteArrayOutputStream packet = new ByteArrayOutputStream(1024);
+        final DataOutputStream out = new DataOutputStream(packet);
+        out.writeByte(PROTOCOL);
+        out.writeUTF(group);
+        out.writeUTF(me.id);
+        out.writeByte(type);
+        out.writeBoolean(false);
+        out.flush();
+        return packet;
+    }
+
+    /**
+     * @return the offset of the "complete" flag in the header
+     */
+    private int complete(byte[] packet) {
+        int offset = 1;
+        offset += 2 + (((packet[offset] & 0xFF) << 8) | (packet[offset + 1] & 0xFF)); // group
+        offset += 2 + (((packet[offset] & 0xFF) << 8) | (packet[offset + 1] & 0xFF)); // sender
+        return offset + 1;
+    }
+
+    private void send(Collection<SocketAddress> targets, List<byte[]> packets) {
+        for (SocketAddress target : targets) {
+            for (byte[] data : packets) {
+                try {
+                    socket.send(new DatagramPacket(data, data.length, target));
+                    packetsSent.record();
+                } catch (IOException e) {
+                    if (running.get() && log.isDebugEnabled()) {
+                        log.debug("Can't gossip with " + target + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    private PhiAccrualFailureDetector newDetector() {
+        return new PhiAccrualFailureDetector(100, heartRate, heartRate / 2, heartRate);
+    }
+
+    private void fireServicesAddedEvent(Member member, Collection<String> services) {
+        for (String service : services) {
+            if (!member.failed.containsKey(service)) fireServiceAddedEvent(service);
+        }
+    }
+
+    private void fireServicesRemovedEvent(Member member, Collection<String> services) {
+        for (String service : services) {
+            if (!member.failed.containsKey(service)) fireServiceRemovedEvent(service);
+        }
+    }
+
+    private void fireServiceRemovedEvent(String service) {
+        final URI uri;
+        try {
+            uri = new URI(service);
+        } catch (Exception e) {
+            return;
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info(String.format("Removed Service{uri=%s}", uri));
+        }
+
+        final DiscoveryListener discoveryListener = this.discoveryListener;
+        if (discoveryListener != null) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    discoveryListener.serviceRemoved(uri);
+                }
+            });
+        }
+    }
+
+    private void fireServiceAddedEvent(String service) {
+        final URI uri;
+        try {
+            uri = new URI(service);
+        } catch (Exception e) {
+            return;
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info(String.format("Added Service{uri=%s}", uri));
+        }
+
+        final DiscoveryListener discoveryListener = this.discoveryListener;
+        if (discoveryListener != null) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    discoveryListener.serviceAdded(uri);
+                }
+            });
+        }
+    }
+
+    private class Member {
+        private final String id;
+        private final InetSocketAddress address;
+        private long version;
+        private long heartbeat;
+        private Set<String> services = Collections.emptySet();
+        private PhiAccrualFailureDetector detector = newDetector();
+        private boolean alive = true;
+        private long deadSince;
+        private final Map<String, Long> failed = new HashMap<String, Long>();
+
+        private Member(String id) {
+            final URI uri = URI.create(id);
+            this.id = id;
+            this.address = new InetSocketAddress(uri.getHost(), uri.getPort());
+        }
+
+        @Override
+        public String toString() {
+            return "Member{" +
+                    "id=" + id +
+                    ", version=" + version +
+                    ", heartbeat=" + heartbeat +
+                    ", alive=" + alive +
+                    ", services=" + services.size() +
+                    '}';
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GossipDiscoveryAgent{" +
+                "group='" + group + '\'' +
+                ", uri=" + getURI() +
+                ", heartRate=" + heartRate +
+                ", fanout=" + fanout +
+                ", phiThreshold=" + phiThreshold +
+                '}';
+    }
+}
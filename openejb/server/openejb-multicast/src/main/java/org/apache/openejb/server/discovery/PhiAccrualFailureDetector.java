@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.server.discovery;
+
+/**
+ * Phi accrual failure detector (Hayashibara et al.)
+ *
+ * Instead of a fixed number of missed heartbeats, the inter-arrival times
+ * of the heartbeats of a member are sampled and phi expresses how unlikely
+ * the current silence is: phi = 1 means a 10% chance to be wrong when
+ * suspecting the member, phi = 2 a 1% chance, phi = 3 0.1% and so on.
+ *
+ * The inter-arrival times are assumed to follow a normal distribution,
+ * the standard deviation never goes under minStdDeviation so a very
+ * regular member isn't suspected on the first hiccup.
+ *
+ * Not thread safe.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PhiAccrualFailureDetector {
+
+    private final long[] intervals;
+    private final long minStdDeviation;
+    private final long acceptablePause;
+
+    private int size;
+    private int next;
+    private long sum;
+    private long squares;
+    private long last = -1;
+
+    /**
+     * @param windowSize      number of inter-arrival times kept
+     * @param firstInterval   expected interval until the first samples are there, in milliseconds
+     * @param minStdDeviation lowest standard deviation used, in milliseconds
+     * @param acceptablePause pause added to the mean (GC, network hiccup), in milliseconds
+     */
+    public PhiAccrualFailureDetector(int windowSize, long firstInterval, long minStdDeviation, long acceptablePause) {
+        if (windowSize < 1) throw new IllegalArgumentException("windowSize must be positive");
+
+        this.intervals = new long[windowSize];
+        this.minStdDeviation = Math.max(1, minStdDeviation);
+        this.acceptablePause = Math.max(0, acceptablePause);
+
+        // seed with a pessimistic guess so a new member isn't suspected right away
+        add(firstInterval + this.minStdDeviation);
+        add(firstInterval - this.minStdDeviation);
+    }
+
+    public void heartbeat(long now) {
+        if (last >= 0) {
+            add(now - last);
+        }
+        last = now;
+    }
+
+    public double phi(long now) {
+        if (last < 0) return 0;
+
+        final double mean = (double) sum / size + acceptablePause;
+        final double variance = (double) squares / size - ((double) sum / size) * ((double) sum / size);
+        final double stdDeviation = Math.max(minStdDeviation, Math.sqrt(Math.max(0, variance)));
+
+        return phi(now - last, mean, stdDeviation);
+    }
+
+    public long getLastHeartbeat() {
+        return last;
+    }
+
+    /**
+     * Logistic approximation of the cumulative distribution function of
+     * the normal distribution, accurate enough here and way cheaper than erf.
+     */
+    static double phi(long elapsed, double mean, double stdDeviation) {
+        final double y = (elapsed - mean) / stdDeviation;
+        final double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (elapsed > mean) {
+            return -Math.log10(e / (1.0 + e));
+        } else {
+            return -Math.log10(1.0 - 1.0 / (1.0 + e));
+        }
+    }
+
+    private void add(long interval) {
+        interval = Math.max(0, interval);
+
+        if (size == intervals.length) {
+            final long removed = intervals[next];
+            sum -= removed;
+            squares -= removed * removed;
+        } else {
+            size++;
+        }
+
+        intervals[next] = interval;
+        next = (next + 1) % intervals.length;
+        sum += interval;
+        squares += interval * interval;
+    }
+}
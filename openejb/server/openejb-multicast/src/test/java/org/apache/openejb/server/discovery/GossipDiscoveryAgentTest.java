@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.server.discovery;
+
+import junit.framework.TestCase;
+import org.apache.openejb.server.DiscoveryListener;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class GossipDiscoveryAgentTest extends TestCase {
+
+    private static final int PEERS = 30;
+
+    private final List<Node> nodes = new ArrayList<Node>();
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (Node node : nodes) {
+            node.agent.stop();
+        }
+    }
+
+    public void testManyAgentsOnLoopback() throws Exception {
+        final Node root = new Node("root", null);
+        nodes.add(root);
+        for (int i = 1; i < PEERS; i++) {
+            nodes.add(new Node("node" + i, root.agent.getURI()));
+        }
+
+        for (int i = 0; i < PEERS; i++) {
+            nodes.get(i).agent.registerService(service(i));
+        }
+
+        // everyone sees everyone
+        for (int i = 0; i < PEERS; i++) {
+            assertTrue("node" + i + " discovered " + nodes.get(i).services.size(), nodes.get(i).await(PEERS, 30000));
+        }
+
+        // a service change only travels as a delta
+        final Node owner = nodes.get(PEERS / 2);
+        owner.agent.unregisterService(service(PEERS / 2));
+        for (Node node : nodes) {
+            assertTrue(node.name, node.awaitRemoved(service(PEERS / 2), 30000));
+        }
+
+        // a few members leave, their services are removed and they stop heartbeating
+        for (Node node : nodes.subList(PEERS - 3, PEERS)) {
+            node.agent.stop();
+            node.silent = true;
+        }
+
+        for (Node node : nodes.subList(0, PEERS - 3)) {
+            for (int i = PEERS - 3; i < PEERS; i++) {
+                assertTrue(node.name, node.awaitRemoved(service(i), 30000));
+            }
+        }
+
+        // the failure detector notices they are gone
+        for (Node node : nodes.subList(0, PEERS - 3)) {
+            final long end = System.currentTimeMillis() + 30000;
+            while (node.agent.getAliveMembers() > PEERS - 3 && System.currentTimeMillis() < end) {
+                Thread.sleep(20);
+            }
+            assertEquals(node.name, PEERS - 3, node.agent.getAliveMembers());
+        }
+    }
+
+    public void testGroupsAreIsolated() throws Exception {
+        final Node a = new Node("a", null, "one");
+        nodes.add(a);
+        final Node b = new Node("b", a.agent.getURI(), "two");
+        nodes.add(b);
+
+        a.agent.registerService(service(1));
+        b.agent.registerService(service(2));
+
+        Thread.sleep(1000);
+
+        assertEquals(1, a.services.size());
+        assertEquals(1, b.services.size());
+    }
+
+    private static URI service(int i) {
+        return URI.create("ejbd://127.0.0.1:" + (10000 + i));
+    }
+
+    private static class Node implements DiscoveryListener {
+        private final String name;
+        private final GossipDiscoveryAgent agent = new GossipDiscoveryAgent();
+        private final Set<URI> services = Collections.newSetFromMap(new ConcurrentHashMap<URI, Boolean>());
+        private volatile boolean silent;
+
+        private Node(String name, URI seed) throws Exception {
+            this(name, seed, "default");
+        }
+
+        private Node(String name, URI seed, String group) throws Exception {
+            this.name = name;
+
+            final Properties props = new Properties();
+            props.put("port", "0");
+            props.put("group", group);
+            props.put("heart_rate", "100");
+            props.put("reconnect_delay", "200");
+            if (seed != null) {
+                props.put("initialServers", seed.getHost() + ":" + seed.getPort());
+            }
+            agent.init(props);
+            agent.setDiscoveryListener(this);
+            agent.start();
+        }
+
+        public void serviceAdded(URI service) {
+            if (!silent) services.add(service);
+        }
+
+        public void serviceRemoved(URI service) {
+            if (!silent) services.remove(service);
+        }
+
+        private boolean await(int size, long timeout) throws InterruptedException {
+            final long end = System.currentTimeMillis() + timeout;
+            while (services.size() < size && System.currentTimeMillis() < end) {
+                Thread.sleep(20);
+            }
+            return services.size() == size;
+        }
+
+        private boolean awaitRemoved(URI service, long timeout) throws InterruptedException {
+            final long end = System.currentTimeMillis() + timeout;
+            while (services.contains(service) && System.currentTimeMillis() < end) {
+                Thread.sleep(20);
+            }
+            return !services.contains(service);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.server.discovery;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class PhiAccrualFailureDetectorTest extends TestCase {
+
+    public void testRegularHeartbeats() throws Exception {
+        final PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(100, 100, 10, 0);
+        assertEquals(0, detector.phi(0), 0);
+
+        long now = 0;
+        for (int i = 0; i < 50; i++) {
+            now += 100;
+            detector.heartbeat(now);
+        }
+
+        assertTrue(detector.phi(now + 50) < 1);
+        assertTrue(detector.phi(now + 100) < 1);
+        assertTrue(detector.phi(now + 200) > 8);
+    }
+
+    public void testPhiGrowsWithSilence() throws Exception {
+        final PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(100, 100, 50, 100);
+
+        long now = 0;
+        for (int i = 0; i < 20; i++) {
+            now += 80 + (i % 3) * 20;
+            detector.heartbeat(now);
+        }
+
+        double previous = 0;
+        for (long silence = 0; silence < 2000; silence += 100) {
+            final double phi = detector.phi(now + silence);
+            assertTrue(phi >= previous);
+            previous = phi;
+        }
+
+        assertTrue(detector.phi(now + 150) < 1);
+        assertTrue(detector.phi(now + 1000) > 8);
+    }
+
+    public void testAcceptablePause() throws Exception {
+        final PhiAccrualFailureDetector strict = new PhiAccrualFailureDetector(100, 100, 10, 0);
+        final PhiAccrualFailureDetector tolerant = new PhiAccrualFailureDetector(100, 100, 10, 500);
+
+        long now = 0;
+        for (int i = 0; i < 20; i++) {
+            now += 100;
+            strict.heartbeat(now);
+            tolerant.heartbeat(now);
+        }
+
+        assertTrue(strict.phi(now + 400) > 8);
+        assertTrue(tolerant.phi(now + 400) < 1);
+    }
+}
@@ -42,9 +42,12 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.tomcat.util.modeler.Registry;
 
 public class TomEEWebappLoader extends WebappLoader {
@@ -124,6 +127,13 @@ public class TomEEWebappLoader extends WebappLoader {
         private WebappClassLoader webapp;
         private String appPath;
 
+        private static final int MAX_CACHED_RESOURCES = 1000;
+
+        // jars don't change once the webapp is started so merged resources found only in jars can be kept,
+        // up to MAX_CACHED_RESOURCES names, as long as no directory (WEB-INF/classes) got the resource since
+        private final Map<String, List<URL>> resources = new ConcurrentHashMap<String, List<URL>>();
+        private volatile List<File> directories;
+
         public TomEEClassLoader(final String appId, final ClassLoader appCl, final WebappClassLoader webappCl) {
             super(webappCl.getURLs(), webappCl); // in fact this classloader = webappclassloader since we add nothing to this
             this.appPath = appId;
@@ -143,19 +153,97 @@ public class TomEEWebappLoader extends WebappLoader {
             // DMB: On inspection I was seeing three copies of the same resource
             // due to the app.getResources and webapp.getResources call.
             // Switching from a list to a form of set trims the duplicates
-            final Map<String, URL> urls = new HashMap<String, URL>();
+            if (webapp.isStarted()) {
+                List<URL> cached = resources.get(name);
+                if (cached == null || inDirectories(name)) {
+                    cached = merge(name);
+                    if (cacheable(cached)) {
+                        if (resources.size() >= MAX_CACHED_RESOURCES) {
+                            resources.clear();
+                        }
+                        resources.put(name, cached);
+                    } else {
+                        resources.remove(name);
+                    }
+                }
+                return new ArrayEnumeration(cached);
+            }
+            if (webapp.getParent() == null) { // we set a parent so if it is null webapp was detroyed
+                return new ArrayEnumeration(merge(name));
+            }
+            return app.getResources(name);
+        }
 
+        private List<URL> merge(final String name) throws IOException {
+            final Map<String, URL> urls = new LinkedHashMap<String, URL>();
+            add(urls, app.getResources(name));
+            add(urls, webapp.getResources(name));
+            return clear(urls.values());
+        }
 
-            if (webapp.isStarted() || webapp.getParent() == null) { // we set a parent so if it is null webapp was detroyed
-                add(urls, app.getResources(name));
-                add(urls, webapp.getResources(name));
-                return new ArrayEnumeration(clear(urls.values()));
+        /**
+         * @return true if the merged resources only come from jars, a resource missing or found in a directory can show up later
+         */
+        private static boolean cacheable(final List<URL> urls) {
+            if (urls.isEmpty()) {
+                return false;
             }
-            return app.getResources(name);
+            for (URL url : urls) {
+                if (!"jar".equals(url.getProtocol())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return true if a directory has the resource or can't be checked
+         */
+        private boolean inDirectories(final String name) {
+            final List<File> current = directories();
+            if (current == null) {
+                return true;
+            }
+            for (File directory : current) {
+                if (new File(directory, name).exists()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private List<File> directories() {
+            List<File> current = directories;
+            if (current == null) {
+                current = new ArrayList<File>();
+                if (!addDirectories(current, webapp.getURLs())
+                        || (app instanceof URLClassLoader && !addDirectories(current, ((URLClassLoader) app).getURLs()))) {
+                    return null; // not a file, nothing is cached
+                }
+                directories = current;
+            }
+            return current;
+        }
+
+        private static boolean addDirectories(final List<File> directories, final URL[] urls) {
+            for (URL url : urls) {
+                if ("jar".equals(url.getProtocol())) {
+                    continue;
+                }
+                if (!"file".equals(url.getProtocol())) {
+                    return false;
+                }
+
+                final File file = URLs.toFile(url);
+                if (file.isDirectory() || (!file.exists() && url.getPath().endsWith("/"))) {
+                    directories.add(file);
+                }
+            }
+            return true;
         }
 
         private List<URL> clear(Iterable<URL> urls) { // take care of antiJarLocking
-            final List<URL> clean = new ArrayList<URL>();
+            final Set<URL> clean = new LinkedHashSet<URL>();
             for (URL url : urls) {
                 final String urlStr = url.toExternalForm();
                 URL jarUrl = null;
@@ -176,7 +264,7 @@ public class TomEEWebappLoader extends WebappLoader {
                         } catch (MalformedURLException e) {
                             // ignored
                         }
-                        if (resource != null && !clean.contains(resource)) {
+                        if (resource != null) {
                             clean.add(resource);
                         }
                     } else {
@@ -186,11 +274,11 @@ public class TomEEWebappLoader extends WebappLoader {
                         clean.add(url);
                     }
 
-                } else if (!clean.contains(url)) {
+                } else {
                     clean.add(url);
                 }
             }
-            return clean;
+            return new ArrayList<URL>(clean);
         }
 
         private void add(Map<String, URL> urls, Enumeration<URL> enumUrls) {